@@ -1,7 +1,8 @@
 package de.ovgu.ifdefrevolver.bugs.correlate.data;
 
 import de.ovgu.ifdefrevolver.bugs.createsnapshots.data.ISnapshot;
-import de.ovgu.ifdefrevolver.bugs.createsnapshots.input.FileFinder;
+import de.ovgu.ifdefrevolver.bugs.createsnapshots.input.FileNameMatcher;
+import de.ovgu.ifdefrevolver.bugs.createsnapshots.input.VirtualFileSystem;
 import de.ovgu.ifdefrevolver.bugs.minecommits.CommitsDistanceDb.Commit;
 
 import java.io.File;
@@ -119,12 +120,20 @@ public class Snapshot implements Comparable<Snapshot>, IMinimalSnapshot, ISnapsh
         return this.getIndex() - other.getIndex();
     }
 
+    private static final FileNameMatcher SRCML_C_FILE_MATCHER = FileNameMatcher.suffix(".c.xml");
+
+    /**
+     * Caches the result of {@link #listSrcmlCFiles()} between runs
+     */
+    public static final String SRCML_C_FILES_CACHE_NAME = "_cppstats.files";
+
     /**
-     * @return All SrcML files of the C files within the snapshot
+     * @return All SrcML files of the C files within the snapshot, sorted by path.  If the snapshot has been packed
+     * into an archive, the files are to be read via {@link VirtualFileSystem}.
      */
     public List<File> listSrcmlCFiles() {
         File srcmlFolder = new File(snapshotDir, "_cppstats");
-        return FileFinder.find(srcmlFolder, ".*\\.c\\.xml$");
+        return VirtualFileSystem.find(srcmlFolder, SRCML_C_FILE_MATCHER, new File(snapshotDir, SRCML_C_FILES_CACHE_NAME));
     }
 
 //    public void addBugfixCommit(String commitId) {
@@ -5,18 +5,16 @@ import de.ovgu.ifdefrevolver.bugs.correlate.data.Feature;
 import de.ovgu.ifdefrevolver.bugs.correlate.data.IMinimalSnapshot;
 import de.ovgu.ifdefrevolver.bugs.correlate.main.Config;
 import de.ovgu.ifdefrevolver.bugs.correlate.main.Smell;
+import de.ovgu.ifdefrevolver.bugs.createsnapshots.input.VirtualFileSystem;
 import de.ovgu.ifdefrevolver.bugs.minecommits.CommitsDistanceDb;
+import de.ovgu.ifdefrevolver.util.stats.DoubleSamples;
 import org.apache.log4j.Logger;
 
 import java.io.File;
-import java.io.FileReader;
 import java.io.IOException;
+import java.io.Reader;
 import java.nio.file.Path;
 import java.nio.file.Paths;
-import java.text.DateFormat;
-import java.text.NumberFormat;
-import java.text.ParseException;
-import java.text.SimpleDateFormat;
 import java.util.*;
 import java.util.Map.Entry;
 
@@ -41,8 +39,14 @@ public class CSVHelper extends ProjectInformationReader<Config> {
      */
     private static final int SFL_COLUMN_IX_NOCU = 10;
 
+    /**
+     * Parses the project analysis file and the smell overview files once, instead of once per snapshot
+     */
+    private final SnapshotResultsIndex resultsIndex;
+
     public CSVHelper(Config conf, CommitsDistanceDb commitsDb) {
         super(conf, commitsDb);
+        this.resultsIndex = new SnapshotResultsIndex(conf);
     }
 
     /**
@@ -53,11 +57,11 @@ public class CSVHelper extends ProjectInformationReader<Config> {
      */
     public Map<String, List<Double>> getSmellyFilesFromSnapshotSmellResFile(Smell smell,
                                                                             final File snapshotSmellFile) {
-        List<Double> scoreList = new ArrayList<>();
+        DoubleSamples scoreList = new DoubleSamples();
         Map<String, List<Double>> scoresByFilename = new HashMap<>();
         CSVReader reader = null;
         try {
-            reader = new CSVReader(new FileReader(snapshotSmellFile));
+            reader = new CSVReader(VirtualFileSystem.openReader(snapshotSmellFile));
             @SuppressWarnings("unused")
             String[] header = reader.readNext(); // erste Zeile überspringen
             String[] nextLine;
@@ -134,23 +138,21 @@ public class CSVHelper extends ProjectInformationReader<Config> {
         if (value != null) {
             return value;
         } else {
-            value = new LinkedList<>();
+            value = new ArrayList<>();
             scoresByFilename.put(filename, value);
             return value;
         }
     }
 
-    private static double getMinSmellScoreForUpperPercentile(List<Double> scoreList,
+    private static double getMinSmellScoreForUpperPercentile(DoubleSamples scoreList,
                                                              double percentile) {
         final int len = scoreList.size();
         int percSum = (int) Math.round(len * percentile);
 
         if (len > 0) {
-            final List<Double> sortedScores = new ArrayList<>(scoreList);
-            Collections.sort(sortedScores);
             int ixMin = len - percSum;
             ixMin = Math.max(0, Math.min(ixMin, len - 1));
-            double minVal = sortedScores.get(ixMin);
+            double minVal = scoreList.select(ixMin);
             return minVal;
         } else {
             return 0.0;
@@ -286,7 +288,7 @@ public class CSVHelper extends ProjectInformationReader<Config> {
 
         CSVReader reader = null;
         try {
-            reader = new CSVReader(new FileReader(skunkFeatureLocationsCsv));
+            reader = new CSVReader(VirtualFileSystem.openReader(skunkFeatureLocationsCsv));
             String[] nextLine;
             reader.readNext(); // erste Zeile überspringen
             while ((nextLine = reader.readNext()) != null) {
@@ -319,44 +321,12 @@ public class CSVHelper extends ProjectInformationReader<Config> {
         return featMap;
     }
 
+    /**
+     * @param snapshot
+     * @return Names of the files in the snapshot, as listed in the project analysis file
+     */
     public Set<String> getFilesInSnapshot(IMinimalSnapshot snapshot) {
-        Set<String> resultSet = new HashSet<>();
-        Date snapshotDate = snapshot.getStartDate();
-
-        CSVReader reader = null;
-        try {
-            reader = new CSVReader(new FileReader(conf.projectAnalysisFile()));
-            String[] nextLine;
-            SimpleDateFormat formatter = new SimpleDateFormat("yyyy-MM-dd");
-            while ((nextLine = reader.readNext()) != null) {
-                String fileName = nextLine[0];
-                String dateStr = nextLine[1];
-
-                Date verDate = null;
-                try {
-                    verDate = formatter.parse(dateStr);
-                } catch (ParseException e) {
-                    throw new RuntimeException(
-                            "Error parsing " + conf.projectAnalysisFile().getAbsolutePath(), e);
-                }
-
-                if (verDate.equals(snapshotDate))
-                    resultSet.add(fileName);
-            }
-        } catch (IOException e1) {
-            throw new RuntimeException(
-                    "Error reading file " + conf.projectAnalysisFile().getAbsolutePath(), e1);
-        } finally {
-            if (reader != null) {
-                try {
-                    reader.close();
-                } catch (IOException e) {
-                    // We don't care if closing the reader fails.
-                }
-            }
-        }
-
-        return resultSet;
+        return resultsIndex.getFilesInSnapshot(snapshot.getStartDate());
     }
 
     /**
@@ -370,69 +340,10 @@ public class CSVHelper extends ProjectInformationReader<Config> {
      * least one entry.
      */
     public Map<String, List<Double>> getSmells(IMinimalSnapshot snapshot, final Smell smell) {
-        Map<String, List<Double>> scoresByFilename = new HashMap<>();
-        Date snapshotDate = snapshot.getStartDate();
-
-        CSVReader reader = null;
-        File csvFile = conf.smellOverviewFile(smell);
-        try {
-            reader = new CSVReader(new FileReader(csvFile));
-            String[] nextLine;
-            DateFormat dateParser = new SimpleDateFormat("EEE MMM dd kk:mm:ss z yyyy",
-                    Locale.ENGLISH);
-            NumberFormat scoreParser = NumberFormat.getInstance(Locale.ENGLISH);
-
-            while ((nextLine = reader.readNext()) != null) {
-                String filename = nextLine[0];
-                String dateStr = nextLine[1];
-                String scoreStr = nextLine[2];
-
-                Date verDate;
-                try {
-                    verDate = dateParser.parse(dateStr);
-                } catch (ParseException e) {
-                    throw new RuntimeException(
-                            "Error parsing date " + dateStr + " in " + csvFile.getAbsolutePath(),
-                            e);
-                }
-
-                if (!verDate.equals(snapshotDate)) {
-                    continue;
-                }
-
-                double score;
-                try {
-                    Number scoreNum = scoreParser.parse(scoreStr);
-                    score = scoreNum.doubleValue();
-                } catch (ParseException e) {
-                    throw new RuntimeException(
-                            "Error parsing double " + scoreStr + " in " + csvFile.getAbsolutePath(),
-                            e);
-                }
-
-                List<Double> scores = scoresByFilename.get(filename);
-                if (scores == null) {
-                    scores = new ArrayList<>();
-                    scoresByFilename.put(filename, scores);
-                }
-                scores.add(score);
-            }
-        } catch (IOException e) {
-            throw new RuntimeException("Error reading file " + csvFile.getAbsolutePath(), e);
-        } finally {
-            if (reader != null) {
-                try {
-                    reader.close();
-                } catch (IOException e) {
-                    // We don't care if closing the reader fails.
-                }
-            }
-        }
-
-        return scoresByFilename;
+        return resultsIndex.getSmells(snapshot.getStartDate(), smell);
     }
 
-    public static void silentlyCloseReaders(CSVReader reader, FileReader fileReader) {
+    public static void silentlyCloseReaders(CSVReader reader, Reader fileReader) {
         if (reader != null) {
             try {
                 reader.close();
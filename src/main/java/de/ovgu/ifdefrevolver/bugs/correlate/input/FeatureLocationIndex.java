@@ -0,0 +1,185 @@
+package de.ovgu.ifdefrevolver.bugs.correlate.input;
+
+import de.ovgu.ifdefrevolver.bugs.createsnapshots.input.VirtualFileSystem;
+import org.apache.log4j.Logger;
+
+import javax.xml.stream.XMLInputFactory;
+import javax.xml.stream.XMLStreamConstants;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamReader;
+import java.io.BufferedInputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.*;
+import java.util.function.Predicate;
+
+/**
+ * Maps the names of features to the files in which they occur, as recorded in the feature location XML file written
+ * by Skunk.  The file is read in a single pass with a streaming parser, so only the files of one feature at a time
+ * are held in memory, plus those of the features that are kept in the index.
+ * <p>
+ * The result is the same as that of searching a DOM of the file for each feature: For each element named like
+ * Skunk's feature class, the feature name is the text of its first <code>Name</code> descendant, and its files are the
+ * texts of all <code>string</code> descendants of its first <code>compilationFiles</code> descendant.  Features
+ * occurring several times have the union of their files.</p>
+ */
+public class FeatureLocationIndex {
+    private static final Logger LOG = Logger.getLogger(FeatureLocationIndex.class);
+
+    private static final String FEATURE_ELEMENT = de.ovgu.skunk.detection.data.Feature.class.getCanonicalName();
+    private static final String NAME_ELEMENT = "Name";
+    private static final String FILES_ELEMENT = "compilationFiles";
+    private static final String FILE_ELEMENT = "string";
+
+    private final Map<String, Set<String>> filesByFeature;
+
+    private FeatureLocationIndex(Map<String, Set<String>> filesByFeature) {
+        this.filesByFeature = filesByFeature;
+    }
+
+    /**
+     * @param featureName Name of a feature
+     * @return The files in which the feature occurs.  Empty if the feature is unknown or was not kept in the index.
+     */
+    public Set<String> getFiles(String featureName) {
+        Set<String> files = filesByFeature.get(featureName);
+        return (files == null) ? Collections.emptySet() : Collections.unmodifiableSet(files);
+    }
+
+    /**
+     * @return Number of features in the index
+     */
+    public int size() {
+        return filesByFeature.size();
+    }
+
+    /**
+     * Reads a feature location XML file.
+     *
+     * @param featureLocationXml The file written by Skunk
+     * @param keepFeature        Decides, by name, which features to keep in the index.  Only the files of these
+     *                           features are retained.
+     * @return The index
+     */
+    public static FeatureLocationIndex read(File featureLocationXml, Predicate<String> keepFeature) {
+        final long startTime = System.currentTimeMillis();
+        Map<String, Set<String>> filesByFeature = new HashMap<>();
+        int numFeatureElements = 0;
+
+        XMLInputFactory factory = XMLInputFactory.newInstance();
+        factory.setProperty(XMLInputFactory.SUPPORT_DTD, false);
+        try (InputStream in = new BufferedInputStream(VirtualFileSystem.open(featureLocationXml))) {
+            XMLStreamReader reader = factory.createXMLStreamReader(in);
+            try {
+                // Feature elements currently open.  Usually, there is at most one, but let's not rely on it.
+                Deque<FeatureElement> openFeatures = new ArrayDeque<>();
+                while (reader.hasNext()) {
+                    switch (reader.next()) {
+                        case XMLStreamConstants.START_ELEMENT:
+                            final String localName = reader.getLocalName();
+                            for (FeatureElement f : openFeatures) {
+                                f.startElement(localName);
+                            }
+                            if (FEATURE_ELEMENT.equals(localName)) {
+                                openFeatures.push(new FeatureElement());
+                                numFeatureElements++;
+                            }
+                            break;
+                        case XMLStreamConstants.END_ELEMENT:
+                            if (FEATURE_ELEMENT.equals(reader.getLocalName()) && (openFeatures.peek() != null)
+                                    && (openFeatures.peek().depth == 0)) {
+                                FeatureElement f = openFeatures.pop();
+                                if ((f.name != null) && keepFeature.test(f.name.toString())) {
+                                    filesByFeature.computeIfAbsent(f.name.toString(), n -> new HashSet<>())
+                                            .addAll(f.files);
+                                }
+                            }
+                            for (FeatureElement f : openFeatures) {
+                                f.endElement();
+                            }
+                            break;
+                        case XMLStreamConstants.CHARACTERS:
+                        case XMLStreamConstants.CDATA:
+                        case XMLStreamConstants.SPACE:
+                            if (!openFeatures.isEmpty()) {
+                                final String text = reader.getText();
+                                for (FeatureElement f : openFeatures) {
+                                    f.characters(text);
+                                }
+                            }
+                            break;
+                        default:
+                            break;
+                    }
+                }
+            } finally {
+                reader.close();
+            }
+        } catch (IOException | XMLStreamException e) {
+            throw new RuntimeException("Error parsing feature location XML " + featureLocationXml.getAbsolutePath(),
+                    e);
+        }
+
+        LOG.debug("Indexed " + filesByFeature.size() + " of " + numFeatureElements + " feature element(s) in "
+                + featureLocationXml + " in " + (System.currentTimeMillis() - startTime) + " ms.");
+        return new FeatureLocationIndex(filesByFeature);
+    }
+
+    /**
+     * Parsing state of an open feature element
+     */
+    private static final class FeatureElement {
+        /**
+         * Depth of the current element below the feature element
+         */
+        int depth = 0;
+        /**
+         * Text of the first <code>Name</code> element, once it has been found
+         */
+        StringBuilder name = null;
+        int nameDepth = -1;
+        /**
+         * Depth of the first <code>compilationFiles</code> element while it is open, <code>-1</code> before,
+         * <code>-2</code> after
+         */
+        int filesDepth = -1;
+        StringBuilder currentFile = null;
+        int currentFileDepth = -1;
+        final Set<String> files = new HashSet<>();
+
+        void startElement(String localName) {
+            depth++;
+            if ((name == null) && NAME_ELEMENT.equals(localName)) {
+                name = new StringBuilder();
+                nameDepth = depth;
+            }
+            if ((filesDepth == -1) && FILES_ELEMENT.equals(localName)) {
+                filesDepth = depth;
+            } else if ((filesDepth > 0) && (currentFile == null) && FILE_ELEMENT.equals(localName)) {
+                currentFile = new StringBuilder();
+                currentFileDepth = depth;
+            }
+        }
+
+        void endElement() {
+            if (depth == nameDepth) {
+                nameDepth = -1;
+            }
+            if (depth == currentFileDepth) {
+                files.add(currentFile.toString());
+                currentFile = null;
+                currentFileDepth = -1;
+            }
+            if (depth == filesDepth) {
+                filesDepth = -2;
+            }
+            depth--;
+        }
+
+        void characters(String text) {
+            if (nameDepth > 0) name.append(text);
+            if (currentFile != null) currentFile.append(text);
+        }
+    }
+}
@@ -0,0 +1,169 @@
+package de.ovgu.ifdefrevolver.bugs.correlate.input;
+
+import de.ovgu.ifdefrevolver.bugs.createsnapshots.input.VirtualFileSystem;
+import de.ovgu.ifdefrevolver.bugs.createsnapshots.input.VirtualFileSystem.FileVersion;
+import org.apache.log4j.Logger;
+
+import java.io.*;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.*;
+
+/**
+ * Line counts of the files of a snapshot, persisted in a CSV file, so that the files need not be read again in later
+ * runs.  Each line count is stored together with the {@link FileVersion} of the file at the time it was counted.  If
+ * the version of a file changes, the file is counted again.
+ * <p>
+ * The cache file lists the size, the version stamp, the line count and the name of each file, in this order.  The name
+ * comes last, so it may contain commas.  A cache file that cannot be parsed is ignored, i.e., all files are counted
+ * again.</p>
+ * <p>
+ * Each snapshot has its own cache, which is used by the thread correlating that snapshot only.  Therefore, the cache
+ * is not thread-safe, and files are counted sequentially.  Snapshots are already correlated in parallel, with as many
+ * threads as configured.</p>
+ */
+public class FileStatsCache {
+    private static final Logger LOG = Logger.getLogger(FileStatsCache.class);
+
+    /**
+     * Name of the cache file within the results directory of a snapshot
+     */
+    public static final String FILE_NAME = "fileStats.csv";
+
+    private static final String HEADER = "SIZE,STAMP,LINES,FILENAME";
+
+    private final File cacheFile;
+    private final Map<String, FileStats> statsByName;
+    private boolean modified = false;
+
+    private static final class FileStats {
+        final FileVersion version;
+        final int lines;
+
+        FileStats(FileVersion version, int lines) {
+            this.version = version;
+            this.lines = lines;
+        }
+    }
+
+    private FileStatsCache(File cacheFile, Map<String, FileStats> statsByName) {
+        this.cacheFile = cacheFile;
+        this.statsByName = statsByName;
+    }
+
+    /**
+     * @param cacheFile The cache file.  It need not exist yet.
+     * @return The cache, holding the line counts stored in the cache file, if any
+     */
+    public static FileStatsCache load(File cacheFile) {
+        Map<String, FileStats> statsByName = new HashMap<>();
+        if (!cacheFile.isFile()) {
+            return new FileStatsCache(cacheFile, statsByName);
+        }
+
+        try (BufferedReader reader = Files.newBufferedReader(cacheFile.toPath(), StandardCharsets.UTF_8)) {
+            String line = reader.readLine();
+            if (!HEADER.equals(line)) {
+                throw new IOException("Unexpected header: " + line);
+            }
+            while ((line = reader.readLine()) != null) {
+                String[] fields = line.split(",", 4);
+                if (fields.length != 4) {
+                    throw new IOException("Malformed line: " + line);
+                }
+                final long size;
+                final long stamp;
+                final int lines;
+                try {
+                    size = Long.parseLong(fields[0]);
+                    stamp = Long.parseLong(fields[1]);
+                    lines = Integer.parseInt(fields[2]);
+                } catch (NumberFormatException e) {
+                    throw new IOException("Malformed line: " + line, e);
+                }
+                statsByName.put(fields[3], new FileStats(new FileVersion(size, stamp), lines));
+            }
+        } catch (IOException e) {
+            LOG.warn("Ignoring unreadable file statistics cache " + cacheFile.getAbsolutePath() + ": "
+                    + e.getMessage());
+            statsByName.clear();
+        }
+        return new FileStatsCache(cacheFile, statsByName);
+    }
+
+    /**
+     * Determines the line counts of the given files.  Files that are not in the cache or whose version has changed
+     * are counted, and the cache is updated.  Counting lines in files that are neither in the cache nor
+     * readable is an error.
+     *
+     * @param baseDir   The directory holding the files.  It may have been packed into an archive.
+     * @param fileNames Names of the files, relative to <code>baseDir</code>
+     * @return Number of lines of each file, by file name
+     */
+    public Map<String, Integer> getLineCounts(File baseDir, Collection<String> fileNames) {
+        int numCounted = 0;
+        final Map<String, Integer> result = new HashMap<>();
+        for (String fileName : fileNames) {
+            File file = new File(baseDir, fileName);
+            try {
+                final FileVersion version = VirtualFileSystem.version(file);
+                FileStats stats = statsByName.get(fileName);
+                if ((stats == null) || !stats.version.equals(version)) {
+                    stats = new FileStats(version, VirtualFileSystem.countLines(file));
+                    statsByName.put(fileName, stats);
+                    numCounted++;
+                    modified = true;
+                }
+                result.put(fileName, stats.lines);
+            } catch (IOException e) {
+                throw new RuntimeException("Error counting lines of code in file " + file.getAbsolutePath(), e);
+            }
+        }
+        LOG.debug("Counted lines of " + numCounted + " of " + fileNames.size() + " file(s) in " + baseDir
+                + ". The rest were cached in " + cacheFile + ".");
+        return result;
+    }
+
+    /**
+     * Writes the cache file, unless no line counts have been added since the cache was loaded.  The file is written
+     * to a temporary file first, which then replaces the cache file atomically.
+     */
+    public void save() {
+        if (!modified) {
+            return;
+        }
+
+        final File dir = cacheFile.getAbsoluteFile().getParentFile();
+        dir.mkdirs();
+        Path tmpFile = null;
+        try {
+            tmpFile = Files.createTempFile(dir.toPath(), FILE_NAME, ".tmp");
+            try (BufferedWriter writer = Files.newBufferedWriter(tmpFile, StandardCharsets.UTF_8)) {
+                writer.write(HEADER);
+                writer.newLine();
+                for (Map.Entry<String, FileStats> e : new TreeMap<>(statsByName).entrySet()) {
+                    FileStats stats = e.getValue();
+                    writer.write(stats.version.size + "," + stats.version.stamp + "," + stats.lines + ","
+                            + e.getKey());
+                    writer.newLine();
+                }
+            }
+            Files.move(tmpFile, cacheFile.toPath(), StandardCopyOption.ATOMIC_MOVE,
+                    StandardCopyOption.REPLACE_EXISTING);
+            tmpFile = null;
+            modified = false;
+        } catch (IOException e) {
+            throw new RuntimeException("Error writing file statistics cache " + cacheFile.getAbsolutePath(), e);
+        } finally {
+            if (tmpFile != null) {
+                try {
+                    Files.deleteIfExists(tmpFile);
+                } catch (IOException e) {
+                    // We don't care.
+                }
+            }
+        }
+    }
+}
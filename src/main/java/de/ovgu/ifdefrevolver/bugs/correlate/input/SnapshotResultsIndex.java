@@ -0,0 +1,261 @@
+package de.ovgu.ifdefrevolver.bugs.correlate.input;
+
+import com.opencsv.CSVReader;
+import de.ovgu.ifdefrevolver.bugs.correlate.main.Config;
+import de.ovgu.ifdefrevolver.bugs.correlate.main.Smell;
+import de.ovgu.ifdefrevolver.bugs.createsnapshots.input.VirtualFileSystem;
+import org.apache.log4j.Logger;
+
+import java.io.File;
+import java.io.IOException;
+import java.text.DateFormat;
+import java.text.NumberFormat;
+import java.text.ParseException;
+import java.text.SimpleDateFormat;
+import java.util.*;
+
+/**
+ * Index over the project analysis CSV file and the smell overview CSV files of a project.  Each file is parsed once,
+ * into per-snapshot lookup structures, instead of once per snapshot and smell.
+ * <p>
+ * Within the index of a file, file names are mapped to small integer IDs by a dictionary that belongs to this index
+ * alone.  Thus, when an index is rebuilt, the names only known to the old index are dropped together with it.  For
+ * each snapshot, the files it contains are kept as a bit set over these IDs.  The smell scores of a snapshot are kept
+ * in arrays, sorted by file ID.</p>
+ * <p>
+ * An index of a file is rebuilt if the file's size or modification time changes, e.g., because the smell overview
+ * files are appended to during preprocessing.  It is safe to use the index from several threads at once.</p>
+ */
+class SnapshotResultsIndex {
+    private static final Logger LOG = Logger.getLogger(SnapshotResultsIndex.class);
+
+    private final Config conf;
+
+    private IndexedFile<SnapshotIndex<BitSet>> filesBySnapshot;
+    private final Map<Smell, IndexedFile<SnapshotIndex<SmellScores>>> smellsBySnapshot = new EnumMap<>(Smell.class);
+
+    /**
+     * Maps file names to IDs and back.  Only used by a single thread while an index is built, and read-only
+     * afterwards.
+     */
+    private static final class FileNames {
+        private final Map<String, Integer> ids = new HashMap<>();
+        private final List<String> names = new ArrayList<>();
+
+        int id(String fileName) {
+            Integer id = ids.get(fileName);
+            if (id == null) {
+                id = names.size();
+                names.add(fileName);
+                ids.put(fileName, id);
+            }
+            return id;
+        }
+
+        String name(int id) {
+            return names.get(id);
+        }
+    }
+
+    /**
+     * Data of each snapshot found in a CSV file, together with the dictionary of the file names it refers to
+     */
+    private static final class SnapshotIndex<T> {
+        final FileNames fileNames;
+        final Map<Date, T> bySnapshot;
+
+        SnapshotIndex(FileNames fileNames, Map<Date, T> bySnapshot) {
+            this.fileNames = fileNames;
+            this.bySnapshot = bySnapshot;
+        }
+    }
+
+    /**
+     * Index of a CSV file, together with the file's state at the time it was read
+     */
+    private static final class IndexedFile<T> {
+        final long size;
+        final long lastModified;
+        final T index;
+
+        IndexedFile(File file, T index) {
+            this.size = file.length();
+            this.lastModified = file.lastModified();
+            this.index = index;
+        }
+
+        boolean isUpToDate(File file) {
+            return (file.length() == size) && (file.lastModified() == lastModified);
+        }
+    }
+
+    /**
+     * Scores of the files exhibiting a smell in a snapshot
+     */
+    private static final class SmellScores {
+        /**
+         * IDs of the smelly files, in ascending order
+         */
+        final int[] fileIds;
+        /**
+         * Scores of the file with the ID at the same position in {@link #fileIds}, in the order in which they appear
+         * in the CSV file
+         */
+        final double[][] scores;
+
+        SmellScores(SortedMap<Integer, List<Double>> scoresByFileId) {
+            this.fileIds = new int[scoresByFileId.size()];
+            this.scores = new double[scoresByFileId.size()][];
+            int i = 0;
+            for (Map.Entry<Integer, List<Double>> e : scoresByFileId.entrySet()) {
+                final int fileId = e.getKey();
+                fileIds[i] = fileId;
+                List<Double> fileScores = e.getValue();
+                scores[i] = new double[fileScores.size()];
+                for (int j = 0; j < scores[i].length; j++) {
+                    scores[i][j] = fileScores.get(j);
+                }
+                i++;
+            }
+        }
+    }
+
+    SnapshotResultsIndex(Config conf) {
+        this.conf = conf;
+    }
+
+    /**
+     * @return Names of the files in the snapshot with the given date, as listed in the project analysis file
+     */
+    public Set<String> getFilesInSnapshot(Date snapshotDate) {
+        final SnapshotIndex<BitSet> index = filesBySnapshot();
+        final BitSet files = index.bySnapshot.get(snapshotDate);
+        Set<String> result = new HashSet<>();
+        if (files == null) return result;
+        for (int id = files.nextSetBit(0); id >= 0; id = files.nextSetBit(id + 1)) {
+            result.add(index.fileNames.name(id));
+        }
+        return result;
+    }
+
+    /**
+     * @return Map from the name of each file exhibiting the smell in the snapshot with the given date to its scores.
+     * Files without the smell are not included.
+     */
+    public Map<String, List<Double>> getSmells(Date snapshotDate, Smell smell) {
+        final SnapshotIndex<SmellScores> index = smellsBySnapshot(smell);
+        final SmellScores smellScores = index.bySnapshot.get(snapshotDate);
+        Map<String, List<Double>> result = new HashMap<>();
+        if (smellScores == null) return result;
+        for (int i = 0; i < smellScores.fileIds.length; i++) {
+            final double[] fileScores = smellScores.scores[i];
+            List<Double> scoreList = new ArrayList<>(fileScores.length);
+            for (double score : fileScores) {
+                scoreList.add(score);
+            }
+            result.put(index.fileNames.name(smellScores.fileIds[i]), scoreList);
+        }
+        return result;
+    }
+
+    private synchronized SnapshotIndex<BitSet> filesBySnapshot() {
+        final File csvFile = conf.projectAnalysisFile();
+        if ((filesBySnapshot == null) || !filesBySnapshot.isUpToDate(csvFile)) {
+            filesBySnapshot = new IndexedFile<>(csvFile, readFilesBySnapshot(csvFile));
+        }
+        return filesBySnapshot.index;
+    }
+
+    private synchronized SnapshotIndex<SmellScores> smellsBySnapshot(Smell smell) {
+        final File csvFile = conf.smellOverviewFile(smell);
+        IndexedFile<SnapshotIndex<SmellScores>> indexed = smellsBySnapshot.get(smell);
+        if ((indexed == null) || !indexed.isUpToDate(csvFile)) {
+            indexed = new IndexedFile<>(csvFile, readSmellsBySnapshot(csvFile));
+            smellsBySnapshot.put(smell, indexed);
+        }
+        return indexed.index;
+    }
+
+    private SnapshotIndex<BitSet> readFilesBySnapshot(File csvFile) {
+        final FileNames fileNames = new FileNames();
+        Map<Date, BitSet> result = new HashMap<>();
+        SimpleDateFormat formatter = new SimpleDateFormat("yyyy-MM-dd");
+        int numRows = 0;
+        CSVReader reader = null;
+        try {
+            reader = new CSVReader(VirtualFileSystem.openReader(csvFile));
+            String[] nextLine;
+            while ((nextLine = reader.readNext()) != null) {
+                String fileName = nextLine[0];
+                String dateStr = nextLine[1];
+
+                Date verDate;
+                try {
+                    verDate = formatter.parse(dateStr);
+                } catch (ParseException e) {
+                    throw new RuntimeException("Error parsing " + csvFile.getAbsolutePath(), e);
+                }
+
+                result.computeIfAbsent(verDate, d -> new BitSet()).set(fileNames.id(fileName));
+                numRows++;
+            }
+        } catch (IOException e) {
+            throw new RuntimeException("Error reading file " + csvFile.getAbsolutePath(), e);
+        } finally {
+            CSVHelper.silentlyCloseReaders(reader, null);
+        }
+        LOG.debug("Indexed " + numRows + " row(s) for " + result.size() + " snapshot(s) in " + csvFile);
+        return new SnapshotIndex<>(fileNames, result);
+    }
+
+    private SnapshotIndex<SmellScores> readSmellsBySnapshot(File csvFile) {
+        final FileNames fileNames = new FileNames();
+        Map<Date, SortedMap<Integer, List<Double>>> scoresBySnapshot = new HashMap<>();
+        DateFormat dateParser = new SimpleDateFormat("EEE MMM dd kk:mm:ss z yyyy", Locale.ENGLISH);
+        NumberFormat scoreParser = NumberFormat.getInstance(Locale.ENGLISH);
+        int numRows = 0;
+        CSVReader reader = null;
+        try {
+            reader = new CSVReader(VirtualFileSystem.openReader(csvFile));
+            String[] nextLine;
+            while ((nextLine = reader.readNext()) != null) {
+                String filename = nextLine[0];
+                String dateStr = nextLine[1];
+                String scoreStr = nextLine[2];
+
+                Date verDate;
+                try {
+                    verDate = dateParser.parse(dateStr);
+                } catch (ParseException e) {
+                    throw new RuntimeException(
+                            "Error parsing date " + dateStr + " in " + csvFile.getAbsolutePath(), e);
+                }
+
+                double score;
+                try {
+                    Number scoreNum = scoreParser.parse(scoreStr);
+                    score = scoreNum.doubleValue();
+                } catch (ParseException e) {
+                    throw new RuntimeException(
+                            "Error parsing double " + scoreStr + " in " + csvFile.getAbsolutePath(), e);
+                }
+
+                scoresBySnapshot.computeIfAbsent(verDate, d -> new TreeMap<>())
+                        .computeIfAbsent(fileNames.id(filename), id -> new ArrayList<>())
+                        .add(score);
+                numRows++;
+            }
+        } catch (IOException e) {
+            throw new RuntimeException("Error reading file " + csvFile.getAbsolutePath(), e);
+        } finally {
+            CSVHelper.silentlyCloseReaders(reader, null);
+        }
+
+        Map<Date, SmellScores> result = new HashMap<>();
+        for (Map.Entry<Date, SortedMap<Integer, List<Double>>> e : scoresBySnapshot.entrySet()) {
+            result.put(e.getKey(), new SmellScores(e.getValue()));
+        }
+        LOG.debug("Indexed " + numRows + " row(s) for " + result.size() + " snapshot(s) in " + csvFile);
+        return new SnapshotIndex<>(fileNames, result);
+    }
+}
@@ -23,6 +23,13 @@ public class Config extends ProjectInformationConfig {
     double largeFeatureOccurrencePercentage = 0;
     double largeFeatureNumCompilationUnitsPercentage = 0;
 
+    int numberOfThreads = 1;
+
+    boolean crossCheckFeatureLocations = false;
+
+    boolean evaluateInMemory = false;
+    boolean writeCorrelatedCsvs = true;
+
     /**
      * @return Percentage of features, regarding LOC, to be considered large.
      * Value between 0.0 and 100.0.
@@ -52,6 +59,37 @@ public class Config extends ProjectInformationConfig {
         // Just for traceability
     }
 
+    /**
+     * @return Whether the feature location XML files written by Skunk are additionally parsed into a DOM to check
+     * the results of the streaming parser
+     */
+    public boolean isCrossCheckFeatureLocations() {
+        return crossCheckFeatureLocations;
+    }
+
+    /**
+     * @return Number of snapshots that are correlated in parallel
+     */
+    public int getNumberOfThreads() {
+        return numberOfThreads;
+    }
+
+    /**
+     * @return Whether the correlation results of the snapshots are evaluated directly, while they are still in memory,
+     * instead of being read back from the CSV files in {@link #correlatedResultsDir()}
+     */
+    public boolean isEvaluateInMemory() {
+        return evaluateInMemory;
+    }
+
+    /**
+     * @return Whether the correlation results of each snapshot are written to a CSV file in {@link
+     * #correlatedResultsDir()}.  Always <code>true</code> unless {@link #isEvaluateInMemory()} is <code>true</code>.
+     */
+    public boolean isWriteCorrelatedCsvs() {
+        return writeCorrelatedCsvs;
+    }
+
     // public String getSmellDir() {
     // return smellDir;
     // }
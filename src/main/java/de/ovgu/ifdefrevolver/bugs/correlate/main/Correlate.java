@@ -1,15 +1,17 @@
 package de.ovgu.ifdefrevolver.bugs.correlate.main;
 
-import com.opencsv.CSVReader;
 import de.ovgu.ifdefrevolver.bugs.correlate.data.*;
 import de.ovgu.ifdefrevolver.bugs.correlate.input.CSVHelper;
+import de.ovgu.ifdefrevolver.bugs.correlate.input.FileStatsCache;
 import de.ovgu.ifdefrevolver.bugs.correlate.output.PreprocessOutput;
 import de.ovgu.ifdefrevolver.bugs.correlate.processing.Evaluation;
 import de.ovgu.ifdefrevolver.bugs.correlate.processing.Preprocessing;
 import de.ovgu.ifdefrevolver.bugs.createsnapshots.input.FileFinder;
+import de.ovgu.ifdefrevolver.bugs.createsnapshots.input.FileNameMatcher;
 import de.ovgu.ifdefrevolver.bugs.createsnapshots.main.CreateSnapshots;
 import de.ovgu.ifdefrevolver.bugs.minecommits.CommitsDistanceDb;
 import de.ovgu.ifdefrevolver.bugs.minecommits.CommitsDistanceDbCsvReader;
+import de.ovgu.ifdefrevolver.util.stats.IntSamples;
 import org.apache.commons.cli.*;
 import org.apache.log4j.Logger;
 
@@ -18,6 +20,11 @@ import java.nio.file.Path;
 import java.nio.file.Paths;
 import java.text.SimpleDateFormat;
 import java.util.*;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
 
 public class Correlate {
 
@@ -69,7 +76,6 @@ public class Correlate {
         // List<Date> snapshotDates = csvHelper.getProjectDates();
         final Collection<Snapshot> snapshots = csvHelper.getSnapshots().values();
 
-        final SimpleDateFormat dateFormatter = new SimpleDateFormat("yyyy-MM-dd");
         logSnapshotDates(snapshots);
 
         // Map<Snapshot, SortedMap<ChangedFile, String>> groupedBugFixCounts =
@@ -81,136 +87,171 @@ public class Correlate {
 
         // Date startDate = versionDates.get(0);
 
-        for (IMinimalSnapshot snapshot : snapshots) {
-            log.info("Evaluating snapshot: " + snapshot);
+        correlateSnapshots(csvHelper, snapshots);
 
-            List<MergedFileInfo> outputList = new ArrayList<>();
+        if (!conf.isEvaluateInMemory()) {
+            evalAllSnapshots();
+        }
+    }
 
-            SortedMap<FileChangeHunk, String> bugFixesInSnapshot = null;
-            //csvHelper                    .getFixedFiles(snapshot);
-            SortedMap<FileChangeHunk, String> changesInSnapshot = null;
-            //csvHelper                    .getChangedFiles(snapshot);
+    /**
+     * Correlates the snapshots using as many threads as configured.  The results are written in snapshot order,
+     * regardless of the order in which the threads finish.  If correlating a snapshot fails, the other snapshots are
+     * still processed.  Afterwards, the failures are reported and the program aborts, since the overall results would
+     * be incomplete.
+     * <p>
+     * If the results are to be evaluated in memory, each snapshot is evaluated as soon as its results are written,
+     * which, too, happens in snapshot order.  The results of a snapshot are not kept any longer.</p>
+     */
+    private void correlateSnapshots(final CSVHelper csvHelper, Collection<Snapshot> snapshots) {
+        final int numSnapshots = snapshots.size();
+        final int numThreads = Math.max(1, Math.min(conf.getNumberOfThreads(), numSnapshots));
+        log.info("Correlating " + numSnapshots + " snapshot(s) with " + numThreads + " thread(s).");
+
+        final AtomicInteger startedCounter = new AtomicInteger(0);
+        final ExecutorService executor = Executors.newFixedThreadPool(numThreads);
+        final List<Future<List<MergedFileInfo>>> results = new ArrayList<>(numSnapshots);
+        for (final Snapshot snapshot : snapshots) {
+            results.add(executor.submit(() -> {
+                log.info("Evaluating snapshot " + startedCounter.incrementAndGet() + "/" + numSnapshots + ": "
+                        + snapshot);
+                return correlateSnapshot(csvHelper, snapshot);
+            }));
+        }
+        executor.shutdown();
 
-            // Vorbereitung für MergedFileInfos
-            Map<String, Integer> curBugFixCounts = countOccurrencesOfSameName(bugFixesInSnapshot);
-            Map<String, Integer> curChangeCounts = countOccurrencesOfSameName(changesInSnapshot);
+        final SimpleDateFormat dateFormatter = new SimpleDateFormat("yyyy-MM-dd");
+        File corOverviewFile = null;
+        File corOverviewSizeFile = null;
+        if (conf.isEvaluateInMemory()) {
+            log.info("Aggregating correlation results of " + numSnapshots + " snapshot(s) in memory.");
+            corOverviewFile = createCorOverviewCsv(conf.corOverviewFile());
+            corOverviewSizeFile = createCorOverviewCsv(conf.corOverviewSizeFile());
+        }
+        final List<Snapshot> failedSnapshots = new ArrayList<>();
+        ListIterator<Future<List<MergedFileInfo>>> resultIterator = results.listIterator();
+        int numDone = 0;
+        for (Snapshot snapshot : snapshots) {
+            numDone++;
+            Future<List<MergedFileInfo>> result = resultIterator.next();
+            // Let the results of the snapshot be garbage-collected once they have been processed.
+            resultIterator.set(null);
+            final List<MergedFileInfo> outputList;
+            try {
+                outputList = result.get();
+            } catch (ExecutionException e) {
+                log.error("Error correlating snapshot " + snapshot, e.getCause());
+                failedSnapshots.add(snapshot);
+                continue;
+            } catch (InterruptedException e) {
+                executor.shutdownNow();
+                throw new RuntimeException("Interrupted while correlating snapshot " + snapshot, e);
+            }
+            if (conf.isWriteCorrelatedCsvs()) {
+                PreprocessOutput.writeCorrelationForSnapshot(outputList,
+                        dateFormatter.format(snapshot.getStartDate()), conf);
+                log.info("Wrote correlation results of snapshot " + numDone + "/" + numSnapshots + ": " + snapshot);
+            } else {
+                log.info("Correlated snapshot " + numDone + "/" + numSnapshots + ": " + snapshot);
+            }
+            if (conf.isEvaluateInMemory() && failedSnapshots.isEmpty()) {
+                List<Evaluation.CorrelatedFile> correlatedFiles = new ArrayList<>(outputList.size());
+                for (MergedFileInfo fileInfo : outputList) {
+                    correlatedFiles.add(Evaluation.CorrelatedFile.fromMergedFileInfo(fileInfo));
+                }
+                evalSnapshot(snapshot.getStartDate(), correlatedFiles, corOverviewFile, corOverviewSizeFile);
+            }
+        }
 
-            // TODO: Vorbereitung für einzelne Commits (nur für die einzelnen
-            // Ratios pro Commit nötig... wahrscheinlich wieder zu entfernen)
-            // Map<String, Integer> curBugSetSingle =
-            // Preprocessing.getCurFiles(bugMapSingle, startDate, curDate);
-            // Map<String, Integer> curChangedSetSingle =
-            // Preprocessing.getCurFiles(changedMapSingle, startDate, curDate);
-            ////////////////////////////////////////////////
+        if (!failedSnapshots.isEmpty()) {
+            throw new RuntimeException("Correlating " + failedSnapshots.size() + " of " + numSnapshots
+                    + " snapshot(s) failed: " + failedSnapshots);
+        }
 
-            Map<Smell, Map<String, List<Double>>> allSmells = new HashMap<>();
+        if (conf.isEvaluateInMemory()) {
+            log.info("Successfully wrote correlation data to " + conf.corOverviewFile() + " and "
+                    + conf.corOverviewSizeFile());
+        }
+    }
 
-            for (Smell smell : Smell.values()) {
-                Map<String, List<Double>> smellScores = csvHelper.getSmells(snapshot, smell);
-                allSmells.put(smell, smellScores);
-            }
+    /**
+     * Merges the smell scores and line counts of all the files of a snapshot.  Safe to call for several snapshots
+     * at once.
+     *
+     * @return One entry per file in the snapshot
+     */
+    private List<MergedFileInfo> correlateSnapshot(CSVHelper csvHelper, IMinimalSnapshot snapshot) {
+        List<MergedFileInfo> outputList = new ArrayList<>();
 
-            Set<String> filesInSnapshot = csvHelper.getFilesInSnapshot(snapshot);
+        SortedMap<FileChangeHunk, String> bugFixesInSnapshot = null;
+        //csvHelper                    .getFixedFiles(snapshot);
+        SortedMap<FileChangeHunk, String> changesInSnapshot = null;
+        //csvHelper                    .getChangedFiles(snapshot);
 
-            final String snapshotDateString = dateFormatter.format(snapshot.getStartDate());
-            for (String sourceFileName : filesInSnapshot) {
-                MergedFileInfo fileInfo = new MergedFileInfo(sourceFileName,
-                        snapshot.getStartDate());
+        // Vorbereitung für MergedFileInfos
+        Map<String, Integer> curBugFixCounts = countOccurrencesOfSameName(bugFixesInSnapshot);
+        Map<String, Integer> curChangeCounts = countOccurrencesOfSameName(changesInSnapshot);
 
-                Path snapshotsPath = conf.projectSnapshotsDir().toPath();
-                Path filePath = snapshotsPath
-                        .resolve(Paths.get(snapshotDateString, "_cppstats", sourceFileName));
-                File file = filePath.toFile();
-                String baseName = file.getName();
+        // TODO: Vorbereitung für einzelne Commits (nur für die einzelnen
+        // Ratios pro Commit nötig... wahrscheinlich wieder zu entfernen)
+        // Map<String, Integer> curBugSetSingle =
+        // Preprocessing.getCurFiles(bugMapSingle, startDate, curDate);
+        // Map<String, Integer> curChangedSetSingle =
+        // Preprocessing.getCurFiles(changedMapSingle, startDate, curDate);
+        ////////////////////////////////////////////////
 
-                // Note: Simply counting file lines actually does give us a good
-                // SLOC (source lines of code) measurement since we do it on
-                // files prepared by cppstats, which removes comments, empty
-                // lines, etc..
-                int lines;
-                try {
-                    lines = countLines(file);
-                } catch (IOException e) {
-                    throw new RuntimeException(
-                            "Error counting lines of code in file " + file.getAbsolutePath(), e);
-                }
-                fileInfo.setSourceLinesOfCode(lines);
+        Map<Smell, Map<String, List<Double>>> allSmells = new HashMap<>();
 
-                final Integer fixCount = curBugFixCounts.get(baseName);
-                if (fixCount != null) {
-                    fileInfo.setFixCount(fixCount);
-                }
+        for (Smell smell : Smell.values()) {
+            Map<String, List<Double>> smellScores = csvHelper.getSmells(snapshot, smell);
+            allSmells.put(smell, smellScores);
+        }
 
-                final Integer changeCount = curChangeCounts.get(baseName);
-                if (changeCount != null) {
-                    fileInfo.setChangeCount(changeCount);
-                }
+        Set<String> filesInSnapshot = csvHelper.getFilesInSnapshot(snapshot);
 
-                for (Smell smell : Smell.values()) {
-                    Map<String, List<Double>> allScoresForSmell = allSmells.get(smell);
-                    List<Double> scoresForFile = allScoresForSmell.get(sourceFileName);
-                    if (scoresForFile != null) {
-                        fileInfo.addSmells(smell, scoresForFile);
-                    }
-                }
+        final String snapshotDateString = new SimpleDateFormat("yyyy-MM-dd").format(snapshot.getStartDate());
+        Path snapshotsPath = conf.projectSnapshotsDir().toPath();
+        File cppstatsDir = snapshotsPath.resolve(Paths.get(snapshotDateString, "_cppstats")).toFile();
 
-                outputList.add(fileInfo);
-            }
+        // Note: Simply counting file lines actually does give us a good
+        // SLOC (source lines of code) measurement since we do it on
+        // files prepared by cppstats, which removes comments, empty
+        // lines, etc..
+        FileStatsCache fileStatsCache = FileStatsCache.load(
+                new File(conf.snapshotResultsDirForDate(snapshot.getStartDate()), FileStatsCache.FILE_NAME));
+        Map<String, Integer> linesByFileName = fileStatsCache.getLineCounts(cppstatsDir, filesInSnapshot);
+        fileStatsCache.save();
 
-            // Output
+        for (String sourceFileName : filesInSnapshot) {
+            MergedFileInfo fileInfo = new MergedFileInfo(sourceFileName,
+                    snapshot.getStartDate());
 
-            // @formatter:off
-            // if (false) {
-            // Vorbereitung für Proportion Test
-            // Map<ChangedFile, String> curBugMap = new HashMap<>();
-            // for (ChangedFile f : bugFixesInSnapshot.keySet()) {
-            // curBugMap.put(f, f.getName());
-            // }
-            // writeCorrelatedRatioCsv(startDate, curBugMap,
-            // curVersionSmellyFiles, versionFiles, dateFormatter);
-            // }
-            // @formatter:on
+            String baseName = new File(cppstatsDir, sourceFileName).getName();
 
-            PreprocessOutput.writeCorrelationForSnapshot(outputList,
-                    dateFormatter.format(snapshot.getStartDate()), conf);
-        }
+            fileInfo.setSourceLinesOfCode(linesByFileName.get(sourceFileName));
 
-        evalAllSnapshots();
-    }
+            final Integer fixCount = curBugFixCounts.get(baseName);
+            if (fixCount != null) {
+                fileInfo.setFixCount(fixCount);
+            }
 
-    /**
-     * <p>
-     * Count lines in a file, similar (but not identical) to what wc -l does
-     * </p>
-     * <p>
-     * <p>
-     * Taken from <a href= "http://stackoverflow.com/questions/453018/number-of-lines-in-a-file-in-java">
-     * Stackoverflow</a>
-     * </p>
-     *
-     * @param file
-     * @return
-     * @throws IOException If something goes wrong while reading the file
-     */
-    private static int countLines(File file) throws IOException {
-        InputStream is = new BufferedInputStream(new FileInputStream(file));
-        try {
-            byte[] c = new byte[1024];
-            int count = 0;
-            int readChars = 0;
-            boolean empty = true;
-            while ((readChars = is.read(c)) != -1) {
-                empty = false;
-                for (int i = 0; i < readChars; ++i) {
-                    if (c[i] == '\n') {
-                        ++count;
-                    }
+            final Integer changeCount = curChangeCounts.get(baseName);
+            if (changeCount != null) {
+                fileInfo.setChangeCount(changeCount);
+            }
+
+            for (Smell smell : Smell.values()) {
+                Map<String, List<Double>> allScoresForSmell = allSmells.get(smell);
+                List<Double> scoresForFile = allScoresForSmell.get(sourceFileName);
+                if (scoresForFile != null) {
+                    fileInfo.addSmells(smell, scoresForFile);
                 }
             }
-            return (count == 0 && !empty) ? 1 : count;
-        } finally {
-            is.close();
+
+            outputList.add(fileInfo);
         }
+
+        return outputList;
     }
 
     // @formatter:off
@@ -374,28 +415,38 @@ public class Correlate {
         File corOverviewFile = createCorOverviewCsv(conf.corOverviewFile());
         File corOverviewSizeFile = createCorOverviewCsv(conf.corOverviewSizeFile());
 
-        List<File> filesFound = FileFinder.find(pathFind, "(.*\\.csv$)");
+        List<File> filesFound = FileFinder.find(pathFind, FileNameMatcher.suffix(".csv"));
 
         Collections.sort(filesFound);
 
         // Extend the output files, snapshot by snapshot
         for (File snapshotCorrelatedData : filesFound) {
-            Evaluation.evalFile(snapshotCorrelatedData, 0, corOverviewFile);
-            int minFileSize = computeMinFileSizeForLargeFiles(snapshotCorrelatedData);
-            Evaluation.evalFile(snapshotCorrelatedData, minFileSize, corOverviewSizeFile);
+            // Parse the file once for both output files
+            final Date snapshotDate = Preprocessing.getDateFromFileName(snapshotCorrelatedData);
+            evalSnapshot(snapshotDate, Evaluation.readCorrelatedFiles(snapshotCorrelatedData), corOverviewFile,
+                    corOverviewSizeFile);
         }
 
         log.info("Successfully wrote correlation data to " + conf.corOverviewFile() + " and "
                 + conf.corOverviewSizeFile());
     }
 
-    private int computeMinFileSizeForLargeFiles(File snapshotCorrelatedData) {
-        List<Integer> sizeList = readFileSizes(snapshotCorrelatedData);
+    private void evalSnapshot(Date snapshotDate, List<Evaluation.CorrelatedFile> correlatedFiles,
+                              File corOverviewFile, File corOverviewSizeFile) {
+        Evaluation.evalSnapshot(snapshotDate, correlatedFiles, 0, corOverviewFile);
+        int minFileSize = computeMinFileSizeForLargeFiles(correlatedFiles);
+        Evaluation.evalSnapshot(snapshotDate, correlatedFiles, minFileSize, corOverviewSizeFile);
+    }
+
+    private int computeMinFileSizeForLargeFiles(List<Evaluation.CorrelatedFile> correlatedFiles) {
+        IntSamples sizeList = new IntSamples(correlatedFiles.size());
+        for (Evaluation.CorrelatedFile correlatedFile : correlatedFiles) {
+            sizeList.add(correlatedFile.getSloc());
+        }
 
         final int lenSizeList = sizeList.size();
 
         if (lenSizeList > 0) {
-            Collections.sort(sizeList);
             final double percentage = conf.getLargeFileSizePercentage();
 
             if (percentage < 0.0 || percentage > 100.0) {
@@ -405,47 +456,13 @@ public class Correlate {
 
             int ixMinSize = (int) Math.round(lenSizeList - lenSizeList * percentage / 100.0);
             ixMinSize = Math.max(0, Math.min(ixMinSize, lenSizeList - 1));
-            int minFileSize = Math.round(sizeList.get(ixMinSize));
+            int minFileSize = sizeList.select(ixMinSize);
             return minFileSize;
         } else {
             return 0;
         }
     }
 
-    private List<Integer> readFileSizes(File snapshotCorrelatedData) {
-        List<Integer> sizeList = new ArrayList<>();
-        CSVReader reader = null;
-        FileReader fileReader = null;
-        try {
-            fileReader = new FileReader(snapshotCorrelatedData);
-            reader = new CSVReader(fileReader);
-            String[] nextLine;
-            reader.readNext(); // Skip header
-            while ((nextLine = reader.readNext()) != null) {
-                int fileSize = (Integer) SnapshotCorrelationCsvColumn.SLOC.parseFromCsv(nextLine);
-                sizeList.add(fileSize);
-            }
-        } catch (IOException e1) {
-            throw new RuntimeException(
-                    "Error reading file " + snapshotCorrelatedData.getAbsolutePath(), e1);
-        } finally {
-            if (reader != null) {
-                try {
-                    reader.close();
-                } catch (IOException e) {
-                    // Could not close reader. So what?
-                }
-            } else if (fileReader != null) {
-                try {
-                    fileReader.close();
-                } catch (IOException e) {
-                    // Could not close reader. So what?
-                }
-            }
-        }
-        return sizeList;
-    }
-
     private File createCorOverviewCsv(File csvOut) {
         if (csvOut.exists()) {
             throw new RuntimeException(csvOut.getAbsolutePath() + " already exists!");
@@ -522,6 +539,35 @@ public class Correlate {
      */
     private static final String OPT_LARGE_FEATURE_NOCU_PERCENT_L = "lf-nocu-p";
 
+    /**
+     * Large feature detection: check the feature location index against a DOM of the XML file
+     *
+     * @see Config#isCrossCheckFeatureLocations()
+     */
+    private static final String OPT_LARGE_FEATURE_CROSS_CHECK_XML_L = "lf-check-xml";
+
+    /**
+     * Number of snapshots to correlate in parallel
+     *
+     * @see Config#getNumberOfThreads()
+     */
+    private static final char OPT_THREADS = 't';
+    private static final String OPT_THREADS_L = "threads";
+
+    /**
+     * Evaluate the correlation results while they are still in memory
+     *
+     * @see Config#isEvaluateInMemory()
+     */
+    private static final String OPT_EVAL_IN_MEMORY_L = "eval-in-memory";
+
+    /**
+     * Do not write the correlation results of each snapshot to a CSV file
+     *
+     * @see Config#isWriteCorrelatedCsvs()
+     */
+    private static final String OPT_NO_CORRELATED_CSV_L = "no-correlated-csv";
+
     /**
      * Analyze input to decide what to do during runtime
      *
@@ -600,6 +646,38 @@ public class Correlate {
                     .get();
         }
 
+        if (line.hasOption(OPT_LARGE_FEATURE_CROSS_CHECK_XML_L)) {
+            result.crossCheckFeatureLocations = true;
+        }
+
+        if (line.hasOption(OPT_THREADS)) {
+            String threadsString = line.getOptionValue(OPT_THREADS);
+            int numThreads;
+            try {
+                numThreads = Integer.valueOf(threadsString);
+            } catch (NumberFormatException e) {
+                throw new IllegalArgumentException("Invalid value for option `-" + OPT_THREADS
+                        + "': Not a valid integer: " + threadsString);
+            }
+            if (numThreads < 1) {
+                throw new IllegalArgumentException("Invalid value for option `-" + OPT_THREADS
+                        + "': Number of threads must be an integer >= 1.");
+            }
+            result.numberOfThreads = numThreads;
+        }
+
+        if (line.hasOption(OPT_EVAL_IN_MEMORY_L)) {
+            result.evaluateInMemory = true;
+        }
+
+        if (line.hasOption(OPT_NO_CORRELATED_CSV_L)) {
+            if (!result.evaluateInMemory) {
+                throw new IllegalArgumentException("Option `--" + OPT_NO_CORRELATED_CSV_L + "' requires option `--"
+                        + OPT_EVAL_IN_MEMORY_L + "'.");
+            }
+            result.writeCorrelatedCsvs = false;
+        }
+
         return result;
     }
 
@@ -663,6 +741,28 @@ public class Correlate {
                         defaultConf.getLargeFeatureNumCompilationUnitsPercentage()))
                 .hasArg().argName("PERCENT").build());
 
+        options.addOption(Option.builder().longOpt(OPT_LARGE_FEATURE_CROSS_CHECK_XML_L)
+                .desc("Large Feature detection: In addition to the streaming parser, parse Skunk's feature location"
+                        + " XML files into a DOM and check that both yield the same files for each Large Feature."
+                        + " Slow and memory-hungry on large projects.")
+                .build());
+
+        // Option for parallel processing
+        options.addOption(Option.builder(String.valueOf(OPT_THREADS)).longOpt(OPT_THREADS_L)
+                .desc("Number of snapshots to correlate in parallel. The results are written in snapshot order."
+                        + " Must be at least 1. [Default=" + defaultConf.getNumberOfThreads() + "]")
+                .hasArg().argName("NUM").build());
+
+        // Options for the evaluation
+        options.addOption(Option.builder().longOpt(OPT_EVAL_IN_MEMORY_L)
+                .desc("Evaluate the correlation results of the snapshots directly instead of reading them back from"
+                        + " the per-snapshot CSV files. Results of snapshots not correlated in this run are ignored.")
+                .build());
+        options.addOption(Option.builder().longOpt(OPT_NO_CORRELATED_CSV_L)
+                .desc("Do not write the correlation results of each snapshot to a CSV file. Requires `--"
+                        + OPT_EVAL_IN_MEMORY_L + "'.")
+                .build());
+
         // @formatter:on
         return options;
     }
@@ -3,8 +3,10 @@ package de.ovgu.ifdefrevolver.bugs.correlate.output;
 import de.ovgu.ifdefrevolver.bugs.correlate.data.Feature;
 import de.ovgu.ifdefrevolver.bugs.correlate.data.LargeFeatureCsvColumns;
 import de.ovgu.ifdefrevolver.bugs.correlate.input.CSVHelper;
+import de.ovgu.ifdefrevolver.bugs.correlate.input.FeatureLocationIndex;
 import de.ovgu.ifdefrevolver.bugs.correlate.main.Config;
 import de.ovgu.ifdefrevolver.bugs.correlate.main.Smell;
+import de.ovgu.ifdefrevolver.bugs.createsnapshots.input.VirtualFileSystem;
 import de.ovgu.ifdefrevolver.bugs.minecommits.CommitsDistanceDb;
 import org.apache.log4j.Logger;
 import org.w3c.dom.Document;
@@ -16,10 +18,7 @@ import org.xml.sax.SAXException;
 import javax.xml.parsers.DocumentBuilder;
 import javax.xml.parsers.DocumentBuilderFactory;
 import javax.xml.parsers.ParserConfigurationException;
-import java.io.BufferedWriter;
-import java.io.File;
-import java.io.FileWriter;
-import java.io.IOException;
+import java.io.*;
 import java.util.*;
 import java.util.Map.Entry;
 
@@ -104,15 +103,18 @@ public class SmellCSV {
             buff.newLine();
 
             // Write body
-            final Document featureLocationDoc = parseFeatureLocationXml(featureLocationXml);
+            final FeatureLocationIndex featureLocations = FeatureLocationIndex.read(featureLocationXml,
+                    largeFeatures::containsKey);
+            if (conf.isCrossCheckFeatureLocations()) {
+                crossCheckFeatureLocations(featureLocationXml, featureLocations, largeFeatures.keySet());
+            }
             // die eingelesenen Features mit der XML abgleichen und
             // Filenamen pro Feature auslesen
             for (Entry<String, Feature> featureEntry : largeFeatures.entrySet()) {
                 String featureName = featureEntry.getKey();
                 Feature feature = featureEntry.getValue();
 
-                Set<String> fileSetXML = findFilesParticipatingInFeature(featureLocationDoc,
-                        featureName);
+                Set<String> fileSetXML = featureLocations.getFiles(featureName);
 
                 // FeatureNamen und Score in CSV schreiben
                 for (String fileName : fileSetXML) {
@@ -222,6 +224,27 @@ public class SmellCSV {
         return allLargeFeatures;
     }
 
+    /**
+     * Compares the files found for each feature by the streaming parser of the {@link FeatureLocationIndex} to those
+     * found by searching a DOM of the feature location XML file.  Much slower than using the index alone.
+     *
+     * @throws RuntimeException if the results differ for any of the features
+     */
+    static void crossCheckFeatureLocations(File featureLocationXml, FeatureLocationIndex featureLocations,
+                                           Collection<String> featureNames) {
+        final Document featureLocationDoc = parseFeatureLocationXml(featureLocationXml);
+        for (String featureName : featureNames) {
+            Set<String> domFiles = findFilesParticipatingInFeature(featureLocationDoc, featureName);
+            Set<String> indexedFiles = featureLocations.getFiles(featureName);
+            if (!domFiles.equals(indexedFiles)) {
+                throw new RuntimeException("Files of feature " + featureName + " in "
+                        + featureLocationXml.getAbsolutePath() + " differ between DOM and streaming parser. DOM: "
+                        + domFiles + " streaming: " + indexedFiles);
+            }
+        }
+        log.debug("Cross-checked locations of " + featureNames.size() + " feature(s) in " + featureLocationXml);
+    }
+
     /**
      * @param featureLocationDoc the already-parsed Skunk document containing feature location information
      * @param featureName        the name of the feature in question
@@ -260,10 +283,10 @@ public class SmellCSV {
     }
 
     private static Document parseFeatureLocationXml(File featureLocationXml) {
-        try {
+        try (InputStream in = new BufferedInputStream(VirtualFileSystem.open(featureLocationXml))) {
             DocumentBuilderFactory factory = DocumentBuilderFactory.newInstance();
             DocumentBuilder builder = factory.newDocumentBuilder();
-            Document featureLocationDoc = builder.parse(featureLocationXml);
+            Document featureLocationDoc = builder.parse(in, featureLocationXml.toURI().toString());
             featureLocationDoc.getDocumentElement().normalize();
             return featureLocationDoc;
         } catch (ParserConfigurationException | SAXException | IOException e) {
@@ -1,9 +1,10 @@
 package de.ovgu.ifdefrevolver.bugs.correlate.processing;
 
 import com.opencsv.CSVReader;
+import de.ovgu.ifdefrevolver.bugs.correlate.data.MergedFileInfo;
 import de.ovgu.ifdefrevolver.bugs.correlate.data.SnapshotCorrelationCsvColumn;
 import de.ovgu.ifdefrevolver.bugs.correlate.main.Smell;
-import org.apache.commons.math3.stat.StatUtils;
+import de.ovgu.ifdefrevolver.util.stats.IntSamples;
 
 import java.io.*;
 import java.text.SimpleDateFormat;
@@ -396,12 +397,12 @@ public class Evaluation {
         /**
          * SLOC of smelly files (irregardless of smell)
          */
-        public List<Integer> smellySloc = new ArrayList<>();
+        public IntSamples smellySloc = new IntSamples();
 
         /**
          * SLOC of non-smelly files (irregardless of smell)
          */
-        public List<Integer> nonSmellySloc = new ArrayList<>();
+        public IntSamples nonSmellySloc = new IntSamples();
 
         public Optional<Integer> meanSmellySloc() {
             return meanSloc(smellySloc);
@@ -419,16 +420,12 @@ public class Evaluation {
             return medianSloc(nonSmellySloc);
         }
 
-        private Optional<Integer> meanSloc(Collection<Integer> locs) {
-            double[] vals = toDoubleArray(locs);
-            double mean = StatUtils.mean(vals);
-            return toOptionalInt(mean);
+        private Optional<Integer> meanSloc(IntSamples locs) {
+            return toOptionalInt(locs.mean());
         }
 
-        private static Optional<Integer> medianSloc(Collection<Integer> locs) {
-            double[] vals = toDoubleArray(locs);
-            double median = StatUtils.percentile(vals, 50);
-            return toOptionalInt(median);
+        private static Optional<Integer> medianSloc(IntSamples locs) {
+            return toOptionalInt(locs.percentile(50));
         }
 
         private static Optional<Integer> toOptionalInt(double v) {
@@ -439,16 +436,6 @@ public class Evaluation {
             }
         }
 
-        private static double[] toDoubleArray(Collection<Integer> ints) {
-            double[] vals = new double[ints.size()];
-
-            int ixInsert = 0;
-            for (Integer v : ints) {
-                vals[ixInsert++] = v;
-            }
-            return vals;
-        }
-
         @Override
         public int hashCode() {
             final int prime = 31;
@@ -544,20 +531,31 @@ public class Evaluation {
     }
 
     public static class SmellsInFile {
-        private Map<Smell, Integer> smellsInLine = new HashMap<>();
+        /**
+         * Number of occurrences of each smell, indexed by the smell's ordinal
+         */
+        private final int[] smellsInLine = new int[Smell.values().length];
 
         public static SmellsInFile fromCsv(String[] nextLine) {
             SmellsInFile r = new SmellsInFile();
             for (Smell smell : Smell.values()) {
                 SnapshotCorrelationCsvColumn col = smell.getSnapshotCorrelationCsvColumn();
                 int count = (Integer) col.parseFromCsv(nextLine);
-                r.smellsInLine.put(smell, count);
+                r.smellsInLine[smell.ordinal()] = count;
+            }
+            return r;
+        }
+
+        public static SmellsInFile fromMergedFileInfo(MergedFileInfo f) {
+            SmellsInFile r = new SmellsInFile();
+            for (Smell smell : Smell.values()) {
+                r.smellsInLine[smell.ordinal()] = f.getSmellCount(smell);
             }
             return r;
         }
 
         public int getSmellCount(Smell smell) {
-            return smellsInLine.get(smell);
+            return smellsInLine[smell.ordinal()];
         }
 
         public boolean hasSmell(Smell smell) {
@@ -581,6 +579,49 @@ public class Evaluation {
         }
     }
 
+    /**
+     * The values of a file in a snapshot that the evaluation needs, i.e., the values of one row of a snapshot
+     * correlation CSV file, except for the file name.  Kept small, so that the rows of many snapshots can be held in
+     * memory at once.
+     */
+    public static class CorrelatedFile {
+        private final int sloc;
+        private final int anySmellCount;
+        private final int fixCount;
+        private final SmellsInFile smells;
+
+        private CorrelatedFile(int sloc, int anySmellCount, int fixCount, SmellsInFile smells) {
+            this.sloc = sloc;
+            this.anySmellCount = anySmellCount;
+            this.fixCount = fixCount;
+            this.smells = smells;
+        }
+
+        public static CorrelatedFile fromCsv(String[] nextLine) {
+            final int sloc = (Integer) SnapshotCorrelationCsvColumn.SLOC.parseFromCsv(nextLine);
+            final int totalSmellCount = (Integer) SnapshotCorrelationCsvColumn.ANY_SMELL_COUNT
+                    .parseFromCsv(nextLine);
+            final int fixCount = (Integer) SnapshotCorrelationCsvColumn.FIX_COUNT
+                    .parseFromCsv(nextLine);
+            // final int changeCount = (Integer)
+            // SnapshotCorrelationCsvColumn.CHANGE_COUNT.parseFromCsv(nextLine);
+            return new CorrelatedFile(sloc, totalSmellCount, fixCount, SmellsInFile.fromCsv(nextLine));
+        }
+
+        /**
+         * @return The same values as {@link #fromCsv(String[])} would return for the CSV row written for the given
+         * file by {@link SnapshotCorrelationCsvColumn#toCsv(MergedFileInfo)}
+         */
+        public static CorrelatedFile fromMergedFileInfo(MergedFileInfo f) {
+            return new CorrelatedFile((int) f.getSourceLinesOfCode(), f.getTotalSmellCount(), f.getFixCount(),
+                    SmellsInFile.fromMergedFileInfo(f));
+        }
+
+        public int getSloc() {
+            return sloc;
+        }
+    }
+
     public static String getCorOverviewCsvHeader() {
         StringBuilder r = new StringBuilder();
 
@@ -602,8 +643,52 @@ public class Evaluation {
         return r.toString();
     }
 
-    public static void evalFile(File snapshotCorrelatedData, int minFileSloc,
-                                File corOverviewCsvOut) {
+    /**
+     * Reads all rows of a snapshot correlation CSV file at once, so that the snapshot can be evaluated several times
+     * without parsing the file again.
+     */
+    public static List<CorrelatedFile> readCorrelatedFiles(File snapshotCorrelatedData) {
+        List<CorrelatedFile> result = new ArrayList<>();
+        FileReader fileReader = null;
+        CSVReader reader = null;
+        try {
+            fileReader = new FileReader(snapshotCorrelatedData);
+            reader = new CSVReader(fileReader);
+            String[] nextLine;
+            reader.readNext(); // Skip header
+            while ((nextLine = reader.readNext()) != null) {
+                result.add(CorrelatedFile.fromCsv(nextLine));
+            }
+        } catch (IOException e) {
+            throw new RuntimeException("Error reading file " + snapshotCorrelatedData, e);
+        } finally {
+            if (reader != null) {
+                try {
+                    reader.close();
+                } catch (IOException e) {
+                    // Could not close reader. So what?
+                }
+            } else if (fileReader != null) {
+                try {
+                    fileReader.close();
+                } catch (IOException e) {
+                    // Don't care
+                }
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Evaluates the files of a snapshot and appends the result as one line to the given correlation overview CSV
+     * file.
+     *
+     * @param snapshotDate    Start date of the snapshot
+     * @param correlatedFiles The files of the snapshot
+     * @param minFileSloc     Files with fewer lines of code are ignored
+     */
+    public static void evalSnapshot(Date snapshotDate, Collection<CorrelatedFile> correlatedFiles, int minFileSloc,
+                                    File corOverviewCsvOut) {
 
         // @formatter:off
         /*
@@ -644,76 +729,47 @@ public class Evaluation {
         int nonSmellySizeAmount = 0;
         */
         // @formatter:on
-        final Date snapshotDate = Preprocessing.getDateFromFileName(snapshotCorrelatedData);
-
-        FileReader fileReader = null;
-        CSVReader reader = null;
-        try {
-            fileReader = new FileReader(snapshotCorrelatedData);
-            reader = new CSVReader(fileReader);
-            String[] nextLine;
-            reader.readNext(); // Skip header
-            while ((nextLine = reader.readNext()) != null) {
-                final int sloc = (Integer) SnapshotCorrelationCsvColumn.SLOC.parseFromCsv(nextLine);
-
-                if (sloc < minFileSloc) {
-                    continue;
-                }
-
-                final int totalSmellCount = (Integer) SnapshotCorrelationCsvColumn.ANY_SMELL_COUNT
-                        .parseFromCsv(nextLine);
+        for (CorrelatedFile correlatedFile : correlatedFiles) {
+            final int sloc = correlatedFile.sloc;
 
-                final int fixCount = (Integer) SnapshotCorrelationCsvColumn.FIX_COUNT
-                        .parseFromCsv(nextLine);
+            if (sloc < minFileSloc) {
+                continue;
+            }
 
-                // final int changeCount = (Integer)
-                // SnapshotCorrelationCsvColumn.CHANGE_COUNT.parseFromCsv(nextLine);
+            final int totalSmellCount = correlatedFile.anySmellCount;
 
-                final SmellsInFile smellsInLine = SmellsInFile.fromCsv(nextLine);
+            final int fixCount = correlatedFile.fixCount;
 
-                anySmellTab.updateTabs(totalSmellCount > 0, fixCount, sloc);
+            final SmellsInFile smellsInLine = correlatedFile.smells;
 
-                // Abfrage für die einzelnen Smells
-                for (Smell smell : Smell.values()) {
-                    boolean fileHasTheSmell = smellsInLine.hasSmell(smell);
-                    CorOverviewTab singleSmellTab = singleSmellTabs.get(smell);
-                    singleSmellTab.updateTabs(fileHasTheSmell, fixCount, sloc);
-                }
+            anySmellTab.updateTabs(totalSmellCount > 0, fixCount, sloc);
 
-                boolean hasAbOrAf = smellsInLine.hasSmell(Smell.AB)
-                        || smellsInLine.hasSmell(Smell.AF);
-                abOrAfTab.updateTabs(hasAbOrAf, fixCount, sloc);
+            // Abfrage für die einzelnen Smells
+            for (Smell smell : Smell.values()) {
+                boolean fileHasTheSmell = smellsInLine.hasSmell(smell);
+                CorOverviewTab singleSmellTab = singleSmellTabs.get(smell);
+                singleSmellTab.updateTabs(fileHasTheSmell, fixCount, sloc);
+            }
 
-                for (CorOverviewMetric m : CorOverviewMetric.values()) {
-                    CorOverviewTab tab = smellTabs.get(m);
-                    boolean matches = m.matches(smellsInLine);
-                    tab.updateTabs(matches, fixCount, sloc);
-                }
+            boolean hasAbOrAf = smellsInLine.hasSmell(Smell.AB)
+                    || smellsInLine.hasSmell(Smell.AF);
+            abOrAfTab.updateTabs(hasAbOrAf, fixCount, sloc);
 
-                assertTabsEqual(anySmellTab, smellTabs, CorOverviewMetric.ANY);
-                assertTabsEqual(singleSmellTabs.get(Smell.AB), smellTabs, CorOverviewMetric.AB);
-                assertTabsEqual(singleSmellTabs.get(Smell.AF), smellTabs, CorOverviewMetric.AF);
-                assertTabsEqual(singleSmellTabs.get(Smell.LF), smellTabs, CorOverviewMetric.LF);
-                assertTabsEqual(abOrAfTab, smellTabs, CorOverviewMetric.ABorAF);
-            }
-        } catch (IOException e) {
-            throw new RuntimeException("Error reading file " + snapshotCorrelatedData, e);
-        } finally {
-            if (reader != null) {
-                try {
-                    reader.close();
-                } catch (IOException e) {
-                    // Could not close reader. So what?
-                }
-            } else if (fileReader != null) {
-                try {
-                    fileReader.close();
-                } catch (IOException e) {
-                    // Don't care
-                }
+            for (CorOverviewMetric m : CorOverviewMetric.values()) {
+                CorOverviewTab tab = smellTabs.get(m);
+                boolean matches = m.matches(smellsInLine);
+                tab.updateTabs(matches, fixCount, sloc);
             }
         }
 
+        // Checked once per snapshot rather than once per file, since comparing the tabs compares all SLOC values
+        // collected so far.
+        assertTabsEqual(anySmellTab, smellTabs, CorOverviewMetric.ANY);
+        assertTabsEqual(singleSmellTabs.get(Smell.AB), smellTabs, CorOverviewMetric.AB);
+        assertTabsEqual(singleSmellTabs.get(Smell.AF), smellTabs, CorOverviewMetric.AF);
+        assertTabsEqual(singleSmellTabs.get(Smell.LF), smellTabs, CorOverviewMetric.LF);
+        assertTabsEqual(abOrAfTab, smellTabs, CorOverviewMetric.ABorAF);
+
 		/*
          * Collection<CorOverviewTab> allTabs = new ArrayList<>();
 		 * allTabs.add(anySmellTab); for (Smell smell : Smell.values()) {
@@ -5,7 +5,8 @@ import de.ovgu.ifdefrevolver.bugs.correlate.input.CSVHelper;
 import de.ovgu.ifdefrevolver.bugs.correlate.main.Config;
 import de.ovgu.ifdefrevolver.bugs.correlate.main.Smell;
 import de.ovgu.ifdefrevolver.bugs.correlate.output.SmellCSV;
-import de.ovgu.ifdefrevolver.bugs.createsnapshots.input.FileFinder;
+import de.ovgu.ifdefrevolver.bugs.createsnapshots.input.FileNameMatcher;
+import de.ovgu.ifdefrevolver.bugs.createsnapshots.input.VirtualFileSystem;
 import org.apache.log4j.Logger;
 
 import java.io.File;
@@ -34,7 +35,7 @@ public class Preprocessing {
         // Anzahl der .csv Dateien checken
         final File pathFind = new File(conf.projectResultsDir(), smell.name() + "Res");
         log.info("Preprocessing smell data in " + pathFind.getAbsolutePath());
-        List<File> smellsPerSnapshotFiles = FileFinder.find(pathFind, "(.*\\.csv$)");
+        List<File> smellsPerSnapshotFiles = VirtualFileSystem.find(pathFind, FileNameMatcher.suffix(".csv"));
 
         // für LargeFeature Analyse müssen die FileLocations aus der XML in
         // CSV-Form umgewandelt werden, um die analyse dann einheitlich
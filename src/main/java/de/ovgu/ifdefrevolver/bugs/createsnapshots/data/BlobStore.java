@@ -0,0 +1,220 @@
+package de.ovgu.ifdefrevolver.bugs.createsnapshots.data;
+
+import org.apache.log4j.Logger;
+
+import java.io.*;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.*;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Content-addressed store of source files and of the files derived from them, such as their srcML representation.
+ * Source files are keyed by their GIT blob hash.  A blob with hash <code>abcdef...</code> is stored as
+ * <code>ab/cdef...</code> below the store's root directory.  Files derived from it are stored next to it, with a hash
+ * of the file's path in the repository and the kind of derivation appended to the name, e.g.,
+ * <code>ab/cdef..._0123..._cppstats.xml</code>.
+ * <p>
+ * Source files are hard-linked into snapshot directories, so each distinct file exists only once on disk.
+ * Consequently, files in snapshot directories must never be modified in place.  If the file system does not support
+ * hard links between the store and a snapshot directory, files are copied instead.
+ * </p>
+ * <p>
+ * Derived files may mention the directory they were produced in, e.g., cppstats writes the absolute path of each
+ * source file into its srcML representation.  Such files are made independent of this directory when they are added
+ * to the store, and are copied, with the directory of the target snapshot filled in, when they are checked out.
+ * </p>
+ * <p>
+ * Files are added atomically, so a file in the store is always complete.  It is safe to use the same store from several
+ * threads at once.  Since the contents of a file only depend on its key, the store remains valid across runs.
+ * </p>
+ */
+public class BlobStore {
+    private static final Logger LOG = Logger.getLogger(BlobStore.class);
+
+    /**
+     * Name of the store's root directory within a project's results directory
+     */
+    public static final String DIR_NAME = "blobs";
+
+    /**
+     * Writes the contents of a file to a stream
+     */
+    public interface ContentWriter {
+        void writeTo(OutputStream out) throws IOException;
+    }
+
+    /**
+     * Stands for the directory a derived file was produced in.  It cannot occur in XML documents, since XML does not
+     * allow NUL characters.
+     */
+    static final String BASE_DIR_PLACEHOLDER = "\u0000BASE_DIR\u0000";
+
+    private final File rootDir;
+    private final AtomicBoolean hardLinksSupported = new AtomicBoolean(true);
+
+    public BlobStore(File rootDir) {
+        this.rootDir = rootDir;
+    }
+
+    /**
+     * @param blobHash GIT hash of a blob
+     * @return Location of the blob within the store.  The file need not exist.
+     */
+    public File blobFile(String blobHash) {
+        return new File(new File(rootDir, blobHash.substring(0, 2)), blobHash.substring(2));
+    }
+
+    /**
+     * @param blobHash GIT hash of a blob
+     * @param path     Path of the blob in the repository.  Derived files mention it, so files derived from the same
+     *                 blob under different paths differ.
+     * @param suffix   Kind of derivation, e.g., <code>_cppstats.xml</code>
+     * @return Location of a file derived from the blob within the store.  The file need not exist.
+     */
+    public File derivedFile(String blobHash, String path, String suffix) {
+        return new File(new File(rootDir, blobHash.substring(0, 2)),
+                blobHash.substring(2) + "_" + pathHash(path) + suffix);
+    }
+
+    private static String pathHash(String path) {
+        final MessageDigest md;
+        try {
+            md = MessageDigest.getInstance("SHA-1");
+        } catch (NoSuchAlgorithmException e) {
+            throw new RuntimeException("SHA-1 is not supported by this JVM", e);
+        }
+        final byte[] digest = md.digest(path.getBytes(StandardCharsets.UTF_8));
+        StringBuilder sb = new StringBuilder(digest.length * 2);
+        for (byte b : digest) {
+            sb.append(Character.forDigit((b >> 4) & 0xF, 16)).append(Character.forDigit(b & 0xF, 16));
+        }
+        return sb.toString();
+    }
+
+    /**
+     * Adds a blob to the store unless it is already present.
+     *
+     * @param blobHash GIT hash of the blob
+     * @param writer   Writes the contents of the blob
+     * @return <code>true</code> if the blob was added, <code>false</code> if it was already present
+     */
+    public boolean putBlobIfAbsent(String blobHash, ContentWriter writer) throws IOException {
+        final File storedFile = blobFile(blobHash);
+        if (storedFile.isFile()) return false;
+        final File tmpFile = newTmpFile(storedFile);
+        try {
+            try (OutputStream out = new BufferedOutputStream(new FileOutputStream(tmpFile))) {
+                writer.writeTo(out);
+            }
+            moveIntoPlace(tmpFile, storedFile);
+        } finally {
+            Files.deleteIfExists(tmpFile.toPath());
+        }
+        return true;
+    }
+
+    /**
+     * Adds a file derived from a blob to the store unless it is already present.  The file is copied into the store,
+     * with each occurrence of the absolute path of <code>baseDir</code> replaced by a placeholder.
+     *
+     * @param blobHash     GIT hash of the blob
+     * @param path         Path of the blob in the repository
+     * @param suffix       Kind of derivation, e.g., <code>_cppstats.xml</code>
+     * @param producedFile The derived file
+     * @param baseDir      Directory in which the file was produced
+     * @return <code>true</code> if the file was added, <code>false</code> if it was already present
+     */
+    public boolean putDerivedIfAbsent(String blobHash, String path, String suffix, File producedFile, File baseDir)
+            throws IOException {
+        final File storedFile = derivedFile(blobHash, path, suffix);
+        if (storedFile.isFile()) return false;
+        final File tmpFile = newTmpFile(storedFile);
+        try {
+            copyReplacing(producedFile, tmpFile, baseDir.getAbsolutePath(), BASE_DIR_PLACEHOLDER);
+            moveIntoPlace(tmpFile, storedFile);
+        } finally {
+            Files.deleteIfExists(tmpFile.toPath());
+        }
+        return true;
+    }
+
+    /**
+     * Copies a derived file from the store to another location.  Unlike {@link #checkOut(File, File)}, the file is
+     * never linked: the placeholder for the directory it was produced in is replaced by the absolute path of
+     * <code>baseDir</code>.  Missing parent directories of the target are created.
+     *
+     * @param storedFile A file within the store, as returned by {@link #derivedFile(String, String, String)}
+     * @param targetFile Where the file should appear.  It must not exist.
+     * @param baseDir    Directory the file is checked out for
+     */
+    public void checkOutDerived(File storedFile, File targetFile, File baseDir) throws IOException {
+        ensureParentDirExists(targetFile);
+        copyReplacing(storedFile, targetFile, BASE_DIR_PLACEHOLDER, baseDir.getAbsolutePath());
+    }
+
+    /**
+     * Copies a file, replacing each occurrence of one string by another.  Both strings are encoded in UTF-8, the rest
+     * of the file is copied byte for byte, whatever its encoding.
+     */
+    static void copyReplacing(File from, File to, String target, String replacement) throws IOException {
+        final String contents = new String(Files.readAllBytes(from.toPath()), StandardCharsets.ISO_8859_1);
+        final String replaced = contents.replace(asLatin1(target), asLatin1(replacement));
+        Files.write(to.toPath(), replaced.getBytes(StandardCharsets.ISO_8859_1));
+    }
+
+    private static String asLatin1(String s) {
+        return new String(s.getBytes(StandardCharsets.UTF_8), StandardCharsets.ISO_8859_1);
+    }
+
+    /**
+     * Makes a source file from the store available at another location.  The file is hard-linked if possible, and
+     * copied otherwise.  Missing parent directories of the target are created.
+     *
+     * @param storedFile A file within the store, as returned by {@link #blobFile(String)}
+     * @param targetFile Where the file should appear.  It must not exist.
+     */
+    public void checkOut(File storedFile, File targetFile) throws IOException {
+        ensureParentDirExists(targetFile);
+        linkOrCopy(storedFile, targetFile);
+    }
+
+    private void linkOrCopy(File existingFile, File newFile) throws IOException {
+        if (hardLinksSupported.get()) {
+            try {
+                Files.createLink(newFile.toPath(), existingFile.toPath());
+                return;
+            } catch (FileAlreadyExistsException e) {
+                throw e;
+            } catch (IOException | UnsupportedOperationException e) {
+                if (hardLinksSupported.getAndSet(false)) {
+                    LOG.warn("Failed to create hard link " + newFile.getAbsolutePath() + " -> "
+                            + existingFile.getAbsolutePath() + ". Copying files from the store "
+                            + rootDir.getAbsolutePath() + " instead.", e);
+                }
+            }
+        }
+        Files.copy(existingFile.toPath(), newFile.toPath());
+    }
+
+    private static File newTmpFile(File storedFile) throws IOException {
+        ensureParentDirExists(storedFile);
+        return File.createTempFile(storedFile.getName(), ".tmp", storedFile.getParentFile());
+    }
+
+    /**
+     * Renames a temporary file to its final name.  If another thread has stored the same file in the meantime, its
+     * version is replaced.  This is harmless since both have the same contents.
+     */
+    private static void moveIntoPlace(File tmpFile, File storedFile) throws IOException {
+        Files.move(tmpFile.toPath(), storedFile.toPath(), StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    private static void ensureParentDirExists(File file) throws IOException {
+        final File parentDir = file.getParentFile();
+        if (!parentDir.isDirectory() && !parentDir.mkdirs() && !parentDir.isDirectory()) {
+            throw new IOException("Failed to create directory " + parentDir.getAbsolutePath());
+        }
+    }
+}
@@ -0,0 +1,276 @@
+package de.ovgu.ifdefrevolver.bugs.createsnapshots.data;
+
+import org.apache.log4j.Logger;
+
+import java.io.*;
+import java.nio.file.*;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.*;
+import java.util.zip.CRC32;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipFile;
+import java.util.zip.ZipOutputStream;
+
+/**
+ * Zip archive holding some of the subdirectories of a directory, e.g., the <code>source</code> and
+ * <code>_cppstats</code> directories of a snapshot.  The archive is stored as {@link #FILE_NAME} within the directory
+ * whose subdirectories it holds.  Entry names are the paths of the files relative to that directory, separated by
+ * <code>/</code>, e.g., <code>_cppstats/src/main.c.xml</code>.
+ * <p>
+ * Millions of small files are expensive to store and slow to read.  A zip file keeps all of them in a single file and
+ * has a central directory, so any single entry can be read without scanning the archive.  Reading entries is safe from
+ * several threads at once.
+ * </p>
+ */
+public class SnapshotArchive implements Closeable {
+    private static final Logger LOG = Logger.getLogger(SnapshotArchive.class);
+
+    /**
+     * Name of the archive file within the directory whose subdirectories it holds
+     */
+    public static final String FILE_NAME = "artifacts.zip";
+
+    private final File archiveFile;
+    private final File baseDir;
+    private final ZipFile zipFile;
+    /**
+     * Names of all file entries, sorted, so that the files below a directory form a contiguous range
+     */
+    private final NavigableSet<String> entryNames;
+
+    private SnapshotArchive(File archiveFile, ZipFile zipFile, NavigableSet<String> entryNames) {
+        this.archiveFile = archiveFile;
+        this.baseDir = archiveFile.getAbsoluteFile().getParentFile();
+        this.zipFile = zipFile;
+        this.entryNames = entryNames;
+    }
+
+    /**
+     * @param archiveFile An archive written by {@link #pack(File, Collection)}
+     * @return The opened archive.  It must be closed after use.
+     */
+    public static SnapshotArchive open(File archiveFile) {
+        final ZipFile zipFile;
+        try {
+            zipFile = new ZipFile(archiveFile);
+        } catch (IOException e) {
+            throw new RuntimeException("Error opening archive " + archiveFile.getAbsolutePath(), e);
+        }
+        NavigableSet<String> entryNames = new TreeSet<>();
+        for (Enumeration<? extends ZipEntry> entries = zipFile.entries(); entries.hasMoreElements(); ) {
+            ZipEntry entry = entries.nextElement();
+            if (!entry.isDirectory()) entryNames.add(entry.getName());
+        }
+        LOG.debug("Opened archive " + archiveFile + " with " + entryNames.size() + " file(s).");
+        return new SnapshotArchive(archiveFile, zipFile, entryNames);
+    }
+
+    /**
+     * @return The directory whose subdirectories this archive holds
+     */
+    public File getBaseDir() {
+        return baseDir;
+    }
+
+    public File getArchiveFile() {
+        return archiveFile;
+    }
+
+    /**
+     * @param entryName Path of a file relative to the base directory, separated by <code>/</code>
+     * @return <code>true</code> if the archive holds the file
+     */
+    public boolean containsFile(String entryName) {
+        return entryNames.contains(entryName);
+    }
+
+    /**
+     * @param dirName Path of a directory relative to the base directory, separated by <code>/</code>
+     * @return <code>true</code> if the archive holds any files below the directory
+     */
+    public boolean containsDirectory(String dirName) {
+        final String prefix = dirName + "/";
+        final String first = entryNames.ceiling(prefix);
+        return (first != null) && first.startsWith(prefix);
+    }
+
+    /**
+     * @param dirName Path of a directory relative to the base directory, separated by <code>/</code>
+     * @return Names of all the files below the directory, including files in subdirectories, sorted
+     */
+    public List<String> listFiles(String dirName) {
+        final String prefix = dirName + "/";
+        return new ArrayList<>(entryNames.subSet(prefix, true, prefix + Character.MAX_VALUE, false));
+    }
+
+    /**
+     * @param entryName Path of a file relative to the base directory, separated by <code>/</code>
+     * @return The uncompressed contents of the file.  The stream must be closed after use.
+     * @throws FileNotFoundException if the archive does not hold the file
+     */
+    public InputStream openFile(String entryName) throws IOException {
+        ZipEntry entry = zipFile.getEntry(entryName);
+        if ((entry == null) || entry.isDirectory()) {
+            throw new FileNotFoundException(entryName + " (not in archive " + archiveFile.getAbsolutePath() + ")");
+        }
+        return zipFile.getInputStream(entry);
+    }
+
+    /**
+     * @param entryName Path of a file relative to the base directory, separated by <code>/</code>
+     * @return The uncompressed size and the CRC-32 checksum of the file's contents, in this order
+     * @throws FileNotFoundException if the archive does not hold the file
+     */
+    public long[] getSizeAndChecksum(String entryName) throws FileNotFoundException {
+        ZipEntry entry = zipFile.getEntry(entryName);
+        if ((entry == null) || entry.isDirectory()) {
+            throw new FileNotFoundException(entryName + " (not in archive " + archiveFile.getAbsolutePath() + ")");
+        }
+        return new long[]{entry.getSize(), entry.getCrc()};
+    }
+
+    @Override
+    public void close() throws IOException {
+        zipFile.close();
+    }
+
+    /**
+     * Packs subdirectories of a directory into its {@link #FILE_NAME}.  The archive is written to a temporary file
+     * first and moved into place atomically.  The subdirectories are left in place.
+     * <p>
+     * An existing archive is never replaced.  It is complete, but the subdirectories may have been partially deleted
+     * after it was written, and packing them again would lose the deleted files.</p>
+     *
+     * @param baseDir  The directory holding the subdirectories
+     * @param dirNames Names of the subdirectories to pack.  Subdirectories that do not exist are skipped.
+     * @return The number of files packed
+     * @throws RuntimeException if the archive already exists
+     */
+    public static int pack(File baseDir, Collection<String> dirNames) {
+        final Path basePath = baseDir.toPath();
+        final File archiveFile = new File(baseDir, FILE_NAME);
+        if (archiveFile.exists()) {
+            throw new RuntimeException("Refusing to overwrite existing archive " + archiveFile.getAbsolutePath());
+        }
+        final List<Path> files = new ArrayList<>();
+        try {
+            for (String dirName : dirNames) {
+                Path dir = basePath.resolve(dirName);
+                if (!Files.isDirectory(dir)) continue;
+                Files.walkFileTree(dir, new SimpleFileVisitor<Path>() {
+                    @Override
+                    public FileVisitResult visitFile(Path file, BasicFileAttributes attrs) {
+                        if (attrs.isRegularFile()) files.add(file);
+                        return FileVisitResult.CONTINUE;
+                    }
+                });
+            }
+        } catch (IOException e) {
+            throw new RuntimeException("Error listing files to pack below " + baseDir.getAbsolutePath(), e);
+        }
+        Collections.sort(files);
+
+        Path tmpFile = null;
+        try {
+            tmpFile = Files.createTempFile(basePath, FILE_NAME, ".tmp");
+            try (ZipOutputStream out = new ZipOutputStream(new BufferedOutputStream(Files.newOutputStream(tmpFile)))) {
+                for (Path file : files) {
+                    out.putNextEntry(new ZipEntry(entryName(basePath, file)));
+                    Files.copy(file, out);
+                    out.closeEntry();
+                }
+            }
+            Files.move(tmpFile, archiveFile.toPath(), StandardCopyOption.ATOMIC_MOVE);
+            tmpFile = null;
+        } catch (IOException e) {
+            throw new RuntimeException("Error writing archive " + archiveFile.getAbsolutePath(), e);
+        } finally {
+            if (tmpFile != null) {
+                try {
+                    Files.deleteIfExists(tmpFile);
+                } catch (IOException e) {
+                    // We don't care.
+                }
+            }
+        }
+        return files.size();
+    }
+
+    /**
+     * Checks that an archive written by {@link #pack(File, Collection)} holds every file below the given
+     * subdirectories with the same contents.  The size and the CRC-32 checksum of each file on disk are compared to
+     * those stored in the archive.
+     *
+     * @throws RuntimeException if a file is missing from the archive or differs in size or checksum
+     */
+    public void verifyHoldsAllFiles(Collection<String> dirNames) {
+        final int numFiles = verifyHoldsFilesOnDisk(dirNames);
+        if (numFiles != entryNames.size()) {
+            throw new RuntimeException("Archive " + archiveFile.getAbsolutePath() + " holds " + entryNames.size()
+                    + " file(s), but there are " + numFiles + " file(s) on disk.");
+        }
+    }
+
+    /**
+     * Like {@link #verifyHoldsAllFiles(Collection)}, but the archive may hold files that are no longer on disk, e.g.,
+     * because deleting the packed subdirectories was interrupted.
+     *
+     * @return The number of files on disk
+     * @throws RuntimeException if a file on disk is missing from the archive or differs in size or checksum
+     */
+    public int verifyHoldsFilesOnDisk(Collection<String> dirNames) {
+        final Path basePath = baseDir.toPath();
+        final int[] numFiles = {0};
+        try {
+            for (String dirName : dirNames) {
+                Path dir = basePath.resolve(dirName);
+                if (!Files.isDirectory(dir)) continue;
+                Files.walkFileTree(dir, new SimpleFileVisitor<Path>() {
+                    @Override
+                    public FileVisitResult visitFile(Path file, BasicFileAttributes attrs) throws IOException {
+                        if (!attrs.isRegularFile()) return FileVisitResult.CONTINUE;
+                        String name = entryName(basePath, file);
+                        ZipEntry entry = zipFile.getEntry(name);
+                        if ((entry == null) || (entry.getSize() != attrs.size()) || (entry.getCrc() != crc32(file))) {
+                            throw new RuntimeException("Archive " + archiveFile.getAbsolutePath()
+                                    + " lacks or has a different version of " + file);
+                        }
+                        numFiles[0]++;
+                        return FileVisitResult.CONTINUE;
+                    }
+                });
+            }
+        } catch (IOException e) {
+            throw new RuntimeException("Error listing files below " + baseDir.getAbsolutePath(), e);
+        }
+        return numFiles[0];
+    }
+
+    /**
+     * @return The number of files in this archive
+     */
+    public int size() {
+        return entryNames.size();
+    }
+
+    private static long crc32(Path file) throws IOException {
+        final CRC32 crc = new CRC32();
+        final byte[] buffer = new byte[64 * 1024];
+        try (InputStream in = Files.newInputStream(file)) {
+            int n;
+            while ((n = in.read(buffer)) != -1) {
+                crc.update(buffer, 0, n);
+            }
+        }
+        return crc.getValue();
+    }
+
+    private static String entryName(Path basePath, Path file) {
+        StringBuilder sb = new StringBuilder();
+        for (Path component : basePath.relativize(file)) {
+            if (sb.length() > 0) sb.append('/');
+            sb.append(component.toString());
+        }
+        return sb.toString();
+    }
+}
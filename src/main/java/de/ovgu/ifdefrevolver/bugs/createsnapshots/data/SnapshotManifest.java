@@ -0,0 +1,141 @@
+package de.ovgu.ifdefrevolver.bugs.createsnapshots.data;
+
+import de.ovgu.ifdefrevolver.util.SimpleCsvFileReader;
+import de.ovgu.skunk.detection.output.CsvEnumUtils;
+import de.ovgu.skunk.detection.output.CsvFileWriterHelper;
+import de.ovgu.skunk.detection.output.CsvRowProvider;
+import org.apache.commons.csv.CSVPrinter;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Lists the source files of a snapshot and how each of them differs from the previous snapshot.  Later stages can use
+ * it to restrict their work to the files that are new or have been modified.
+ */
+public class SnapshotManifest {
+    public enum FileStatus {
+        /**
+         * The file does not exist in the previous snapshot, or there is no previous snapshot.
+         */
+        ADDED,
+        /**
+         * The file exists in the previous snapshot, but with different contents.
+         */
+        MODIFIED,
+        /**
+         * The file exists with the same contents in the previous snapshot.
+         */
+        UNCHANGED,
+        /**
+         * The file exists in the previous snapshot, but not in this one.
+         */
+        DELETED
+    }
+
+    public static class Entry {
+        public final String path;
+        public final String blobHash;
+        public final FileStatus status;
+
+        public Entry(String path, String blobHash, FileStatus status) {
+            this.path = path;
+            this.blobHash = blobHash;
+            this.status = status;
+        }
+    }
+
+    private final List<Entry> entries;
+
+    public SnapshotManifest(List<Entry> entries) {
+        this.entries = entries;
+    }
+
+    public List<Entry> getEntries() {
+        return Collections.unmodifiableList(entries);
+    }
+
+    /**
+     * @return Paths of the files that have been added or modified since the previous snapshot
+     */
+    public List<String> getAddedOrModifiedPaths() {
+        List<String> result = new ArrayList<>();
+        for (Entry e : entries) {
+            if (e.status == FileStatus.ADDED || e.status == FileStatus.MODIFIED) {
+                result.add(e.path);
+            }
+        }
+        return result;
+    }
+
+    /**
+     * @param snapshotDir Directory of the snapshot, i.e., the parent directory of its <code>source</code> directory
+     * @return The location of the snapshot's manifest
+     */
+    public static File manifestFile(File snapshotDir) {
+        return new File(snapshotDir, SnapshotManifestColumns.FILE_BASENAME);
+    }
+
+    public void write(File manifestFile) {
+        final CsvRowProvider<Entry, Void, SnapshotManifestColumns> rowProvider =
+                new CsvRowProvider<>(SnapshotManifestColumns.class, null);
+        CsvFileWriterHelper writer = new CsvFileWriterHelper() {
+            @Override
+            protected void actuallyDoStuff(CSVPrinter csv) throws IOException {
+                csv.printRecord(rowProvider.headerRow());
+                for (Entry e : entries) {
+                    csv.printRecord(rowProvider.dataRow(e));
+                }
+            }
+        };
+        writer.write(manifestFile);
+    }
+
+    /**
+     * @param snapshotDir Directory of the snapshot, i.e., the parent directory of its <code>source</code> directory
+     * @return The manifest of the snapshot
+     */
+    public static SnapshotManifest read(File snapshotDir) {
+        return new SnapshotManifestCsvReader().readManifestOf(snapshotDir);
+    }
+
+    private static class SnapshotManifestCsvReader extends SimpleCsvFileReader<SnapshotManifest> {
+        private List<Entry> entries;
+
+        @Override
+        protected boolean hasHeader() {
+            return true;
+        }
+
+        @Override
+        protected void processHeader(String[] headerLine) {
+            CsvEnumUtils.validateHeaderRow(SnapshotManifestColumns.class, headerLine);
+        }
+
+        @Override
+        protected void initializeResult() {
+            super.initializeResult();
+            entries = new ArrayList<>();
+        }
+
+        @Override
+        protected void processContentLine(String[] line) {
+            final String path = line[SnapshotManifestColumns.PATH.ordinal()];
+            final String blobHash = line[SnapshotManifestColumns.BLOB.ordinal()];
+            final FileStatus status = FileStatus.valueOf(line[SnapshotManifestColumns.STATUS.ordinal()]);
+            entries.add(new Entry(path, blobHash, status));
+        }
+
+        @Override
+        protected SnapshotManifest finalizeResult() {
+            return new SnapshotManifest(entries);
+        }
+
+        SnapshotManifest readManifestOf(File snapshotDir) {
+            return readFile(manifestFile(snapshotDir));
+        }
+    }
+}
@@ -0,0 +1,42 @@
+package de.ovgu.ifdefrevolver.bugs.createsnapshots.data;
+
+import de.ovgu.skunk.detection.output.CsvColumnValueProvider;
+
+/**
+ * Columns of the manifest of a snapshot's source files (see {@link SnapshotManifest})
+ */
+public enum SnapshotManifestColumns implements CsvColumnValueProvider<SnapshotManifest.Entry, Void> {
+    /**
+     * Path of the file, relative to the snapshot's source directory
+     */
+    PATH {
+        @Override
+        public String csvColumnValue(SnapshotManifest.Entry e, Void ctx) {
+            return e.path;
+        }
+    },
+    /**
+     * GIT hash of the file's contents.  For deleted files, this is the hash of the contents in the previous snapshot.
+     */
+    BLOB {
+        @Override
+        public String csvColumnValue(SnapshotManifest.Entry e, Void ctx) {
+            return e.blobHash;
+        }
+    },
+    /**
+     * How the file differs from the same file in the previous snapshot
+     */
+    STATUS {
+        @Override
+        public String csvColumnValue(SnapshotManifest.Entry e, Void ctx) {
+            return e.status.name();
+        }
+    };
+
+    /**
+     * Basename of the CSV file that holds the manifest.  It is located in the snapshot's directory, next to the
+     * <code>source</code> directory.
+     */
+    public static final String FILE_BASENAME = "manifest.csv";
+}
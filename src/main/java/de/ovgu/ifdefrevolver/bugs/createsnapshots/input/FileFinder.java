@@ -1,12 +1,50 @@
 package de.ovgu.ifdefrevolver.bugs.createsnapshots.input;
 
-import java.io.File;
+import org.apache.log4j.Logger;
+
+import java.io.*;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.*;
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.List;
-import java.util.Stack;
-import java.util.regex.Pattern;
+import java.util.concurrent.*;
 
+/**
+ * Finds the files below a directory whose names match a {@link FileNameMatcher}.
+ * <p>
+ * Directories are listed in parallel on a shared fork/join pool, which helps on large trees and on network file
+ * systems, where most of the time is spent waiting for directory listings.  The files found are returned sorted by
+ * path.</p>
+ * <p>
+ * Optionally, the result is cached in a file, together with the modification time of every directory that was
+ * listed.  Adding, removing or renaming a file or directory changes the modification time of its parent directory.
+ * Thus, as long as none of these modification times has changed, the cached result is still valid and is returned
+ * without listing any directories.  The cache file must not reside below the directory being searched.</p>
+ * <p>
+ * Modification times are coarse on some file systems.  A directory that changes in the same tick in which it was
+ * listed keeps its modification time, and a cached result would miss the change.  Therefore, as long as any directory
+ * was modified less than {@link #TIMESTAMP_GRANULARITY_MILLIS} before the walk started, the result is not cached.</p>
+ */
 public class FileFinder {
+    private static final Logger LOG = Logger.getLogger(FileFinder.class);
+
+    /**
+     * Listing directories is mostly waiting for I/O, so use more threads than there are processors.
+     */
+    private static final int PARALLELISM = Math.min(16, Math.max(4, 2 * Runtime.getRuntime().availableProcessors()));
+    private static final ForkJoinPool POOL = new ForkJoinPool(PARALLELISM);
+
+    private static final ConcurrentMap<String, FileNameMatcher> REGEX_MATCHERS = new ConcurrentHashMap<>();
+
+    private static final String CACHE_HEADER = "# FileFinder cache v1";
+    private static final char FIELD_SEPARATOR = '\t';
+
+    /**
+     * Coarsest resolution of modification times we expect from a file system (FAT has two seconds)
+     */
+    private static final long TIMESTAMP_GRANULARITY_MILLIS = 2000;
+
     /**
      * Return all the files (no directories) below a starting directory whose name matches a pattern.
      *
@@ -18,22 +56,250 @@ public class FileFinder {
      * @return A list of file objects representing the matching files.
      */
     public static List<File> find(File startDir, String filenamePattern) {
-        List<File> files = new ArrayList<>(1024);
-        Stack<File> dirs = new Stack<>();
-        Pattern p = Pattern.compile(filenamePattern, Pattern.CASE_INSENSITIVE);
+        FileNameMatcher matcher = REGEX_MATCHERS.computeIfAbsent(filenamePattern, FileNameMatcher::regex);
+        return find(startDir, matcher);
+    }
+
+    /**
+     * Return all the files (no directories) below a starting directory whose name is accepted by a matcher.
+     *
+     * @param startDir The directory within which to search
+     * @param matcher  Decides which files to report
+     * @return The matching files, sorted by path
+     */
+    public static List<File> find(File startDir, FileNameMatcher matcher) {
+        checkIsDirectory(startDir);
+        return toFiles(walk(startDir.toPath(), matcher).files);
+    }
+
+    /**
+     * Like {@link #find(File, FileNameMatcher)}, but reuses the result of a previous call if none of the directories
+     * below the starting directory have changed since.
+     *
+     * @param startDir  The directory within which to search
+     * @param matcher   Decides which files to report
+     * @param cacheFile File holding the result of the previous call.  It is written if missing or outdated.  Must not
+     *                  reside below <code>startDir</code>.
+     * @return The matching files, sorted by path
+     */
+    public static List<File> find(File startDir, FileNameMatcher matcher, File cacheFile) {
+        checkIsDirectory(startDir);
+        final Path root = startDir.toPath().toAbsolutePath().normalize();
+        final Path cachePath = cacheFile.toPath().toAbsolutePath().normalize();
+        if (cachePath.startsWith(root)) {
+            throw new IllegalArgumentException("Cache file " + cacheFile + " must not reside below the directory "
+                    + startDir + " that is being searched.");
+        }
+
+        List<Path> cachedFiles = readCache(cachePath, root, matcher);
+        if (cachedFiles != null) {
+            LOG.debug("Reusing list of " + cachedFiles.size() + " file(s) below " + root + " from " + cachePath);
+            return toFiles(cachedFiles);
+        }
 
+        WalkResult result = walk(root, matcher);
+        writeCache(cachePath, root, matcher, result);
+        return toFiles(result.files);
+    }
+
+    private static void checkIsDirectory(File startDir) {
         if (!startDir.isDirectory())
             throw new IllegalArgumentException("Not a directory: " + startDir.getAbsolutePath());
+    }
+
+    private static List<File> toFiles(List<Path> paths) {
+        List<File> files = new ArrayList<>(paths.size());
+        for (Path p : paths) {
+            files.add(p.toFile());
+        }
+        return files;
+    }
+
+    /**
+     * Directory that was listed, and its modification time at the time
+     */
+    private static final class DirStamp {
+        final Path dir;
+        final long modifiedMicros;
 
-        dirs.push(startDir);
+        DirStamp(Path dir, long modifiedMicros) {
+            this.dir = dir;
+            this.modifiedMicros = modifiedMicros;
+        }
+    }
 
-        while (!dirs.isEmpty())
-            for (File file : dirs.pop().listFiles())
-                if (file.isDirectory())
-                    dirs.push(file);
-                else if (p.matcher(file.getName()).matches())
-                    files.add(file);
+    private static final class WalkResult {
+        final List<Path> files = new ArrayList<>();
+        final List<DirStamp> dirs = new ArrayList<>();
+        /**
+         * When the walk started, in milliseconds since the epoch.  Only set on the result of the whole walk.
+         */
+        long startMillis;
 
-        return files;
+        void addAll(WalkResult other) {
+            files.addAll(other.files);
+            dirs.addAll(other.dirs);
+        }
+    }
+
+    private static WalkResult walk(Path startDir, FileNameMatcher matcher) {
+        final long startTime = System.currentTimeMillis();
+        final WalkResult result;
+        try {
+            result = POOL.invoke(new DirectoryWalk(startDir, matcher));
+        } catch (UncheckedIOException e) {
+            throw new RuntimeException("Error listing files below " + startDir, e.getCause());
+        }
+        Collections.sort(result.files);
+        result.startMillis = startTime;
+        if (LOG.isDebugEnabled()) {
+            LOG.debug("Found " + result.files.size() + " file(s) matching " + matcher + " in " + result.dirs.size()
+                    + " director(y/ies) below " + startDir + " in " + (System.currentTimeMillis() - startTime)
+                    + " ms.");
+        }
+        return result;
+    }
+
+    /**
+     * Lists one directory and forks a task for each of its subdirectories
+     */
+    private static final class DirectoryWalk extends RecursiveTask<WalkResult> {
+        private final Path dir;
+        private final FileNameMatcher matcher;
+
+        DirectoryWalk(Path dir, FileNameMatcher matcher) {
+            this.dir = dir;
+            this.matcher = matcher;
+        }
+
+        @Override
+        protected WalkResult compute() {
+            final WalkResult result = new WalkResult();
+            final List<DirectoryWalk> subdirWalks = new ArrayList<>();
+            try {
+                // Taken before listing, so that changes made during the listing invalidate a cached result.
+                result.dirs.add(new DirStamp(dir, modifiedMicros(dir)));
+                try (DirectoryStream<Path> entries = Files.newDirectoryStream(dir)) {
+                    for (Path entry : entries) {
+                        if (Files.isDirectory(entry)) {
+                            subdirWalks.add(new DirectoryWalk(entry, matcher));
+                        } else if (matcher.matches(entry.getFileName().toString())) {
+                            result.files.add(entry);
+                        }
+                    }
+                }
+            } catch (IOException e) {
+                throw new UncheckedIOException("Error listing directory " + dir, e);
+            }
+            for (DirectoryWalk w : invokeAll(subdirWalks)) {
+                result.addAll(w.join());
+            }
+            return result;
+        }
+    }
+
+    private static long modifiedMicros(Path dir) throws IOException {
+        return Files.getLastModifiedTime(dir).to(TimeUnit.MICROSECONDS);
+    }
+
+    /**
+     * @return The cached files, or <code>null</code> if there is no cache file or it is outdated
+     */
+    private static List<Path> readCache(Path cacheFile, Path root, FileNameMatcher matcher) {
+        if (!Files.isRegularFile(cacheFile)) return null;
+        final List<DirStamp> dirs = new ArrayList<>();
+        final List<Path> files = new ArrayList<>();
+        try (BufferedReader r = Files.newBufferedReader(cacheFile, StandardCharsets.UTF_8)) {
+            if (!CACHE_HEADER.equals(r.readLine())) return null;
+            if (!("matcher" + FIELD_SEPARATOR + matcher.description()).equals(r.readLine())) return null;
+            if (!("root" + FIELD_SEPARATOR + root).equals(r.readLine())) return null;
+            String line;
+            while ((line = r.readLine()) != null) {
+                if (line.startsWith("D" + FIELD_SEPARATOR)) {
+                    final int sep = line.indexOf(FIELD_SEPARATOR, 2);
+                    final long modifiedMicros = Long.parseLong(line.substring(2, sep));
+                    dirs.add(new DirStamp(root.resolve(line.substring(sep + 1)), modifiedMicros));
+                } else if (line.startsWith("F" + FIELD_SEPARATOR)) {
+                    files.add(root.resolve(line.substring(2)));
+                } else {
+                    return null;
+                }
+            }
+        } catch (IOException | RuntimeException e) {
+            LOG.debug("Ignoring unreadable file cache " + cacheFile, e);
+            return null;
+        }
+        if (dirs.isEmpty()) return null;
+
+        final boolean upToDate;
+        try {
+            upToDate = POOL.submit(() -> dirs.parallelStream().allMatch(FileFinder::isUnchanged)).get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new RuntimeException("Got interrupted while checking file cache " + cacheFile, e);
+        } catch (ExecutionException e) {
+            throw new RuntimeException("Error checking file cache " + cacheFile, e.getCause());
+        }
+        return upToDate ? files : null;
+    }
+
+    private static boolean isUnchanged(DirStamp stamp) {
+        try {
+            return modifiedMicros(stamp.dir) == stamp.modifiedMicros;
+        } catch (IOException e) {
+            // Most likely, the directory has been deleted.
+            return false;
+        }
+    }
+
+    /**
+     * Writes the cache atomically.  Failure to do so is not an error since the cache is only an optimization.
+     */
+    private static void writeCache(Path cacheFile, Path root, FileNameMatcher matcher, WalkResult result) {
+        StringBuilder sb = new StringBuilder();
+        sb.append(CACHE_HEADER).append('\n');
+        sb.append("matcher").append(FIELD_SEPARATOR).append(matcher.description()).append('\n');
+        sb.append("root").append(FIELD_SEPARATOR).append(root).append('\n');
+        final long racyMicros = TimeUnit.MILLISECONDS.toMicros(result.startMillis - TIMESTAMP_GRANULARITY_MILLIS);
+        for (DirStamp d : result.dirs) {
+            if (d.modifiedMicros >= racyMicros) {
+                LOG.debug("Not caching list of files below " + root + ": directory " + d.dir
+                        + " was modified too recently.");
+                return;
+            }
+            final String relPath = root.relativize(d.dir).toString();
+            if (!isCacheable(relPath)) return;
+            sb.append('D').append(FIELD_SEPARATOR).append(d.modifiedMicros).append(FIELD_SEPARATOR).append(relPath)
+                    .append('\n');
+        }
+        for (Path f : result.files) {
+            final String relPath = root.relativize(f).toString();
+            if (!isCacheable(relPath)) return;
+            sb.append('F').append(FIELD_SEPARATOR).append(relPath).append('\n');
+        }
+
+        Path tmpFile = null;
+        try {
+            Path dir = cacheFile.getParent();
+            Files.createDirectories(dir);
+            tmpFile = Files.createTempFile(dir, cacheFile.getFileName().toString(), ".tmp");
+            Files.write(tmpFile, sb.toString().getBytes(StandardCharsets.UTF_8));
+            Files.move(tmpFile, cacheFile, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+            tmpFile = null;
+        } catch (IOException e) {
+            LOG.debug("Failed to write file cache " + cacheFile, e);
+        } finally {
+            if (tmpFile != null) {
+                try {
+                    Files.deleteIfExists(tmpFile);
+                } catch (IOException e) {
+                    // We don't care.
+                }
+            }
+        }
+    }
+
+    private static boolean isCacheable(String relPath) {
+        return (relPath.indexOf(FIELD_SEPARATOR) < 0) && (relPath.indexOf('\n') < 0) && (relPath.indexOf('\r') < 0);
     }
 }
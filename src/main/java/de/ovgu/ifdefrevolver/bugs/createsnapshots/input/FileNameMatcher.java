@@ -0,0 +1,96 @@
+package de.ovgu.ifdefrevolver.bugs.createsnapshots.input;
+
+import java.nio.file.FileSystems;
+import java.nio.file.Path;
+import java.nio.file.PathMatcher;
+import java.nio.file.Paths;
+import java.util.Locale;
+import java.util.regex.Pattern;
+
+/**
+ * Decides whether {@link FileFinder} reports a file, based on the file's name (without directories).  Matchers are
+ * compiled once and are safe to use from several threads at once.
+ */
+public abstract class FileNameMatcher {
+    /**
+     * @param fileName Name of a file, without directories
+     * @return <code>true</code> if the file should be reported
+     */
+    public abstract boolean matches(String fileName);
+
+    /**
+     * @return A description of this matcher that identifies it in a {@link FileFinder} cache
+     */
+    public abstract String description();
+
+    @Override
+    public String toString() {
+        return description();
+    }
+
+    /**
+     * @param suffixes File name suffixes, e.g., <code>.c.xml</code>.  Case is ignored.
+     * @return A matcher for files whose name ends with any of the suffixes
+     */
+    public static FileNameMatcher suffix(String... suffixes) {
+        final String[] lowerCaseSuffixes = new String[suffixes.length];
+        for (int i = 0; i < suffixes.length; i++) {
+            lowerCaseSuffixes[i] = suffixes[i].toLowerCase(Locale.ROOT);
+        }
+        return new FileNameMatcher() {
+            @Override
+            public boolean matches(String fileName) {
+                final String lowerCaseName = fileName.toLowerCase(Locale.ROOT);
+                for (String suffix : lowerCaseSuffixes) {
+                    if (lowerCaseName.endsWith(suffix)) return true;
+                }
+                return false;
+            }
+
+            @Override
+            public String description() {
+                return "suffix:" + String.join(",", lowerCaseSuffixes);
+            }
+        };
+    }
+
+    /**
+     * @param glob A glob pattern as understood by {@link java.nio.file.FileSystem#getPathMatcher(String)}, e.g.,
+     *             <code>*.{c,h}</code>.  Case matters.
+     * @return A matcher for files whose name matches the pattern
+     */
+    public static FileNameMatcher glob(final String glob) {
+        final PathMatcher pathMatcher = FileSystems.getDefault().getPathMatcher("glob:" + glob);
+        return new FileNameMatcher() {
+            @Override
+            public boolean matches(String fileName) {
+                Path name = Paths.get(fileName);
+                return pathMatcher.matches(name);
+            }
+
+            @Override
+            public String description() {
+                return "glob:" + glob;
+            }
+        };
+    }
+
+    /**
+     * @param regex A regular expression that the entire file name must match.  Case is ignored.
+     * @return A matcher for files whose name matches the regular expression
+     */
+    public static FileNameMatcher regex(final String regex) {
+        final Pattern pattern = Pattern.compile(regex, Pattern.CASE_INSENSITIVE);
+        return new FileNameMatcher() {
+            @Override
+            public boolean matches(String fileName) {
+                return pattern.matcher(fileName).matches();
+            }
+
+            @Override
+            public String description() {
+                return "regex:" + regex;
+            }
+        };
+    }
+}
@@ -0,0 +1,227 @@
+package de.ovgu.ifdefrevolver.bugs.createsnapshots.input;
+
+import de.ovgu.ifdefrevolver.bugs.createsnapshots.data.SnapshotArchive;
+import de.ovgu.ifdefrevolver.util.LineCounter;
+import org.apache.log4j.Logger;
+
+import java.io.*;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * Reads files that are either plain files or have been packed into a {@link SnapshotArchive}.  A file packed into an
+ * archive keeps its original path, so callers need not know whether, e.g., a snapshot has been packed or not.
+ * <p>
+ * Plain files take precedence.  If a file does not exist on disk, the archives in the directories above it are
+ * searched, nearest directory first.  Which directories hold an archive is remembered for the lifetime of the JVM, and
+ * opened archives stay open, so archives created while the program is running may go unnoticed.</p>
+ */
+public class VirtualFileSystem {
+    private static final Logger LOG = Logger.getLogger(VirtualFileSystem.class);
+
+    /**
+     * Directories that have been checked for an archive, with the archive, if there is one
+     */
+    private static final ConcurrentMap<Path, Optional<SnapshotArchive>> ARCHIVES_BY_DIR = new ConcurrentHashMap<>();
+
+    /**
+     * A file within an archive
+     */
+    private static final class ArchivedFile {
+        final SnapshotArchive archive;
+        final String entryName;
+
+        ArchivedFile(SnapshotArchive archive, String entryName) {
+            this.archive = archive;
+            this.entryName = entryName;
+        }
+    }
+
+    /**
+     * Size and version of a file.  Two versions of a file are assumed to have the same contents if they are equal.
+     */
+    public static final class FileVersion {
+        public final long size;
+        /**
+         * The modification time of a file on disk, or the checksum of a file in an archive
+         */
+        public final long stamp;
+
+        public FileVersion(long size, long stamp) {
+            this.size = size;
+            this.stamp = stamp;
+        }
+
+        @Override
+        public boolean equals(Object obj) {
+            if (this == obj)
+                return true;
+            if (!(obj instanceof FileVersion))
+                return false;
+            FileVersion other = (FileVersion) obj;
+            return (size == other.size) && (stamp == other.stamp);
+        }
+
+        @Override
+        public int hashCode() {
+            return 31 * Long.hashCode(size) + Long.hashCode(stamp);
+        }
+    }
+
+    /**
+     * @param file A file, which may be packed into an archive
+     * @return The contents of the file.  The stream must be closed after use.
+     * @throws FileNotFoundException if the file neither exists on disk nor in an archive
+     */
+    public static InputStream open(File file) throws IOException {
+        if (file.isFile()) {
+            return new FileInputStream(file);
+        }
+        Optional<ArchivedFile> archived = findInArchive(file, false);
+        if (archived.isPresent()) {
+            return archived.get().archive.openFile(archived.get().entryName);
+        }
+        throw new FileNotFoundException(file.getAbsolutePath() + " (neither on disk nor in an archive)");
+    }
+
+    /**
+     * Like {@link #open(File)}, but decodes the contents using the platform's default charset, like a {@link
+     * FileReader} would.
+     */
+    public static Reader openReader(File file) throws IOException {
+        return new InputStreamReader(open(file));
+    }
+
+    /**
+     * Determines the version of a file without reading its contents.
+     *
+     * @param file A file, which may be packed into an archive
+     * @return The size and the modification time of a file on disk, or the size and the checksum of a file in an
+     * archive
+     * @throws FileNotFoundException if the file neither exists on disk nor in an archive
+     */
+    public static FileVersion version(File file) throws IOException {
+        if (file.isFile()) {
+            return new FileVersion(file.length(), file.lastModified());
+        }
+        Optional<ArchivedFile> archived = findInArchive(file, false);
+        if (archived.isPresent()) {
+            long[] sizeAndChecksum = archived.get().archive.getSizeAndChecksum(archived.get().entryName);
+            return new FileVersion(sizeAndChecksum[0], sizeAndChecksum[1]);
+        }
+        throw new FileNotFoundException(file.getAbsolutePath() + " (neither on disk nor in an archive)");
+    }
+
+    /**
+     * Counts the lines of a file as described in {@link LineCounter}.  Files on disk are memory-mapped if they are
+     * large.
+     *
+     * @param file A file, which may be packed into an archive
+     * @return Number of lines in the file
+     * @throws FileNotFoundException if the file neither exists on disk nor in an archive
+     */
+    public static int countLines(File file) throws IOException {
+        if (file.isFile()) {
+            return LineCounter.countLines(file);
+        }
+        try (InputStream in = open(file)) {
+            return LineCounter.countLines(in);
+        }
+    }
+
+    /**
+     * @param file A file, which may be packed into an archive
+     * @return <code>true</code> if the file exists, either on disk or in an archive
+     */
+    public static boolean isFile(File file) {
+        return file.isFile() || findInArchive(file, false).isPresent();
+    }
+
+    /**
+     * Return all the files below a directory whose name is accepted by a matcher.
+     *
+     * @param startDir The directory within which to search.  It may have been packed into an archive.
+     * @param matcher  Decides which files to report
+     * @return The matching files, sorted by path.  Files found in an archive have the paths they had on disk.
+     */
+    public static List<File> find(File startDir, FileNameMatcher matcher) {
+        if (startDir.isDirectory()) {
+            return FileFinder.find(startDir, matcher);
+        }
+        return findInArchiveOrDie(startDir, matcher);
+    }
+
+    /**
+     * Like {@link #find(File, FileNameMatcher)}, but if the directory exists on disk, the result of the search is
+     * cached as described in {@link FileFinder#find(File, FileNameMatcher, File)}.  Listing the files of an archive is
+     * cheap, so no cache is used for directories that have been packed.
+     */
+    public static List<File> find(File startDir, FileNameMatcher matcher, File cacheFile) {
+        if (startDir.isDirectory()) {
+            return FileFinder.find(startDir, matcher, cacheFile);
+        }
+        return findInArchiveOrDie(startDir, matcher);
+    }
+
+    private static List<File> findInArchiveOrDie(File startDir, FileNameMatcher matcher) {
+        Optional<ArchivedFile> archivedDir = findInArchive(startDir, true);
+        if (!archivedDir.isPresent()) {
+            throw new IllegalArgumentException("Not a directory: " + startDir.getAbsolutePath());
+        }
+        final SnapshotArchive archive = archivedDir.get().archive;
+        final File baseDir = startDir.getAbsoluteFile().toPath().normalize().toFile();
+        final String prefix = archivedDir.get().entryName + "/";
+        final List<File> result = new ArrayList<>();
+        for (String entryName : archive.listFiles(archivedDir.get().entryName)) {
+            final int lastSlash = entryName.lastIndexOf('/');
+            if (matcher.matches(entryName.substring(lastSlash + 1))) {
+                result.add(new File(baseDir, entryName.substring(prefix.length())));
+            }
+        }
+        LOG.debug("Found " + result.size() + " file(s) matching " + matcher + " below " + startDir + " in archive "
+                + archive.getArchiveFile());
+        return result;
+    }
+
+    /**
+     * @param file        A file or directory that does not exist on disk
+     * @param isDirectory Whether to look for a directory, i.e., for files below the given path, or a single file
+     * @return The nearest archive holding the file or directory, and the name of the file or directory within it
+     */
+    private static Optional<ArchivedFile> findInArchive(File file, boolean isDirectory) {
+        final Path path = file.getAbsoluteFile().toPath().normalize();
+        for (Path dir = path.getParent(); dir != null; dir = dir.getParent()) {
+            Optional<SnapshotArchive> archive = ARCHIVES_BY_DIR.computeIfAbsent(dir, VirtualFileSystem::openArchive);
+            if (!archive.isPresent()) continue;
+            final String entryName = entryName(dir.relativize(path));
+            final boolean found = isDirectory
+                    ? archive.get().containsDirectory(entryName)
+                    : archive.get().containsFile(entryName);
+            if (found) {
+                return Optional.of(new ArchivedFile(archive.get(), entryName));
+            }
+        }
+        return Optional.empty();
+    }
+
+    private static Optional<SnapshotArchive> openArchive(Path dir) {
+        File archiveFile = new File(dir.toFile(), SnapshotArchive.FILE_NAME);
+        if (!archiveFile.isFile()) {
+            return Optional.empty();
+        }
+        return Optional.of(SnapshotArchive.open(archiveFile));
+    }
+
+    private static String entryName(Path relativePath) {
+        StringBuilder sb = new StringBuilder();
+        for (Path component : relativePath) {
+            if (sb.length() > 0) sb.append('/');
+            sb.append(component.toString());
+        }
+        return sb.toString();
+    }
+}
@@ -1,16 +1,18 @@
 package de.ovgu.ifdefrevolver.bugs.createsnapshots.main;
 
 import de.ovgu.ifdefrevolver.bugs.correlate.data.Snapshot;
-import de.ovgu.ifdefrevolver.bugs.createsnapshots.data.ISnapshot;
-import de.ovgu.ifdefrevolver.bugs.createsnapshots.input.FileFinder;
+import de.ovgu.ifdefrevolver.bugs.createsnapshots.data.BlobStore;
+import de.ovgu.ifdefrevolver.bugs.createsnapshots.data.SnapshotManifest;
 import de.ovgu.ifdefrevolver.bugs.createsnapshots.input.RevisionsCsvReader;
+import de.ovgu.ifdefrevolver.bugs.createsnapshots.process.ExternalCommand;
+import de.ovgu.ifdefrevolver.bugs.createsnapshots.process.ProcessScheduler;
 import de.ovgu.ifdefrevolver.bugs.minecommits.CommitsDistanceDb;
 import de.ovgu.ifdefrevolver.util.FileUtils;
 import org.apache.log4j.Logger;
+import org.eclipse.jgit.api.Git;
+import org.eclipse.jgit.lib.Repository;
 
 import java.io.*;
-import java.nio.file.Files;
-import java.nio.file.StandardCopyOption;
 import java.util.*;
 import java.util.regex.Pattern;
 
@@ -19,11 +21,31 @@ import java.util.regex.Pattern;
  * directory<p/> <ol> <li>Reads all the commits of a repo,</li> <li>computes commit windows and writes them to disc (to
  * the following files <code>projectInfo.csv</code>, <code>snapshots/YYYY-MM-DD.csv</code>, where YYYY-MM-DD is the date
  * of the first commit in the snapshot; both files reside in the project's results directory)</li>
- * <li>checks out the sources from the GIT repo</li> <li>runs cppstats on each of the checked out commit
+ * <li>writes the sources of each commit window straight from the GIT object database (see {@link
+ * GitSnapshotMaterializer})</li> <li>runs cppstats on each of the checked out commit
  * windows.</li> </ol>
+ * <p>
+ * Source files and the files cppstats derives from them are kept in the project's {@link BlobStore}.  Before cppstats
+ * runs on a snapshot, the outputs of all files it has already seen, under the same path, in earlier snapshots are
+ * copied into the snapshot directory, so cppstats only has to prepare new files.  Afterwards, the outputs for the new
+ * files are added to the store.  With <code>--verifyreuse</code>, each snapshot for which outputs were reused is
+ * processed again from scratch, and the outputs are compared.</p>
+ * <p>
+ * Since each snapshot has its own directory and does not need the outputs of the previous snapshot, cppstats runs on
+ * several snapshots at once.  Every snapshot that still needs processing is written again, together with its {@link
+ * SnapshotManifest}, before cppstats runs on it.  Hence, snapshots are never prepared from their predecessors.</p>
+ * <p>
+ * Normally, the source files of all snapshots are written before cppstats runs on the first one.  When the snapshots
+ * are processed by a {@link SnapshotPipeline}, the files of a snapshot are instead written when {@link
+ * #ensureSnapshot(Snapshot)} is called for it (see {@link #setWriteSourcesOnDemand(boolean)}).</p>
  */
 class CheckoutStrategy implements ISnapshotProcessingModeStrategy {
     private static final String CPPSTATS_INPUT_TXT = "cppstats_input.txt";
+    /**
+     * Directories, relative to the snapshot directory, in which cppstats places the files it derives from each source
+     * file.  The derived file for <code>source/a/b.c</code> is <code>&lt;dir&gt;/a/b.c.xml</code>.
+     */
+    private static final String[] CPPSTATS_PREPARED_FILES_DIRS = {"_cppstats", "_cppstats_featurelocations"};
     private static Logger LOG = Logger.getLogger(CheckoutStrategy.class);
 
     private static final FilenameFilter SNAPSHOT_DIR_NAME_FILTER = new FilenameFilter() {
@@ -37,12 +59,22 @@ class CheckoutStrategy implements ISnapshotProcessingModeStrategy {
 
     private final CommitsDistanceDb commitsDb;
     private final CreateSnapshotsConfig conf;
-    private ISnapshot previousSnapshot;
+    private final ProcessScheduler processScheduler;
+    private final BlobStore blobStore;
     private RevisionsCsvReader revisionsCsvReader;
+    private boolean writeSourcesOnDemand = false;
+    /**
+     * Only used when writing sources on demand
+     */
+    private Repository onDemandRepo;
+    private GitSnapshotMaterializer onDemandMaterializer;
+    private final Map<Snapshot, Snapshot> predecessors = new IdentityHashMap<>();
 
-    public CheckoutStrategy(CommitsDistanceDb commitsDb, CreateSnapshotsConfig conf) {
+    public CheckoutStrategy(CommitsDistanceDb commitsDb, CreateSnapshotsConfig conf, ProcessScheduler processScheduler) {
         this.commitsDb = commitsDb;
         this.conf = conf;
+        this.processScheduler = processScheduler;
+        this.blobStore = new BlobStore(conf.blobStoreDir());
     }
 
     @Override
@@ -55,8 +87,85 @@ class CheckoutStrategy implements ISnapshotProcessingModeStrategy {
             this.removeOutputFiles();
             this.revisionsCsvReader.computeAndPersistSnapshots(conf);
         }
+        if (writeSourcesOnDemand) {
+            prepareOnDemandMaterialization();
+            // Each snapshot is written, together with its manifest, right before cppstats runs on it.
+            return;
+        }
+        materializeSnapshots();
+    }
+
+    /**
+     * Writes the source files of all snapshots that still need processing, in parallel.  Skunk must process the
+     * snapshots one after the other, but their files do not depend on each other.  Files that are already in the blob
+     * store are linked instead of written (see {@link GitSnapshotMaterializer}).
+     */
+    private void materializeSnapshots() {
+        List<Snapshot> snapshots = this.revisionsCsvReader.getSnapshots();
+        boolean anySnapshotToMaterialize = false;
+        for (Snapshot snapshot : snapshots) {
+            if (!snapshotAlreadyProcessed(snapshot)) {
+                anySnapshotToMaterialize = true;
+                break;
+            }
+        }
+        if (!anySnapshotToMaterialize) return;
+
+        final Repository repo = openRepository();
+        try {
+            GitSnapshotMaterializer materializer = new GitSnapshotMaterializer(repo,
+                    GitSnapshotMaterializer.C_FILE_NAME_PATTERN, blobStore);
+            materializer.materializeAll(snapshots, this::snapshotAlreadyProcessed, this::snapshotSourceDir,
+                    conf.getNumberOfWorkerThreads());
+        } finally {
+            repo.close();
+        }
+    }
+
+    private void prepareOnDemandMaterialization() {
+        Snapshot previous = null;
+        for (Snapshot snapshot : this.revisionsCsvReader.getSnapshots()) {
+            if (previous != null) predecessors.put(snapshot, previous);
+            previous = snapshot;
+        }
+        this.onDemandRepo = openRepository();
+        this.onDemandMaterializer = new GitSnapshotMaterializer(onDemandRepo,
+                GitSnapshotMaterializer.C_FILE_NAME_PATTERN, blobStore);
+    }
+
+    private Repository openRepository() {
+        final File projectRepoDir = new File(conf.getRepoDir());
+        try {
+            return Git.open(projectRepoDir).getRepository();
+        } catch (IOException e) {
+            throw new RuntimeException("Failed to open repository " + projectRepoDir.getAbsolutePath(), e);
+        }
+    }
+
+    /**
+     * Write the source files of a snapshot when {@link #ensureSnapshot(Snapshot)} is called for it, rather than
+     * writing the files of all snapshots in {@link #readAllRevisionsAndComputeSnapshots()}.  Must be set before
+     * {@link #readAllRevisionsAndComputeSnapshots()} is called.  If set, {@link #close()} must be called once all
+     * snapshots have been processed.
+     */
+    void setWriteSourcesOnDemand(boolean writeSourcesOnDemand) {
+        this.writeSourcesOnDemand = writeSourcesOnDemand;
+    }
+
+    /**
+     * Releases the repository opened for writing source files on demand, if any
+     */
+    void close() {
+        if (onDemandRepo != null) {
+            onDemandRepo.close();
+            onDemandRepo = null;
+            onDemandMaterializer = null;
+        }
     }
 
+    /**
+     * The blob store is left alone: its contents only depend on the contents of the source files, so they remain valid.
+     */
     private void removeOutputFiles() {
         removeSnapshotCsv();
         removeCheckouts();
@@ -168,45 +277,25 @@ class CheckoutStrategy implements ISnapshotProcessingModeStrategy {
 
     @Override
     public boolean isCurrentSnapshotDependentOnPreviousSnapshot() {
-        return true;
-    }
-
-    @Override
-    public void setPreviousSnapshot(ISnapshot previousSnapshot) {
-        this.previousSnapshot = previousSnapshot;
+        return false;
     }
 
     @Override
     public void ensureSnapshot(Snapshot currentSnapshot) {
-        // GIT CHECKOUT
-        gitCheckout(currentSnapshot);
-        // Anzahl der .c Dateien checken
-        File projectRepoDir = new File(conf.getRepoDir());
-        LOG.debug("Looking for checkout .c files in directory " + projectRepoDir.getAbsolutePath());
-        List<File> filesFound = FileFinder.find(projectRepoDir, "(.*\\.c$)");
-        final int filesCount = filesFound.size();
-        LOG.info(String.format("Found %d .c file%s in %s", filesCount, filesCount == 1 ? "" : "s",
-                projectRepoDir.getAbsolutePath()));
+        if (writeSourcesOnDemand) {
+            onDemandMaterializer.materializeSnapshot(currentSnapshot,
+                    Optional.ofNullable(predecessors.get(currentSnapshot)), snapshotSourceDir(currentSnapshot));
+        }
+        // Otherwise, the source files have already been written by materializeSnapshots().
+        final File sourceDir = snapshotSourceDir(currentSnapshot);
+        if (!sourceDir.isDirectory()) {
+            throw new RuntimeException("Source files of snapshot " + currentSnapshot + " are missing: "
+                    + sourceDir.getAbsolutePath());
+        }
         conf.projectResultsDir().mkdirs();
-//        appendToProjectCsv(currentSnapshot, filesFound);
-//        appendToProjectAnalysisCsv(currentSnapshot, filesFound);
-        final File currentSnapshotDir = snapshotDir(currentSnapshot);
-        currentSnapshotDir.mkdirs();
-        copyCheckoutToTmpSnapshotDir(filesFound, currentSnapshot);
         writeCppstatsConfigFile(currentSnapshot);
     }
 
-    /**
-     * Git Checkout Script Aufruf
-     *
-     * @param snapshot
-     */
-    private void gitCheckout(Snapshot snapshot) {
-        String hash = snapshot.getStartCommit().commitHash;
-        File projectRepoDir = new File(conf.getRepoDir());
-        CreateSnapshots.runExternalCommand(CreateSnapshotsConfig.GIT_PROG, projectRepoDir.getAbsoluteFile(), "checkout", "--force", hash);
-    }
-
 //    private void appendToProjectAnalysisCsv(ProperSnapshot snapshot, List<File> filesFound) {
 //        final File csvOutFile = conf.projectAnalysisCsv();
 //        final File projectRepoDir = new File(conf.getRepoDir());
@@ -263,40 +352,8 @@ class CheckoutStrategy implements ISnapshotProcessingModeStrategy {
         }
     }
 
-    private void copyCheckoutToTmpSnapshotDir(List<File> filesInCurrentCheckout, Snapshot currentSnapshot) {
-        final File cppstatsDir = new File(snapshotDir(currentSnapshot), "source");
-        if (!cppstatsDir.exists()) {
-            if (!cppstatsDir.mkdirs()) {
-                throw new RuntimeException("Failed to create target directory for checkout: " + cppstatsDir.getPath());
-            }
-        }
-        copyAllFiles(filesInCurrentCheckout, cppstatsDir);
-    }
-
-    /**
-     * Copies all files for the current Snapshot
-     *
-     * @param filesInCurrentCheckout
-     * @param destDir
-     */
-    private void copyAllFiles(Collection<File> filesInCurrentCheckout, File destDir) {
-        for (File file : filesInCurrentCheckout) {
-            copyFileToDir(file, destDir);
-        }
-    }
-
-    private void copyFileToDir(File file, File destDir) {
-        final File projectRepoDir = new File(conf.getRepoDir());
-        String relFileName = CreateSnapshots.pathRelativeTo(file, projectRepoDir);
-        File targetFileName = new File(destDir, relFileName);
-        final File targetFileDir = targetFileName.getParentFile();
-        targetFileDir.mkdirs();
-        try {
-            Files.copy(file.toPath(), targetFileName.toPath(), StandardCopyOption.REPLACE_EXISTING);
-        } catch (IOException e) {
-            throw new RuntimeException(
-                    "Error copying file " + file.getAbsolutePath() + " to " + targetFileName.getAbsolutePath(), e);
-        }
+    private File snapshotSourceDir(Snapshot snapshot) {
+        return new File(snapshotDir(snapshot), "source");
     }
 
     /**
@@ -305,8 +362,11 @@ class CheckoutStrategy implements ISnapshotProcessingModeStrategy {
      * @param snapshot Snapshot for which to create the cppstats config file
      */
     private void writeCppstatsConfigFile(Snapshot snapshot) {
-        final File snapshotDir = snapshotDir(snapshot);
-        final File cppstatsConfigFile = cppstatsConfigFile(snapshot);
+        writeCppstatsConfigFile(snapshotDir(snapshot));
+    }
+
+    private void writeCppstatsConfigFile(File snapshotDir) {
+        final File cppstatsConfigFile = new File(snapshotDir, CPPSTATS_INPUT_TXT);
         PrintWriter writer = null;
         try {
             writer = new PrintWriter(cppstatsConfigFile);
@@ -337,15 +397,188 @@ class CheckoutStrategy implements ISnapshotProcessingModeStrategy {
         List<String> args = new ArrayList<>();
         //args.add(conf.smellConfig /* ARG1 */);
         //args.add(snapshotResultsDirForDate.getAbsolutePath() /* ARG2 */);
-        final Date prevSnapshotDate = previousSnapshot.getStartDate();
-        if (prevSnapshotDate != null) {
-            final File prevSnapshotDir = conf.snapshotDirForDate(prevSnapshotDate);
-            final File prevCppstatsInputList = new File(prevSnapshotDir, CPPSTATS_INPUT_TXT);
-            args.add("--prepareFrom=" + prevCppstatsInputList.getAbsolutePath());
-        } else {
-            args.add("--lazyPreparation");
+        final Optional<SnapshotManifest> manifest = SnapshotManifest.manifestFile(tmpSnapshotDir).isFile()
+                ? Optional.of(SnapshotManifest.read(tmpSnapshotDir)) : Optional.empty();
+        int numReused = 0;
+        if (manifest.isPresent()) {
+            numReused = checkOutPreparedFilesFromStore(tmpSnapshotDir, manifest.get());
+        }
+        args.add("--lazyPreparation");
+        ExternalCommand cppstatsCommand = new ExternalCommand(CreateSnapshotsConfig.CPP_SKUNK_PROG, tmpSnapshotDir /* WD */, args.toArray(new String[args.size()]));
+        cppstatsCommand.setBeforeRetry(() -> {
+            removeCppstatsOutputs(tmpSnapshotDir);
+            if (manifest.isPresent()) {
+                checkOutPreparedFilesFromStore(tmpSnapshotDir, manifest.get());
+            }
+        });
+        try {
+            processScheduler.run(cppstatsCommand);
+        } catch (RuntimeException e) {
+            removeCppstatsOutputs(tmpSnapshotDir);
+            throw e;
+        }
+        if (manifest.isPresent()) {
+            addPreparedFilesToStore(tmpSnapshotDir, manifest.get());
+        }
+        if (conf.isVerifyReuse() && (numReused > 0)) {
+            verifyAgainstRunFromScratch(currentSnapshot);
+        }
+    }
+
+    /**
+     * Copies the files cppstats has already prepared for the files of this snapshot into the snapshot directory.  When
+     * run with <code>--lazyPreparation</code>, cppstats will not prepare these files again.
+     *
+     * @return Number of files copied from the store
+     */
+    private int checkOutPreparedFilesFromStore(File snapshotDir, SnapshotManifest manifest) {
+        int numReused = 0;
+        int numToPrepare = 0;
+        try {
+            for (SnapshotManifest.Entry e : manifest.getEntries()) {
+                if (e.status == SnapshotManifest.FileStatus.DELETED) continue;
+                for (String dirName : CPPSTATS_PREPARED_FILES_DIRS) {
+                    final File storedFile = blobStore.derivedFile(e.blobHash, e.path, preparedFileSuffix(dirName));
+                    final File targetFile = preparedFile(snapshotDir, dirName, e.path);
+                    if (!storedFile.isFile()) {
+                        numToPrepare++;
+                    } else if (!targetFile.exists()) {
+                        blobStore.checkOutDerived(storedFile, targetFile, snapshotDir);
+                        numReused++;
+                    }
+                }
+            }
+        } catch (IOException ex) {
+            throw new RuntimeException("Error copying files prepared by cppstats into " + snapshotDir, ex);
+        }
+        LOG.info("Reusing " + numReused + " file(s) prepared by cppstats for earlier snapshots. " + numToPrepare
+                + " file(s) remain to be prepared.");
+        return numReused;
+    }
+
+    private void addPreparedFilesToStore(File snapshotDir, SnapshotManifest manifest) {
+        int numAdded = 0;
+        try {
+            for (SnapshotManifest.Entry e : manifest.getEntries()) {
+                if (e.status == SnapshotManifest.FileStatus.DELETED) continue;
+                for (String dirName : CPPSTATS_PREPARED_FILES_DIRS) {
+                    final File preparedFile = preparedFile(snapshotDir, dirName, e.path);
+                    if (preparedFile.isFile() && blobStore.putDerivedIfAbsent(e.blobHash, e.path,
+                            preparedFileSuffix(dirName), preparedFile, snapshotDir)) {
+                        numAdded++;
+                    }
+                }
+            }
+        } catch (IOException ex) {
+            throw new RuntimeException("Error adding files prepared by cppstats in " + snapshotDir
+                    + " to the blob store", ex);
+        }
+        LOG.debug("Added " + numAdded + " file(s) prepared by cppstats to the blob store.");
+    }
+
+    /**
+     * Runs cppstats a second time on a snapshot, from scratch, in a copy of the snapshot directory, and compares the
+     * outputs to those of the run that reused prepared files.  The paths of the two directories are ignored.
+     *
+     * @throws RuntimeException if any outputs differ.  The copy is kept for inspection.
+     */
+    private void verifyAgainstRunFromScratch(Snapshot snapshot) {
+        final File snapshotDir = snapshotDir(snapshot);
+        final File verifyDir = new File(snapshotDir.getParentFile(), snapshotDir.getName() + ".verify");
+        try {
+            org.apache.commons.io.FileUtils.deleteDirectory(verifyDir);
+            org.apache.commons.io.FileUtils.copyDirectory(snapshotSourceDir(snapshot), new File(verifyDir, "source"));
+        } catch (IOException ex) {
+            throw new RuntimeException("Error creating directory for verifying snapshot " + snapshot + ": "
+                    + verifyDir, ex);
+        }
+        writeCppstatsConfigFile(verifyDir);
+        processScheduler.run(new ExternalCommand(CreateSnapshotsConfig.CPP_SKUNK_PROG, verifyDir,
+                "--lazyPreparation"));
+
+        List<String> mismatches = new ArrayList<>();
+        for (String relPath : cppstatsOutputPaths(snapshotDir, verifyDir)) {
+            if (!sameContents(new File(verifyDir, relPath), verifyDir, new File(snapshotDir, relPath), snapshotDir)) {
+                mismatches.add(relPath);
+            }
         }
-        CreateSnapshots.runExternalCommand(CreateSnapshotsConfig.CPP_SKUNK_PROG, tmpSnapshotDir /* WD */, args.toArray(new String[args.size()]));
+        if (!mismatches.isEmpty()) {
+            throw new RuntimeException("Outputs of cppstats for snapshot " + snapshot + " differ from a run from"
+                    + " scratch in " + mismatches.size() + " file(s): " + mismatches + ". Outputs of the run from"
+                    + " scratch are kept in " + verifyDir);
+        }
+        LOG.info("Outputs of cppstats for snapshot " + snapshot + " match a run from scratch.");
+        try {
+            org.apache.commons.io.FileUtils.deleteDirectory(verifyDir);
+        } catch (IOException ex) {
+            LOG.warn("Failed to delete directory " + verifyDir, ex);
+        }
+    }
+
+    /**
+     * @return Relative paths of the CSV files and prepared files cppstats has written to either directory
+     */
+    private static Set<String> cppstatsOutputPaths(File dir1, File dir2) {
+        Set<String> result = new TreeSet<>();
+        for (File dir : new File[]{dir1, dir2}) {
+            for (String csvName : new String[]{"cppstats.csv", "cppstats_featurelocations.csv"}) {
+                if (new File(dir, csvName).exists()) result.add(csvName);
+            }
+            for (String dirName : CPPSTATS_PREPARED_FILES_DIRS) {
+                final File preparedFilesDir = new File(dir, dirName);
+                if (!preparedFilesDir.isDirectory()) continue;
+                for (File f : org.apache.commons.io.FileUtils.listFiles(preparedFilesDir, null, true)) {
+                    result.add(dirName + File.separator + CreateSnapshots.pathRelativeTo(f, preparedFilesDir));
+                }
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Compares two files written by cppstats in different directories.  Mentions of the first directory in the first
+     * file are taken to stand for the second directory.
+     */
+    private static boolean sameContents(File f1, File dir1, File f2, File dir2) {
+        if (!f1.isFile() || !f2.isFile()) return false;
+        try {
+            String s1 = org.apache.commons.io.FileUtils.readFileToString(f1, "UTF-8");
+            String s2 = org.apache.commons.io.FileUtils.readFileToString(f2, "UTF-8");
+            s1 = s1.replace(dir1.getAbsolutePath(), dir2.getAbsolutePath());
+            return s1.equals(s2);
+        } catch (IOException ex) {
+            throw new RuntimeException("Error comparing " + f1 + " and " + f2, ex);
+        }
+    }
+
+    /**
+     * Removes what cppstats has written to a snapshot directory.  After a failed run, prepared files may be incomplete.
+     * They must neither be added to the blob store nor be picked up by <code>--lazyPreparation</code> in a later run.
+     */
+    private static void removeCppstatsOutputs(File snapshotDir) {
+        LOG.info("Removing outputs of failed cppstats run in " + snapshotDir);
+        for (String dirName : CPPSTATS_PREPARED_FILES_DIRS) {
+            final File preparedFilesDir = new File(snapshotDir, dirName);
+            try {
+                org.apache.commons.io.FileUtils.deleteDirectory(preparedFilesDir);
+            } catch (IOException e) {
+                LOG.error("Failed to delete directory " + preparedFilesDir, e);
+            }
+        }
+        for (String csvName : new String[]{"cppstats.csv", "cppstats_featurelocations.csv"}) {
+            final File csvFile = new File(snapshotDir, csvName);
+            if (csvFile.exists() && !csvFile.delete()) {
+                LOG.error("Failed to delete " + csvFile);
+            }
+        }
+    }
+
+    private static File preparedFile(File snapshotDir, String dirName, String sourcePath) {
+        return new File(new File(snapshotDir, dirName), sourcePath + ".xml");
+    }
+
+    private static String preparedFileSuffix(String dirName) {
+        return dirName + ".xml";
     }
 
     @Override
@@ -3,11 +3,12 @@ package de.ovgu.ifdefrevolver.bugs.createsnapshots.main;
 import de.ovgu.ifdefrevolver.bugs.correlate.data.Snapshot;
 import de.ovgu.ifdefrevolver.bugs.correlate.main.ProjectInformationConfig;
 import de.ovgu.ifdefrevolver.bugs.createsnapshots.data.ISnapshot;
-import de.ovgu.ifdefrevolver.bugs.createsnapshots.data.NullSnapshot;
 import de.ovgu.ifdefrevolver.bugs.createsnapshots.data.Smell;
+import de.ovgu.ifdefrevolver.bugs.createsnapshots.process.ProcessScheduler;
 import de.ovgu.ifdefrevolver.bugs.minecommits.CommitsDistanceDb;
 import de.ovgu.ifdefrevolver.bugs.minecommits.CommitsDistanceDbCsvReader;
 import de.ovgu.ifdefrevolver.bugs.minecommits.main.FindBugfixCommits;
+import de.ovgu.ifdefrevolver.commitanalysis.ListAllFunctions;
 import de.ovgu.ifdefrevolver.commitanalysis.ListChangedFunctionsConfig;
 import org.apache.commons.cli.*;
 import org.apache.commons.lang3.mutable.MutableInt;
@@ -15,13 +16,11 @@ import org.apache.log4j.Logger;
 
 import java.io.File;
 import java.io.IOException;
-import java.io.InputStream;
 import java.io.PrintWriter;
 import java.nio.file.Paths;
 import java.util.Collection;
 import java.util.Iterator;
 import java.util.List;
-import java.util.Scanner;
 
 public class CreateSnapshots {
 
@@ -61,8 +60,24 @@ public class CreateSnapshots {
     private void run(String[] args) {
         this.conf = this.parseCommandLineArgs(args);
         this.commitsDb = (new CommitsDistanceDbCsvReader().dbFromCsv(conf));
-        final ISnapshotProcessingModeStrategy skunkStrategy = conf.skunkMode().getNewStrategyInstance(commitsDb, conf);
-        applyStrategyToSnapshots(skunkStrategy);
+        final ProcessScheduler processScheduler = new ProcessScheduler(conf.getMaxProcesses(),
+                conf.getProcessTimeoutMillis(), conf.getProcessRetries() + 1,
+                CreateSnapshotsConfig.PROCESS_OUTPUT_LINES_TO_KEEP);
+        try {
+            if (conf.isPipeline()) {
+                processSnapshotsInPipeline(processScheduler);
+            } else {
+                final ISnapshotProcessingModeStrategy skunkStrategy = conf.skunkMode().getNewStrategyInstance(
+                        commitsDb, conf, processScheduler);
+                applyStrategyToSnapshots(skunkStrategy);
+            }
+        } finally {
+            processScheduler.shutdown();
+            processScheduler.logSummary();
+            if (conf.getProcessStatisticsFile().isPresent()) {
+                processScheduler.writeStatistics(conf.getProcessStatisticsFile().get());
+            }
+        }
     }
 
     private void applyStrategyToSnapshots(ISnapshotProcessingModeStrategy skunkStrategy) {
@@ -75,6 +90,51 @@ public class CreateSnapshots {
         }
     }
 
+    /**
+     * Checks out the snapshots, runs cppstats and Skunk preprocessing on them and, if requested, detects smells.
+     * Unlike running the tool once per mode, all stages work at the same time, each on different snapshots.
+     */
+    private void processSnapshotsInPipeline(ProcessScheduler processScheduler) {
+        this.erroneousSnapshots = 0;
+        final CheckoutStrategy checkout = new CheckoutStrategy(commitsDb, conf, processScheduler);
+        checkout.setWriteSourcesOnDemand(true);
+        try {
+            checkout.readAllRevisionsAndComputeSnapshots();
+            final PreprocessStrategy preprocess = new PreprocessStrategy(commitsDb, conf, processScheduler);
+            final DetectSmellsStrategy detectSmells = new DetectSmellsStrategy(commitsDb, conf, processScheduler);
+
+            SnapshotPipeline pipeline = new SnapshotPipeline(conf.getPipelineQueueSize(), this::onSnapshotError);
+            pipeline.addStage(PipelineStage.WRITE_SOURCES.displayName,
+                    conf.getPipelineStageThreads(PipelineStage.WRITE_SOURCES), snapshot -> {
+                        if (checkout.snapshotAlreadyProcessed(snapshot)) return false;
+                        checkout.ensureSnapshot(snapshot);
+                        return true;
+                    });
+            pipeline.addStage(PipelineStage.CPPSTATS.displayName,
+                    conf.getPipelineStageThreads(PipelineStage.CPPSTATS), snapshot -> {
+                        if (checkout.snapshotAlreadyProcessed(snapshot)) return false;
+                        checkout.processSnapshot(snapshot);
+                        return true;
+                    });
+            pipeline.addStage(PipelineStage.PREPROCESS.displayName,
+                    conf.getPipelineStageThreads(PipelineStage.PREPROCESS), snapshot -> {
+                        if (preprocess.snapshotAlreadyProcessed(snapshot)) return false;
+                        preprocess.processSnapshot(snapshot);
+                        return true;
+                    });
+            if (conf.getSmell() != null) {
+                pipeline.addStage(detectSmells.activityDisplayName(),
+                        conf.getPipelineStageThreads(PipelineStage.DETECT_SMELLS), snapshot -> {
+                            detectSmells.processSnapshot(snapshot);
+                            return true;
+                        });
+            }
+            pipeline.run(checkout.getSnapshotsToProcess());
+        } finally {
+            checkout.close();
+        }
+    }
+
     private void processSnapshotsInParallel(ISnapshotProcessingModeStrategy skunkStrategy) {
         Thread[] workers = createSnapshotProcessingWorkers(skunkStrategy);
         LOG.info(skunkStrategy.activityDisplayName() + " with " + workers.length + " threads.");
@@ -112,22 +172,18 @@ public class CreateSnapshots {
         final String activityDisplayName = skunkStrategy.activityDisplayName();
         LOG.info(activityDisplayName + " sequentially (no parallel processing possible).");
 
-        ISnapshot previousSnapshot = NullSnapshot.getInstance();
-
         Collection<Snapshot> snapshotsToProcess = skunkStrategy.getSnapshotsToProcess();
         final int totalNumberOfSnapshots = snapshotsToProcess.size();
         int myProgressPosition = 1;
         for (Snapshot currentSnapshot : snapshotsToProcess) {
             LOG.info(skunkStrategy.activityDisplayName() + " on snapshot " +
                     myProgressPosition + "/" + totalNumberOfSnapshots + ": " + currentSnapshot);
-            skunkStrategy.setPreviousSnapshot(previousSnapshot);
             if (skunkStrategy.snapshotAlreadyProcessed(currentSnapshot)) {
                 LOG.info(skunkStrategy.activityDisplayName() + " skipped on " + currentSnapshot + ": snapshot already processed.");
             } else {
                 skunkStrategy.ensureSnapshot(currentSnapshot);
                 skunkStrategy.processSnapshot(currentSnapshot);
             }
-            previousSnapshot = currentSnapshot;
             myProgressPosition++;
         }
     }
@@ -173,187 +229,6 @@ public class CreateSnapshots {
         erroneousSnapshots++;
     }
 
-    static class StreamReader implements Runnable {
-        private final String progBasename;
-        private final InputStream stream;
-        private final String suffix;
-
-        public StreamReader(InputStream stream, String progBasename, String suffix) {
-            super();
-            this.stream = stream;
-            this.progBasename = progBasename;
-            this.suffix = suffix;
-        }
-
-        @Override
-        public void run() {
-            final String logLinePrefix = "[" + progBasename + suffix + "] ";
-            final Scanner scanner = new Scanner(stream);
-            try {
-                while (true) {
-                    if (scanner.hasNextLine()) {
-                        String line = scanner.nextLine();
-                        if (line.contains("ERROR ")) {
-                            LOG.error(logLinePrefix + line.replaceFirst("^.*ERROR ", ""));
-                        } else if (line.contains("WARN ")) {
-                            LOG.warn(logLinePrefix + line.replaceFirst("^.*WARN ", ""));
-                        } else if (line.contains("INFO ")) {
-                            LOG.info(logLinePrefix + line.replaceFirst("^.*INFO ", ""));
-                        } else {
-                            if (LOG.isDebugEnabled()) {
-                                LOG.debug(logLinePrefix + line.replaceFirst("^.*DEBUG ", "").replaceFirst("^.*TRACE ", ""));
-                            }
-                        }
-                    } else {
-                        break;
-                    }
-                }
-            } finally {
-                try {
-                    scanner.close();
-                } catch (Exception e) {
-                    // Don't care
-                }
-            }
-        }
-    }
-
-    static class ReaderCoordinator extends Thread {
-        private final String progBasename;
-        private final InputStream streamOut;
-        private final InputStream streamErr;
-        private volatile boolean interrupted = false;
-
-        public ReaderCoordinator(String progBasename, InputStream streamOut, InputStream streamErr) {
-            super("ReaderCoordinator for " + progBasename);
-            this.progBasename = progBasename;
-            this.streamOut = streamOut;
-            this.streamErr = streamErr;
-        }
-
-        @Override
-        public void run() {
-            StreamReader readOut = new StreamReader(streamOut, progBasename, " out");
-            StreamReader readErr = new StreamReader(streamErr, progBasename, " err");
-            Thread threadOut = new Thread(readOut, "Stream reader for stdout of " + progBasename);
-            Thread threadErr = new Thread(readErr, "Stream reader for stderr of " + progBasename);
-            Thread[] threads = new Thread[]{threadOut, threadErr};
-            for (Thread t : threads) {
-                t.start();
-            }
-            try {
-                boolean somethingWasAlive = true;
-                while (somethingWasAlive && !interrupted) {
-                    somethingWasAlive = false;
-                    for (Thread t : threads) {
-                        if (t.isAlive()) {
-                            somethingWasAlive = true;
-                            try {
-                                synchronized (t) {
-                                    t.wait(5);
-                                }
-                            } catch (InterruptedException e) {
-                                // t probably called notify
-                            }
-                        }
-                    }
-                }
-            } finally {
-                for (Thread t : threads) {
-                    try {
-                        t.interrupt();
-                    } catch (Exception e) {
-                        // Don't care.
-                        LOG.debug("Exception interrupting scanner thread " + t, e);
-                    }
-                }
-            }
-        }
-
-        @Override
-        public void interrupt() {
-            this.interrupted = true;
-            super.interrupt();
-        }
-    }
-
-    static void runExternalCommand(final String prog, final File wd, final String... args) {
-        final long startTime = System.currentTimeMillis();
-        String[] processBuilderArgs = new String[args.length + 1];
-        StringBuilder commandSb = new StringBuilder();
-        processBuilderArgs[0] = prog;
-        commandSb.append("`").append(prog);
-        for (int i = 0; i < args.length; i++) {
-            String arg = args[i];
-            processBuilderArgs[i + 1] = arg;
-            commandSb.append(' ').append(arg);
-        }
-        commandSb.append("' in directory ").append(wd.getAbsolutePath());
-        final String command = commandSb.toString();
-        LOG.debug("Executing " + command + " ...");
-        ProcessBuilder pb = new ProcessBuilder(processBuilderArgs);
-        pb.directory(wd);
-        // Scanner scanStdout = null;
-        // Scanner scanStderr = null;
-        Process p = null;
-        InputStream processStdout = null;
-        InputStream processStderr = null;
-        int exitCode = -1;
-        final String progBasename = new File(prog).getName();
-        try {
-            p = pb.start();
-            processStdout = p.getInputStream();
-            processStderr = p.getErrorStream();
-            ReaderCoordinator readerCoordinator = new ReaderCoordinator(progBasename, processStdout, processStderr);
-            readerCoordinator.start();
-            try {
-                exitCode = p.waitFor();
-                // Wait for some last output
-                if (readerCoordinator.isAlive()) {
-                    synchronized (readerCoordinator) {
-                        try {
-                            readerCoordinator.wait(50);
-                        } catch (InterruptedException e) {
-                            // Not important
-                        }
-                    }
-                }
-            } catch (InterruptedException e) {
-                throw new RuntimeException("Got interrupted while executing " + command, e);
-            } finally {
-                try {
-                    p.destroy();
-                } finally {
-                    try {
-                        readerCoordinator.interrupt();
-                        readerCoordinator.join();
-                    } catch (Exception e) {
-                        LOG.debug("Exception interrupting process reader coordinator", e);
-                        // Don't care.
-                    }
-                }
-            }
-        } catch (IOException e) {
-            throw new RuntimeException("Error executing " + command, e);
-        } finally {
-            try {
-                if (processStdout != null) processStdout.close();
-            } catch (Exception e) {
-                /* ignored */
-            }
-            try {
-                if (processStderr != null) processStderr.close();
-            } catch (Exception e) {
-                /* ignored */
-            }
-        }
-        if (exitCode != 0) {
-            throw new RuntimeException("Command " + command + " exited with non-zero exit code " + exitCode);
-        }
-        long timeForProg = System.currentTimeMillis() - startTime;
-        LOG.debug("Executing " + command + " took " + timeForProg + " ms");
-    }
-
     static String pathRelativeTo(File file, File dir) {
         File canonicalDir = null;
         try {
@@ -443,10 +318,12 @@ public class CreateSnapshots {
             res.setSnapshotProcessingMode(SnapshotProcessingMode.PREPROCESS);
         } else if (line.hasOption(CreateSnapshotsConfig.OPT_DETECT_L)) {
             res.setSnapshotProcessingMode(SnapshotProcessingMode.DETECTSMELLS);
-            parseSmellDetectionArgs(res, line);
+            parseSmellDetectionArgs(res, line, CreateSnapshotsConfig.OPT_DETECT_L);
+        } else if (line.hasOption(CreateSnapshotsConfig.OPT_PACK_L)) {
+            res.setSnapshotProcessingMode(SnapshotProcessingMode.PACK);
         } else {
             throw new RuntimeException(
-                    "Either `--" + CreateSnapshotsConfig.OPT_CHECKOUT_L + "', `--" + CreateSnapshotsConfig.OPT_PREPROCESS_L + "' or `--" + CreateSnapshotsConfig.OPT_DETECT_L + "' must be specified!");
+                    "Either `--" + CreateSnapshotsConfig.OPT_CHECKOUT_L + "', `--" + CreateSnapshotsConfig.OPT_PREPROCESS_L + "', `--" + CreateSnapshotsConfig.OPT_DETECT_L + "' or `--" + CreateSnapshotsConfig.OPT_PACK_L + "' must be specified!");
         }
 
         //parseSnapshotSizeModeFromCommandLine(res, line);
@@ -495,6 +372,27 @@ public class CreateSnapshots {
         }
         res.validateRepoDir();
 
+        if (line.hasOption(ListChangedFunctionsConfig.OPT_THREADS)) {
+            String threadsString = line.getOptionValue(ListChangedFunctionsConfig.OPT_THREADS);
+            int numThreads;
+            try {
+                numThreads = Integer.valueOf(threadsString);
+            } catch (NumberFormatException e) {
+                throw new RuntimeException("Invalid value for option `-" + ListChangedFunctionsConfig.OPT_THREADS
+                        + "': Not a valid integer: " + threadsString);
+            }
+            if (numThreads < 1) {
+                throw new RuntimeException("Invalid value for option `-" + ListChangedFunctionsConfig.OPT_THREADS
+                        + "': Number of threads must be an integer >= 1.");
+            }
+            res.setNumberOfWorkerThreads(numThreads);
+        }
+        CreateSnapshotsConfig.parseProcessOptionsFromCommandLine(line, res);
+        CreateSnapshotsConfig.parsePipelineOptionsFromCommandLine(line, res);
+        CreateSnapshotsConfig.parseVerifyReuseFromCommandLine(line, res);
+        if (res.isPipeline() && (line.getOptionValue(CreateSnapshotsConfig.OPT_PIPELINE_L) != null)) {
+            parseSmellDetectionArgs(res, line, CreateSnapshotsConfig.OPT_PIPELINE_L);
+        }
 
         List<String> snapshotDateNames = line.getArgList();
         if (!snapshotDateNames.isEmpty()) {
@@ -559,8 +457,8 @@ public class CreateSnapshots {
         return windowSizeNum;
     }
 
-    private void parseSmellDetectionArgs(CreateSnapshotsConfig res, CommandLine line) {
-        String smellShortName = line.getOptionValue(CreateSnapshotsConfig.OPT_DETECT_L);
+    private void parseSmellDetectionArgs(CreateSnapshotsConfig res, CommandLine line, String optionName) {
+        String smellShortName = line.getOptionValue(optionName);
         try {
             res.setSmell(Smell.valueOf(smellShortName));
         } catch (IllegalArgumentException e) {
@@ -571,7 +469,7 @@ public class CreateSnapshots {
                 }
                 sb.append(m.name());
             }
-            throw new RuntimeException("Illegal value for option --" + CreateSnapshotsConfig.OPT_DETECT_L + ": " + smellShortName
+            throw new RuntimeException("Illegal value for option --" + optionName + ": " + smellShortName
                     + ". Valid values are " + sb.toString());
         }
 
@@ -653,7 +551,26 @@ public class CreateSnapshots {
                 .hasArg().argName("NUM")
                 .build());
 
-        // --checkout, --preprocess and --detect options
+        options.addOption(Option.builder(String.valueOf(ListChangedFunctionsConfig.OPT_THREADS))
+                .longOpt(ListChangedFunctionsConfig.OPT_THREADS_L)
+                .desc("Number of parallel worker threads. In `--" + CreateSnapshotsConfig.OPT_CHECKOUT_L
+                        + "' mode, this is the number of snapshots whose files are written and processed by cppstats"
+                        + " in parallel."
+                        + " Must be at least 1. [Default depends on the mode]")
+                .hasArg().argName("NUM")
+                .type(Integer.class)
+                .build());
+        options.addOption(CreateSnapshotsConfig.verifyReuseCommandLineOption());
+
+        options.addOption(CreateSnapshotsConfig.maxProcessesCommandLineOption());
+        options.addOption(CreateSnapshotsConfig.timeoutCommandLineOption());
+        options.addOption(CreateSnapshotsConfig.retriesCommandLineOption());
+        options.addOption(CreateSnapshotsConfig.processStatisticsCommandLineOption());
+        options.addOption(CreateSnapshotsConfig.pipelineCommandLineOption());
+        options.addOption(CreateSnapshotsConfig.stageThreadsCommandLineOption());
+        options.addOption(CreateSnapshotsConfig.queueSizeCommandLineOption());
+
+        // --checkout, --preprocess, --detect and --pack options
         OptionGroup skunkModeOptions = new OptionGroup();
         skunkModeOptions.setRequired(required);
 
@@ -670,6 +587,13 @@ public class CreateSnapshots {
                 .hasArg()
                 .argName(getValidSmellArgs())
                 .build());
+        skunkModeOptions.addOption(Option.builder().longOpt(CreateSnapshotsConfig.OPT_PACK_L)
+                .desc("Pack the sources and cppstats files of each snapshot into a single zip archive and delete the"
+                        + " original files to save inodes and disk space.  Analyses reading the snapshots, such as "
+                        + ListAllFunctions.class.getSimpleName() + ", read the archive instead.  cppstats and Skunk"
+                        + " cannot, so only pack snapshots after running this tool with the `--"
+                        + CreateSnapshotsConfig.OPT_PREPROCESS_L + "' option on.")
+                .build());
 
         options.addOptionGroup(skunkModeOptions);
         // @formatter:on
@@ -1,13 +1,14 @@
 package de.ovgu.ifdefrevolver.bugs.createsnapshots.main;
 
 import de.ovgu.ifdefrevolver.bugs.correlate.main.ProjectInformationConfig;
+import de.ovgu.ifdefrevolver.bugs.createsnapshots.data.BlobStore;
 import de.ovgu.ifdefrevolver.bugs.createsnapshots.data.Smell;
 import de.ovgu.ifdefrevolver.commitanalysis.IHasRepoDir;
 import org.apache.commons.cli.CommandLine;
 import org.apache.commons.cli.Option;
 
 import java.io.File;
-import java.util.Optional;
+import java.util.*;
 
 /**
  * Created by wfenske on 06.04.17.
@@ -46,6 +47,10 @@ public class CreateSnapshotsConfig extends ProjectInformationConfig implements I
      * --detect=AB|AF|LF
      */
     public static final String OPT_DETECT_L = "detect";
+    /**
+     * --pack
+     */
+    public static final String OPT_PACK_L = "pack";
 
     /**
      * Size of a commit window, requires positive integer argument
@@ -53,6 +58,57 @@ public class CreateSnapshotsConfig extends ProjectInformationConfig implements I
     public static final String OPT_SNAPSHOT_SIZE_L = "snapshotsize";
     public static final char OPT_SNAPSHOT_SIZE = 's';
 
+    /**
+     * Maximum number of external programs (cppstats, Skunk) running at the same time, requires positive integer
+     * argument
+     */
+    public static final String OPT_MAX_PROCESSES_L = "maxprocesses";
+
+    /**
+     * Time in seconds after which an external program is killed, requires non-negative integer argument
+     */
+    public static final String OPT_TIMEOUT_L = "timeout";
+
+    /**
+     * How often a failed external program is run again, requires non-negative integer argument
+     */
+    public static final String OPT_RETRIES_L = "retries";
+
+    /**
+     * CSV file receiving the run times and resource usage of all external programs
+     */
+    public static final String OPT_PROCESS_STATS_L = "processstats";
+
+    /**
+     * In <code>--checkout</code> mode, continue each snapshot with Skunk preprocessing and, if a smell is given as the
+     * optional argument, smell detection as soon as cppstats is done with it
+     */
+    public static final String OPT_PIPELINE_L = "pipeline";
+
+    /**
+     * Number of worker threads of each stage of the pipeline, requires a comma-separated list of positive integers,
+     * one per {@link PipelineStage}
+     */
+    public static final String OPT_STAGE_THREADS_L = "stagethreads";
+
+    /**
+     * Number of snapshots that may wait between two stages of the pipeline, requires positive integer argument
+     */
+    public static final String OPT_QUEUE_SIZE_L = "queuesize";
+
+    public static final int DEFAULT_PIPELINE_QUEUE_SIZE = 2;
+
+    /**
+     * In <code>--checkout</code> mode, run cppstats a second time, from scratch, on each snapshot for which files
+     * prepared for earlier snapshots were reused, and compare the outputs
+     */
+    public static final String OPT_VERIFY_REUSE_L = "verifyreuse";
+
+    /**
+     * Number of output lines of an external program that are reported if the program fails
+     */
+    public static final int PROCESS_OUTPUT_LINES_TO_KEEP = 50;
+
     private String smellConfig = null;
     public static final String DEFAULT_SMELL_CONFIGS_DIR_NAME = "smellconfigs";
 
@@ -67,6 +123,14 @@ public class CreateSnapshotsConfig extends ProjectInformationConfig implements I
     private SnapshotSizeMode snapshotSizeMode = DEFAULT_COMMIT_WINDOW_SIZE_MODE;
 
     private Optional<Integer> numberOfWorkerThreads = Optional.empty();
+    private Optional<Integer> maxProcesses = Optional.empty();
+    private long processTimeoutMillis = 0;
+    private int processRetries = 0;
+    private Optional<File> processStatisticsFile = Optional.empty();
+    private boolean pipeline = false;
+    private final Map<PipelineStage, Integer> pipelineStageThreads = new EnumMap<>(PipelineStage.class);
+    private int pipelineQueueSize = DEFAULT_PIPELINE_QUEUE_SIZE;
+    private boolean verifyReuse = false;
 
     public String smellModeFile() {
         return getSmell().fileName;
@@ -92,6 +156,13 @@ public class CreateSnapshotsConfig extends ProjectInformationConfig implements I
         return new File(projectResultsDir(), "projectAnalysis.csv");
     }
 
+    /**
+     * @return Root directory of the project's {@link BlobStore}
+     */
+    public File blobStoreDir() {
+        return new File(projectResultsDir(), BlobStore.DIR_NAME);
+    }
+
     public int getSnapshotSize() {
         return snapshotSize;
     }
@@ -125,6 +196,166 @@ public class CreateSnapshotsConfig extends ProjectInformationConfig implements I
                 .build();
     }
 
+    public static Option maxProcessesCommandLineOption() {
+        return Option.builder().longOpt(OPT_MAX_PROCESSES_L)
+                .desc("Maximum number of external programs (cppstats, Skunk) running at the same time."
+                        + " [Default=number of worker threads]")
+                .hasArg().argName("NUM")
+                .build();
+    }
+
+    public static Option timeoutCommandLineOption() {
+        return Option.builder().longOpt(OPT_TIMEOUT_L)
+                .desc("Kill an external program, including all processes it has started, if it runs longer than"
+                        + " this many seconds. 0 means no timeout. [Default=0]")
+                .hasArg().argName("SECONDS")
+                .build();
+    }
+
+    public static Option retriesCommandLineOption() {
+        return Option.builder().longOpt(OPT_RETRIES_L)
+                .desc("Number of times a failed or timed-out external program is run again before the snapshot is"
+                        + " considered erroneous. [Default=0]")
+                .hasArg().argName("NUM")
+                .build();
+    }
+
+    public static Option processStatisticsCommandLineOption() {
+        return Option.builder().longOpt(OPT_PROCESS_STATS_L)
+                .desc("Write the wall time, CPU time and peak memory use of every run of an external program to"
+                        + " this CSV file.")
+                .hasArg().argName("FILE")
+                .build();
+    }
+
+    public static void parseProcessOptionsFromCommandLine(CommandLine line, CreateSnapshotsConfig config) {
+        if (line.hasOption(OPT_MAX_PROCESSES_L)) {
+            int value = parseIntOptionValue(line, OPT_MAX_PROCESSES_L);
+            if (value < 1) {
+                throw new RuntimeException("Invalid value for option `--" + OPT_MAX_PROCESSES_L
+                        + "': Number of processes must be an integer >= 1.");
+            }
+            config.setMaxProcesses(value);
+        }
+        if (line.hasOption(OPT_TIMEOUT_L)) {
+            int value = parseIntOptionValue(line, OPT_TIMEOUT_L);
+            if (value < 0) {
+                throw new RuntimeException("Invalid value for option `--" + OPT_TIMEOUT_L
+                        + "': Timeout must be an integer >= 0.");
+            }
+            config.setProcessTimeoutMillis(value * 1000L);
+        }
+        if (line.hasOption(OPT_RETRIES_L)) {
+            int value = parseIntOptionValue(line, OPT_RETRIES_L);
+            if (value < 0) {
+                throw new RuntimeException("Invalid value for option `--" + OPT_RETRIES_L
+                        + "': Number of retries must be an integer >= 0.");
+            }
+            config.setProcessRetries(value);
+        }
+        if (line.hasOption(OPT_PROCESS_STATS_L)) {
+            config.setProcessStatisticsFile(new File(line.getOptionValue(OPT_PROCESS_STATS_L)));
+        }
+    }
+
+    public static Option pipelineCommandLineOption() {
+        return Option.builder().longOpt(OPT_PIPELINE_L)
+                .desc("Process each snapshot in a pipeline: While the sources of some snapshots are written, cppstats"
+                        + " and Skunk already run on others.  Skunk preprocessing follows cppstats on each snapshot."
+                        + " If a smell is given, e.g. `AB', it is detected, too.  (requires option `--"
+                        + OPT_CHECKOUT_L + "')")
+                .hasArg().optionalArg(true).argName("SMELL")
+                .build();
+    }
+
+    public static Option stageThreadsCommandLineOption() {
+        StringBuilder stageNames = new StringBuilder();
+        StringBuilder defaults = new StringBuilder();
+        for (PipelineStage stage : PipelineStage.values()) {
+            if (stageNames.length() > 0) {
+                stageNames.append(", ");
+                defaults.append(",");
+            }
+            stageNames.append(stage.displayName.toLowerCase());
+            defaults.append(stage.defaultNumberOfThreadsDescription());
+        }
+        return Option.builder().longOpt(OPT_STAGE_THREADS_L)
+                .desc("Number of worker threads of each stage of the pipeline, separated by commas, in this order: "
+                        + stageNames + ". (requires option `--" + OPT_PIPELINE_L + "') [Default=" + defaults + "]")
+                .hasArg().argName("NUM,...")
+                .build();
+    }
+
+    public static Option queueSizeCommandLineOption() {
+        return Option.builder().longOpt(OPT_QUEUE_SIZE_L)
+                .desc("Number of snapshots that may wait between two stages of the pipeline. (requires option `--"
+                        + OPT_PIPELINE_L + "') [Default=" + DEFAULT_PIPELINE_QUEUE_SIZE + "]")
+                .hasArg().argName("NUM")
+                .build();
+    }
+
+    /**
+     * Parses the options controlling the pipeline, except for the smell to detect
+     */
+    public static void parsePipelineOptionsFromCommandLine(CommandLine line, CreateSnapshotsConfig config) {
+        if (line.hasOption(OPT_PIPELINE_L)) {
+            if (config.skunkMode() != SnapshotProcessingMode.CHECKOUT) {
+                throw new RuntimeException("Option `--" + OPT_PIPELINE_L + "' can only be used in `--"
+                        + OPT_CHECKOUT_L + "' mode.");
+            }
+            config.setPipeline(true);
+        } else {
+            for (String opt : new String[]{OPT_STAGE_THREADS_L, OPT_QUEUE_SIZE_L}) {
+                if (line.hasOption(opt)) {
+                    throw new RuntimeException("Option `--" + opt + "' requires option `--" + OPT_PIPELINE_L + "'.");
+                }
+            }
+            return;
+        }
+
+        if (line.hasOption(OPT_STAGE_THREADS_L)) {
+            final String valueString = line.getOptionValue(OPT_STAGE_THREADS_L);
+            final String[] values = valueString.split(",");
+            final PipelineStage[] stages = PipelineStage.values();
+            if (values.length != stages.length) {
+                throw new RuntimeException("Invalid value for option `--" + OPT_STAGE_THREADS_L + "': Expected "
+                        + stages.length + " numbers, got: " + valueString);
+            }
+            for (int i = 0; i < stages.length; i++) {
+                final int numThreads;
+                try {
+                    numThreads = Integer.valueOf(values[i].trim());
+                } catch (NumberFormatException e) {
+                    throw new RuntimeException("Invalid value for option `--" + OPT_STAGE_THREADS_L
+                            + "': Not a valid integer: " + values[i]);
+                }
+                if (numThreads < 1) {
+                    throw new RuntimeException("Invalid value for option `--" + OPT_STAGE_THREADS_L
+                            + "': Number of threads must be an integer >= 1.");
+                }
+                config.setPipelineStageThreads(stages[i], numThreads);
+            }
+        }
+        if (line.hasOption(OPT_QUEUE_SIZE_L)) {
+            int value = parseIntOptionValue(line, OPT_QUEUE_SIZE_L);
+            if (value < 1) {
+                throw new RuntimeException("Invalid value for option `--" + OPT_QUEUE_SIZE_L
+                        + "': Queue size must be an integer >= 1.");
+            }
+            config.setPipelineQueueSize(value);
+        }
+    }
+
+    private static int parseIntOptionValue(CommandLine line, String longOpt) {
+        final String valueString = line.getOptionValue(longOpt);
+        try {
+            return Integer.valueOf(valueString);
+        } catch (NumberFormatException e) {
+            throw new RuntimeException("Invalid value for option `--" + longOpt + "': Not a valid integer: "
+                    + valueString);
+        }
+    }
+
     public static void parseForceFromCommandLine(CommandLine line, CreateSnapshotsConfig config) {
         if (line.hasOption(OPT_FORCE)) {
             config.setForce(true);
@@ -137,6 +368,24 @@ public class CreateSnapshotsConfig extends ProjectInformationConfig implements I
         }
     }
 
+    public static Option verifyReuseCommandLineOption() {
+        return Option.builder().longOpt(OPT_VERIFY_REUSE_L)
+                .desc("Whenever cppstats reuses files it has prepared for earlier snapshots, run it again on the"
+                        + " same snapshot from scratch and check that the outputs match. Slow; meant for testing."
+                        + " (requires option `--" + OPT_CHECKOUT_L + "')")
+                .build();
+    }
+
+    public static void parseVerifyReuseFromCommandLine(CommandLine line, CreateSnapshotsConfig config) {
+        if (line.hasOption(OPT_VERIFY_REUSE_L)) {
+            if (config.skunkMode() != SnapshotProcessingMode.CHECKOUT) {
+                throw new RuntimeException("Option `--" + OPT_VERIFY_REUSE_L + "' can only be used in `--"
+                        + OPT_CHECKOUT_L + "' mode.");
+            }
+            config.setVerifyReuse(true);
+        }
+    }
+
     public Smell getSmell() {
         return smell;
     }
@@ -157,6 +406,83 @@ public class CreateSnapshotsConfig extends ProjectInformationConfig implements I
         return numberOfWorkerThreads.get();
     }
 
+    public void setNumberOfWorkerThreads(int numberOfWorkerThreads) {
+        this.numberOfWorkerThreads = Optional.of(numberOfWorkerThreads);
+    }
+
+    /**
+     * @return Maximum number of external programs running at the same time.  Defaults to the number of worker
+     * threads.  In pipeline mode, it defaults to the total number of threads of the stages that run external programs.
+     */
+    public int getMaxProcesses() {
+        if (maxProcesses.isPresent()) return maxProcesses.get();
+        if (!pipeline) return getNumberOfWorkerThreads();
+        int result = 0;
+        for (PipelineStage stage : PipelineStage.values()) {
+            if (stage.runsExternalPrograms) result += getPipelineStageThreads(stage);
+        }
+        return result;
+    }
+
+    public void setMaxProcesses(int maxProcesses) {
+        this.maxProcesses = Optional.of(maxProcesses);
+    }
+
+    /**
+     * @return Time in milliseconds after which an external program is killed, <code>0</code> for no timeout
+     */
+    public long getProcessTimeoutMillis() {
+        return processTimeoutMillis;
+    }
+
+    public void setProcessTimeoutMillis(long processTimeoutMillis) {
+        this.processTimeoutMillis = processTimeoutMillis;
+    }
+
+    public int getProcessRetries() {
+        return processRetries;
+    }
+
+    public void setProcessRetries(int processRetries) {
+        this.processRetries = processRetries;
+    }
+
+    public Optional<File> getProcessStatisticsFile() {
+        return processStatisticsFile;
+    }
+
+    public void setProcessStatisticsFile(File processStatisticsFile) {
+        this.processStatisticsFile = Optional.of(processStatisticsFile);
+    }
+
+    /**
+     * @return <code>true</code> if the snapshots are processed by a {@link SnapshotPipeline}
+     */
+    public boolean isPipeline() {
+        return pipeline;
+    }
+
+    public void setPipeline(boolean pipeline) {
+        this.pipeline = pipeline;
+    }
+
+    public int getPipelineStageThreads(PipelineStage stage) {
+        Integer result = pipelineStageThreads.get(stage);
+        return (result != null) ? result : stage.defaultNumberOfThreads(this);
+    }
+
+    public void setPipelineStageThreads(PipelineStage stage, int numThreads) {
+        this.pipelineStageThreads.put(stage, numThreads);
+    }
+
+    public int getPipelineQueueSize() {
+        return pipelineQueueSize;
+    }
+
+    public void setPipelineQueueSize(int pipelineQueueSize) {
+        this.pipelineQueueSize = pipelineQueueSize;
+    }
+
     @Override
     public void validateRepoDir() {
         ProjectInformationConfig.validateRepoDir(getRepoDir());
@@ -187,4 +513,12 @@ public class CreateSnapshotsConfig extends ProjectInformationConfig implements I
     public boolean isContinueCheckout() {
         return continueCheckout;
     }
+
+    public boolean isVerifyReuse() {
+        return verifyReuse;
+    }
+
+    public void setVerifyReuse(boolean verifyReuse) {
+        this.verifyReuse = verifyReuse;
+    }
 }
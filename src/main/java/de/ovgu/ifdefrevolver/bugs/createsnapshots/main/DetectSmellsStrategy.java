@@ -1,10 +1,12 @@
 package de.ovgu.ifdefrevolver.bugs.createsnapshots.main;
 
 import de.ovgu.ifdefrevolver.bugs.correlate.data.Snapshot;
-import de.ovgu.ifdefrevolver.bugs.createsnapshots.data.ISnapshot;
 import de.ovgu.ifdefrevolver.bugs.createsnapshots.data.Smell;
 import de.ovgu.ifdefrevolver.bugs.createsnapshots.input.FileFinder;
+import de.ovgu.ifdefrevolver.bugs.createsnapshots.input.FileNameMatcher;
 import de.ovgu.ifdefrevolver.bugs.createsnapshots.input.RevisionsCsvReader;
+import de.ovgu.ifdefrevolver.bugs.createsnapshots.process.ExternalCommand;
+import de.ovgu.ifdefrevolver.bugs.createsnapshots.process.ProcessScheduler;
 import de.ovgu.ifdefrevolver.bugs.minecommits.CommitsDistanceDb;
 import org.apache.log4j.Logger;
 
@@ -21,14 +23,18 @@ import java.util.List;
  */
 class DetectSmellsStrategy implements ISnapshotProcessingModeStrategy {
     private static Logger LOG = Logger.getLogger(DetectSmellsStrategy.class);
+    private static final FileNameMatcher CSV_FILE_MATCHER = FileNameMatcher.suffix(".csv");
+    private static final FileNameMatcher XML_FILE_MATCHER = FileNameMatcher.suffix(".xml");
     private RevisionsCsvReader revisionsCsvReader;
 
     private final CommitsDistanceDb commitsDb;
     private final CreateSnapshotsConfig conf;
+    private final ProcessScheduler processScheduler;
 
-    public DetectSmellsStrategy(CommitsDistanceDb commitsDb, CreateSnapshotsConfig conf) {
+    public DetectSmellsStrategy(CommitsDistanceDb commitsDb, CreateSnapshotsConfig conf, ProcessScheduler processScheduler) {
         this.commitsDb = commitsDb;
         this.conf = conf;
+        this.processScheduler = processScheduler;
     }
 
     @Override
@@ -48,11 +54,6 @@ class DetectSmellsStrategy implements ISnapshotProcessingModeStrategy {
         return false;
     }
 
-    @Override
-    public void setPreviousSnapshot(ISnapshot previousSnapshot) {
-        // Since we don't depend on the previous snapshot, there is nothing to do here.
-    }
-
     @Override
     public void ensureSnapshot(Snapshot currentSnapshot) {
         // The snapshot has already been created in a previous run in CHECKOUT
@@ -63,7 +64,7 @@ class DetectSmellsStrategy implements ISnapshotProcessingModeStrategy {
     public void processSnapshot(Snapshot currentSnapshot) {
         Date snapshotDate = currentSnapshot.getStartDate();
         File resultsDir = conf.snapshotResultsDirForDate(snapshotDate);
-        CreateSnapshots.runExternalCommand(CreateSnapshotsConfig.SKUNK_PROG, resultsDir, "--processed=.", "--config=" + conf.smellConfig());
+        processScheduler.run(new ExternalCommand(CreateSnapshotsConfig.SKUNK_PROG, resultsDir, "--processed=.", "--config=" + conf.smellConfig()));
         moveSnapshotSmellDetectionResults(currentSnapshot);
     }
 
@@ -81,7 +82,7 @@ class DetectSmellsStrategy implements ISnapshotProcessingModeStrategy {
 
     private void moveSnapshotSmellDetectionResults(Snapshot snapshot, File sourcePath, File smellResultsDir) {
         final String snapshotDateString = snapshot.getStartDateString();
-        List<File> filesFindCSV = FileFinder.find(sourcePath, "(.*\\.csv$)");
+        List<File> filesFindCSV = FileFinder.find(sourcePath, CSV_FILE_MATCHER);
         // Rename and move CSV files (smell severity)
         for (File f : filesFindCSV) {
             String fileName = f.getName();
@@ -103,7 +104,7 @@ class DetectSmellsStrategy implements ISnapshotProcessingModeStrategy {
 
         // Rename and move XML files (smell location)
         if (conf.getSmell() == Smell.LF) {
-            List<File> filesFindXML = FileFinder.find(sourcePath, "(.*\\.xml$)");
+            List<File> filesFindXML = FileFinder.find(sourcePath, XML_FILE_MATCHER);
             for (File f : filesFindXML) {
                 if (f.getName().contains(conf.smellModeFile())) {
                     File copyTo = new File(smellResultsDir, snapshotDateString + ".xml");
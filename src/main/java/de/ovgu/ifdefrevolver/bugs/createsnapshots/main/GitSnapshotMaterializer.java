@@ -0,0 +1,253 @@
+package de.ovgu.ifdefrevolver.bugs.createsnapshots.main;
+
+import de.ovgu.ifdefrevolver.bugs.correlate.data.Snapshot;
+import de.ovgu.ifdefrevolver.bugs.createsnapshots.data.BlobStore;
+import de.ovgu.ifdefrevolver.bugs.createsnapshots.data.SnapshotManifest;
+import de.ovgu.ifdefrevolver.bugs.createsnapshots.data.SnapshotManifest.FileStatus;
+import de.ovgu.ifdefrevolver.util.ThreadProcessor;
+import de.ovgu.ifdefrevolver.util.UncaughtWorkerThreadException;
+import org.apache.log4j.Logger;
+import org.eclipse.jgit.lib.FileMode;
+import org.eclipse.jgit.lib.ObjectId;
+import org.eclipse.jgit.lib.ObjectReader;
+import org.eclipse.jgit.lib.Repository;
+import org.eclipse.jgit.revwalk.RevWalk;
+import org.eclipse.jgit.treewalk.EmptyTreeIterator;
+import org.eclipse.jgit.treewalk.TreeWalk;
+
+import java.io.*;
+import java.util.*;
+import java.util.function.Function;
+import java.util.regex.Pattern;
+
+/**
+ * Writes the source files of a commit straight from GIT's object database into a directory.  Unlike <code>git
+ * checkout</code>, this neither needs nor touches a working tree, so the files of many commits can be written at the
+ * same time.
+ * <p>
+ * Files are first added to a {@link BlobStore}, unless they are already present, and then hard-linked into the target
+ * directory.  Thus, a file that occurs in many snapshots is written and stored only once.  Since files are shared
+ * between snapshots, they must never be modified in place.
+ * </p>
+ * <p>
+ * Each snapshot gets a {@link SnapshotManifest} listing its files and how they differ from the previous snapshot.  To
+ * this end, the tree of the previous snapshot's commit is compared to the current one.
+ * </p>
+ * <p>
+ * Blobs are written as they are stored in the repository, i.e., without applying checkout filters such as line ending
+ * conversion.  Symbolic links and submodules are skipped.
+ * </p>
+ */
+class GitSnapshotMaterializer {
+    private static final Logger LOG = Logger.getLogger(GitSnapshotMaterializer.class);
+
+    /**
+     * Names of the files that make up a snapshot.  These are the same files that were previously collected from a
+     * checkout with {@link de.ovgu.ifdefrevolver.bugs.createsnapshots.input.FileFinder}.
+     */
+    public static final Pattern C_FILE_NAME_PATTERN = Pattern.compile(".*\\.c", Pattern.CASE_INSENSITIVE);
+
+    private final Repository repo;
+    private final Pattern fileNamePattern;
+    private final BlobStore blobStore;
+
+    /**
+     * @param repo            The repository.  It is safe to call {@link #materialize} from several threads at once.
+     * @param fileNamePattern Pattern the name of a file (without directories) must match for the file to be written
+     * @param blobStore       Store that receives the contents of the files
+     */
+    public GitSnapshotMaterializer(Repository repo, Pattern fileNamePattern, BlobStore blobStore) {
+        this.repo = repo;
+        this.fileNamePattern = fileNamePattern;
+        this.blobStore = blobStore;
+    }
+
+    /**
+     * Number of files of a snapshot, by how they were produced
+     */
+    static class Stats {
+        int filesWritten = 0;
+        int filesReused = 0;
+        int filesDeleted = 0;
+    }
+
+    /**
+     * Writes the matching files of the given snapshots, using a pool of threads.
+     * <p>
+     * The files of a snapshot are written to a temporary directory first, which is renamed once all files have been
+     * written.  Thus, a target directory either holds all files of its snapshot or does not exist.
+     * </p>
+     *
+     * @param snapshotsInOrder     All snapshots, in processing order.  The previous snapshot of a snapshot is the one
+     *                             preceding it in this list.
+     * @param isUpToDate           Identifies the snapshots whose files already exist and need not be written
+     * @param sourceDirForSnapshot Directory receiving the files of a snapshot.  Any existing directory is replaced.
+     *                             The manifest is written to its parent directory.
+     * @param numThreads           Number of snapshots to write in parallel
+     */
+    public void materializeAll(final List<Snapshot> snapshotsInOrder, Function<Snapshot, Boolean> isUpToDate,
+                               final Function<Snapshot, File> sourceDirForSnapshot, int numThreads) {
+        List<Integer> pending = new ArrayList<>();
+        for (int i = 0; i < snapshotsInOrder.size(); i++) {
+            if (!isUpToDate.apply(snapshotsInOrder.get(i))) pending.add(i);
+        }
+        final int total = pending.size();
+        if (total == 0) return;
+        LOG.info("Writing the files of " + total + " snapshot(s) from the GIT object database using "
+                + numThreads + " thread(s).");
+        final long startTime = System.currentTimeMillis();
+        ThreadProcessor<Integer> processor = new ThreadProcessor<Integer>() {
+            @Override
+            protected void processItem(Integer i) {
+                final Snapshot snapshot = snapshotsInOrder.get(i);
+                Optional<Snapshot> previousSnapshot = Optional.empty();
+                if (i > 0) {
+                    previousSnapshot = Optional.of(snapshotsInOrder.get(i - 1));
+                }
+                materializeSnapshot(snapshot, previousSnapshot, sourceDirForSnapshot.apply(snapshot));
+            }
+        };
+        try {
+            processor.processItems(pending.iterator(), numThreads);
+        } catch (UncaughtWorkerThreadException e) {
+            throw new RuntimeException("Error writing the files of a snapshot.", e);
+        }
+        LOG.info("Writing the files of " + total + " snapshot(s) took "
+                + (System.currentTimeMillis() - startTime) + " ms.");
+    }
+
+    /**
+     * Writes the matching files of a single snapshot.  Like {@link #materializeAll}, the files are written to a
+     * temporary directory first, which then replaces the target directory.
+     *
+     * @param snapshot         The snapshot to write
+     * @param previousSnapshot The snapshot preceding it in processing order, if any.  Its files need not have been
+     *                         written.
+     * @param targetDir        Directory receiving the files of the snapshot.  The manifest is written to its parent
+     *                         directory.
+     */
+    public void materializeSnapshot(Snapshot snapshot, Optional<Snapshot> previousSnapshot, File targetDir) {
+        Optional<String> previousCommitHash = previousSnapshot.map(p -> p.getStartCommit().commitHash);
+        Stats stats = materializeReplacing(snapshot.getStartCommit().commitHash, targetDir, previousCommitHash);
+        LOG.info(String.format("Wrote snapshot %s to %s: %d file(s) written, %d reused from the store, "
+                        + "%d deleted", snapshot.getStartDateString(), targetDir.getAbsolutePath(),
+                stats.filesWritten, stats.filesReused, stats.filesDeleted));
+    }
+
+    /**
+     * Writes the files and the manifest of a snapshot to temporary locations and then moves them into place.  The old
+     * manifest is removed before the old directory, and the new manifest is moved into place after the new directory.
+     * Thus, whenever a manifest exists, it describes the directory next to it, even if the process is interrupted.
+     */
+    private Stats materializeReplacing(String commitHash, File targetDir, Optional<String> previousCommitHash) {
+        final File snapshotDir = targetDir.getParentFile();
+        final File tmpDir = new File(snapshotDir, targetDir.getName() + ".tmp");
+        final File manifestFile = SnapshotManifest.manifestFile(snapshotDir);
+        final File tmpManifestFile = new File(snapshotDir, manifestFile.getName() + ".tmp");
+        deleteDirIfExists(tmpDir);
+        if (!tmpDir.mkdirs()) {
+            throw new RuntimeException("Failed to create directory " + tmpDir.getAbsolutePath());
+        }
+        List<SnapshotManifest.Entry> manifestEntries = new ArrayList<>();
+        final Stats stats = materialize(commitHash, tmpDir, previousCommitHash, manifestEntries);
+        new SnapshotManifest(manifestEntries).write(tmpManifestFile);
+
+        deleteFileIfExists(manifestFile);
+        deleteDirIfExists(targetDir);
+        if (!tmpDir.renameTo(targetDir)) {
+            throw new RuntimeException("Failed to rename " + tmpDir.getAbsolutePath() + " to "
+                    + targetDir.getAbsolutePath());
+        }
+        if (!tmpManifestFile.renameTo(manifestFile)) {
+            throw new RuntimeException("Failed to rename " + tmpManifestFile.getAbsolutePath() + " to "
+                    + manifestFile.getAbsolutePath());
+        }
+        return stats;
+    }
+
+    private static void deleteFileIfExists(File file) {
+        if (file.exists() && !file.delete()) {
+            throw new RuntimeException("Failed to delete " + file.getAbsolutePath());
+        }
+    }
+
+    private static void deleteDirIfExists(File dir) {
+        if (!dir.exists()) return;
+        try {
+            org.apache.commons.io.FileUtils.deleteDirectory(dir);
+        } catch (IOException e) {
+            throw new RuntimeException("Failed to delete directory " + dir.getAbsolutePath(), e);
+        }
+    }
+
+    /**
+     * Writes the matching files of a commit to a directory.  Paths below the directory mirror the paths in the
+     * repository.
+     *
+     * @param commitHash         Hash of the commit
+     * @param targetDir          Directory receiving the files.  It is created if it does not exist.
+     * @param previousCommitHash Hash of the commit of the previous snapshot, if any.  Files are compared to this
+     *                           commit.
+     * @param manifestEntries    Receives one entry per file
+     * @return What was done
+     */
+    public Stats materialize(String commitHash, File targetDir, Optional<String> previousCommitHash,
+                             List<SnapshotManifest.Entry> manifestEntries) {
+        ObjectReader reader = repo.newObjectReader();
+        RevWalk rw = new RevWalk(reader);
+        TreeWalk tw = new TreeWalk(reader);
+        final Stats stats = new Stats();
+        try {
+            if (previousCommitHash.isPresent()) {
+                tw.addTree(rw.parseCommit(ObjectId.fromString(previousCommitHash.get())).getTree());
+            } else {
+                tw.addTree(new EmptyTreeIterator());
+            }
+            tw.addTree(rw.parseCommit(ObjectId.fromString(commitHash)).getTree());
+            tw.setRecursive(true);
+            while (tw.next()) {
+                if (!fileNamePattern.matcher(tw.getNameString()).matches()) continue;
+                final boolean inPrevious = isRegularFile(tw.getFileMode(0));
+                final boolean inCurrent = isRegularFile(tw.getFileMode(1));
+                final String path = tw.getPathString();
+                if (!inCurrent) {
+                    if (inPrevious) {
+                        manifestEntries.add(new SnapshotManifest.Entry(path, tw.getObjectId(0).name(),
+                                FileStatus.DELETED));
+                        stats.filesDeleted++;
+                    }
+                    continue;
+                }
+                final ObjectId blobId = tw.getObjectId(1);
+                final File targetFile = new File(targetDir, path);
+                final FileStatus status;
+                if (!inPrevious) {
+                    status = FileStatus.ADDED;
+                } else if (blobId.equals(tw.getObjectId(0))) {
+                    status = FileStatus.UNCHANGED;
+                } else {
+                    status = FileStatus.MODIFIED;
+                }
+                manifestEntries.add(new SnapshotManifest.Entry(path, blobId.name(), status));
+                if (blobStore.putBlobIfAbsent(blobId.name(), out -> reader.open(blobId).copyTo(out))) {
+                    stats.filesWritten++;
+                } else {
+                    stats.filesReused++;
+                }
+                blobStore.checkOut(blobStore.blobFile(blobId.name()), targetFile);
+            }
+            return stats;
+        } catch (IOException e) {
+            throw new RuntimeException("Error writing the files of commit " + commitHash + " to "
+                    + targetDir.getAbsolutePath(), e);
+        } finally {
+            tw.release();
+            rw.release();
+            reader.release();
+        }
+    }
+
+    private static boolean isRegularFile(FileMode mode) {
+        return (mode == FileMode.REGULAR_FILE) || (mode == FileMode.EXECUTABLE_FILE);
+    }
+}
@@ -1,7 +1,6 @@
 package de.ovgu.ifdefrevolver.bugs.createsnapshots.main;
 
 import de.ovgu.ifdefrevolver.bugs.correlate.data.Snapshot;
-import de.ovgu.ifdefrevolver.bugs.createsnapshots.data.ISnapshot;
 
 import java.util.Collection;
 
@@ -32,8 +31,6 @@ interface ISnapshotProcessingModeStrategy {
 
     boolean isCurrentSnapshotDependentOnPreviousSnapshot();
 
-    void setPreviousSnapshot(ISnapshot previousSnapshot);
-
     void readAllRevisionsAndComputeSnapshots();
 
     Collection<Snapshot> getSnapshotsToProcess();
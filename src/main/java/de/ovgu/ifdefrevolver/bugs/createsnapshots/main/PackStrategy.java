@@ -0,0 +1,123 @@
+package de.ovgu.ifdefrevolver.bugs.createsnapshots.main;
+
+import de.ovgu.ifdefrevolver.bugs.correlate.data.Snapshot;
+import de.ovgu.ifdefrevolver.bugs.createsnapshots.data.SnapshotArchive;
+import de.ovgu.ifdefrevolver.bugs.createsnapshots.input.RevisionsCsvReader;
+import de.ovgu.ifdefrevolver.bugs.minecommits.CommitsDistanceDb;
+import org.apache.log4j.Logger;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.List;
+
+/**
+ * Packs the source files of each snapshot and the files cppstats created from them into a single {@link
+ * SnapshotArchive} and deletes the original directories.  Programs reading the snapshots via {@link
+ * de.ovgu.ifdefrevolver.bugs.createsnapshots.input.VirtualFileSystem} continue to work on packed snapshots.
+ * <p>
+ * cppstats and Skunk cannot read packed snapshots.  Hence, snapshots should only be packed after Skunk has
+ * preprocessed them.  Also, later snapshots written by older versions of this tool are prepared from their
+ * predecessors, so all snapshots should have been checked out before any are packed.</p>
+ */
+class PackStrategy implements ISnapshotProcessingModeStrategy {
+    private static Logger LOG = Logger.getLogger(PackStrategy.class);
+
+    /**
+     * Directories of a snapshot that are packed
+     */
+    static final List<String> PACKED_DIRS = Arrays.asList("source", "_cppstats", "_cppstats_featurelocations");
+
+    private RevisionsCsvReader revisionsCsvReader;
+
+    private final CreateSnapshotsConfig conf;
+    private final CommitsDistanceDb commitsDb;
+
+    public PackStrategy(CommitsDistanceDb commitsDb, CreateSnapshotsConfig conf) {
+        this.commitsDb = commitsDb;
+        this.conf = conf;
+    }
+
+    @Override
+    public void readAllRevisionsAndComputeSnapshots() {
+        this.revisionsCsvReader = new RevisionsCsvReader(commitsDb, conf.revisionCsvFile());
+        this.revisionsCsvReader.readCommitsThatModifyCFiles();
+        this.revisionsCsvReader.readPrecomputedSnapshots(conf);
+    }
+
+    @Override
+    public Collection<Snapshot> getSnapshotsToProcess() {
+        return this.revisionsCsvReader.getSnapshotsFiltered(conf);
+    }
+
+    @Override
+    public boolean snapshotAlreadyProcessed(Snapshot snapshot) {
+        File snapshotDir = conf.snapshotDirForDate(snapshot.getStartDate());
+        if (!new File(snapshotDir, SnapshotArchive.FILE_NAME).isFile()) return false;
+        for (String dirName : PACKED_DIRS) {
+            if (new File(snapshotDir, dirName).exists()) return false;
+        }
+        return true;
+    }
+
+    @Override
+    public boolean isCurrentSnapshotDependentOnPreviousSnapshot() {
+        return false;
+    }
+
+    @Override
+    public void ensureSnapshot(Snapshot currentSnapshot) {
+        // The snapshot has already been created in a previous run in CHECKOUT
+        // mode --> Nothing to do.
+    }
+
+    @Override
+    public void processSnapshot(Snapshot currentSnapshot) {
+        File snapshotDir = conf.snapshotDirForDate(currentSnapshot.getStartDate());
+        final File archiveFile = new File(snapshotDir, SnapshotArchive.FILE_NAME);
+        final int numFiles;
+        if (archiveFile.isFile()) {
+            // A previous run wrote the archive but was interrupted while deleting the packed directories.  The
+            // archive is complete, whereas the directories may not be, so we only check what is left against the
+            // archive.
+            try (SnapshotArchive archive = SnapshotArchive.open(archiveFile)) {
+                int numLeft = archive.verifyHoldsFilesOnDisk(PACKED_DIRS);
+                LOG.info("Archive " + archiveFile + " already exists. Deleting the " + numLeft
+                        + " file(s) left in the packed directories of snapshot " + currentSnapshot + ".");
+                numFiles = archive.size();
+            } catch (IOException e) {
+                throw new RuntimeException("Error closing archive " + archiveFile.getAbsolutePath(), e);
+            }
+        } else {
+            if (!new File(snapshotDir, "source").isDirectory()) {
+                throw new RuntimeException("Cannot pack snapshot " + currentSnapshot
+                        + ": source directory missing in " + snapshotDir.getAbsolutePath());
+            }
+            numFiles = SnapshotArchive.pack(snapshotDir, PACKED_DIRS);
+            try (SnapshotArchive archive = SnapshotArchive.open(archiveFile)) {
+                archive.verifyHoldsAllFiles(PACKED_DIRS);
+            } catch (IOException e) {
+                throw new RuntimeException("Error closing archive " + archiveFile.getAbsolutePath(), e);
+            }
+        }
+
+        for (String dirName : PACKED_DIRS) {
+            File dir = new File(snapshotDir, dirName);
+            try {
+                org.apache.commons.io.FileUtils.deleteDirectory(dir);
+            } catch (IOException e) {
+                throw new RuntimeException("Error deleting packed directory " + dir.getAbsolutePath(), e);
+            }
+        }
+        // Obsolete once the _cppstats directory is gone
+        new File(snapshotDir, Snapshot.SRCML_C_FILES_CACHE_NAME).delete();
+        LOG.info("Packed " + numFiles + " file(s) of snapshot " + currentSnapshot + " into " + archiveFile + " ("
+                + archiveFile.length() + " bytes).");
+    }
+
+    @Override
+    public String activityDisplayName() {
+        return "Packing snapshot sources and cppstats files";
+    }
+}
@@ -0,0 +1,58 @@
+package de.ovgu.ifdefrevolver.bugs.createsnapshots.main;
+
+/**
+ * Stages of the {@link SnapshotPipeline} run by <code>--checkout --pipeline</code>, in processing order
+ */
+enum PipelineStage {
+    /**
+     * Write the source files of a snapshot from the GIT object database.  Mostly I/O.
+     */
+    WRITE_SOURCES("Writing sources", false, 2),
+    /**
+     * Run cppstats on the source files
+     */
+    CPPSTATS("Running cppstats", true, 0),
+    /**
+     * Run Skunk to create its intermediate files from the output of cppstats
+     */
+    PREPROCESS("Preprocessing with Skunk", true,
+            SnapshotProcessingMode.PREPROCESS.defaultNumberOfWorkerThreads()),
+    /**
+     * Run Skunk to detect the requested smell.  Only part of the pipeline if a smell was requested.
+     */
+    DETECT_SMELLS("Detecting smells", true,
+            SnapshotProcessingMode.DETECTSMELLS.defaultNumberOfWorkerThreads());
+
+    public final String displayName;
+    /**
+     * Whether the stage runs external programs, whose number is limited by the {@link
+     * de.ovgu.ifdefrevolver.bugs.createsnapshots.process.ProcessScheduler}
+     */
+    public final boolean runsExternalPrograms;
+
+    /**
+     * <code>0</code> means: use the number of worker threads of the regular <code>--checkout</code> mode
+     */
+    private final int defaultNumberOfThreads;
+
+    PipelineStage(String displayName, boolean runsExternalPrograms, int defaultNumberOfThreads) {
+        this.displayName = displayName;
+        this.runsExternalPrograms = runsExternalPrograms;
+        this.defaultNumberOfThreads = defaultNumberOfThreads;
+    }
+
+    /**
+     * @param conf Configuration providing the number of worker threads of the regular <code>--checkout</code> mode
+     * @return Number of worker threads of this stage if the user does not specify any
+     */
+    public int defaultNumberOfThreads(CreateSnapshotsConfig conf) {
+        return (defaultNumberOfThreads > 0) ? defaultNumberOfThreads : conf.getNumberOfWorkerThreads();
+    }
+
+    /**
+     * @return The default number of worker threads for the help text
+     */
+    public String defaultNumberOfThreadsDescription() {
+        return (defaultNumberOfThreads > 0) ? String.valueOf(defaultNumberOfThreads) : "<threads>";
+    }
+}
@@ -1,8 +1,9 @@
 package de.ovgu.ifdefrevolver.bugs.createsnapshots.main;
 
 import de.ovgu.ifdefrevolver.bugs.correlate.data.Snapshot;
-import de.ovgu.ifdefrevolver.bugs.createsnapshots.data.ISnapshot;
 import de.ovgu.ifdefrevolver.bugs.createsnapshots.input.RevisionsCsvReader;
+import de.ovgu.ifdefrevolver.bugs.createsnapshots.process.ExternalCommand;
+import de.ovgu.ifdefrevolver.bugs.createsnapshots.process.ProcessScheduler;
 import de.ovgu.ifdefrevolver.bugs.minecommits.CommitsDistanceDb;
 import de.ovgu.ifdefrevolver.util.FileUtils;
 import org.apache.log4j.Logger;
@@ -20,11 +21,13 @@ class PreprocessStrategy implements ISnapshotProcessingModeStrategy {
     private RevisionsCsvReader revisionsCsvReader;
 
     private final CreateSnapshotsConfig conf;
+    private final ProcessScheduler processScheduler;
     private final CommitsDistanceDb commitsDb;
 
-    public PreprocessStrategy(CommitsDistanceDb commitsDb, CreateSnapshotsConfig conf) {
+    public PreprocessStrategy(CommitsDistanceDb commitsDb, CreateSnapshotsConfig conf, ProcessScheduler processScheduler) {
         this.commitsDb = commitsDb;
         this.conf = conf;
+        this.processScheduler = processScheduler;
     }
 
     @Override
@@ -56,11 +59,6 @@ class PreprocessStrategy implements ISnapshotProcessingModeStrategy {
         return false;
     }
 
-    @Override
-    public void setPreviousSnapshot(ISnapshot previousSnapshot) {
-        // Since we don't depend on the previous snapshot, there is nothing to do here.
-    }
-
     @Override
     public void ensureSnapshot(Snapshot currentSnapshot) {
         // The snapshot has already been created in a previous run in CHECKOUT
@@ -78,7 +76,7 @@ class PreprocessStrategy implements ISnapshotProcessingModeStrategy {
                 throw new RuntimeException("Error creating directory or one of its parents: " + workingDir);
             }
         }
-        CreateSnapshots.runExternalCommand(CreateSnapshotsConfig.SKUNK_PROG, workingDir, "--source=" + snapshotDir.getAbsolutePath(), "--save-intermediate");
+        processScheduler.run(new ExternalCommand(CreateSnapshotsConfig.SKUNK_PROG, workingDir, "--source=" + snapshotDir.getAbsolutePath(), "--save-intermediate"));
     }
 
     @Override
@@ -0,0 +1,298 @@
+package de.ovgu.ifdefrevolver.bugs.createsnapshots.main;
+
+import de.ovgu.ifdefrevolver.bugs.correlate.data.Snapshot;
+import org.apache.log4j.Logger;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.BiConsumer;
+
+/**
+ * Passes snapshots through a sequence of stages, such as writing the source files, running cppstats and running Skunk.
+ * Each stage has its own worker threads.  Consecutive stages are connected by bounded queues.  Thus, later stages work
+ * on some snapshots while earlier stages already work on the next ones, and a fast stage cannot run far ahead of a
+ * slow one.
+ * <p>
+ * A snapshot that fails in one stage is reported to the error handler and is not passed on to later stages.  Once all
+ * snapshots have passed through, the throughput of each stage is logged, together with the fraction of time its
+ * threads spent waiting for input and waiting for room in the next queue.  The threads of a stage after a bottleneck
+ * mostly wait for input; the threads of a stage before a bottleneck are mostly blocked on output.</p>
+ */
+class SnapshotPipeline {
+    private static final Logger LOG = Logger.getLogger(SnapshotPipeline.class);
+
+    /**
+     * What a stage does with a snapshot
+     */
+    interface StageAction {
+        /**
+         * @param snapshot The snapshot to process
+         * @return <code>true</code> if the snapshot was processed, <code>false</code> if there was nothing to do,
+         * e.g., because the results of a previous run are still there
+         */
+        boolean process(Snapshot snapshot);
+    }
+
+    /**
+     * A snapshot travelling through the queues.  {@link #END} tells the threads of a stage that there are no more
+     * snapshots.
+     */
+    private static final class Item {
+        final Snapshot snapshot;
+
+        Item(Snapshot snapshot) {
+            this.snapshot = snapshot;
+        }
+    }
+
+    private static final Item END = new Item(null);
+
+    private static final class Stage {
+        final String name;
+        final int numThreads;
+        final StageAction action;
+        BlockingQueue<Item> input;
+        BlockingQueue<Item> output;
+        final AtomicInteger activeThreads;
+        final AtomicInteger progressCounter = new AtomicInteger(0);
+
+        int numProcessed = 0;
+        int numSkipped = 0;
+        int numFailed = 0;
+        long busyNanos = 0;
+        long inputWaitNanos = 0;
+        long outputWaitNanos = 0;
+        long endNanos = 0;
+
+        Stage(String name, int numThreads, StageAction action) {
+            this.name = name;
+            this.numThreads = numThreads;
+            this.action = action;
+            this.activeThreads = new AtomicInteger(numThreads);
+        }
+    }
+
+    private final int queueCapacity;
+    private final BiConsumer<Snapshot, Throwable> errorHandler;
+    private final List<Stage> stages = new ArrayList<>();
+    private long startNanos;
+    private int totalNumberOfSnapshots;
+
+    /**
+     * @param queueCapacity Number of snapshots that may wait between two consecutive stages
+     * @param errorHandler  Receives the snapshots that fail in any of the stages
+     */
+    public SnapshotPipeline(int queueCapacity, BiConsumer<Snapshot, Throwable> errorHandler) {
+        if (queueCapacity < 1) {
+            throw new IllegalArgumentException("Queue capacity must be at least 1, got " + queueCapacity);
+        }
+        this.queueCapacity = queueCapacity;
+        this.errorHandler = errorHandler;
+    }
+
+    /**
+     * Appends a stage to the pipeline.  Stages must be added before {@link #run(Collection)} is called.
+     *
+     * @param name       Name of the stage, used in log messages
+     * @param numThreads Number of snapshots the stage processes at the same time
+     * @param action     What the stage does with each snapshot.  Exceptions are passed to the error handler.
+     */
+    public void addStage(String name, int numThreads, StageAction action) {
+        if (numThreads < 1) {
+            throw new IllegalArgumentException("Number of threads of stage " + name + " must be at least 1, got "
+                    + numThreads);
+        }
+        stages.add(new Stage(name, numThreads, action));
+    }
+
+    /**
+     * Passes the given snapshots through all stages and waits until every snapshot has either passed the last stage or
+     * failed.  Afterwards, the statistics of each stage are logged.
+     *
+     * @param snapshots Snapshots in the order in which the first stage should take them
+     */
+    public void run(Collection<Snapshot> snapshots) {
+        if (stages.isEmpty()) {
+            throw new IllegalStateException("Pipeline has no stages.");
+        }
+        this.totalNumberOfSnapshots = snapshots.size();
+
+        // The first stage takes its input from a queue that holds all snapshots from the start.
+        BlockingQueue<Item> firstQueue = new LinkedBlockingQueue<>();
+        for (Snapshot s : snapshots) {
+            firstQueue.add(new Item(s));
+        }
+        firstQueue.add(END);
+
+        BlockingQueue<Item> nextInput = firstQueue;
+        for (int i = 0; i < stages.size(); i++) {
+            Stage stage = stages.get(i);
+            stage.input = nextInput;
+            if (i < stages.size() - 1) {
+                stage.output = new ArrayBlockingQueue<>(queueCapacity);
+                nextInput = stage.output;
+            }
+        }
+
+        List<Thread> workers = new ArrayList<>();
+        StringBuilder threadCounts = new StringBuilder();
+        for (Stage stage : stages) {
+            for (int i = 1; i <= stage.numThreads; i++) {
+                workers.add(new Thread(() -> work(stage), stage.name + " #" + i));
+            }
+            if (threadCounts.length() > 0) threadCounts.append(", ");
+            threadCounts.append(stage.name).append(": ").append(stage.numThreads);
+        }
+        LOG.info("Processing " + totalNumberOfSnapshots + " snapshot(s) in a pipeline of " + stages.size()
+                + " stage(s). Threads per stage: " + threadCounts + ". Queue capacity between stages: "
+                + queueCapacity + ".");
+
+        this.startNanos = System.nanoTime();
+        for (Thread t : workers) {
+            t.start();
+        }
+        for (Thread t : workers) {
+            try {
+                t.join();
+            } catch (InterruptedException e) {
+                LOG.warn("Interrupted while waiting for pipeline thread to finish.", e);
+            }
+        }
+        logStatistics();
+    }
+
+    private void work(Stage stage) {
+        try {
+            while (true) {
+                final long waitStart = System.nanoTime();
+                final Item item = take(stage.input);
+                final long processingStart = System.nanoTime();
+                if (item == END) {
+                    // Let the other threads of this stage see the end marker, too.
+                    put(stage.input, END);
+                    synchronized (stage) {
+                        stage.inputWaitNanos += processingStart - waitStart;
+                    }
+                    break;
+                }
+
+                final Snapshot snapshot = item.snapshot;
+                final int myProgressPosition = stage.progressCounter.incrementAndGet();
+                LOG.info(stage.name + " on snapshot " + myProgressPosition + "/" + totalNumberOfSnapshots + ": "
+                        + snapshot);
+                boolean processed = false;
+                boolean failed = false;
+                try {
+                    processed = stage.action.process(snapshot);
+                } catch (Throwable t) {
+                    failed = true;
+                    errorHandler.accept(snapshot, t);
+                }
+                final long processingEnd = System.nanoTime();
+                if (!processed && !failed) {
+                    LOG.info(stage.name + " skipped on " + snapshot + ": snapshot already processed.");
+                }
+
+                long outputWait = 0;
+                if (!failed && (stage.output != null)) {
+                    put(stage.output, item);
+                    outputWait = System.nanoTime() - processingEnd;
+                }
+
+                synchronized (stage) {
+                    stage.inputWaitNanos += processingStart - waitStart;
+                    stage.busyNanos += processingEnd - processingStart;
+                    stage.outputWaitNanos += outputWait;
+                    if (failed) stage.numFailed++;
+                    else if (processed) stage.numProcessed++;
+                    else stage.numSkipped++;
+                }
+                if (LOG.isDebugEnabled()) {
+                    LOG.debug(queueStatus());
+                }
+            }
+        } finally {
+            if (stage.activeThreads.decrementAndGet() == 0) {
+                synchronized (stage) {
+                    stage.endNanos = System.nanoTime();
+                }
+                if (stage.output != null) {
+                    put(stage.output, END);
+                }
+            }
+        }
+    }
+
+    /**
+     * Takes from a queue, even if interrupted, since a lost snapshot or end marker would stall the pipeline.  The
+     * interrupted status is restored afterwards.
+     */
+    private static Item take(BlockingQueue<Item> queue) {
+        boolean interrupted = false;
+        try {
+            while (true) {
+                try {
+                    return queue.take();
+                } catch (InterruptedException e) {
+                    interrupted = true;
+                }
+            }
+        } finally {
+            if (interrupted) Thread.currentThread().interrupt();
+        }
+    }
+
+    private static void put(BlockingQueue<Item> queue, Item item) {
+        boolean interrupted = false;
+        try {
+            while (true) {
+                try {
+                    queue.put(item);
+                    return;
+                } catch (InterruptedException e) {
+                    interrupted = true;
+                }
+            }
+        } finally {
+            if (interrupted) Thread.currentThread().interrupt();
+        }
+    }
+
+    private String queueStatus() {
+        StringBuilder sb = new StringBuilder("Snapshots waiting before stage:");
+        for (Stage stage : stages) {
+            int waiting = stage.input.size();
+            if (stage.input.contains(END)) waiting--;
+            sb.append(" ").append(stage.name).append("=").append(waiting);
+        }
+        return sb.toString();
+    }
+
+    private void logStatistics() {
+        final long pipelineEndNanos = System.nanoTime();
+        LOG.info("Pipeline finished after " + formatSeconds(pipelineEndNanos - startNanos) + " s.");
+        for (Stage stage : stages) {
+            synchronized (stage) {
+                final long stageNanos = Math.max(1, stage.endNanos - startNanos);
+                final double threadNanos = (double) stageNanos * stage.numThreads;
+                final double perMinute = stage.numProcessed / (stageNanos / (double) TimeUnit.MINUTES.toNanos(1));
+                LOG.info(String.format("Stage %s: %d snapshot(s) processed, %d skipped, %d failed in %s s"
+                                + " (%.2f snapshots/min). Threads busy %.0f%%, waiting for input %.0f%%,"
+                                + " blocked on output %.0f%% of the time.",
+                        stage.name, stage.numProcessed, stage.numSkipped, stage.numFailed,
+                        formatSeconds(stageNanos), perMinute, 100.0 * stage.busyNanos / threadNanos,
+                        100.0 * stage.inputWaitNanos / threadNanos, 100.0 * stage.outputWaitNanos / threadNanos));
+            }
+        }
+    }
+
+    private static String formatSeconds(long nanos) {
+        return String.format("%.1f", nanos / (double) TimeUnit.SECONDS.toNanos(1));
+    }
+}
@@ -1,20 +1,26 @@
 package de.ovgu.ifdefrevolver.bugs.createsnapshots.main;
 
 import de.ovgu.ifdefrevolver.bugs.correlate.main.SnapshotDirMissingStrategy;
+import de.ovgu.ifdefrevolver.bugs.createsnapshots.process.ProcessScheduler;
 import de.ovgu.ifdefrevolver.bugs.minecommits.CommitsDistanceDb;
 
 /**
  * Controls what is to be done with a project, i.e., check it out and create snapshots, preprocess its snapshots, detect
- * smells
+ * smells, pack its snapshots
  * <p>
  * Created by wfenske on 06.04.17.
  */
 public enum SnapshotProcessingMode {
 
-    CHECKOUT(1) {
+    /**
+     * The worker threads write the source files of the snapshots and run cppstats on them.  Snapshots written by
+     * older versions are processed one after the other.
+     */
+    CHECKOUT(4) {
         @Override
-        public ISnapshotProcessingModeStrategy getNewStrategyInstance(CommitsDistanceDb commitsDb, CreateSnapshotsConfig conf) {
-            return new CheckoutStrategy(commitsDb, conf);
+        public ISnapshotProcessingModeStrategy getNewStrategyInstance(CommitsDistanceDb commitsDb, CreateSnapshotsConfig conf,
+                                                                      ProcessScheduler processScheduler) {
+            return new CheckoutStrategy(commitsDb, conf, processScheduler);
         }
 
         @Override
@@ -25,15 +31,28 @@ public enum SnapshotProcessingMode {
 
     PREPROCESS(2) {
         @Override
-        public ISnapshotProcessingModeStrategy getNewStrategyInstance(CommitsDistanceDb commitsDb, CreateSnapshotsConfig conf) {
-            return new PreprocessStrategy(commitsDb, conf);
+        public ISnapshotProcessingModeStrategy getNewStrategyInstance(CommitsDistanceDb commitsDb, CreateSnapshotsConfig conf,
+                                                                      ProcessScheduler processScheduler) {
+            return new PreprocessStrategy(commitsDb, conf, processScheduler);
         }
     },
 
     DETECTSMELLS(4) {
         @Override
-        public ISnapshotProcessingModeStrategy getNewStrategyInstance(CommitsDistanceDb commitsDb, CreateSnapshotsConfig conf) {
-            return new DetectSmellsStrategy(commitsDb, conf);
+        public ISnapshotProcessingModeStrategy getNewStrategyInstance(CommitsDistanceDb commitsDb, CreateSnapshotsConfig conf,
+                                                                      ProcessScheduler processScheduler) {
+            return new DetectSmellsStrategy(commitsDb, conf, processScheduler);
+        }
+    },
+
+    /**
+     * Pack the sources and cppstats files of each snapshot into a single archive.  Mostly I/O.
+     */
+    PACK(4) {
+        @Override
+        public ISnapshotProcessingModeStrategy getNewStrategyInstance(CommitsDistanceDb commitsDb, CreateSnapshotsConfig conf,
+                                                                      ProcessScheduler processScheduler) {
+            return new PackStrategy(commitsDb, conf);
         }
     };
 
@@ -43,7 +62,8 @@ public enum SnapshotProcessingMode {
 
     private final int defaultNumberOfWorkerThreads;
 
-    public abstract ISnapshotProcessingModeStrategy getNewStrategyInstance(CommitsDistanceDb commitsDb, CreateSnapshotsConfig conf);
+    public abstract ISnapshotProcessingModeStrategy getNewStrategyInstance(CommitsDistanceDb commitsDb, CreateSnapshotsConfig conf,
+                                                                           ProcessScheduler processScheduler);
 
     public int defaultNumberOfWorkerThreads() {
         return this.defaultNumberOfWorkerThreads;
@@ -0,0 +1,106 @@
+package de.ovgu.ifdefrevolver.bugs.createsnapshots.process;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Optional;
+
+/**
+ * An external program to be run by a {@link ProcessScheduler}, together with the policies that govern its execution.
+ * Policies that are not set on the command itself default to those of the scheduler.
+ */
+public class ExternalCommand {
+    private final String prog;
+    private final File workingDir;
+    private final List<String> args;
+    private Optional<Long> timeoutMillis = Optional.empty();
+    private Optional<Integer> maxAttempts = Optional.empty();
+    private Optional<Runnable> beforeRetry = Optional.empty();
+
+    public ExternalCommand(String prog, File workingDir, String... args) {
+        this.prog = prog;
+        this.workingDir = workingDir;
+        this.args = Collections.unmodifiableList(Arrays.asList(args));
+    }
+
+    public String getProg() {
+        return prog;
+    }
+
+    /**
+     * @return Name of the program without any directories, as used in log messages
+     */
+    public String getProgBasename() {
+        return new File(prog).getName();
+    }
+
+    public File getWorkingDir() {
+        return workingDir;
+    }
+
+    public List<String> getArgs() {
+        return args;
+    }
+
+    List<String> commandLine() {
+        List<String> result = new ArrayList<>(args.size() + 1);
+        result.add(prog);
+        result.addAll(args);
+        return result;
+    }
+
+    public Optional<Long> getTimeoutMillis() {
+        return timeoutMillis;
+    }
+
+    /**
+     * @param timeoutMillis Time after which the program and all processes it has started are killed.  <code>0</code>
+     *                      means no timeout.
+     */
+    public void setTimeoutMillis(long timeoutMillis) {
+        if (timeoutMillis < 0) {
+            throw new IllegalArgumentException("Timeout must not be negative, not " + timeoutMillis);
+        }
+        this.timeoutMillis = Optional.of(timeoutMillis);
+    }
+
+    public Optional<Integer> getMaxAttempts() {
+        return maxAttempts;
+    }
+
+    /**
+     * @param maxAttempts How often the program is run before giving up.  A program is run again if it exits with a
+     *                    non-zero exit code or times out.
+     */
+    public void setMaxAttempts(int maxAttempts) {
+        if (maxAttempts < 1) {
+            throw new IllegalArgumentException("Number of attempts must be positive, not " + maxAttempts);
+        }
+        this.maxAttempts = Optional.of(maxAttempts);
+    }
+
+    public Optional<Runnable> getBeforeRetry() {
+        return beforeRetry;
+    }
+
+    /**
+     * @param beforeRetry Called before the program is run again after a failed attempt, e.g., to remove the outputs of
+     *                    the failed attempt
+     */
+    public void setBeforeRetry(Runnable beforeRetry) {
+        this.beforeRetry = Optional.of(beforeRetry);
+    }
+
+    @Override
+    public String toString() {
+        StringBuilder sb = new StringBuilder();
+        sb.append("`").append(prog);
+        for (String arg : args) {
+            sb.append(' ').append(arg);
+        }
+        sb.append("' in directory ").append(workingDir.getAbsolutePath());
+        return sb.toString();
+    }
+}
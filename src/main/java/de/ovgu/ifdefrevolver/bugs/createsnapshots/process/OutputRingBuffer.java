@@ -0,0 +1,48 @@
+package de.ovgu.ifdefrevolver.bugs.createsnapshots.process;
+
+import java.util.ArrayDeque;
+import java.util.Deque;
+
+/**
+ * Keeps the last few lines a program has written to its standard output and error streams so that they can be
+ * reported if the program fails.  Both streams are written to the same buffer, in the order in which the lines were
+ * read.
+ */
+class OutputRingBuffer {
+    private final int capacity;
+    private final Deque<String> lines;
+    private int numDiscardedLines = 0;
+
+    /**
+     * @param capacity Number of lines to keep.  <code>0</code> disables the buffer.
+     */
+    public OutputRingBuffer(int capacity) {
+        this.capacity = capacity;
+        this.lines = new ArrayDeque<>(Math.min(capacity, 1024));
+    }
+
+    public synchronized void add(String line) {
+        if (capacity == 0) return;
+        if (lines.size() == capacity) {
+            lines.removeFirst();
+            numDiscardedLines++;
+        }
+        lines.addLast(line);
+    }
+
+    public synchronized boolean isEmpty() {
+        return lines.isEmpty();
+    }
+
+    @Override
+    public synchronized String toString() {
+        StringBuilder sb = new StringBuilder();
+        if (numDiscardedLines > 0) {
+            sb.append("[").append(numDiscardedLines).append(" earlier line(s) omitted]\n");
+        }
+        for (String line : lines) {
+            sb.append(line).append('\n');
+        }
+        return sb.toString();
+    }
+}
@@ -0,0 +1,309 @@
+package de.ovgu.ifdefrevolver.bugs.createsnapshots.process;
+
+import de.ovgu.ifdefrevolver.bugs.createsnapshots.process.ProcessStatistics.Outcome;
+import de.ovgu.skunk.detection.output.CsvFileWriterHelper;
+import de.ovgu.skunk.detection.output.CsvRowProvider;
+import org.apache.commons.csv.CSVPrinter;
+import org.apache.log4j.Logger;
+
+import java.io.*;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.*;
+
+/**
+ * Runs external programs, such as cppstats and Skunk, on behalf of several threads.
+ * <ul>
+ * <li>At most a fixed number of programs run at the same time.  Further requests wait for a slot.</li>
+ * <li>A program that exceeds its timeout is killed, together with all processes it has started.</li>
+ * <li>A program that fails or times out is run again, up to a maximum number of attempts.</li>
+ * <li>The output of a program is logged.  The last lines are kept and reported if the program ultimately fails.</li>
+ * <li>Wall time, CPU time and peak memory use of every attempt are recorded and can be written to a CSV file.</li>
+ * </ul>
+ * <p>
+ * CPU time and memory use are sampled from <code>/proc</code> and are only available on Linux.
+ * </p>
+ */
+public class ProcessScheduler {
+    private static final Logger LOG = Logger.getLogger(ProcessScheduler.class);
+
+    private static final long SAMPLING_INTERVAL_MILLIS = 250;
+
+    /**
+     * How long to wait for the remaining output of a program after it has exited.  Processes started by the program
+     * may keep its output streams open.
+     */
+    private static final long OUTPUT_DRAIN_TIMEOUT_MILLIS = 5000;
+
+    private final int maxConcurrentProcesses;
+    private final Semaphore slots;
+    private final long defaultTimeoutMillis;
+    private final int defaultMaxAttempts;
+    private final int outputLinesToKeep;
+    private final List<ProcessStatistics> statistics = new ArrayList<>();
+    private final ScheduledExecutorService sampler;
+
+    /**
+     * @param maxConcurrentProcesses Maximum number of programs running at the same time
+     * @param defaultTimeoutMillis   Timeout of commands that do not specify their own.  <code>0</code> means no
+     *                               timeout.
+     * @param defaultMaxAttempts     Number of attempts for commands that do not specify their own
+     * @param outputLinesToKeep      Number of output lines to report if a program fails
+     */
+    public ProcessScheduler(int maxConcurrentProcesses, long defaultTimeoutMillis, int defaultMaxAttempts,
+                            int outputLinesToKeep) {
+        this.maxConcurrentProcesses = maxConcurrentProcesses;
+        this.slots = new Semaphore(maxConcurrentProcesses, true);
+        this.defaultTimeoutMillis = defaultTimeoutMillis;
+        this.defaultMaxAttempts = defaultMaxAttempts;
+        this.outputLinesToKeep = outputLinesToKeep;
+        this.sampler = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread t = new Thread(r, "Process resource usage sampler");
+            t.setDaemon(true);
+            return t;
+        });
+        if (!ProcessTree.isSupported()) {
+            LOG.info("Resource usage of external programs is not available on this system. Timed-out programs will"
+                    + " be killed, but not the processes they have started.");
+        }
+    }
+
+    public int getMaxConcurrentProcesses() {
+        return maxConcurrentProcesses;
+    }
+
+    /**
+     * Runs a program and waits for it to finish successfully.
+     *
+     * @throws RuntimeException if the program cannot be started, or if it still fails after the maximum number of
+     *                          attempts
+     */
+    public void run(ExternalCommand command) {
+        final int maxAttempts = command.getMaxAttempts().orElse(defaultMaxAttempts);
+        final long timeoutMillis = command.getTimeoutMillis().orElse(defaultTimeoutMillis);
+        for (int attempt = 1; ; attempt++) {
+            final OutputRingBuffer output = new OutputRingBuffer(outputLinesToKeep);
+            final ProcessStatistics stats = runOnce(command, attempt, timeoutMillis, output);
+            synchronized (statistics) {
+                statistics.add(stats);
+            }
+            if (stats.outcome == Outcome.SUCCEEDED) {
+                LOG.debug("Executing " + command + " took " + stats.wallMillis + " ms");
+                return;
+            }
+
+            final String failure;
+            if (stats.outcome == Outcome.TIMED_OUT) {
+                failure = "Command " + command + " timed out after " + timeoutMillis + " ms";
+            } else {
+                failure = "Command " + command + " exited with non-zero exit code " + stats.exitCode;
+            }
+            if (attempt >= maxAttempts) {
+                if (output.isEmpty()) {
+                    throw new RuntimeException(failure);
+                } else {
+                    throw new RuntimeException(failure + ". Last output:\n" + output);
+                }
+            }
+            LOG.warn(failure + ". Retrying (attempt " + (attempt + 1) + " of " + maxAttempts + ").");
+            if (command.getBeforeRetry().isPresent()) {
+                command.getBeforeRetry().get().run();
+            }
+        }
+    }
+
+    private ProcessStatistics runOnce(ExternalCommand command, int attempt, long timeoutMillis,
+                                      OutputRingBuffer output) {
+        try {
+            slots.acquire();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new RuntimeException("Got interrupted while waiting to execute " + command, e);
+        }
+        try {
+            LOG.debug("Executing " + command + " ...");
+            ProcessBuilder pb = new ProcessBuilder(command.commandLine());
+            pb.directory(command.getWorkingDir());
+            final long startTime = System.currentTimeMillis();
+            final Process process;
+            try {
+                process = pb.start();
+            } catch (IOException e) {
+                throw new RuntimeException("Error executing " + command, e);
+            }
+
+            final Optional<Integer> pid = ProcessTree.pidOf(process);
+            final String progBasename = command.getProgBasename();
+            Thread stdoutPump = startOutputPump(process.getInputStream(), progBasename, " out", output);
+            Thread stderrPump = startOutputPump(process.getErrorStream(), progBasename, " err", output);
+            final ResourceUsage usage = new ResourceUsage();
+            ScheduledFuture<?> sampling = null;
+            if (pid.isPresent() && ProcessTree.isSupported()) {
+                sampling = sampler.scheduleAtFixedRate(() -> usage.update(ProcessTree.sample(pid.get())), 0,
+                        SAMPLING_INTERVAL_MILLIS, TimeUnit.MILLISECONDS);
+            }
+
+            boolean timedOut = false;
+            try {
+                if (timeoutMillis > 0) {
+                    if (!process.waitFor(timeoutMillis, TimeUnit.MILLISECONDS)) {
+                        timedOut = true;
+                        LOG.warn("Killing " + command + " after " + timeoutMillis + " ms");
+                        ProcessTree.kill(process, pid);
+                        process.waitFor();
+                    }
+                } else {
+                    process.waitFor();
+                }
+            } catch (InterruptedException e) {
+                ProcessTree.kill(process, pid);
+                Thread.currentThread().interrupt();
+                throw new RuntimeException("Got interrupted while executing " + command, e);
+            } finally {
+                if (sampling != null) sampling.cancel(false);
+                drainOutput(stdoutPump, process.getInputStream());
+                drainOutput(stderrPump, process.getErrorStream());
+            }
+
+            final long wallMillis = System.currentTimeMillis() - startTime;
+            final int exitCode = process.exitValue();
+            final Outcome outcome;
+            if (timedOut) {
+                outcome = Outcome.TIMED_OUT;
+            } else if (exitCode != 0) {
+                outcome = Outcome.FAILED;
+            } else {
+                outcome = Outcome.SUCCEEDED;
+            }
+            return usage.toStatistics(command, attempt, outcome, exitCode, wallMillis);
+        } finally {
+            slots.release();
+        }
+    }
+
+    private static Thread startOutputPump(final InputStream stream, String progBasename, String suffix,
+                                          final OutputRingBuffer output) {
+        final String logLinePrefix = "[" + progBasename + suffix + "] ";
+        Thread t = new Thread(() -> {
+            try (BufferedReader reader = new BufferedReader(new InputStreamReader(stream,
+                    Charset.defaultCharset()))) {
+                String line;
+                while ((line = reader.readLine()) != null) {
+                    output.add(logLinePrefix + line);
+                    logOutputLine(logLinePrefix, line);
+                }
+            } catch (IOException e) {
+                // Stream was closed after the program exited.
+                LOG.debug("Stopped reading output of " + progBasename + suffix, e);
+            }
+        }, "Output reader for " + progBasename + suffix);
+        t.setDaemon(true);
+        t.start();
+        return t;
+    }
+
+    private static void logOutputLine(String logLinePrefix, String line) {
+        if (line.contains("ERROR ")) {
+            LOG.error(logLinePrefix + line.replaceFirst("^.*ERROR ", ""));
+        } else if (line.contains("WARN ")) {
+            LOG.warn(logLinePrefix + line.replaceFirst("^.*WARN ", ""));
+        } else if (line.contains("INFO ")) {
+            LOG.info(logLinePrefix + line.replaceFirst("^.*INFO ", ""));
+        } else if (LOG.isDebugEnabled()) {
+            LOG.debug(logLinePrefix + line.replaceFirst("^.*DEBUG ", "").replaceFirst("^.*TRACE ", ""));
+        }
+    }
+
+    private static void drainOutput(Thread pump, InputStream stream) {
+        try {
+            pump.join(OUTPUT_DRAIN_TIMEOUT_MILLIS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        if (pump.isAlive()) {
+            try {
+                stream.close();
+            } catch (IOException e) {
+                // Don't care.
+            }
+        }
+    }
+
+    /**
+     * Highest values sampled while a program is running
+     */
+    private static class ResourceUsage {
+        private long cpuMillis = -1;
+        private long peakRssKb = -1;
+
+        synchronized void update(Optional<ProcessTree.Sample> sample) {
+            if (!sample.isPresent()) return;
+            cpuMillis = Math.max(cpuMillis, sample.get().cpuMillis);
+            peakRssKb = Math.max(peakRssKb, sample.get().rssKb);
+        }
+
+        synchronized ProcessStatistics toStatistics(ExternalCommand command, int attempt, Outcome outcome,
+                                                    int exitCode, long wallMillis) {
+            return new ProcessStatistics(command, attempt, outcome, exitCode, wallMillis, cpuMillis, peakRssKb);
+        }
+    }
+
+    /**
+     * @return Statistics of all attempts so far, in the order in which the attempts finished
+     */
+    public List<ProcessStatistics> getStatistics() {
+        synchronized (statistics) {
+            return new ArrayList<>(statistics);
+        }
+    }
+
+    /**
+     * Logs a summary of the statistics of all attempts so far
+     */
+    public void logSummary() {
+        List<ProcessStatistics> all = getStatistics();
+        if (all.isEmpty()) return;
+        int numFailed = 0;
+        long totalWallMillis = 0;
+        long totalCpuMillis = 0;
+        long maxPeakRssKb = -1;
+        for (ProcessStatistics s : all) {
+            if (s.outcome != Outcome.SUCCEEDED) numFailed++;
+            totalWallMillis += s.wallMillis;
+            if (s.cpuMillis > 0) totalCpuMillis += s.cpuMillis;
+            maxPeakRssKb = Math.max(maxPeakRssKb, s.peakRssKb);
+        }
+        LOG.info("Ran external programs " + all.size() + " time(s), " + numFailed + " unsuccessfully. Total wall time: "
+                + totalWallMillis + " ms, total CPU time: " + totalCpuMillis + " ms, peak memory use: "
+                + (maxPeakRssKb < 0 ? "unknown" : (maxPeakRssKb + " kB")) + ".");
+    }
+
+    /**
+     * Writes the statistics of all attempts so far to a CSV file.
+     */
+    public void writeStatistics(File csvFile) {
+        final List<ProcessStatistics> all = getStatistics();
+        final CsvRowProvider<ProcessStatistics, Void, ProcessStatisticsColumns> rowProvider =
+                new CsvRowProvider<>(ProcessStatisticsColumns.class, null);
+        CsvFileWriterHelper writer = new CsvFileWriterHelper() {
+            @Override
+            protected void actuallyDoStuff(CSVPrinter csv) throws IOException {
+                csv.printRecord(rowProvider.headerRow());
+                for (ProcessStatistics s : all) {
+                    csv.printRecord(rowProvider.dataRow(s));
+                }
+            }
+        };
+        writer.write(csvFile);
+        LOG.info("Wrote statistics of external programs to " + csvFile.getAbsolutePath());
+    }
+
+    /**
+     * Stops the background thread that samples resource usage.  Programs must no longer be run afterwards.
+     */
+    public void shutdown() {
+        sampler.shutdownNow();
+    }
+}
@@ -0,0 +1,54 @@
+package de.ovgu.ifdefrevolver.bugs.createsnapshots.process;
+
+/**
+ * Outcome and resource usage of a single attempt at running an {@link ExternalCommand}
+ */
+public class ProcessStatistics {
+    public enum Outcome {
+        SUCCEEDED,
+        /**
+         * Exited with a non-zero exit code
+         */
+        FAILED,
+        /**
+         * Killed after exceeding its timeout
+         */
+        TIMED_OUT
+    }
+
+    public final ExternalCommand command;
+    /**
+     * Number of the attempt, starting at 1
+     */
+    public final int attempt;
+    public final Outcome outcome;
+    /**
+     * Exit code of the program.  For programs that timed out, this is the exit code after being killed.
+     */
+    public final int exitCode;
+    /**
+     * Time from starting the program until it exited, in milliseconds
+     */
+    public final long wallMillis;
+    /**
+     * CPU time used by the program and all processes it started, in milliseconds, or <code>-1</code> if unknown.  The
+     * value is sampled periodically while the program runs, so the last moments before it exits are missing.
+     */
+    public final long cpuMillis;
+    /**
+     * Highest total resident set size of the program and all processes it started, in kilobytes, or <code>-1</code>
+     * if unknown.  Sampled like {@link #cpuMillis}.
+     */
+    public final long peakRssKb;
+
+    public ProcessStatistics(ExternalCommand command, int attempt, Outcome outcome, int exitCode, long wallMillis,
+                             long cpuMillis, long peakRssKb) {
+        this.command = command;
+        this.attempt = attempt;
+        this.outcome = outcome;
+        this.exitCode = exitCode;
+        this.wallMillis = wallMillis;
+        this.cpuMillis = cpuMillis;
+        this.peakRssKb = peakRssKb;
+    }
+}
@@ -0,0 +1,64 @@
+package de.ovgu.ifdefrevolver.bugs.createsnapshots.process;
+
+import de.ovgu.skunk.detection.output.CsvColumnValueProvider;
+
+/**
+ * Columns of the report written by {@link ProcessScheduler#writeStatistics(java.io.File)}.  There is one row per
+ * attempt at running a program.
+ */
+public enum ProcessStatisticsColumns implements CsvColumnValueProvider<ProcessStatistics, Void> {
+    PROG {
+        @Override
+        public String csvColumnValue(ProcessStatistics s, Void ctx) {
+            return s.command.getProgBasename();
+        }
+    },
+    ARGS {
+        @Override
+        public String csvColumnValue(ProcessStatistics s, Void ctx) {
+            return String.join(" ", s.command.getArgs());
+        }
+    },
+    WORKING_DIR {
+        @Override
+        public String csvColumnValue(ProcessStatistics s, Void ctx) {
+            return s.command.getWorkingDir().getPath();
+        }
+    },
+    ATTEMPT {
+        @Override
+        public String csvColumnValue(ProcessStatistics s, Void ctx) {
+            return String.valueOf(s.attempt);
+        }
+    },
+    OUTCOME {
+        @Override
+        public String csvColumnValue(ProcessStatistics s, Void ctx) {
+            return s.outcome.name();
+        }
+    },
+    EXIT_CODE {
+        @Override
+        public String csvColumnValue(ProcessStatistics s, Void ctx) {
+            return String.valueOf(s.exitCode);
+        }
+    },
+    WALL_MS {
+        @Override
+        public String csvColumnValue(ProcessStatistics s, Void ctx) {
+            return String.valueOf(s.wallMillis);
+        }
+    },
+    CPU_MS {
+        @Override
+        public String csvColumnValue(ProcessStatistics s, Void ctx) {
+            return String.valueOf(s.cpuMillis);
+        }
+    },
+    PEAK_RSS_KB {
+        @Override
+        public String csvColumnValue(ProcessStatistics s, Void ctx) {
+            return String.valueOf(s.peakRssKb);
+        }
+    };
+}
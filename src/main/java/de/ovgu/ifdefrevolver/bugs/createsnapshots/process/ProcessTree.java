@@ -0,0 +1,202 @@
+package de.ovgu.ifdefrevolver.bugs.createsnapshots.process;
+
+import org.apache.log4j.Logger;
+
+import java.io.File;
+import java.io.IOException;
+import java.lang.reflect.Field;
+import java.lang.reflect.Method;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.*;
+
+/**
+ * Inspects and kills a process together with all processes it has started.  Relies on the <code>/proc</code> file
+ * system of Linux.  On other systems, resource usage is not available and only the process itself is killed.
+ */
+final class ProcessTree {
+    private static final Logger LOG = Logger.getLogger(ProcessTree.class);
+
+    private static final File PROC_DIR = new File("/proc");
+
+    /**
+     * Rate at which the kernel reports CPU times in <code>/proc/[pid]/stat</code> (<code>USER_HZ</code>).  It is 100
+     * on all common Linux platforms.
+     */
+    private static final int CLOCK_TICKS_PER_SECOND = 100;
+
+    /**
+     * Size of a memory page, in kilobytes.  It is 4 on all common Linux platforms.
+     */
+    private static final int PAGE_SIZE_KB = 4;
+
+    /**
+     * CPU time and memory use of a process tree at some point in time
+     */
+    static class Sample {
+        /**
+         * CPU time (user plus system) consumed so far by the processes of the tree, including descendants that have
+         * already terminated
+         */
+        final long cpuMillis;
+        /**
+         * Sum of the resident set sizes of all processes of the tree, in kilobytes
+         */
+        final long rssKb;
+
+        Sample(long cpuMillis, long rssKb) {
+            this.cpuMillis = cpuMillis;
+            this.rssKb = rssKb;
+        }
+    }
+
+    private ProcessTree() {
+    }
+
+    /**
+     * @return Whether resource usage can be determined and process trees can be killed on this system
+     */
+    static boolean isSupported() {
+        return new File(PROC_DIR, "self/stat").isFile();
+    }
+
+    /**
+     * @return The operating system's ID of the process, if it can be determined
+     */
+    static Optional<Integer> pidOf(Process process) {
+        // Java 9 and later
+        try {
+            Method pidMethod = Process.class.getMethod("pid");
+            return Optional.of(((Long) pidMethod.invoke(process)).intValue());
+        } catch (NoSuchMethodException e) {
+            // Fall through to the Java 8 way
+        } catch (ReflectiveOperationException | RuntimeException e) {
+            LOG.debug("Failed to determine PID of " + process, e);
+            return Optional.empty();
+        }
+        // Java 8 on UNIX
+        try {
+            Field pidField = process.getClass().getDeclaredField("pid");
+            pidField.setAccessible(true);
+            return Optional.of(pidField.getInt(process));
+        } catch (ReflectiveOperationException | RuntimeException e) {
+            LOG.debug("Failed to determine PID of " + process, e);
+            return Optional.empty();
+        }
+    }
+
+    /**
+     * @return The process and all its living descendants.  The process itself comes first.  Empty if the process no
+     * longer exists or <code>/proc</code> is not available.
+     */
+    static List<Integer> treeOf(int rootPid) {
+        if (!isSupported()) return Collections.emptyList();
+        Map<Integer, List<Integer>> childrenByParent = new HashMap<>();
+        File[] procEntries = PROC_DIR.listFiles();
+        if (procEntries == null) return Collections.emptyList();
+        for (File entry : procEntries) {
+            final int pid;
+            try {
+                pid = Integer.parseInt(entry.getName());
+            } catch (NumberFormatException e) {
+                continue;
+            }
+            Optional<String[]> stat = readStat(pid);
+            if (!stat.isPresent()) continue;
+            final int ppid = Integer.parseInt(stat.get()[1]);
+            childrenByParent.computeIfAbsent(ppid, k -> new ArrayList<>()).add(pid);
+        }
+
+        List<Integer> result = new ArrayList<>();
+        if (!new File(PROC_DIR, String.valueOf(rootPid)).isDirectory()) return result;
+        Deque<Integer> queue = new ArrayDeque<>();
+        queue.add(rootPid);
+        while (!queue.isEmpty()) {
+            final int pid = queue.removeFirst();
+            result.add(pid);
+            List<Integer> children = childrenByParent.get(pid);
+            if (children != null) queue.addAll(children);
+        }
+        return result;
+    }
+
+    /**
+     * @return The current resource usage of the process and its descendants, if available
+     */
+    static Optional<Sample> sample(int rootPid) {
+        List<Integer> tree = treeOf(rootPid);
+        if (tree.isEmpty()) return Optional.empty();
+        long cpuTicks = 0;
+        long rssPages = 0;
+        for (int pid : tree) {
+            Optional<String[]> stat = readStat(pid);
+            if (!stat.isPresent()) continue;
+            final String[] fields = stat.get();
+            // utime, stime, cutime, cstime (fields 14-17 of proc(5)); the c* times cover reaped children.
+            for (int i = 11; i <= 14; i++) {
+                cpuTicks += Long.parseLong(fields[i]);
+            }
+            // rss (field 24 of proc(5))
+            rssPages += Long.parseLong(fields[21]);
+        }
+        return Optional.of(new Sample(cpuTicks * 1000 / CLOCK_TICKS_PER_SECOND, rssPages * PAGE_SIZE_KB));
+    }
+
+    /**
+     * Forcibly terminates a process and all its descendants.
+     *
+     * @param process The process
+     * @param pid     Its ID, if known.  If unknown, only the process itself is terminated.
+     */
+    static void kill(Process process, Optional<Integer> pid) {
+        List<Integer> tree = pid.isPresent() ? treeOf(pid.get()) : Collections.<Integer>emptyList();
+        if (!tree.isEmpty()) {
+            List<String> killCommand = new ArrayList<>(tree.size() + 2);
+            killCommand.add("kill");
+            killCommand.add("-KILL");
+            for (int p : tree) {
+                killCommand.add(String.valueOf(p));
+            }
+            try {
+                Process killer = new ProcessBuilder(killCommand).redirectErrorStream(true)
+                        .redirectOutput(ProcessBuilder.Redirect.appendTo(new File("/dev/null"))).start();
+                killer.waitFor();
+            } catch (IOException e) {
+                LOG.warn("Failed to kill processes " + tree, e);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+        process.destroyForcibly();
+    }
+
+    /**
+     * @return The fields of <code>/proc/[pid]/stat</code> following the command name, i.e., starting with the state
+     * (field 3 of proc(5)) at index 0
+     */
+    private static Optional<String[]> readStat(int pid) {
+        final String content;
+        try {
+            content = new String(Files.readAllBytes(new File(PROC_DIR, pid + "/stat").toPath()),
+                    StandardCharsets.US_ASCII);
+        } catch (IOException e) {
+            // Process has terminated in the meantime.
+            return Optional.empty();
+        }
+        return parseStat(content);
+    }
+
+    /**
+     * @param content Contents of a <code>/proc/[pid]/stat</code> file
+     * @return The fields following the command name, as described for {@link #readStat(int)}, or nothing if the
+     * contents are malformed
+     */
+    static Optional<String[]> parseStat(String content) {
+        // The command name is enclosed in parentheses and may itself contain spaces and parentheses.
+        final int endOfCommandName = content.lastIndexOf(')');
+        if (endOfCommandName < 0) return Optional.empty();
+        final String[] fields = content.substring(endOfCommandName + 1).trim().split(" ");
+        if (fields.length < 22) return Optional.empty();
+        return Optional.of(fields);
+    }
+}
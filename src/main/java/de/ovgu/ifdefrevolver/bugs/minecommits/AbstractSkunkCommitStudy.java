@@ -1,11 +1,9 @@
 package de.ovgu.ifdefrevolver.bugs.minecommits;
 
-import org.repodriller.RepositoryMining;
+import org.eclipse.jgit.api.Git;
+import org.eclipse.jgit.lib.Repository;
 import org.repodriller.Study;
-import org.repodriller.filter.range.Commits;
 import org.repodriller.persistence.csv.CSVFile;
-import org.repodriller.scm.GitRepository;
-import org.repodriller.scm.SCMRepository;
 
 import java.io.File;
 import java.io.IOException;
@@ -22,7 +20,28 @@ public abstract class AbstractSkunkCommitStudy implements Study {
     @Override
     public void execute() {
         studySuccessful = false;
-        File outFile = new File(conf.outputFileName);
+        ensureOutputFileCanBeWritten(conf.outputFileName, conf.forceOverwriteOutput,
+                getForceCommandLineOptionName());
+        File canonicalRepoFile = validatedRepositoryDir(conf.repoPathName);
+
+        ICommitVisitorWithOutputFileHeader visitor = makeNewVisitor();
+        CSVFile writer = new CSVFile(conf.outputFileName, visitor.getOutputFileHeader());
+        Repository repo = openRepository(canonicalRepoFile);
+        try {
+            RevWalkCommitMiner miner = new RevWalkCommitMiner(repo, conf.numThreads, getMaxDiffSize());
+            miner.mine(visitor, writer);
+        } finally {
+            repo.close();
+        }
+        studySuccessful = true;
+    }
+
+    /**
+     * Makes sure that the output file can be created, creating its parent directories as needed.
+     */
+    static void ensureOutputFileCanBeWritten(String outputFileName, boolean forceOverwriteOutput,
+                                             String forceCommandLineOptionName) {
+        File outFile = new File(outputFileName);
         File canonicalOutFile;
         try {
             canonicalOutFile = outFile.getCanonicalFile();
@@ -30,9 +49,9 @@ public abstract class AbstractSkunkCommitStudy implements Study {
             canonicalOutFile = outFile;
         }
 
-        if (!conf.forceOverwriteOutput && canonicalOutFile.exists()) {
+        if (!forceOverwriteOutput && canonicalOutFile.exists()) {
             throw new RuntimeException("Refusing to overwrite existing output file "
-                    + canonicalOutFile.getAbsolutePath() + " (use " + getForceCommandLineOptionName() + " to override)");
+                    + canonicalOutFile.getAbsolutePath() + " (use " + forceCommandLineOptionName + " to override)");
         }
         if (canonicalOutFile.isDirectory()) {
             throw new RuntimeException("Output file " + canonicalOutFile.getAbsolutePath() + " is a directory");
@@ -45,8 +64,13 @@ public abstract class AbstractSkunkCommitStudy implements Study {
                         "Failed to create directories for output file " + canonicalOutFileParentDir.getAbsolutePath());
             }
         }
+    }
 
-        File repoFile = new File(conf.repoPathName);
+    /**
+     * @return The canonical repository directory
+     */
+    static File validatedRepositoryDir(String repoPathName) {
+        File repoFile = new File(repoPathName);
         File canonicalRepoFile;
         try {
             canonicalRepoFile = repoFile.getCanonicalFile();
@@ -60,31 +84,15 @@ public abstract class AbstractSkunkCommitStudy implements Study {
         if (!canonicalRepoFile.isDirectory()) {
             throw new RuntimeException("Repository " + canonicalRepoFile.getAbsolutePath() + " is not a directory");
         }
-
-        ICommitVisitorWithOutputFileHeader visitor = makeNewVisitor();
-        CSVFile writer = new CSVFile(conf.outputFileName, visitor.getOutputFileHeader());
-        SCMRepository repo = GitRepository.singleProject(conf.repoPathName);
-        configureRepository(repo);
-
-        // Raise limit of GIT diff size.  Property: git.maxdiff; default value in repodriller: 100000
-        final Optional<Integer> maxDiffSize = getMaxDiffSize();
-        if (maxDiffSize.isPresent()) {
-            System.setProperty("git.maxdiff", Integer.toString(maxDiffSize.get()));
-        }
-
-        // @formatter:off
-        new RepositoryMining()
-                .in(repo)
-                .through(Commits.all())
-                .withThreads(2)
-                .process(visitor, writer)
-                .mine();
-        // @formatter:on
-        studySuccessful = true;
+        return canonicalRepoFile;
     }
 
-    protected void configureRepository(SCMRepository repo) {
-        repo.getScm().omitBranches();
+    static Repository openRepository(File repoDir) {
+        try {
+            return Git.open(repoDir).getRepository();
+        } catch (IOException ioe) {
+            throw new RuntimeException("Failed to open repository " + repoDir.getAbsolutePath(), ioe);
+        }
     }
 
     public boolean wasStudySuccessful() {
@@ -92,8 +100,8 @@ public abstract class AbstractSkunkCommitStudy implements Study {
     }
 
     /**
-     * Allows to control the maximum size of a diff that repodriller will parse. Commits whose diffs are larger than
-     * that will not be processed.
+     * Allows to control the maximum size of a textual diff that the miner will produce. Diffs that are larger than
+     * that are reported as empty.  Only relevant for visitors that actually request diffs.
      *
      * @return A positive integer or nothing, in which case an implementation-dependent default will be used
      */
@@ -2,32 +2,50 @@ package de.ovgu.ifdefrevolver.bugs.minecommits;
 
 import de.ovgu.skunk.detection.output.CsvEnumUtils;
 import org.apache.log4j.Logger;
-import org.repodriller.domain.Commit;
-import org.repodriller.domain.Modification;
 import org.repodriller.persistence.PersistenceMechanism;
-import org.repodriller.scm.CommitVisitor;
-import org.repodriller.scm.SCMRepository;
+import org.repodriller.persistence.csv.CSVFile;
 
 import java.text.DateFormat;
 import java.text.SimpleDateFormat;
-import java.util.Calendar;
-import java.util.Iterator;
-import java.util.Set;
-import java.util.regex.Matcher;
-import java.util.regex.Pattern;
+import java.util.*;
 
-public class BugfixCommitVisitor implements CommitVisitor {
+public class BugfixCommitVisitor implements ICommitVisitorWithOutputFileHeader {
     private static Logger LOG = Logger.getLogger(BugfixCommitVisitor.class);
 
     private final DateFormat dateFormat = new SimpleDateFormat(RevisionsFullColumns.TIMESTAMP_FORMAT);
-    private String[] bugFixTerms;
+    private final KeywordMatcher keywordMatcher;
+    private final Optional<String> keywordHitsFileName;
+
+    /**
+     * Number of commits whose message contains the respective keyword
+     */
+    private final int[] commitsByKeyword;
+    /**
+     * Total number of occurrences of the respective keyword in all commit messages
+     */
+    private final int[] occurrencesByKeyword;
+    private int commitsSeen = 0;
 
     public BugfixCommitVisitor(String[] bugFixTerms) {
-        this.bugFixTerms = bugFixTerms;
+        this(bugFixTerms, KeywordMatcher.MatchMode.SUBSTRING, Optional.empty());
+    }
+
+    /**
+     * @param bugFixTerms         Keywords identifying bug-fix commits
+     * @param matchMode           How keywords must be delimited in commit messages
+     * @param keywordHitsFileName Name of a CSV file to which the number of hits of each keyword will be written
+     *                            after all commits have been processed
+     */
+    public BugfixCommitVisitor(String[] bugFixTerms, KeywordMatcher.MatchMode matchMode,
+                               Optional<String> keywordHitsFileName) {
+        this.keywordMatcher = new KeywordMatcher(bugFixTerms, matchMode);
+        this.keywordHitsFileName = keywordHitsFileName;
+        this.commitsByKeyword = new int[bugFixTerms.length];
+        this.occurrencesByKeyword = new int[bugFixTerms.length];
     }
 
     @Override
-    public void process(SCMRepository repo, Commit commit, PersistenceMechanism writer) {
+    public void process(MinedCommit commit, PersistenceMechanism writer) {
         if (commit.isMerge()) {
             LOG.info("Ignoring merge commit " + commit.getHash());
             return;
@@ -39,21 +57,18 @@ public class BugfixCommitVisitor implements CommitVisitor {
             formattedTimeStamp = dateFormat.format(cal.getTime());
         }
 
-
-        String commitMsg = commit.getMsg().toLowerCase();
+        final int[] matchCounts = keywordMatcher.countMatches(commit.getMsg());
+        recordKeywordHits(matchCounts);
+        final List<String> keywords = keywordMatcher.getKeywords();
         boolean containsABug = false;
         StringBuilder foundWords = new StringBuilder();
-        for (int ixBugFixTerm = 0; ixBugFixTerm < bugFixTerms.length; ixBugFixTerm++) {
-            // boolean containsABug = commitMsg.contains("fix") ||
-            // commitMsg.contains("bug");
-            String keyword = bugFixTerms[ixBugFixTerm];
-            // Erkennt welches Wort gefunden wird (nur für den Überblick)
-            if (commitMsg.contains(keyword)) {
+        for (int ixKeyword = 0; ixKeyword < matchCounts.length; ixKeyword++) {
+            if (matchCounts[ixKeyword] > 0) {
                 // Insert separator in case multiple keywords are found
                 if (containsABug) {
                     foundWords.append(" ");
                 }
-                foundWords.append(keyword);
+                foundWords.append(keywords.get(ixKeyword));
                 containsABug = true;
             }
         }
@@ -61,20 +76,14 @@ public class BugfixCommitVisitor implements CommitVisitor {
         //boolean inMainBranch = commit.isInMainBranch();
         //final String branches = branchNamesCsvOut(commit.getBranches());
 
-        /* holt alle Modifikationen eines Commits */
         boolean commitMadeItToOutput = false;
-        for (Modification m : commit.getModifications()) {
-
-            /* führt den git diff Befehl für das File aus */
-            String diff = m.getDiff();
-
+        for (MinedCommit.Modification m : commit.getModifications()) {
             /*
              * entfernen aller nicht C Dateien, da nur in .c-Dateien Smells
              * auftreten können
              */
-            String fileName = m.getFileName();
-            // if(!fileName.contains(".c")) continue;
-            if (!fileName.matches(".*\\.[cC]$"))
+            final String fileName = m.getFileName();
+            if (!OrderingCommitVisitor.isCFileName(fileName))
                 continue;
 
             /*
@@ -86,19 +95,10 @@ public class BugfixCommitVisitor implements CommitVisitor {
             /* Wenn Kein Bugfix Commit entfernen */
             // if(!containsABug) continue;
 
-            /* RegEx für die geänderten Lines */
-            Matcher newMatch = Pattern.compile("@@ .* @@").matcher(diff);
-            while (newMatch.find()) {
-                String strMatch = newMatch.group();
-                String[] parts = strMatch.split(" ");
-                String[] delParts = parts[1].split(",");
-                String[] addParts = parts[2].split(",");
-                String delLine = delParts[0].substring(1);
-                String addLine = addParts[0].substring(1);
-
-                /* schreibt aktuellen Datensatz in die CSV */
-                writer.write(commit.getHash(), containsABug, foundWords.toString(), m.getFileName(), m.getType(),
-                        delLine, addLine, formattedTimeStamp
+            /* Ein Datensatz pro Hunk, wie im textuellen Diff */
+            for (DiffHunk hunk : m.getHunks()) {
+                writer.write(commit.getHash(), containsABug, foundWords.toString(), fileName, m.getType(),
+                        hunk.getOldStart(), hunk.getNewStart(), formattedTimeStamp
                         //, inMainBranch, branches
                 );
                 commitMadeItToOutput = true;
@@ -110,6 +110,39 @@ public class BugfixCommitVisitor implements CommitVisitor {
         }
     }
 
+    private synchronized void recordKeywordHits(int[] matchCounts) {
+        commitsSeen++;
+        for (int i = 0; i < matchCounts.length; i++) {
+            if (matchCounts[i] > 0) {
+                commitsByKeyword[i]++;
+                occurrencesByKeyword[i] += matchCounts[i];
+            }
+        }
+    }
+
+    /**
+     * Logs the number of hits of each keyword and writes them to the keyword hits file, if one was given.
+     */
+    @Override
+    public synchronized void finalizeVisitor(PersistenceMechanism writer) {
+        final List<String> keywords = keywordMatcher.getKeywords();
+        LOG.info("Keyword hits in " + commitsSeen + " non-merge commits (match mode: "
+                + keywordMatcher.getMatchMode() + "):");
+        for (int i = 0; i < commitsByKeyword.length; i++) {
+            LOG.info("  " + keywords.get(i) + ": " + commitsByKeyword[i] + " commit(s), " + occurrencesByKeyword[i]
+                    + " occurrence(s)");
+        }
+
+        if (keywordHitsFileName.isPresent()) {
+            CSVFile hitsWriter = new CSVFile(keywordHitsFileName.get(),
+                    CsvEnumUtils.headerRowStrings(BugfixKeywordHitsColumns.class));
+            for (int i = 0; i < commitsByKeyword.length; i++) {
+                hitsWriter.write(keywords.get(i), commitsByKeyword[i], occurrencesByKeyword[i]);
+            }
+            hitsWriter.close();
+        }
+    }
+
     private static String branchNamesCsvOut(Set<String> branches) {
         Iterator<String> it = branches.iterator();
         if (!it.hasNext())
@@ -134,6 +167,7 @@ public class BugfixCommitVisitor implements CommitVisitor {
         return "keyword-based bug-fix identifier";
     }
 
+    @Override
     public String[] getOutputFileHeader() {
         return CsvEnumUtils.headerRowStrings(RevisionsFullColumns.class);
     }
@@ -0,0 +1,19 @@
+package de.ovgu.ifdefrevolver.bugs.minecommits;
+
+/**
+ * Columns of the optional keyword statistics written by the {@link BugfixCommitVisitor}
+ */
+public enum BugfixKeywordHitsColumns {
+    /**
+     * The bug-fix keyword, in lower case
+     */
+    KEYWORD,
+    /**
+     * Number of non-merge commits whose message contains the keyword
+     */
+    COMMITS,
+    /**
+     * Total number of occurrences of the keyword in the messages of all non-merge commits
+     */
+    OCCURRENCES
+}
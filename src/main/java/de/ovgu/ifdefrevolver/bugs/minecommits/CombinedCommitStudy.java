@@ -0,0 +1,168 @@
+package de.ovgu.ifdefrevolver.bugs.minecommits;
+
+import de.ovgu.ifdefrevolver.bugs.minecommits.main.MineCommits;
+import org.apache.log4j.Logger;
+import org.eclipse.jgit.lib.Repository;
+import org.repodriller.Study;
+import org.repodriller.persistence.csv.CSVFile;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+
+/**
+ * Runs the {@link OrderingCommitVisitor}, the {@link CommitParentsVisitor}, the {@link BugfixCommitVisitor} and the
+ * {@link WordCountVisitor} during a single walk over the repository.  Each visitor writes its own output file.  Visitors whose output file is not
+ * configured are not run.
+ * <p>
+ * If a tips file is configured and the output files of a previous run exist, mining is incremental: only commits that
+ * are not yet listed in the commit parents file are visited.  Their commit parents and bug-fix rows are appended to the
+ * existing files.  The revisions file is rewritten, because adding commits may change the branch numbers of old
+ * commits, but the old commits are taken from the existing files instead of being visited again.
+ * </p>
+ */
+public class CombinedCommitStudy implements Study {
+    private static final Logger LOG = Logger.getLogger(CombinedCommitStudy.class);
+
+    private final Config conf;
+    private boolean studySuccessful = false;
+    private boolean incremental = false;
+
+    public CombinedCommitStudy(Config conf) {
+        this.conf = conf;
+    }
+
+    @Override
+    public void execute() {
+        studySuccessful = false;
+        List<String> outputFileNames = getOutputFileNames(conf);
+        if (outputFileNames.isEmpty()) {
+            throw new RuntimeException("No output files configured.");
+        }
+        incremental = isIncremental(conf);
+        for (String outputFileName : outputFileNames) {
+            if (incremental && !outputFileName.equals(conf.revisionsOutputFileName)) {
+                // Will be appended to
+                continue;
+            }
+            AbstractSkunkCommitStudy.ensureOutputFileCanBeWritten(outputFileName, conf.forceOverwriteOutput,
+                    MineCommits.OPT_FORCE);
+        }
+        File canonicalRepoFile = AbstractSkunkCommitStudy.validatedRepositoryDir(conf.repoPathName);
+
+        Optional<IncrementalMiningState> previousState = Optional.empty();
+        if (incremental) {
+            LOG.info("Mining incrementally. Commits listed in " + conf.commitParentsOutputFileName
+                    + " will not be mined again.");
+            previousState = Optional.of(IncrementalMiningState.read(new File(conf.minedTipsFileName),
+                    new File(conf.commitParentsOutputFileName),
+                    Optional.ofNullable(conf.revisionsOutputFileName).map(File::new)));
+        }
+
+        // The commit parents visitor goes last so that a commit only counts as mined once all other visitors have
+        // processed it.
+        Map<ICommitVisitorWithOutputFileHeader, CSVFile> writersByVisitor = new LinkedHashMap<>();
+        if (conf.revisionsOutputFileName != null) {
+            OrderingCommitVisitor orderingVisitor = new OrderingCommitVisitor();
+            if (previousState.isPresent()) {
+                previousState.get().addMinedCommitsTo(orderingVisitor);
+            }
+            addVisitor(writersByVisitor, orderingVisitor, conf.revisionsOutputFileName, false);
+        }
+        if (conf.bugfixOutputFileName != null) {
+            BugfixCommitVisitor bugfixVisitor = new BugfixCommitVisitor(conf.bugfixTerms, conf.bugfixTermMatchMode,
+                    Optional.ofNullable(conf.bugfixKeywordHitsFileName));
+            addVisitor(writersByVisitor, bugfixVisitor, conf.bugfixOutputFileName, incremental);
+        }
+        if (conf.wordCountOutputFileName != null) {
+            WordCountVisitor wordCountVisitor = new WordCountVisitor(conf.wordCountStem, conf.wordCountStopWords,
+                    conf.wordCountTopK);
+            addVisitor(writersByVisitor, wordCountVisitor, conf.wordCountOutputFileName, false);
+        }
+        if (conf.commitParentsOutputFileName != null) {
+            addVisitor(writersByVisitor, new CommitParentsVisitor(), conf.commitParentsOutputFileName, incremental);
+        }
+
+        Repository repo = AbstractSkunkCommitStudy.openRepository(canonicalRepoFile);
+        try {
+            RevWalkCommitMiner miner = new RevWalkCommitMiner(repo, conf.numThreads, getMaxDiffSize());
+            if (previousState.isPresent()) {
+                miner.setPreviousTips(previousState.get().getPreviousTips());
+                miner.setAlreadyMinedCommits(previousState.get().getMinedCommits());
+            }
+            miner.mine(writersByVisitor);
+            if (conf.minedTipsFileName != null) {
+                IncrementalMiningState.writeTips(new File(conf.minedTipsFileName), miner.getTips());
+            }
+        } finally {
+            repo.close();
+        }
+        studySuccessful = true;
+    }
+
+    private static void addVisitor(Map<ICommitVisitorWithOutputFileHeader, CSVFile> writersByVisitor,
+                                   ICommitVisitorWithOutputFileHeader visitor, String outputFileName,
+                                   boolean append) {
+        if (append) {
+            LOG.debug("Output of visitor `" + visitor.name() + "' is appended to " + outputFileName);
+            writersByVisitor.put(visitor, new CSVFile(outputFileName, true));
+        } else {
+            LOG.debug("Output of visitor `" + visitor.name() + "' goes to " + outputFileName);
+            writersByVisitor.put(visitor, new CSVFile(outputFileName, visitor.getOutputFileHeader()));
+        }
+    }
+
+    /**
+     * Mining is incremental if a tips file is configured and the files written by the previous run exist.  The commit
+     * parents file is mandatory in incremental mode since it records which commits have already been mined.
+     *
+     * @return <code>true</code> iff the output of the previous run will be updated rather than recreated
+     */
+    private static boolean isIncremental(Config conf) {
+        if (conf.minedTipsFileName == null) return false;
+        if (conf.commitParentsOutputFileName == null) {
+            throw new RuntimeException("Incremental mining requires a commit parents file.");
+        }
+        if (conf.wordCountOutputFileName != null) {
+            throw new RuntimeException("Word counts cannot be mined incrementally.");
+        }
+        for (String outputFileName : getOutputFileNames(conf)) {
+            if (!new File(outputFileName).exists()) {
+                LOG.info("Output file " + outputFileName + " of a previous run does not exist."
+                        + " Mining the whole history.");
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * @return The names of all configured output files
+     */
+    public static List<String> getOutputFileNames(Config conf) {
+        List<String> result = new ArrayList<>();
+        if (conf.revisionsOutputFileName != null) result.add(conf.revisionsOutputFileName);
+        if (conf.commitParentsOutputFileName != null) result.add(conf.commitParentsOutputFileName);
+        if (conf.bugfixOutputFileName != null) result.add(conf.bugfixOutputFileName);
+        if (conf.wordCountOutputFileName != null) result.add(conf.wordCountOutputFileName);
+        return result;
+    }
+
+    private Optional<Integer> getMaxDiffSize() {
+        return Optional.of(512 * 1014);
+    }
+
+    public boolean wasStudySuccessful() {
+        return studySuccessful;
+    }
+
+    /**
+     * @return <code>true</code> iff the study updated the output of a previous run
+     */
+    public boolean wasIncremental() {
+        return incremental;
+    }
+}
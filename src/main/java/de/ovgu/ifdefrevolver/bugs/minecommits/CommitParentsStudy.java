@@ -1,7 +1,6 @@
 package de.ovgu.ifdefrevolver.bugs.minecommits;
 
 import de.ovgu.ifdefrevolver.bugs.minecommits.main.ListCommits;
-import org.repodriller.scm.SCMRepository;
 
 import java.util.Optional;
 
@@ -16,12 +15,6 @@ public class CommitParentsStudy extends AbstractSkunkCommitStudy {
         return Optional.of(1024 * 1014);
     }
 
-    @Override
-    protected void configureRepository(SCMRepository repo) {
-        super.configureRepository(repo);
-        repo.getScm().omitModifications();
-    }
-
     @Override
     protected ICommitVisitorWithOutputFileHeader makeNewVisitor() {
         return new CommitParentsVisitor();
@@ -2,9 +2,7 @@ package de.ovgu.ifdefrevolver.bugs.minecommits;
 
 import de.ovgu.skunk.detection.output.CsvEnumUtils;
 import org.apache.log4j.Logger;
-import org.repodriller.domain.Commit;
 import org.repodriller.persistence.PersistenceMechanism;
-import org.repodriller.scm.SCMRepository;
 
 import java.text.DateFormat;
 import java.text.SimpleDateFormat;
@@ -22,7 +20,7 @@ public class CommitParentsVisitor implements ICommitVisitorWithOutputFileHeader
     int commitsSeen = 0;
 
     @Override
-    public void process(SCMRepository repo, Commit commit, PersistenceMechanism writer) {
+    public void process(MinedCommit commit, PersistenceMechanism writer) {
         synchronized (this) {
             commitsSeen++;
         }
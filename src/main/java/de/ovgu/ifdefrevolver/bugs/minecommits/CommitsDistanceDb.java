@@ -169,6 +169,16 @@ public class CommitsDistanceDb {
             return this.parents.length > 1;
         }
 
+        /**
+         * @return Generation number of this commit, i.e., the length of the longest path from this commit to a root
+         * commit, plus one.  Root commits have generation 1.  If this commit is a proper ancestor of another commit,
+         * its generation number is strictly smaller than that of the other commit.
+         */
+        public int getGeneration() {
+            db.ensurePreprocessed();
+            return db.generations[key];
+        }
+
         public boolean isBugfix() {
             return false;
         }
@@ -212,10 +222,34 @@ public class CommitsDistanceDb {
      */
     BitSet[] reachables;
 
+    /**
+     * Generation number of each commit (indexed by commit key).  See {@link Commit#getGeneration()}.
+     */
+    int[] generations;
+
+    /**
+     * Topological timestamp of each commit (indexed by commit key), i.e., its position in a fixed topological order
+     * in which every parent precedes all of its children.  Like generation numbers, topological timestamps strictly
+     * increase along every path from an ancestor to a descendant, but two unrelated commits never share a timestamp.
+     */
+    int[] topoTimestamps;
+
     private boolean isReachable(int child, int ancestor) {
+        if (child == ancestor) return true;
+        if (!mightBeReachable(child, ancestor)) return false;
         return isReachable(reachables[child], ancestor);
     }
 
+    /**
+     * Cheap negative test for reachability based on generation numbers and topological timestamps.
+     *
+     * @return <code>false</code> if the ancestor can definitely not be reached from the child; <code>true</code> if it
+     * might be reachable, in which case the reachability information needs to be consulted
+     */
+    private boolean mightBeReachable(int child, int ancestor) {
+        return (generations[ancestor] < generations[child]) && (topoTimestamps[ancestor] < topoTimestamps[child]);
+    }
+
     private static boolean isReachable(BitSet ancestors, int ancestor) {
         return ancestors.get(ancestor);
     }
@@ -253,6 +287,14 @@ public class CommitsDistanceDb {
         return result;
     }
 
+    /**
+     * @param commitHash Hash of the commit to look up
+     * @return The commit with the given hash or {@link Optional#empty()} if no such commit is known
+     */
+    public synchronized Optional<Commit> findCommit(String commitHash) {
+        return Optional.ofNullable(commitsFromHashes.get(commitHash));
+    }
+
     private CommitsDistanceDb() {
 
     }
@@ -329,6 +371,54 @@ public class CommitsDistanceDb {
         return children;
     }
 
+    /**
+     * Compute {@link #generations} and {@link #topoTimestamps} in a single, non-recursive depth-first traversal of
+     * the parent relation.  Commits are finished in post-order, i.e., after all of their parents, which yields the
+     * topological order.
+     */
+    private void populateGenerationsAndTopoTimestamps() {
+        final int numCommits = getNumCommits();
+        int[] gens = new int[numCommits];
+        int[] topo = new int[numCommits];
+        // 0 = unvisited, 1 = on stack, 2 = finished
+        byte[] state = new byte[numCommits];
+        int[] stack = new int[numCommits];
+        int[] nextParentIx = new int[numCommits];
+        int nextTopoTimestamp = 0;
+
+        for (int start = 0; start < numCommits; start++) {
+            if (state[start] != 0) continue;
+            int sp = 0;
+            stack[sp++] = start;
+            state[start] = 1;
+            while (sp > 0) {
+                final int current = stack[sp - 1];
+                final int[] currentParents = intParents[current];
+                if (nextParentIx[current] < currentParents.length) {
+                    final int parent = currentParents[nextParentIx[current]++];
+                    if (state[parent] == 0) {
+                        state[parent] = 1;
+                        stack[sp++] = parent;
+                    } else if (state[parent] == 1) {
+                        throw new IllegalStateException("Commit graph contains a cycle involving commit " + parent);
+                    }
+                } else {
+                    int gen = 0;
+                    for (int parent : currentParents) {
+                        gen = Math.max(gen, gens[parent]);
+                    }
+                    gens[current] = gen + 1;
+                    topo[current] = nextTopoTimestamp++;
+                    state[current] = 2;
+                    sp--;
+                }
+            }
+        }
+
+        this.generations = gens;
+        this.topoTimestamps = topo;
+    }
+
     private void populateReachables() {
         LOG.debug("Computing reachable commits");
         final int numCommits = getNumCommits();
@@ -408,6 +498,7 @@ public class CommitsDistanceDb {
     public synchronized void ensurePreprocessed() {
         if (!preprocessed) {
             populateIntParents();
+            populateGenerationsAndTopoTimestamps();
             populateReachables();
             this.ensureParentsAndChildrenInitialized();
             preprocessed = true;
@@ -514,25 +605,80 @@ public class CommitsDistanceDb {
      */
     public Set<Commit> filterAncestorCommits(Collection<Commit> commits) {
         ensurePreprocessed();
-
-        for (Commit c : commits) {
-            validateCommit(c);
+        Commit[] candidates = toValidatedArrayByGeneration(commits);
+
+        // Candidates are visited in order of ascending generation, so all proper ancestors of a candidate have already
+        // been visited.  If a candidate has an ancestor among the candidates, it also has one among the commits kept so
+        // far (reachability is transitive).  Hence, we only need to compare against those.
+        List<Commit> kept = new ArrayList<>();
+        Set<Commit> commitsWithoutAncestors = new HashSet<>();
+        for (Commit descendant : candidates) {
+            boolean hasAncestor = false;
+            for (Commit ancestor : kept) {
+                if (isReachable(descendant.key, ancestor.key)) {
+                    hasAncestor = true;
+                    break;
+                }
+            }
+            if (!hasAncestor) {
+                kept.add(descendant);
+                commitsWithoutAncestors.add(descendant);
+            }
         }
 
-        Set<Commit> commitsWithoutAncestors = new HashSet<>(commits);
+        return commitsWithoutAncestors;
+    }
 
-        for (Iterator<Commit> it = commitsWithoutAncestors.iterator(); it.hasNext(); ) {
-            final Commit descendant = it.next();
-            for (Commit ancestor : commits) {
-                if (ancestor == descendant) continue;
+    /**
+     * Determine all commits that are not an ancestor of another commit.
+     *
+     * @param commits A set of commit hashes
+     * @return A subset of the original commits that only holds commits that are not ancestors of other commits within
+     * the original set of commits.
+     */
+    public Set<Commit> filterDescendantCommits(Collection<Commit> commits) {
+        ensurePreprocessed();
+        Commit[] candidates = toValidatedArrayByGeneration(commits);
+
+        // Mirror image of filterAncestorCommits: visit the candidates in order of descending generation.
+        List<Commit> kept = new ArrayList<>();
+        Set<Commit> commitsWithoutDescendants = new HashSet<>();
+        for (int i = candidates.length - 1; i >= 0; i--) {
+            final Commit ancestor = candidates[i];
+            boolean hasDescendant = false;
+            for (Commit descendant : kept) {
                 if (isReachable(descendant.key, ancestor.key)) {
-                    it.remove();
+                    hasDescendant = true;
                     break;
                 }
             }
+            if (!hasDescendant) {
+                kept.add(ancestor);
+                commitsWithoutDescendants.add(ancestor);
+            }
         }
 
-        return commitsWithoutAncestors;
+        return commitsWithoutDescendants;
+    }
+
+    /**
+     * @param commits Some commits of this DB, possibly containing duplicates
+     * @return The distinct commits, sorted by ascending generation number
+     */
+    private Commit[] toValidatedArrayByGeneration(Collection<Commit> commits) {
+        Set<Commit> distinctCommits = new LinkedHashSet<>(commits);
+        Commit[] result = new Commit[distinctCommits.size()];
+        int ixInsert = 0;
+        for (Commit c : distinctCommits) {
+            validateCommit(c);
+            result[ixInsert++] = c;
+        }
+        Arrays.sort(result, (a, b) -> {
+            int r = Integer.compare(generations[a.key], generations[b.key]);
+            if (r != 0) return r;
+            return Integer.compare(topoTimestamps[a.key], topoTimestamps[b.key]);
+        });
+        return result;
     }
 
     public boolean areCommitsRelated(Commit c1, Commit c2) {
@@ -28,6 +28,16 @@ public class CommitsDistanceDbCsvReader {
     }
 
     protected CommitsDistanceDb dbFromCsv(File csvFile) {
+        List<ProtoCommit> protoCommits = readProtoCommits(csvFile);
+        CommitsDistanceDb db = CommitsDistanceDb.fromProtoCommits(protoCommits);
+        return db;
+    }
+
+    /**
+     * @param csvFile A CSV file in the format described by {@link CommitParentsColumns}
+     * @return One proto commit per line of the file, in the order of the file
+     */
+    List<ProtoCommit> readProtoCommits(File csvFile) {
         CSVReader reader = null;
         FileReader fileReader = null;
 
@@ -85,8 +95,7 @@ public class CommitsDistanceDbCsvReader {
             CSVHelper.silentlyCloseReaders(reader, fileReader);
         }
 
-        CommitsDistanceDb db = CommitsDistanceDb.fromProtoCommits(protoCommits);
-        return db;
+        return protoCommits;
     }
 
     private static List<String[]> sortPairs(List<String[]> pairs) {
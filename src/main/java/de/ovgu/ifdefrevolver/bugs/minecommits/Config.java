@@ -1,5 +1,9 @@
 package de.ovgu.ifdefrevolver.bugs.minecommits;
 
+import java.util.Collections;
+import java.util.Optional;
+import java.util.Set;
+
 /**
  * Configuration options
  *
@@ -7,9 +11,35 @@ package de.ovgu.ifdefrevolver.bugs.minecommits;
  */
 public class Config {
     public static final String DEFAULT_BUGFIX_TERMS = "bug,fix,patch,error";
+    public static final int DEFAULT_NUM_THREADS = 2;
 
     public String[] bugfixTerms;
+    public KeywordMatcher.MatchMode bugfixTermMatchMode = KeywordMatcher.MatchMode.SUBSTRING;
+    /**
+     * Optional CSV file receiving the number of hits of each bug-fix keyword; <code>null</code> if not wanted
+     */
+    public String bugfixKeywordHitsFileName;
     public String repoPathName;
     public String outputFileName;
+    /**
+     * Output files of the combined miner (see {@link CombinedCommitStudy}).  A <code>null</code> value means that the
+     * respective visitor is not run.
+     */
+    public String revisionsOutputFileName;
+    public String commitParentsOutputFileName;
+    public String bugfixOutputFileName;
+    public String wordCountOutputFileName;
+    /**
+     * Options of the {@link WordCountVisitor}
+     */
+    public boolean wordCountStem = false;
+    public Set<String> wordCountStopWords = Collections.emptySet();
+    public Optional<Integer> wordCountTopK = Optional.empty();
+    /**
+     * File recording the tips mined by the previous run, for incremental mining; <code>null</code> if every run should
+     * mine the whole history
+     */
+    public String minedTipsFileName;
     public boolean forceOverwriteOutput = false;
+    public int numThreads = DEFAULT_NUM_THREADS;
 }
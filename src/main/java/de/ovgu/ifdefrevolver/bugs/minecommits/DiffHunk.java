@@ -0,0 +1,106 @@
+package de.ovgu.ifdefrevolver.bugs.minecommits;
+
+import org.eclipse.jgit.diff.Edit;
+import org.eclipse.jgit.diff.EditList;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * A hunk of a unified diff, i.e., one or more edits that are close enough to each other to share their context lines.
+ * Hunks are computed from JGit {@link EditList}s, using the same grouping rules as JGit's
+ * {@link org.eclipse.jgit.diff.DiffFormatter}.  Hence, the start lines reported here are the ones that would appear in
+ * the <code>@@ -oldStart,oldLength +newStart,newLength @@</code> line of the textual diff.
+ */
+public class DiffHunk {
+    /**
+     * Number of context lines, same as the default of {@link org.eclipse.jgit.diff.DiffFormatter}
+     */
+    public static final int DEFAULT_CONTEXT = 3;
+
+    private final int oldStart;
+    private final int oldLength;
+    private final int newStart;
+    private final int newLength;
+
+    private DiffHunk(int oldStart, int oldLength, int newStart, int newLength) {
+        this.oldStart = oldStart;
+        this.oldLength = oldLength;
+        this.newStart = newStart;
+        this.newLength = newLength;
+    }
+
+    /**
+     * @param edits       The edits between the old and the new version of a file
+     * @param oldNumLines Number of lines of the old version of the file
+     * @param newNumLines Number of lines of the new version of the file
+     * @param context     Number of context lines around each edit
+     * @return The hunks of the diff, in order of appearance
+     */
+    public static List<DiffHunk> fromEditList(EditList edits, int oldNumLines, int newNumLines, int context) {
+        if (edits.isEmpty()) {
+            return Collections.emptyList();
+        }
+        List<DiffHunk> result = new ArrayList<>();
+        int ixFirst = 0;
+        final int numEdits = edits.size();
+        while (ixFirst < numEdits) {
+            int ixLast = ixFirst;
+            while ((ixLast + 1 < numEdits) && isCombined(edits.get(ixLast), edits.get(ixLast + 1), context)) {
+                ixLast++;
+            }
+            final Edit first = edits.get(ixFirst);
+            final Edit last = edits.get(ixLast);
+            final int aBegin = Math.max(0, first.getBeginA() - context);
+            final int bBegin = Math.max(0, first.getBeginB() - context);
+            final int aEnd = Math.min(oldNumLines, last.getEndA() + context);
+            final int bEnd = Math.min(newNumLines, last.getEndB() + context);
+            result.add(new DiffHunk(headerStartLine(aBegin, aEnd), aEnd - aBegin,
+                    headerStartLine(bBegin, bEnd), bEnd - bBegin));
+            ixFirst = ixLast + 1;
+        }
+        return result;
+    }
+
+    private static boolean isCombined(Edit current, Edit next, int context) {
+        return (next.getBeginA() - current.getEndA() <= 2 * context)
+                || (next.getBeginB() - current.getEndB() <= 2 * context);
+    }
+
+    /**
+     * Like GIT, an empty range is reported by the line before it, all other ranges by their 1-based first line.
+     */
+    private static int headerStartLine(int begin, int end) {
+        return (end == begin) ? begin : begin + 1;
+    }
+
+    /**
+     * @return First line of the hunk in the old version of the file (1-based, or the line before the hunk if the hunk
+     * is empty in the old version)
+     */
+    public int getOldStart() {
+        return oldStart;
+    }
+
+    public int getOldLength() {
+        return oldLength;
+    }
+
+    /**
+     * @return First line of the hunk in the new version of the file (1-based, or the line before the hunk if the hunk
+     * is empty in the new version)
+     */
+    public int getNewStart() {
+        return newStart;
+    }
+
+    public int getNewLength() {
+        return newLength;
+    }
+
+    @Override
+    public String toString() {
+        return "@@ -" + oldStart + "," + oldLength + " +" + newStart + "," + newLength + " @@";
+    }
+}
@@ -1,7 +1,21 @@
 package de.ovgu.ifdefrevolver.bugs.minecommits;
 
-import org.repodriller.scm.CommitVisitor;
+import org.repodriller.persistence.PersistenceMechanism;
+
+/**
+ * Visitor of the commits walked by a {@link RevWalkCommitMiner}.  The {@link #process(MinedCommit,
+ * PersistenceMechanism)} method is called concurrently from multiple threads.
+ */
+public interface ICommitVisitorWithOutputFileHeader {
+    void process(MinedCommit commit, PersistenceMechanism writer);
+
+    /**
+     * Called once, after all commits have been processed.
+     */
+    default void finalizeVisitor(PersistenceMechanism writer) {
+    }
+
+    String name();
 
-public interface ICommitVisitorWithOutputFileHeader extends CommitVisitor {
     String[] getOutputFileHeader();
 }
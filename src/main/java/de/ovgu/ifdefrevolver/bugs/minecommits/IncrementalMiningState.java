@@ -0,0 +1,190 @@
+package de.ovgu.ifdefrevolver.bugs.minecommits;
+
+import de.ovgu.ifdefrevolver.util.SimpleCsvFileReader;
+import de.ovgu.skunk.detection.output.CsvEnumUtils;
+import org.apache.log4j.Logger;
+import org.repodriller.persistence.csv.CSVFile;
+
+import java.io.File;
+import java.text.DateFormat;
+import java.text.ParseException;
+import java.text.SimpleDateFormat;
+import java.util.*;
+
+/**
+ * What previous mining runs have already produced.  This is the information needed to mine only the commits that have
+ * been added to the repository since the last run:
+ * <ul>
+ * <li>The tips (ref targets) mined by the last run.  The walk stops at these commits.</li>
+ * <li>The commits listed in the commit parents file.  These are skipped, even if the walk reaches them.  The commit
+ * parents file is the persistent form of the {@link CommitsDistanceDb}.  New commits are simply appended to it.</li>
+ * <li>The commits listed in the revisions file, i.e., the commits that modify .c files.  Together with the commit
+ * parents, they allow to recompute the ordering of the whole history without walking it again.</li>
+ * </ul>
+ */
+public class IncrementalMiningState {
+    private static final Logger LOG = Logger.getLogger(IncrementalMiningState.class);
+
+    private final Set<String> previousTips;
+    private final Map<String, List<ProtoCommit>> protoCommitsByHash;
+    private final Optional<Set<String>> cModifyingCommits;
+
+    private IncrementalMiningState(Set<String> previousTips, Map<String, List<ProtoCommit>> protoCommitsByHash,
+                                   Optional<Set<String>> cModifyingCommits) {
+        this.previousTips = previousTips;
+        this.protoCommitsByHash = protoCommitsByHash;
+        this.cModifyingCommits = cModifyingCommits;
+    }
+
+    /**
+     * @param tipsFile          File with the tips of the last run.  If it does not exist, no tips are known and the
+     *                          whole history will be walked, but already mined commits will still be skipped.
+     * @param commitParentsFile Commit parents file written by the previous runs
+     * @param revisionsFile     Revisions file written by the previous runs, if the revisions are to be updated
+     * @return The state left behind by the previous runs
+     */
+    public static IncrementalMiningState read(File tipsFile, File commitParentsFile, Optional<File> revisionsFile) {
+        final Set<String> previousTips;
+        if (tipsFile.exists()) {
+            LOG.debug("Reading previously mined tips from " + tipsFile);
+            previousTips = new MinedTipsCsvReader().readFile(tipsFile);
+        } else {
+            LOG.info("No previously mined tips found in " + tipsFile + ". Walking the whole history.");
+            previousTips = Collections.emptySet();
+        }
+
+        LOG.debug("Reading previously mined commits from " + commitParentsFile);
+        List<ProtoCommit> protoCommits = new CommitsDistanceDbCsvReader().readProtoCommits(commitParentsFile);
+        Map<String, List<ProtoCommit>> protoCommitsByHash = new LinkedHashMap<>();
+        for (ProtoCommit c : protoCommits) {
+            protoCommitsByHash.computeIfAbsent(c.commitHash, k -> new ArrayList<>()).add(c);
+        }
+
+        final Optional<Set<String>> cModifyingCommits;
+        if (revisionsFile.isPresent()) {
+            LOG.debug("Reading previously ordered commits from " + revisionsFile.get());
+            cModifyingCommits = Optional.of(new RevisionIdsCsvReader().readFile(revisionsFile.get()));
+        } else {
+            cModifyingCommits = Optional.empty();
+        }
+
+        LOG.info("Found " + protoCommitsByHash.size() + " previously mined commits and " + previousTips.size()
+                + " previously mined tips.");
+        return new IncrementalMiningState(previousTips, protoCommitsByHash, cModifyingCommits);
+    }
+
+    public Set<String> getPreviousTips() {
+        return Collections.unmodifiableSet(previousTips);
+    }
+
+    public Set<String> getMinedCommits() {
+        return Collections.unmodifiableSet(protoCommitsByHash.keySet());
+    }
+
+    /**
+     * Feeds all previously mined commits to the given visitor so that it can order the whole history.
+     */
+    public void addMinedCommitsTo(OrderingCommitVisitor visitor) {
+        if (!cModifyingCommits.isPresent()) {
+            throw new IllegalStateException("Revisions of the previous runs have not been read.");
+        }
+        final Set<String> cModifyingCommitsValue = cModifyingCommits.get();
+        DateFormat dateFormat = new SimpleDateFormat(CommitParentsColumns.TIMESTAMP_FORMAT);
+        for (Map.Entry<String, List<ProtoCommit>> e : protoCommitsByHash.entrySet()) {
+            final String commitHash = e.getKey();
+            final List<ProtoCommit> rows = e.getValue();
+            // The visitor writes the first parent first.
+            final ProtoCommit firstRow = rows.get(0);
+            final String firstParentHash = firstRow.parentHash.orElse("");
+            final boolean merge = rows.size() > 1;
+            Calendar timestamp = Calendar.getInstance();
+            try {
+                timestamp.setTime(dateFormat.parse(firstRow.timestamp));
+            } catch (ParseException pe) {
+                throw new RuntimeException("Malformed timestamp of commit " + commitHash + ": " + firstRow.timestamp,
+                        pe);
+            }
+            visitor.addPreviouslyMinedCommit(commitHash, timestamp, firstParentHash, merge,
+                    cModifyingCommitsValue.contains(commitHash));
+        }
+    }
+
+    public static void writeTips(File tipsFile, Map<String, String> tipsByRefName) {
+        LOG.debug("Writing " + tipsByRefName.size() + " mined tips to " + tipsFile);
+        CSVFile writer = new CSVFile(tipsFile.getPath(), CsvEnumUtils.headerRowStrings(MinedTipsColumns.class));
+        for (Map.Entry<String, String> e : tipsByRefName.entrySet()) {
+            writer.write(e.getKey(), e.getValue());
+        }
+        writer.close();
+    }
+
+    private static class MinedTipsCsvReader extends SimpleCsvFileReader<Set<String>> {
+        private Set<String> tips;
+
+        @Override
+        protected boolean hasHeader() {
+            return true;
+        }
+
+        @Override
+        protected void processHeader(String[] headerLine) {
+            CsvEnumUtils.validateHeaderRow(MinedTipsColumns.class, headerLine);
+        }
+
+        @Override
+        protected void initializeResult() {
+            super.initializeResult();
+            tips = new LinkedHashSet<>();
+        }
+
+        @Override
+        protected void processContentLine(String[] line) {
+            tips.add(line[MinedTipsColumns.COMMIT.ordinal()]);
+        }
+
+        @Override
+        protected Set<String> finalizeResult() {
+            return tips;
+        }
+
+        @Override
+        protected Set<String> readFile(File file) {
+            return super.readFile(file);
+        }
+    }
+
+    private static class RevisionIdsCsvReader extends SimpleCsvFileReader<Set<String>> {
+        private Set<String> commitIds;
+
+        @Override
+        protected boolean hasHeader() {
+            return true;
+        }
+
+        @Override
+        protected void processHeader(String[] headerLine) {
+            CsvEnumUtils.validateHeaderRow(OrderedRevisionsColumns.class, headerLine);
+        }
+
+        @Override
+        protected void initializeResult() {
+            super.initializeResult();
+            commitIds = new HashSet<>();
+        }
+
+        @Override
+        protected void processContentLine(String[] line) {
+            commitIds.add(line[OrderedRevisionsColumns.COMMIT_ID.ordinal()]);
+        }
+
+        @Override
+        protected Set<String> finalizeResult() {
+            return commitIds;
+        }
+
+        @Override
+        protected Set<String> readFile(File file) {
+            return super.readFile(file);
+        }
+    }
+}
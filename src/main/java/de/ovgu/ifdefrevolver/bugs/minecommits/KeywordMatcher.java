@@ -0,0 +1,196 @@
+package de.ovgu.ifdefrevolver.bugs.minecommits;
+
+import java.util.*;
+
+/**
+ * Finds occurrences of a fixed set of keywords in a text, in a single pass over the text, using an Aho-Corasick
+ * automaton.  The automaton is built once, when the matcher is created.  Matching is case-insensitive.  Instances are
+ * immutable and may be shared between threads.
+ */
+public class KeywordMatcher {
+    public enum MatchMode {
+        /**
+         * Keywords may occur anywhere, even in the middle of a word (e.g., <code>fix</code> matches
+         * <code>prefix</code>).
+         */
+        SUBSTRING,
+        /**
+         * Keywords must occur as whole words (e.g., <code>fix</code> matches <code>fix</code>, but neither
+         * <code>prefix</code> nor <code>fixes</code>).
+         */
+        WORD,
+        /**
+         * Keywords must occur at the beginning of a word and may be followed by a common English inflectional suffix
+         * (e.g., <code>fix</code> matches <code>fixes</code>, <code>fixed</code> and <code>fixing</code>, and
+         * <code>bug</code> matches <code>bugs</code> and <code>bugged</code>, but not <code>debug</code> or
+         * <code>bugzilla</code>).
+         */
+        STEM
+    }
+
+    /**
+     * Suffixes accepted after a keyword in {@link MatchMode#STEM} mode.  The suffixes starting with a vowel may be
+     * preceded by a doubling of the last letter of the keyword (e.g., <code>bug</code> &rarr; <code>bugging</code>).
+     */
+    private static final Set<String> INFLECTIONAL_SUFFIXES = new HashSet<>(Arrays.asList(
+            "s", "es", "d", "ed", "ing", "er", "ers", "y"));
+
+    private static final int ROOT = 0;
+
+    private final String[] keywords;
+    private final MatchMode matchMode;
+
+    private final List<Map<Character, Integer>> transitions = new ArrayList<>();
+    private final List<int[]> outputs = new ArrayList<>();
+    private int[] failureLinks;
+
+    /**
+     * @param keywords  The keywords to search for.  Leading and trailing whitespace is ignored, as is case.
+     * @param matchMode How matches must be delimited in the text
+     */
+    public KeywordMatcher(String[] keywords, MatchMode matchMode) {
+        this.keywords = new String[keywords.length];
+        for (int i = 0; i < keywords.length; i++) {
+            String keyword = keywords[i].trim().toLowerCase();
+            if (keyword.isEmpty()) {
+                throw new IllegalArgumentException("Empty keyword at position " + (i + 1));
+            }
+            this.keywords[i] = keyword;
+        }
+        this.matchMode = matchMode;
+        buildTrie();
+        buildFailureLinks();
+    }
+
+    private void buildTrie() {
+        newState();
+        for (int ixKeyword = 0; ixKeyword < keywords.length; ixKeyword++) {
+            String keyword = keywords[ixKeyword];
+            int state = ROOT;
+            for (int i = 0; i < keyword.length(); i++) {
+                final char c = keyword.charAt(i);
+                Integer next = transitions.get(state).get(c);
+                if (next == null) {
+                    next = newState();
+                    transitions.get(state).put(c, next);
+                }
+                state = next;
+            }
+            outputs.set(state, appendTo(outputs.get(state), ixKeyword));
+        }
+    }
+
+    private int newState() {
+        transitions.add(new HashMap<>());
+        outputs.add(new int[0]);
+        return transitions.size() - 1;
+    }
+
+    private void buildFailureLinks() {
+        failureLinks = new int[transitions.size()];
+        Deque<Integer> queue = new ArrayDeque<>();
+        for (int child : transitions.get(ROOT).values()) {
+            failureLinks[child] = ROOT;
+            queue.add(child);
+        }
+        while (!queue.isEmpty()) {
+            final int state = queue.remove();
+            for (Map.Entry<Character, Integer> e : transitions.get(state).entrySet()) {
+                final char c = e.getKey();
+                final int child = e.getValue();
+                int fallback = failureLinks[state];
+                while (fallback != ROOT && !transitions.get(fallback).containsKey(c)) {
+                    fallback = failureLinks[fallback];
+                }
+                Integer target = transitions.get(fallback).get(c);
+                failureLinks[child] = (target == null || target == child) ? ROOT : target;
+                // Keywords that are suffixes of the current path also match here.
+                for (int ixKeyword : outputs.get(failureLinks[child])) {
+                    outputs.set(child, appendTo(outputs.get(child), ixKeyword));
+                }
+                queue.add(child);
+            }
+        }
+    }
+
+    private static int[] appendTo(int[] array, int value) {
+        int[] result = Arrays.copyOf(array, array.length + 1);
+        result[array.length] = value;
+        return result;
+    }
+
+    /**
+     * @param text A text, e.g., a commit message
+     * @return The number of occurrences of each keyword in the text.  Indices are the same as in the keyword array
+     * passed to the constructor.
+     */
+    public int[] countMatches(String text) {
+        final String lowerText = text.toLowerCase();
+        final int len = lowerText.length();
+        int[] counts = new int[keywords.length];
+        int state = ROOT;
+        for (int i = 0; i < len; i++) {
+            final char c = lowerText.charAt(i);
+            Integer next;
+            while ((next = transitions.get(state).get(c)) == null && state != ROOT) {
+                state = failureLinks[state];
+            }
+            state = (next == null) ? ROOT : next;
+            for (int ixKeyword : outputs.get(state)) {
+                final int end = i + 1;
+                final int start = end - keywords[ixKeyword].length();
+                if (isDelimitedMatch(lowerText, start, end, ixKeyword)) {
+                    counts[ixKeyword]++;
+                }
+            }
+        }
+        return counts;
+    }
+
+    private boolean isDelimitedMatch(String text, int start, int end, int ixKeyword) {
+        switch (matchMode) {
+            case SUBSTRING:
+                return true;
+            case WORD:
+                return isWordBoundary(text, start) && isWordBoundary(text, end);
+            case STEM:
+                if (!isWordBoundary(text, start)) return false;
+                int wordEnd = end;
+                while (wordEnd < text.length() && Character.isLetter(text.charAt(wordEnd))) wordEnd++;
+                return (wordEnd == end) || isInflectionalSuffix(keywords[ixKeyword], text.substring(end, wordEnd));
+            default:
+                throw new IllegalStateException("Unhandled match mode: " + matchMode);
+        }
+    }
+
+    /**
+     * @return <code>true</code> iff position <code>pos</code> of the text is not between two word characters
+     */
+    private static boolean isWordBoundary(String text, int pos) {
+        if (pos <= 0 || pos >= text.length()) return true;
+        return !(Character.isLetterOrDigit(text.charAt(pos - 1)) && Character.isLetterOrDigit(text.charAt(pos)));
+    }
+
+    private static boolean isInflectionalSuffix(String keyword, String suffix) {
+        if (INFLECTIONAL_SUFFIXES.contains(suffix)) return true;
+        final char lastChar = keyword.charAt(keyword.length() - 1);
+        return (suffix.length() > 1) && (suffix.charAt(0) == lastChar)
+                && INFLECTIONAL_SUFFIXES.contains(suffix.substring(1))
+                && isVowel(suffix.charAt(1));
+    }
+
+    private static boolean isVowel(char c) {
+        return "aeiouy".indexOf(c) >= 0;
+    }
+
+    /**
+     * @return The keywords, normalized to lower case, in the order in which they were passed to the constructor
+     */
+    public List<String> getKeywords() {
+        return Collections.unmodifiableList(Arrays.asList(keywords));
+    }
+
+    public MatchMode getMatchMode() {
+        return matchMode;
+    }
+}
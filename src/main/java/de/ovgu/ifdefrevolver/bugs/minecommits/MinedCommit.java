@@ -0,0 +1,290 @@
+package de.ovgu.ifdefrevolver.bugs.minecommits;
+
+import org.apache.log4j.Logger;
+import org.eclipse.jgit.diff.*;
+import org.eclipse.jgit.errors.LargeObjectException;
+import org.eclipse.jgit.lib.AbbreviatedObjectId;
+import org.eclipse.jgit.lib.Constants;
+import org.eclipse.jgit.lib.FileMode;
+import org.eclipse.jgit.lib.ObjectId;
+import org.eclipse.jgit.lib.ObjectReader;
+import org.eclipse.jgit.lib.PersonIdent;
+import org.eclipse.jgit.lib.Repository;
+import org.eclipse.jgit.treewalk.AbstractTreeIterator;
+import org.eclipse.jgit.treewalk.CanonicalTreeParser;
+import org.eclipse.jgit.treewalk.EmptyTreeIterator;
+import org.eclipse.jgit.util.io.DisabledOutputStream;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.*;
+
+/**
+ * A commit as seen by the visitors of the {@link RevWalkCommitMiner}.  Metadata (hash, parents, date, message) is
+ * extracted eagerly while walking the history.  Information about the files changed by the commit is computed lazily,
+ * on first access, and cached:
+ * <ul>
+ * <li>{@link #getChangedFiles()} only compares the trees of the commit and its first parent.  No file contents are
+ * read.</li>
+ * <li>{@link #getModifications()} additionally detects renames.  The hunks ({@link Modification#getHunks()}) and
+ * the textual diff ({@link Modification#getDiff()}) of each modification are computed only when requested.  Both
+ * read file contents and should only be used by visitors that actually need them.</li>
+ * </ul>
+ * Like repodriller, changes are always computed relative to the first parent of the commit.
+ */
+public class MinedCommit {
+    private static final Logger LOG = Logger.getLogger(MinedCommit.class);
+
+    private final Repository repo;
+    private final String hash;
+    private final List<String> parents;
+    private final Calendar date;
+    private final String msg;
+    private final ObjectId treeId;
+    private final Optional<ObjectId> firstParentTreeId;
+    private final Optional<Integer> maxDiffSize;
+
+    /**
+     * Same default as GIT's <code>diff.algorithm</code> setting
+     */
+    private static final DiffAlgorithm DIFF_ALGORITHM =
+            DiffAlgorithm.getAlgorithm(DiffAlgorithm.SupportedAlgorithm.HISTOGRAM);
+    /**
+     * Files larger than this (in bytes) are treated like binary files, same as in
+     * {@link DiffFormatter#setBigFileThreshold(int)}
+     */
+    private static final int BIG_FILE_THRESHOLD = 50 * 1024 * 1024;
+
+    private List<DiffEntry> changedFiles = null;
+    private List<Modification> modifications = null;
+
+    MinedCommit(Repository repo, String hash, List<String> parents, PersonIdent author, String msg,
+                ObjectId treeId, Optional<ObjectId> firstParentTreeId, Optional<Integer> maxDiffSize) {
+        this.repo = repo;
+        this.hash = hash;
+        this.parents = Collections.unmodifiableList(parents);
+        this.date = new GregorianCalendar(author.getTimeZone());
+        this.date.setTime(author.getWhen());
+        this.msg = msg;
+        this.treeId = treeId;
+        this.firstParentTreeId = firstParentTreeId;
+        this.maxDiffSize = maxDiffSize;
+    }
+
+    public String getHash() {
+        return hash;
+    }
+
+    /**
+     * @return Hashes of the parent commits, in GIT's order (i.e., the first parent comes first)
+     */
+    public List<String> getParents() {
+        return parents;
+    }
+
+    /**
+     * @return Hash of the first parent or the empty string if this commit is a root commit
+     */
+    public String getParent() {
+        return parents.isEmpty() ? "" : parents.get(0);
+    }
+
+    public boolean isMerge() {
+        return parents.size() > 1;
+    }
+
+    /**
+     * @return A fresh copy of the author date of this commit
+     */
+    public Calendar getDate() {
+        return (Calendar) date.clone();
+    }
+
+    public String getMsg() {
+        return msg;
+    }
+
+    /**
+     * @return The files changed by this commit, without rename detection and without textual diffs
+     */
+    public synchronized List<DiffEntry> getChangedFiles() {
+        if (changedFiles == null) {
+            DiffFormatter df = new DiffFormatter(DisabledOutputStream.INSTANCE);
+            try {
+                df.setRepository(repo);
+                changedFiles = Collections.unmodifiableList(scan(df));
+            } catch (IOException ioe) {
+                throw new RuntimeException("I/O exception while listing files changed by commit " + hash, ioe);
+            } finally {
+                df.release();
+            }
+        }
+        return changedFiles;
+    }
+
+    /**
+     * @return The files changed by this commit, with rename detection.  Textual diffs and hunks of each modification
+     * are computed on demand.
+     */
+    public synchronized List<Modification> getModifications() {
+        if (modifications == null) {
+            DiffFormatter df = new DiffFormatter(DisabledOutputStream.INSTANCE);
+            try {
+                df.setRepository(repo);
+                df.setDetectRenames(true);
+                List<Modification> result = new ArrayList<>();
+                for (DiffEntry entry : scan(df)) {
+                    result.add(new Modification(entry));
+                }
+                modifications = Collections.unmodifiableList(result);
+            } catch (IOException ioe) {
+                throw new RuntimeException("I/O exception while detecting renames in commit " + hash, ioe);
+            } finally {
+                df.release();
+            }
+        }
+        return modifications;
+    }
+
+    private List<DiffEntry> scan(DiffFormatter df) throws IOException {
+        ObjectReader reader = repo.newObjectReader();
+        try {
+            AbstractTreeIterator oldTree;
+            if (firstParentTreeId.isPresent()) {
+                oldTree = new CanonicalTreeParser(null, reader, firstParentTreeId.get());
+            } else {
+                oldTree = new EmptyTreeIterator();
+            }
+            AbstractTreeIterator newTree = new CanonicalTreeParser(null, reader, treeId);
+            return df.scan(oldTree, newTree);
+        } finally {
+            reader.release();
+        }
+    }
+
+    /**
+     * A file changed by a commit.  The textual diff and the hunks are computed lazily and cached.
+     */
+    public class Modification {
+        private final DiffEntry entry;
+        private String diff = null;
+        private List<DiffHunk> hunks = null;
+
+        private Modification(DiffEntry entry) {
+            this.entry = entry;
+        }
+
+        public String getOldPath() {
+            return entry.getOldPath();
+        }
+
+        public String getNewPath() {
+            return entry.getNewPath();
+        }
+
+        public DiffEntry.ChangeType getType() {
+            return entry.getChangeType();
+        }
+
+        /**
+         * @return The base name of the new path or, if the file was deleted, of the old path
+         */
+        public String getFileName() {
+            String path = (entry.getChangeType() == DiffEntry.ChangeType.DELETE) ? entry.getOldPath() : entry.getNewPath();
+            int ixSlash = path.lastIndexOf('/');
+            return (ixSlash < 0) ? path : path.substring(ixSlash + 1);
+        }
+
+        /**
+         * @return The textual diff in unified format or the empty string if the diff exceeded the size limit of the
+         * miner
+         */
+        public synchronized String getDiff() {
+            if (diff == null) {
+                ByteArrayOutputStream out = new ByteArrayOutputStream();
+                DiffFormatter df = new DiffFormatter(out);
+                try {
+                    df.setRepository(repo);
+                    df.format(entry);
+                    df.flush();
+                    diff = diffTextOrEmpty(out);
+                } catch (IOException ioe) {
+                    throw new RuntimeException("I/O exception while computing diff of " + getNewPath()
+                            + " in commit " + hash, ioe);
+                } finally {
+                    df.release();
+                }
+            }
+            return diff;
+        }
+
+        private String diffTextOrEmpty(ByteArrayOutputStream out) throws IOException {
+            if (maxDiffSize.isPresent() && out.size() > maxDiffSize.get()) {
+                LOG.info("Ignoring diff of " + entry.getNewPath() + " in commit " + hash + ": diff size ("
+                        + out.size() + ") exceeds limit (" + maxDiffSize.get() + ").");
+                return "";
+            }
+            return out.toString("UTF-8");
+        }
+
+        /**
+         * Computes the hunks of this modification directly from the {@link EditList} of the old and new file
+         * contents, without producing the textual diff.  Binary files, very large files and submodules have no hunks.
+         *
+         * @return The hunks of this modification, in order of appearance
+         */
+        public synchronized List<DiffHunk> getHunks() {
+            if (hunks == null) {
+                try {
+                    hunks = Collections.unmodifiableList(computeHunks());
+                } catch (IOException ioe) {
+                    throw new RuntimeException("I/O exception while computing hunks of " + getNewPath()
+                            + " in commit " + hash, ioe);
+                }
+            }
+            return hunks;
+        }
+
+        private List<DiffHunk> computeHunks() throws IOException {
+            if (entry.getOldMode() == FileMode.GITLINK || entry.getNewMode() == FileMode.GITLINK) {
+                return Collections.emptyList();
+            }
+            ObjectReader reader = repo.newObjectReader();
+            try {
+                Optional<byte[]> oldContent = readTextContent(reader, entry.getOldId());
+                Optional<byte[]> newContent = readTextContent(reader, entry.getNewId());
+                if (!oldContent.isPresent() || !newContent.isPresent()) {
+                    return Collections.emptyList();
+                }
+                RawText a = new RawText(oldContent.get());
+                RawText b = new RawText(newContent.get());
+                EditList edits = DIFF_ALGORITHM.diff(RawTextComparator.DEFAULT, a, b);
+                return DiffHunk.fromEditList(edits, a.size(), b.size(), DiffHunk.DEFAULT_CONTEXT);
+            } finally {
+                reader.release();
+            }
+        }
+
+        /**
+         * @return The contents of the given blob, an empty array if the blob ID is the zero ID (i.e., the file does
+         * not exist on this side of the diff), or nothing if the blob is too large or binary
+         */
+        private Optional<byte[]> readTextContent(ObjectReader reader, AbbreviatedObjectId blobId) throws IOException {
+            ObjectId id = blobId.toObjectId();
+            if (ObjectId.zeroId().equals(id)) {
+                return Optional.of(new byte[0]);
+            }
+            final byte[] content;
+            try {
+                content = reader.open(id, Constants.OBJ_BLOB).getCachedBytes(BIG_FILE_THRESHOLD);
+            } catch (LargeObjectException e) {
+                LOG.debug("Not computing hunks of " + getNewPath() + " in commit " + hash + ": file too large.");
+                return Optional.empty();
+            }
+            if (RawText.isBinary(content)) {
+                return Optional.empty();
+            }
+            return Optional.of(content);
+        }
+    }
+}
@@ -0,0 +1,16 @@
+package de.ovgu.ifdefrevolver.bugs.minecommits;
+
+/**
+ * Columns of the CSV file in which incremental mining records the tips of the repository that have been mined (see
+ * {@link IncrementalMiningState})
+ */
+public enum MinedTipsColumns {
+    /**
+     * Full name of the ref, e.g., <code>refs/heads/master</code>
+     */
+    REF,
+    /**
+     * Hash of the commit the ref pointed to when it was mined
+     */
+    COMMIT
+}
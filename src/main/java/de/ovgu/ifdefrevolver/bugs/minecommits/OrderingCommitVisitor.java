@@ -2,193 +2,177 @@ package de.ovgu.ifdefrevolver.bugs.minecommits;
 
 import de.ovgu.skunk.detection.output.CsvEnumUtils;
 import org.apache.log4j.Logger;
-import org.repodriller.domain.Commit;
-import org.repodriller.domain.Modification;
+import org.eclipse.jgit.diff.DiffEntry;
 import org.repodriller.persistence.PersistenceMechanism;
-import org.repodriller.scm.SCMRepository;
 
-import java.text.DateFormat;
-import java.text.SimpleDateFormat;
 import java.util.*;
-
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Splits the history into branches, i.e., chains of commits where each commit is the first parent of the next.  Each
+ * commit is the parent of at most one other commit in the same branch.  If several commits share the same first
+ * parent, the parent's branch is continued by the child with the longest chain of descendants.
+ * <p>
+ * Commits are collected without locking while the repository is mined.  Branches are only built when the visitor is
+ * finalized, in time linear in the number of commits.
+ * </p>
+ */
 public class OrderingCommitVisitor implements ICommitVisitorWithOutputFileHeader {
     private static Logger LOG = Logger.getLogger(OrderingCommitVisitor.class);
 
-    private final DateFormat dateFormat = new SimpleDateFormat(OrderedRevisionsColumns.TIMESTAMP_FORMAT);
+    private static final int NO_COMMIT = -1;
+
+    /**
+     * Orders the first commits of the branches by timestamp.  Ties are broken by hash so that the branch numbers do
+     * not depend on the order in which commits were mined.
+     */
+    private static final Comparator<OrderedCommit> ROOTS_BY_TIMESTAMP_AND_HASH = new Comparator<OrderedCommit>() {
+        @Override
+        public int compare(OrderedCommit a, OrderedCommit b) {
+            int r = OrderedCommit.ORDER_BY_TIMESTAMP.compare(a, b);
+            if (r != 0) return r;
+            return a.getHash().compareTo(b.getHash());
+        }
+    };
 
     public OrderingCommitVisitor() {
     }
 
-    Map<String, OrderedCommit> commitsWithoutParents = new HashMap<>();
-    Map<String, OrderedCommit> allCommitsByHash = new HashMap<>();
+    private final Map<String, OrderedCommit> allCommitsByHash = new ConcurrentHashMap<>();
 
-    int commitsSeen = 0;
+    private final AtomicInteger commitsSeen = new AtomicInteger();
 
     @Override
-    public synchronized void process(SCMRepository repo, Commit commit, PersistenceMechanism writer) {
-        commitsSeen++;
-        LOG.info("Listing commit " + commitsSeen);
+    public void process(MinedCommit commit, PersistenceMechanism writer) {
+        LOG.info("Listing commit " + commitsSeen.incrementAndGet());
 
         boolean commitModifiesCFile = commitModifiesCFile(commit);
-
-        Calendar cal = commit.getDate();
-        String formattedTimeStamp;
-        synchronized (dateFormat) {
-            formattedTimeStamp = dateFormat.format(cal.getTime());
-        }
-
-        final String commitHash = commit.getHash();
-        OrderedCommit orderedCommit = new OrderedCommit(commitHash, cal, commit.getParent(),
+        OrderedCommit orderedCommit = new OrderedCommit(commit.getHash(), commit.getDate(), commit.getParent(),
                 commit.isMerge(), commitModifiesCFile);
-
-        allCommitsByHash.put(commitHash, orderedCommit);
-        if (orderedCommit.isRoot()) {
-            commitsWithoutParents.put(commitHash, orderedCommit);
-        } else {
-            String parentHash = orderedCommit.getParentHash().get();
-            OrderedCommit parent = allCommitsByHash.get(parentHash);
-            if ((parent != null) && !parent.hasChild()) {
-                orderedCommit.assignParent(parent);
-            } else {
-                commitsWithoutParents.put(commitHash, orderedCommit);
-            }
-        }
+        addOrderedCommit(orderedCommit);
     }
 
-    private synchronized void assignMissingParents() {
-        final int oldNumParentsWithoutCommits = commitsWithoutParents.size();
-        LOG.info("Trying to find parents for " + oldNumParentsWithoutCommits + " commits.");
-        int parentsAssigned = 0;
-        boolean changed = true;
-        while (changed) {
-            changed = false;
-            for (Iterator<OrderedCommit> cIt = commitsWithoutParents.values().iterator(); cIt.hasNext(); ) {
-                OrderedCommit c = cIt.next();
-                Optional<String> parentHash = c.getParentHash();
-                if (!parentHash.isPresent()) continue;
-                OrderedCommit parent = allCommitsByHash.get(parentHash.get());
-                if ((parent != null) && !parent.hasChild()) {
-                    c.assignParent(parent);
-                    cIt.remove();
-                    changed = true;
-                    parentsAssigned++;
-                }
-            }
-        }
+    /**
+     * Adds a commit that has been mined by a previous run (see {@link IncrementalMiningState}) so that the ordering
+     * covers the whole history without walking it again.
+     *
+     * @param hash          Hash of the commit
+     * @param timestamp     Timestamp of the commit
+     * @param parentHash    Hash of the first parent or the empty string if the commit is a root commit
+     * @param merge         Whether the commit has more than one parent
+     * @param modifiesCFile Whether the commit modifies at least one .c file
+     */
+    void addPreviouslyMinedCommit(String hash, Calendar timestamp, String parentHash, boolean merge,
+                                  boolean modifiesCFile) {
+        addOrderedCommit(new OrderedCommit(hash, timestamp, parentHash, merge, modifiesCFile));
+    }
 
-        final int newNumParentsWithoutCommits = commitsWithoutParents.size();
-        LOG.info("Established " + parentsAssigned + " new parent/child relationships. Commits without parents reduced from " + oldNumParentsWithoutCommits + " to " + newNumParentsWithoutCommits + ".");
+    private void addOrderedCommit(OrderedCommit orderedCommit) {
+        allCommitsByHash.put(orderedCommit.getHash(), orderedCommit);
     }
 
-    private void tryToBuildLongerBranches() {
-        LOG.info("Trying to build longer branches.");
-        final int MAGIC_UPPER_BOUNDARY_1 = allCommitsByHash.size() + 1000;
-        int numberOfReassignments = 0;
-        int iRunCommitsWithTakenParents;
-        for (iRunCommitsWithTakenParents = 0; iRunCommitsWithTakenParents < MAGIC_UPPER_BOUNDARY_1; iRunCommitsWithTakenParents++) {
-            boolean foundBetterParentsForCommitsWithTakenParents = tryAssignBetterParentsToCommitsWithTakenParents();
-            if (foundBetterParentsForCommitsWithTakenParents) {
-                numberOfReassignments++;
-            } else {
-                break;
-            }
+    /**
+     * Links each commit to the child that continues its branch.  All commits are indexed first.  Then, chain lengths
+     * are computed in a single pass that visits each commit only after all its children (Kahn's algorithm on the
+     * first-parent forest).  The chain length of a commit is memoized as soon as it is final, so no chain is walked
+     * more than once.
+     *
+     * @return The first commit of each branch
+     */
+    private List<OrderedCommit> buildBranches() {
+        final OrderedCommit[] commits = allCommitsByHash.values().toArray(new OrderedCommit[0]);
+        final int numCommits = commits.length;
+        LOG.info("Building branches from " + numCommits + " commits.");
+
+        Map<String, Integer> keysByHash = new HashMap<>(numCommits * 2);
+        for (int i = 0; i < numCommits; i++) {
+            keysByHash.put(commits[i].getHash(), i);
         }
 
-        LOG.info("Reassigned " + numberOfReassignments + " parent/child relationships in total in " + iRunCommitsWithTakenParents + " iteration(s).");
-    }
-
-    private boolean tryAssignBetterParentsToCommitsWithTakenParents() {
-        boolean changed = false;
-        Set<OrderedCommit> commitsWithTakenParents = findCommitsWithTakenParents();
-        LOG.debug("Found " + commitsWithTakenParents.size() + " commits whose parent is already assigned elsewhere.");
-        for (OrderedCommit c : commitsWithTakenParents) {
-            boolean parentReassigned = tryAssignBetterParent(c);
-            if (parentReassigned) {
-                changed = true;
-                break;
+        final int[] parents = new int[numCommits];
+        final int[] numPendingChildren = new int[numCommits];
+        int numUnknownParents = 0;
+        for (int i = 0; i < numCommits; i++) {
+            Optional<String> parentHash = commits[i].getParentHash();
+            parents[i] = NO_COMMIT;
+            if (!parentHash.isPresent()) continue;
+            Integer parentKey = keysByHash.get(parentHash.get());
+            if (parentKey == null) {
+                LOG.warn("Commit " + commits[i].getHash() + " refers to unknown parent: " + parentHash.get());
+                numUnknownParents++;
+                continue;
             }
+            parents[i] = parentKey;
+            numPendingChildren[parentKey]++;
         }
-        return changed;
-    }
 
-    /**
-     * @param c
-     * @return <code>true</code> if the parent/child relationship of the commit was changed
-     */
-    private boolean tryAssignBetterParent(OrderedCommit c) {
-        Optional<String> parentHash = c.getParentHash();
-        if (!parentHash.isPresent()) {
-            return false;
+        // Length of the longest chain of descendants, including the commit itself
+        final int[] chainLengths = new int[numCommits];
+        final int[] heirs = new int[numCommits];
+        Arrays.fill(heirs, NO_COMMIT);
+        int[] queue = new int[numCommits];
+        int queueHead = 0, queueTail = 0;
+        for (int i = 0; i < numCommits; i++) {
+            if (numPendingChildren[i] == 0) queue[queueTail++] = i;
         }
-        String parentHashValue = parentHash.get();
-        OrderedCommit parent = allCommitsByHash.get(parentHashValue);
-        if (parent == null) {
-            LOG.warn("Commit " + c.getHash() + " refers to unknown parent: " + parentHashValue);
-            return false;
+        while (queueHead < queueTail) {
+            final int current = queue[queueHead++];
+            final int heir = heirs[current];
+            chainLengths[current] = 1 + ((heir == NO_COMMIT) ? 0 : chainLengths[heir]);
+            final int parent = parents[current];
+            if (parent == NO_COMMIT) continue;
+            final int currentHeirOfParent = heirs[parent];
+            if ((currentHeirOfParent == NO_COMMIT)
+                    || isBetterHeir(commits, chainLengths, current, currentHeirOfParent)) {
+                heirs[parent] = current;
+            }
+            if (--numPendingChildren[parent] == 0) {
+                queue[queueTail++] = parent;
+            }
         }
-        if (isCommitBetterChildOf(c, parent)) {
-            makeCommitChildOf(c, parent);
-            return true;
-        } else {
-            return false;
+        if (queueTail != numCommits) {
+            throw new IllegalStateException("Cycle in first-parent relationships among " + (numCommits - queueTail)
+                    + " commits.");
         }
-    }
 
-    /**
-     * Turns <code>c</code> into the child of <code>parent</code> and updates the map {@link #commitsWithoutParents}.
-     *
-     * @param newChild The new child
-     * @param parent   The parent
-     */
-    private void makeCommitChildOf(OrderedCommit newChild, OrderedCommit parent) {
-        Optional<OrderedCommit> oldChild = newChild.assignParent(parent);
-        if (oldChild.isPresent()) {
-            OrderedCommit oldChildValue = oldChild.get();
-            commitsWithoutParents.put(oldChildValue.getHash(), oldChildValue);
+        List<OrderedCommit> roots = new ArrayList<>();
+        for (int i = 0; i < numCommits; i++) {
+            final int heir = heirs[i];
+            if (heir != NO_COMMIT) {
+                commits[heir].assignParent(commits[i]);
+            }
+            final int parent = parents[i];
+            if ((parent == NO_COMMIT) || (heirs[parent] != i)) {
+                roots.add(commits[i]);
+            }
         }
-        commitsWithoutParents.remove(newChild.getHash());
+
+        LOG.info("Found " + roots.size() + " branches. " + numUnknownParents + " commit(s) refer to unknown parents.");
+        return roots;
     }
 
     /**
-     * @param potentialNewChild
-     * @param parent
-     * @return <code>true</code> iff the chain of commits starting with <code>parent</code> becomes longer with
-     * <code>potentialNewChild</code> as the child of <code>parent</code>.
+     * @return <code>true</code> iff commit <code>candidate</code> should continue the branch of its parent rather than
+     * its sibling <code>incumbent</code>.  Longer chains win.  Ties are broken by timestamp and hash so that the result
+     * does not depend on the order in which commits were mined.
      */
-    private boolean isCommitBetterChildOf(OrderedCommit potentialNewChild, OrderedCommit parent) {
-        Optional<OrderedCommit> currentChild = parent.getChild();
-        final int currentNumberOfChildrenOfParent;
-        if (currentChild.isPresent()) {
-            OrderedCommit currentChildValue = currentChild.get();
-            if (currentChildValue == potentialNewChild) {
-                return false;
-            }
-            currentNumberOfChildrenOfParent = currentChildValue.countDescendants();
-        } else {
-            currentNumberOfChildrenOfParent = 0;
-        }
-        return (potentialNewChild.countDescendants() > currentNumberOfChildrenOfParent);
-    }
-
-    private Set<OrderedCommit> findCommitsWithTakenParents() {
-        Set<OrderedCommit> commitsWithTakenParents = new HashSet<>();
-        for (Map.Entry<String, OrderedCommit> e : commitsWithoutParents.entrySet()) {
-            OrderedCommit c = e.getValue();
-            Optional<String> parentHash = c.getParentHash();
-            if (parentHash.isPresent()) {
-                commitsWithTakenParents.add(c);
-            }
-        }
-        return commitsWithTakenParents;
+    private static boolean isBetterHeir(OrderedCommit[] commits, int[] chainLengths, int candidate, int incumbent) {
+        int r = Integer.compare(chainLengths[candidate], chainLengths[incumbent]);
+        if (r != 0) return r > 0;
+        final OrderedCommit c = commits[candidate];
+        final OrderedCommit i = commits[incumbent];
+        r = OrderedCommit.ORDER_BY_TIMESTAMP.compare(c, i);
+        if (r != 0) return r < 0;
+        return c.getHash().compareTo(i.getHash()) < 0;
     }
 
-    private synchronized List<OrderedCommit> getCommitsInOrder() {
-        assignMissingParents();
-        tryToBuildLongerBranches();
+    private List<OrderedCommit> getCommitsInOrder() {
+        List<OrderedCommit> roots = buildBranches();
         LOG.info("Ordering commits by branch and timestamp.");
 
         Map<OrderedCommit, List<OrderedCommit>> branchesByRoot = new HashMap<>();
-        for (OrderedCommit root : commitsWithoutParents.values()) {
+        for (OrderedCommit root : roots) {
             List<OrderedCommit> branch = listIncludableDescendants(root);
             if (!branch.isEmpty()) {
                 OrderedCommit adjustedRoot = branch.get(0);
@@ -196,7 +180,7 @@ public class OrderingCommitVisitor implements ICommitVisitorWithOutputFileHeader
             }
         }
         List<OrderedCommit> orderedRoots = new ArrayList<>(branchesByRoot.keySet());
-        Collections.sort(orderedRoots, OrderedCommit.ORDER_BY_TIMESTAMP);
+        Collections.sort(orderedRoots, ROOTS_BY_TIMESTAMP_AND_HASH);
         ensureStrictlyAscendingStartingDates(orderedRoots);
 
         List<OrderedCommit> result = new ArrayList<>();
@@ -210,24 +194,21 @@ public class OrderingCommitVisitor implements ICommitVisitorWithOutputFileHeader
         return result;
     }
 
+    /**
+     * Advances the timestamp of each root until it is at least one day after the (possibly advanced) timestamp of the
+     * preceding root.  Since a root can only be pushed later by its predecessor, a single pass from the earliest to the
+     * latest root suffices.
+     */
     private void ensureStrictlyAscendingStartingDates(List<OrderedCommit> orderedRoots) {
         LOG.info("Adjusting timestamps of roots to ensure distinct, ascending starting dates.");
         final int len = orderedRoots.size();
-        boolean changed = true;
         int numChanges = 0;
-        while (changed) {
-            changed = false;
-            for (int i = len - 2; i >= 0; i--) {
-                OrderedCommit current = orderedRoots.get(i);
-                OrderedCommit next = orderedRoots.get(i + 1);
-                if (current.isAtLeastOneDayBefore(next)) {
-                    // This is exactly how we want it.
-                    continue;
-                } else {
-                    next.advanceTimestampOneDay();
-                    changed = true;
-                    numChanges++;
-                }
+        for (int i = 1; i < len; i++) {
+            OrderedCommit previous = orderedRoots.get(i - 1);
+            OrderedCommit current = orderedRoots.get(i);
+            while (!previous.isAtLeastOneDayBefore(current)) {
+                current.advanceTimestampOneDay();
+                numChanges++;
             }
         }
         LOG.info("Adjusted " + numChanges + " conflicting timestamps.");
@@ -267,8 +248,8 @@ public class OrderingCommitVisitor implements ICommitVisitorWithOutputFileHeader
         return includeCommit;
     }
 
-    private boolean commitModifiesCFile(Commit commit) {
-        for (Modification m : commit.getModifications()) {
+    private boolean commitModifiesCFile(MinedCommit commit) {
+        for (DiffEntry m : commit.getChangedFiles()) {
             if (isCFileName(m.getOldPath()) || isCFileName(m.getNewPath())) {
                 return true;
             }
@@ -283,7 +264,7 @@ public class OrderingCommitVisitor implements ICommitVisitorWithOutputFileHeader
     private boolean finalized = false;
 
     @Override
-    public synchronized void finalize(SCMRepository repo, PersistenceMechanism writer) {
+    public synchronized void finalizeVisitor(PersistenceMechanism writer) {
         if (finalized) return;
         finalized = true;
         List<OrderedCommit> commitsInOrder = this.getCommitsInOrder();
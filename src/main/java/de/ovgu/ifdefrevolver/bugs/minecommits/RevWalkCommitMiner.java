@@ -0,0 +1,222 @@
+package de.ovgu.ifdefrevolver.bugs.minecommits;
+
+import de.ovgu.ifdefrevolver.util.ThreadProcessor;
+import de.ovgu.ifdefrevolver.util.UncaughtWorkerThreadException;
+import org.apache.log4j.Logger;
+import org.eclipse.jgit.errors.IncorrectObjectTypeException;
+import org.eclipse.jgit.errors.MissingObjectException;
+import org.eclipse.jgit.lib.ObjectId;
+import org.eclipse.jgit.lib.Ref;
+import org.eclipse.jgit.lib.Repository;
+import org.eclipse.jgit.revwalk.RevCommit;
+import org.eclipse.jgit.revwalk.RevWalk;
+import org.repodriller.persistence.PersistenceMechanism;
+
+import java.io.IOException;
+import java.util.*;
+
+/**
+ * Walks all commits reachable from any ref of a GIT repository and hands them to one or more
+ * {@link ICommitVisitorWithOutputFileHeader}s.  The walk itself runs directly on JGit's {@link RevWalk}.  The visitors
+ * are called concurrently from a configurable number of worker threads.  Diffs are only computed if a visitor asks for
+ * them (see {@link MinedCommit}).
+ */
+public class RevWalkCommitMiner {
+    private static final Logger LOG = Logger.getLogger(RevWalkCommitMiner.class);
+
+    private final Repository repo;
+    private final int numThreads;
+    private final Optional<Integer> maxDiffSize;
+
+    private Collection<String> previousTips = Collections.emptySet();
+    private Set<String> alreadyMinedCommits = Collections.emptySet();
+    private final Map<String, String> tips = new LinkedHashMap<>();
+
+    /**
+     * @param repo        The repository to mine
+     * @param numThreads  Number of worker threads calling the visitor, must be at least 1
+     * @param maxDiffSize Maximum size of a textual diff (in bytes).  Larger diffs are reported as empty.
+     */
+    public RevWalkCommitMiner(Repository repo, int numThreads, Optional<Integer> maxDiffSize) {
+        if (numThreads < 1) {
+            throw new IllegalArgumentException("Number of threads must be at least 1, got " + numThreads);
+        }
+        this.repo = repo;
+        this.numThreads = numThreads;
+        this.maxDiffSize = maxDiffSize;
+    }
+
+    /**
+     * Restricts the walk to commits that are not reachable from the given commits.  Typically, these are the tips
+     * recorded by a previous run (see {@link #getTips()}).  Tips that no longer exist in the repository (e.g., after a
+     * forced push) are ignored.
+     *
+     * @param previousTips Hashes of commits that have been mined before, along with all of their ancestors
+     */
+    public void setPreviousTips(Collection<String> previousTips) {
+        this.previousTips = previousTips;
+    }
+
+    /**
+     * @param alreadyMinedCommits Hashes of commits that will be skipped, even if they are reachable from a new tip
+     */
+    public void setAlreadyMinedCommits(Set<String> alreadyMinedCommits) {
+        this.alreadyMinedCommits = alreadyMinedCommits;
+    }
+
+    /**
+     * @return The commits that the refs of the repository pointed to at the start of the last walk, by ref name
+     */
+    public Map<String, String> getTips() {
+        return Collections.unmodifiableMap(tips);
+    }
+
+    public void mine(ICommitVisitorWithOutputFileHeader visitor, PersistenceMechanism writer) {
+        mine(Collections.singletonMap(visitor, writer));
+    }
+
+    /**
+     * Walks the repository once and passes each commit to all of the given visitors, one after the other.  Changed
+     * files and diffs of a commit are computed at most once, no matter how many visitors request them.
+     *
+     * @param writersByVisitor The visitors to run, each mapped to the writer for its output
+     */
+    public void mine(final Map<ICommitVisitorWithOutputFileHeader, ? extends PersistenceMechanism> writersByVisitor) {
+        LOG.info("Mining repository " + repo.getDirectory() + " with visitor(s) " + visitorNames(writersByVisitor.keySet())
+                + " using " + numThreads + " thread(s).");
+        RevWalk rw = new RevWalk(repo);
+        try {
+            markAllRefsAsStart(rw);
+            markPreviousTipsAsUninteresting(rw);
+            MinedCommitIterator commits = new MinedCommitIterator(rw);
+            ThreadProcessor<MinedCommit> processor = new ThreadProcessor<MinedCommit>() {
+                @Override
+                protected void processItem(MinedCommit commit) {
+                    for (Map.Entry<ICommitVisitorWithOutputFileHeader, ? extends PersistenceMechanism> e : writersByVisitor.entrySet()) {
+                        e.getKey().process(commit, e.getValue());
+                    }
+                }
+            };
+            processor.processItems(commits, numThreads);
+            LOG.info("Visited " + commits.numCommitsWalked + " commits, skipped " + commits.numCommitsSkipped
+                    + " commits that had already been mined.");
+        } catch (IOException ioe) {
+            throw new RuntimeException("I/O exception while walking the commits of repository "
+                    + repo.getDirectory(), ioe);
+        } catch (UncaughtWorkerThreadException ex) {
+            throw new RuntimeException("Uncaught exception while mining repository " + repo.getDirectory(), ex);
+        } finally {
+            rw.release();
+        }
+
+        for (Map.Entry<ICommitVisitorWithOutputFileHeader, ? extends PersistenceMechanism> e : writersByVisitor.entrySet()) {
+            PersistenceMechanism writer = e.getValue();
+            e.getKey().finalizeVisitor(writer);
+            writer.close();
+        }
+    }
+
+    private static String visitorNames(Collection<ICommitVisitorWithOutputFileHeader> visitors) {
+        StringBuilder sb = new StringBuilder();
+        for (ICommitVisitorWithOutputFileHeader v : visitors) {
+            if (sb.length() > 0) sb.append(", ");
+            sb.append('`').append(v.name()).append('\'');
+        }
+        return sb.toString();
+    }
+
+    private void markAllRefsAsStart(RevWalk rw) throws IOException {
+        tips.clear();
+        for (Ref ref : repo.getAllRefs().values()) {
+            try {
+                RevCommit tip = rw.parseCommit(ref.getObjectId());
+                rw.markStart(tip);
+                tips.put(ref.getName(), tip.getId().name());
+            } catch (IncorrectObjectTypeException e) {
+                LOG.debug("Ignoring ref that does not point to a commit: " + ref.getName());
+            }
+        }
+    }
+
+    private void markPreviousTipsAsUninteresting(RevWalk rw) throws IOException {
+        for (String tipHash : previousTips) {
+            try {
+                rw.markUninteresting(rw.parseCommit(ObjectId.fromString(tipHash)));
+            } catch (MissingObjectException | IncorrectObjectTypeException e) {
+                LOG.warn("Ignoring previous tip " + tipHash + ": not a commit of this repository.");
+            }
+        }
+    }
+
+    /**
+     * Iterator over the commits of a {@link RevWalk}.  It is not thread-safe, but the {@link ThreadProcessor}
+     * synchronizes all calls to it.  Everything the workers need is copied out of the {@link RevCommit} objects so
+     * that the workers never touch the walk.
+     */
+    private class MinedCommitIterator implements Iterator<MinedCommit> {
+        private final RevWalk rw;
+        private RevCommit nextCommit = null;
+        private boolean nextCommitFetched = false;
+        int numCommitsWalked = 0;
+        int numCommitsSkipped = 0;
+
+        MinedCommitIterator(RevWalk rw) {
+            this.rw = rw;
+        }
+
+        @Override
+        public boolean hasNext() {
+            if (!nextCommitFetched) {
+                try {
+                    nextCommit = rw.next();
+                    while ((nextCommit != null) && alreadyMinedCommits.contains(nextCommit.getId().name())) {
+                        numCommitsSkipped++;
+                        nextCommit = rw.next();
+                    }
+                } catch (IOException ioe) {
+                    throw new RuntimeException("I/O exception while walking the commits of repository "
+                            + repo.getDirectory(), ioe);
+                }
+                nextCommitFetched = true;
+            }
+            return nextCommit != null;
+        }
+
+        @Override
+        public MinedCommit next() {
+            if (!hasNext()) {
+                throw new NoSuchElementException();
+            }
+            nextCommitFetched = false;
+            numCommitsWalked++;
+            if (numCommitsWalked % 1000 == 0) {
+                LOG.info("Walked " + numCommitsWalked + " commits.");
+            }
+            try {
+                return toMinedCommit(nextCommit);
+            } catch (IOException ioe) {
+                throw new RuntimeException("I/O exception while parsing commit " + nextCommit.getId().name(), ioe);
+            }
+        }
+
+        private MinedCommit toMinedCommit(RevCommit commit) throws IOException {
+            final int parentCount = commit.getParentCount();
+            List<String> parents = new ArrayList<>(parentCount);
+            for (int i = 0; i < parentCount; i++) {
+                parents.add(commit.getParent(i).getId().name());
+            }
+
+            final Optional<ObjectId> firstParentTreeId;
+            if (parentCount == 0) {
+                firstParentTreeId = Optional.empty();
+            } else {
+                RevCommit firstParent = commit.getParent(0);
+                rw.parseHeaders(firstParent);
+                firstParentTreeId = Optional.of(firstParent.getTree().getId());
+            }
+
+            return new MinedCommit(repo, commit.getId().name(), parents, commit.getAuthorIdent(),
+                    commit.getFullMessage(), commit.getTree().getId(), firstParentTreeId, maxDiffSize);
+        }
+    }
+}
@@ -0,0 +1,15 @@
+package de.ovgu.ifdefrevolver.bugs.minecommits;
+
+/**
+ * Columns of the word frequencies written by the {@link WordCountVisitor}
+ */
+public enum WordCountColumns {
+    /**
+     * The word, in lower case and possibly stemmed
+     */
+    WORD,
+    /**
+     * Total number of occurrences of the word in all commit messages
+     */
+    COUNT
+}
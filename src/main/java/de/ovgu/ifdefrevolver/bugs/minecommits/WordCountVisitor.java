@@ -1,59 +1,232 @@
 package de.ovgu.ifdefrevolver.bugs.minecommits;
 
-import org.repodriller.domain.Commit;
+import de.ovgu.skunk.detection.output.CsvEnumUtils;
+import org.apache.log4j.Logger;
 import org.repodriller.persistence.PersistenceMechanism;
-import org.repodriller.scm.CommitVisitor;
-import org.repodriller.scm.SCMRepository;
 
-import java.util.HashMap;
-import java.util.Map;
-
-public class WordCountVisitor implements CommitVisitor {
-
-    private Map<String, Integer> words;
-    private Stemmer stemmer;
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileReader;
+import java.io.IOException;
+import java.util.*;
+import java.util.concurrent.ConcurrentLinkedQueue;
+
+/**
+ * Counts the words in commit messages.  Words are lower-cased.  Optionally, stop words are dropped and the remaining
+ * words are reduced to their base forms using the {@link Stemmer}.
+ * <p>
+ * Each mining thread counts into its own map so that threads do not contend for a shared map.  The partial counts are
+ * merged when the visitor is finalized.  If only the <i>k</i> most frequent words are requested, they are selected
+ * with a heap of size <i>k</i> instead of sorting the whole vocabulary.
+ * </p>
+ */
+public class WordCountVisitor implements ICommitVisitorWithOutputFileHeader {
+    private static final Logger LOG = Logger.getLogger(WordCountVisitor.class);
+
+    /**
+     * Common English words that carry no information about the purpose of a commit
+     */
+    public static final Set<String> DEFAULT_STOP_WORDS = Collections.unmodifiableSet(new HashSet<>(Arrays.asList(
+            "a", "about", "after", "all", "also", "an", "and", "any", "are", "as", "at", "be", "been", "before", "but",
+            "by", "can", "could", "do", "does", "for", "from", "had", "has", "have", "he", "her", "his", "if", "in",
+            "into", "is", "it", "its", "may", "more", "must", "no", "not", "now", "of", "on", "only", "or", "other",
+            "our", "should", "so", "some", "such", "than", "that", "the", "their", "them", "then", "there", "these",
+            "they", "this", "those", "to", "too", "up", "us", "was", "we", "were", "when", "which", "while", "who",
+            "will", "with", "would", "you", "your")));
+
+    private final Optional<Stemmer> stemmer;
+    private final Set<String> stopWords;
+    private final Optional<Integer> topK;
+
+    /**
+     * Partial counts of all threads that have processed commits so far
+     */
+    private final Queue<Map<String, int[]>> partialCounts = new ConcurrentLinkedQueue<>();
+
+    private final ThreadLocal<Map<String, int[]>> threadCounts = new ThreadLocal<Map<String, int[]>>() {
+        @Override
+        protected Map<String, int[]> initialValue() {
+            Map<String, int[]> counts = new HashMap<>();
+            partialCounts.add(counts);
+            return counts;
+        }
+    };
+
+    /**
+     * Per-thread cache of stemmed words.  The {@link Stemmer} is not thread-safe, so each thread only calls it once
+     * per distinct word.
+     */
+    private final ThreadLocal<Map<String, String>> threadStems = new ThreadLocal<Map<String, String>>() {
+        @Override
+        protected Map<String, String> initialValue() {
+            return new HashMap<>();
+        }
+    };
 
+    /**
+     * Counts all words, without stemming
+     */
     public WordCountVisitor() {
-        words = new HashMap<>();
-        stemmer = new Stemmer();
+        this(false, Collections.<String>emptySet(), Optional.<Integer>empty());
     }
 
-    @Override
-    public void process(SCMRepository repo, Commit commit, PersistenceMechanism writer) {
-
-        String message = commit.getMsg();
-        message = message.replaceAll("[^a-zA-Z0-9\\s]", "");
-        message = message.toLowerCase();
-
-        String[] msg_words = message.split(" ");
+    /**
+     * @param stem      Whether to reduce words to their base forms.  Requires WordNet (see {@link Stemmer}).
+     * @param stopWords Words that are not counted, in lower case
+     * @param topK      Number of most frequent words to write.  If absent, all words are written.
+     */
+    public WordCountVisitor(boolean stem, Set<String> stopWords, Optional<Integer> topK) {
+        if (topK.isPresent() && topK.get() < 1) {
+            throw new IllegalArgumentException("Number of words to write must be positive, not " + topK.get());
+        }
+        this.stemmer = stem ? Optional.of(new Stemmer()) : Optional.<Stemmer>empty();
+        this.stopWords = stopWords;
+        this.topK = topK;
+    }
 
-        for (int i = 0; i < msg_words.length; i++) {
-            String current_word = msg_words[i];
-            // TODO: Wortstamm holen
+    @Override
+    public void process(MinedCommit commit, PersistenceMechanism writer) {
+        final Map<String, int[]> counts = threadCounts.get();
+        final String message = commit.getMsg();
+        final int len = message.length();
+        StringBuilder word = new StringBuilder();
+        for (int i = 0; i <= len; i++) {
+            final char c = (i < len) ? message.charAt(i) : ' ';
+            if ((c >= 'a' && c <= 'z') || (c >= '0' && c <= '9')) {
+                word.append(c);
+            } else if (c >= 'A' && c <= 'Z') {
+                word.append(Character.toLowerCase(c));
+            } else if (Character.isWhitespace(c)) {
+                if (word.length() > 0) {
+                    countWord(word.toString(), counts);
+                    word.setLength(0);
+                }
+            }
+            // All other characters are dropped, e.g., "don't" becomes "dont".
+        }
+    }
 
-            if (!words.containsKey(current_word)) words.put(current_word, 0);
+    private void countWord(String word, Map<String, int[]> counts) {
+        if (stopWords.contains(word)) return;
+        if (stemmer.isPresent()) {
+            word = stem(word);
+        }
+        int[] count = counts.get(word);
+        if (count == null) {
+            count = new int[1];
+            counts.put(word, count);
+        }
+        count[0]++;
+    }
 
-            int currentCount = words.get(current_word);
-            words.put(current_word, currentCount + 1);
+    private String stem(String word) {
+        Map<String, String> stems = threadStems.get();
+        String stemmed = stems.get(word);
+        if (stemmed == null) {
+            synchronized (Stemmer.class) {
+                stemmed = Stemmer.Stem(word);
+            }
+            stems.put(word, stemmed);
         }
+        return stemmed;
+    }
 
+    @Override
+    public void finalizeVisitor(PersistenceMechanism writer) {
+        Map<String, int[]> totals = mergePartialCounts();
+        LOG.info("Found " + totals.size() + " distinct words in commit messages.");
+        for (Map.Entry<String, int[]> e : selectMostFrequent(totals)) {
+            writer.write(e.getKey(), e.getValue()[0]);
+        }
+        if (stemmer.isPresent()) {
+            stemmer.get().Unload();
+        }
+    }
 
+    private Map<String, int[]> mergePartialCounts() {
+        Map<String, int[]> totals = null;
+        for (Map<String, int[]> partial; (partial = partialCounts.poll()) != null; ) {
+            if (totals == null) {
+                totals = partial;
+                continue;
+            }
+            for (Map.Entry<String, int[]> e : partial.entrySet()) {
+                int[] total = totals.get(e.getKey());
+                if (total == null) {
+                    totals.put(e.getKey(), e.getValue());
+                } else {
+                    total[0] += e.getValue()[0];
+                }
+            }
+        }
+        return (totals == null) ? new HashMap<String, int[]>() : totals;
     }
 
-    public void writeWordResults(PersistenceMechanism writer) {
-        //Map durchgehen
-        for (Map.Entry<String, Integer> entry : words.entrySet()) {
-            writer.write(
-                    entry.getKey(),
-                    entry.getValue()
-            );
+    /**
+     * Most frequent words first.  Words of equal frequency are sorted alphabetically.
+     */
+    private static final Comparator<Map.Entry<String, int[]>> BY_DESCENDING_COUNT =
+            new Comparator<Map.Entry<String, int[]>>() {
+                @Override
+                public int compare(Map.Entry<String, int[]> a, Map.Entry<String, int[]> b) {
+                    int r = Integer.compare(b.getValue()[0], a.getValue()[0]);
+                    if (r != 0) return r;
+                    return a.getKey().compareTo(b.getKey());
+                }
+            };
+
+    private List<Map.Entry<String, int[]>> selectMostFrequent(Map<String, int[]> totals) {
+        if (!topK.isPresent()) {
+            List<Map.Entry<String, int[]>> result = new ArrayList<>(totals.entrySet());
+            Collections.sort(result, BY_DESCENDING_COUNT);
+            return result;
         }
 
+        final int k = topK.get();
+        // The head of the heap is the least frequent of the words selected so far.
+        PriorityQueue<Map.Entry<String, int[]>> heap = new PriorityQueue<>(k + 1,
+                Collections.reverseOrder(BY_DESCENDING_COUNT));
+        for (Map.Entry<String, int[]> e : totals.entrySet()) {
+            if (heap.size() < k) {
+                heap.add(e);
+            } else if (BY_DESCENDING_COUNT.compare(e, heap.peek()) < 0) {
+                heap.poll();
+                heap.add(e);
+            }
+        }
+        List<Map.Entry<String, int[]>> result = new ArrayList<>(heap);
+        Collections.sort(result, BY_DESCENDING_COUNT);
+        return result;
+    }
 
+    /**
+     * Reads stop words from a file containing one word per line.  Empty lines and lines starting with <code>#</code>
+     * are ignored.
+     *
+     * @return The stop words, in lower case
+     */
+    public static Set<String> readStopWords(File file) {
+        Set<String> result = new HashSet<>();
+        try (BufferedReader reader = new BufferedReader(new FileReader(file))) {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                line = line.trim();
+                if (line.isEmpty() || line.startsWith("#")) continue;
+                result.add(line.toLowerCase());
+            }
+        } catch (IOException e) {
+            throw new RuntimeException("Error reading stop words from " + file, e);
+        }
+        return result;
     }
 
     @Override
     public String name() {
         return "word count";
     }
+
+    @Override
+    public String[] getOutputFileHeader() {
+        return CsvEnumUtils.headerRowStrings(WordCountColumns.class);
+    }
 }
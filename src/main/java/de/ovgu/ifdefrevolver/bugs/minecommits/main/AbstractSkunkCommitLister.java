@@ -16,6 +16,7 @@ public abstract class AbstractSkunkCommitLister {
     public static final String OPT_OUTPUT_FILE = "o";
     public static final String OPT_REPO = "r";
     public static final String OPT_FORCE = "f";
+    public static final String OPT_THREADS = "t";
 
 
     protected void doMain(String[] args) {
@@ -76,6 +77,7 @@ public abstract class AbstractSkunkCommitLister {
         if (line.hasOption(OPT_FORCE)) {
             conf.forceOverwriteOutput = true;
         }
+        conf.numThreads = parseNumThreads(line);
 
         return conf;
     }
@@ -112,10 +114,41 @@ public abstract class AbstractSkunkCommitLister {
                 .longOpt("force")
                 .desc("force overwriting the output file if it already exists")
                 .build());
+        options.addOption(makeThreadsOption());
         //@formatter:on
         return options;
     }
 
+    static Option makeThreadsOption() {
+        // --threads= option
+        return Option.builder(OPT_THREADS)
+                .longOpt("threads")
+                .desc("Number of threads processing the commits. Must be at least 1. [Default="
+                        + Config.DEFAULT_NUM_THREADS + "]")
+                .hasArg()
+                .argName("NUM")
+                .build();
+    }
+
+    static int parseNumThreads(CommandLine line) {
+        if (!line.hasOption(OPT_THREADS)) {
+            return Config.DEFAULT_NUM_THREADS;
+        }
+        String threadsString = line.getOptionValue(OPT_THREADS);
+        int numThreads;
+        try {
+            numThreads = Integer.valueOf(threadsString);
+        } catch (NumberFormatException e) {
+            throw new RuntimeException("Invalid value for option `-" + OPT_THREADS
+                    + "': Not a valid integer: " + threadsString);
+        }
+        if (numThreads < 1) {
+            throw new RuntimeException("Invalid value for option `-" + OPT_THREADS
+                    + "': Number of threads must be an integer >= 1.");
+        }
+        return numThreads;
+    }
+
     private String progName() {
         return this.getClass().getSimpleName();
     }
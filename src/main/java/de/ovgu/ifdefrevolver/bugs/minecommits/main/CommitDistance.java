@@ -6,8 +6,15 @@ import de.ovgu.ifdefrevolver.bugs.minecommits.CommitsDistanceDbCsvReader;
 import org.apache.commons.cli.*;
 import org.apache.log4j.Logger;
 
-import java.io.PrintWriter;
+import java.io.*;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
 import java.util.Optional;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
 
 public class CommitDistance {
     private static final Logger LOG = Logger.getLogger(CommitDistance.class);
@@ -16,6 +23,19 @@ public class CommitDistance {
     public static final String OPT_DB = "d";
     public static final String OPT_CHILD_COMMIT = "c";
     public static final String OPT_ANCESTOR_COMMIT = "a";
+    public static final String OPT_BATCH = "b";
+    public static final String OPT_PORT = "p";
+
+    /**
+     * Argument to the <code>--batch</code> option that makes us read queries from stdin
+     */
+    private static final String STDIN_FILE_NAME = "-";
+
+    /**
+     * Number of connections answered at the same time in server mode.  Further connections wait until one of these
+     * is closed.
+     */
+    private static final int SERVER_THREADS = Runtime.getRuntime().availableProcessors();
 
     private CommitDistanceConfig conf;
 
@@ -28,38 +48,26 @@ public class CommitDistance {
         String dbName;
         String childCommit;
         String ancestorCommit;
+        /**
+         * Name of the file holding the queries in batch mode, or {@link #STDIN_FILE_NAME} to read from stdin
+         */
+        Optional<String> batchFileName = Optional.empty();
+        /**
+         * Port on the loopback interface on which to answer queries in server mode
+         */
+        Optional<Integer> port = Optional.empty();
     }
 
     protected void doMain(String[] args) {
         this.conf = parseCommandLine(args);
         try {
-            LOG.debug("Populating DB from CSV file");
-            CommitsDistanceDbCsvReader reader = new CommitsDistanceDbCsvReader();
-            CommitsDistanceDb db = reader.dbFromCsv(conf.dbName);
-            LOG.debug("Done populating DB from CSV file");
-            LOG.debug("Pre-processing DB");
-            db.ensurePreprocessed();
-            LOG.debug("Done pre-processing DB");
-            LOG.debug("Querying DB");
-            long before = System.nanoTime();
-//            for (int i = 0; i < 1000; i++) {
-//                Optional<Integer> dist = db.minDistance(conf.childCommit, conf.ancestorCommit);
-//            }
-
-            Commit ancestorCommit = db.findCommitOrDie(conf.ancestorCommit);
-            Commit childCommit = db.findCommitOrDie(conf.childCommit);
-
-
-            Optional<Integer> dist = childCommit.distanceAmongCModifyingCommits(ancestorCommit);
-            long after = System.nanoTime();
-            LOG.debug("Done querying DB (" + (after - before) + "ns)");
-            if (dist.isPresent()) {
-                System.out.println(dist.get());
+            CommitsDistanceDb db = readDb();
+            if (conf.batchFileName.isPresent()) {
+                processBatch(db, conf.batchFileName.get());
+            } else if (conf.port.isPresent()) {
+                serve(db, conf.port.get());
             } else {
-                System.err.println("`" + conf.ancestorCommit + "' is not a known ancestor of `" + conf.childCommit + "'");
-                System.err.flush();
-                System.out.flush();
-                System.exit(1);
+                processSingleQuery(db);
             }
         } catch (Throwable t) {
             LOG.error("Internal error. See previous log messages for details.", t);
@@ -69,6 +77,154 @@ public class CommitDistance {
         }
     }
 
+    private CommitsDistanceDb readDb() {
+        LOG.debug("Populating DB from CSV file");
+        CommitsDistanceDbCsvReader reader = new CommitsDistanceDbCsvReader();
+        CommitsDistanceDb db = reader.dbFromCsv(conf.dbName);
+        LOG.debug("Done populating DB from CSV file");
+        LOG.debug("Pre-processing DB");
+        db.ensurePreprocessed();
+        LOG.debug("Done pre-processing DB");
+        return db;
+    }
+
+    private void processSingleQuery(CommitsDistanceDb db) {
+        LOG.debug("Querying DB");
+        long before = System.nanoTime();
+
+        Commit ancestorCommit = db.findCommitOrDie(conf.ancestorCommit);
+        Commit childCommit = db.findCommitOrDie(conf.childCommit);
+
+        Optional<Integer> dist = childCommit.distanceAmongCModifyingCommits(ancestorCommit);
+        long after = System.nanoTime();
+        LOG.debug("Done querying DB (" + (after - before) + "ns)");
+        if (dist.isPresent()) {
+            System.out.println(dist.get());
+        } else {
+            System.err.println("`" + conf.ancestorCommit + "' is not a known ancestor of `" + conf.childCommit + "'");
+            System.err.flush();
+            System.out.flush();
+            System.exit(1);
+        }
+    }
+
+    private void processBatch(CommitsDistanceDb db, String batchFileName) throws IOException {
+        final Reader in;
+        if (STDIN_FILE_NAME.equals(batchFileName)) {
+            LOG.debug("Reading queries from stdin");
+            in = new InputStreamReader(System.in, StandardCharsets.UTF_8);
+        } else {
+            LOG.debug("Reading queries from " + batchFileName);
+            in = new InputStreamReader(new FileInputStream(batchFileName), StandardCharsets.UTF_8);
+        }
+
+        try (BufferedReader reader = new BufferedReader(in)) {
+            PrintWriter out = new PrintWriter(new BufferedWriter(new OutputStreamWriter(System.out, StandardCharsets.UTF_8)));
+            int numQueries = answerQueries(db, reader, out);
+            out.flush();
+            LOG.debug("Answered " + numQueries + " queries.");
+        }
+    }
+
+    private void serve(CommitsDistanceDb db, int port) throws IOException {
+        final InetAddress loopback = InetAddress.getLoopbackAddress();
+        final AtomicInteger threadCount = new AtomicInteger();
+        final ExecutorService executor = Executors.newFixedThreadPool(SERVER_THREADS, r -> {
+            Thread t = new Thread(r, "CommitDistance-" + threadCount.incrementAndGet());
+            t.setDaemon(true);
+            return t;
+        });
+        try (ServerSocket serverSocket = new ServerSocket(port, 0, loopback)) {
+            LOG.info("Answering queries on " + loopback.getHostAddress() + ":" + serverSocket.getLocalPort()
+                    + " with " + SERVER_THREADS + " threads");
+            while (true) {
+                final Socket client = serverSocket.accept();
+                executor.execute(() -> serveClient(db, client));
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    private void serveClient(CommitsDistanceDb db, Socket client) {
+        LOG.debug("Accepted connection from port " + client.getPort());
+        try (Socket s = client;
+             BufferedReader reader = new BufferedReader(new InputStreamReader(s.getInputStream(), StandardCharsets.UTF_8));
+             PrintWriter out = new PrintWriter(new BufferedWriter(new OutputStreamWriter(s.getOutputStream(), StandardCharsets.UTF_8)))) {
+            int numQueries = answerQueries(db, reader, out);
+            LOG.debug("Answered " + numQueries + " queries on connection from port " + client.getPort());
+        } catch (IOException e) {
+            LOG.warn("Error communicating with client on port " + client.getPort(), e);
+        } catch (RuntimeException e) {
+            LOG.error("Internal error while answering queries from client on port " + client.getPort(), e);
+        }
+    }
+
+    /**
+     * Answer queries line by line until the end of the input is reached.  Each query line consists of the hash of the
+     * child commit and the hash of the ancestor commit, separated by a comma or by white space.  Blank lines and lines
+     * starting with <code>#</code> are ignored.  For each query, one line of the form
+     * <code>child,ancestor,distance</code> is written.  The distance is left empty if either commit is unknown or if
+     * the ancestor is not actually an ancestor of the child.  Malformed query lines are answered with the line itself,
+     * followed by two empty columns, i.e., <code>line,,</code>, and do not stop the processing of the remaining
+     * queries.  The output is flushed whenever the input has no more
+     * buffered queries, so that interactive clients receive each answer as soon as it is available.
+     *
+     * @param db     the pre-processed commits database
+     * @param reader source of the queries
+     * @param out    destination of the answers
+     * @return number of queries answered
+     * @throws IOException if reading the queries fails
+     */
+    private static int answerQueries(CommitsDistanceDb db, BufferedReader reader, PrintWriter out) throws IOException {
+        int numQueries = 0;
+        String line;
+        while ((line = reader.readLine()) != null) {
+            line = line.trim();
+            if (line.isEmpty() || line.startsWith("#")) {
+                continue;
+            }
+            String[] hashes = line.split("\\s*,\\s*|\\s+");
+            if (hashes.length != 2) {
+                LOG.warn("Malformed query (expected `CHILD,ANCESTOR'): " + line);
+                out.print(line);
+                out.print(",,");
+            } else {
+                final String childHash = hashes[0];
+                final String ancestorHash = hashes[1];
+                Optional<Integer> dist = queryDistance(db, childHash, ancestorHash);
+                out.print(childHash);
+                out.print(',');
+                out.print(ancestorHash);
+                out.print(',');
+                if (dist.isPresent()) {
+                    out.print(dist.get());
+                }
+            }
+            out.println();
+            numQueries++;
+            if (!reader.ready()) {
+                out.flush();
+            }
+        }
+        out.flush();
+        return numQueries;
+    }
+
+    private static Optional<Integer> queryDistance(CommitsDistanceDb db, String childHash, String ancestorHash) {
+        Optional<Commit> childCommit = db.findCommit(childHash);
+        if (!childCommit.isPresent()) {
+            LOG.warn("Unknown child commit: " + childHash);
+            return Optional.empty();
+        }
+        Optional<Commit> ancestorCommit = db.findCommit(ancestorHash);
+        if (!ancestorCommit.isPresent()) {
+            LOG.warn("Unknown ancestor commit: " + ancestorHash);
+            return Optional.empty();
+        }
+        return childCommit.get().distanceAmongCModifyingCommits(ancestorCommit.get());
+    }
+
     private CommitDistanceConfig parseCommandLine(String[] args) {
         CommandLineParser parser = new DefaultParser();
         Options fakeOptionsForHelp = makeOptions(true);
@@ -104,12 +260,45 @@ public class CommitDistance {
         CommitDistanceConfig conf = new CommitDistanceConfig();
 
         conf.dbName = line.getOptionValue(OPT_DB);
-        conf.childCommit = line.getOptionValue(OPT_CHILD_COMMIT);
-        conf.ancestorCommit = line.getOptionValue(OPT_ANCESTOR_COMMIT);
+
+        try {
+            if (line.hasOption(OPT_BATCH)) {
+                conf.batchFileName = Optional.of(line.getOptionValue(OPT_BATCH));
+            } else if (line.hasOption(OPT_PORT)) {
+                conf.port = Optional.of(parsePort(line.getOptionValue(OPT_PORT)));
+            } else {
+                if (!line.hasOption(OPT_CHILD_COMMIT) || !line.hasOption(OPT_ANCESTOR_COMMIT)) {
+                    throw new ParseException("Options `--child' and `--ancestor' are required unless running in batch"
+                            + " or server mode.");
+                }
+                conf.childCommit = line.getOptionValue(OPT_CHILD_COMMIT);
+                conf.ancestorCommit = line.getOptionValue(OPT_ANCESTOR_COMMIT);
+            }
+        } catch (ParseException e) {
+            System.err.println("Error in command line: " + e.getMessage());
+            HelpFormatter formatter = new HelpFormatter();
+            formatter.printUsage(new PrintWriter(System.err, true), 80, progName(), actualOptions);
+            System.exit(3);
+            // We will never get here.
+            return null;
+        }
 
         return conf;
     }
 
+    private static int parsePort(String portStr) throws ParseException {
+        final int port;
+        try {
+            port = Integer.parseInt(portStr);
+        } catch (NumberFormatException e) {
+            throw new ParseException("Invalid port number: " + portStr);
+        }
+        if (port < 0 || port > 65535) {
+            throw new ParseException("Port number out of range: " + portStr);
+        }
+        return port;
+    }
+
     private Options makeOptions(boolean forHelp) {
         boolean required = !forHelp;
         Options options = new Options();
@@ -131,21 +320,45 @@ public class CommitDistance {
         // --ancestor= option
         options.addOption(Option.builder(OPT_ANCESTOR_COMMIT)
                 .longOpt("ancestor")
-                .desc("Hash of the ancestor commit.")
+                .desc("Hash of the ancestor commit. Required unless running in batch or server mode.")
                 .hasArg()
                 .argName("HASH")
                 .type(PatternOptionBuilder.STRING_VALUE)
-                .required(required)
                 .build());
         // --child= option
         options.addOption(Option.builder(OPT_CHILD_COMMIT)
                 .longOpt("child")
-                .desc("Hash of the child commit.")
+                .desc("Hash of the child commit. Required unless running in batch or server mode.")
                 .hasArg()
                 .argName("HASH")
                 .type(PatternOptionBuilder.STRING_VALUE)
-                .required(required)
                 .build());
+
+        OptionGroup modeOptions = new OptionGroup();
+        // --batch= option
+        modeOptions.addOption(Option.builder(OPT_BATCH)
+                .longOpt("batch")
+                .desc("Answer many queries at once. Each line of the input names a child and an ancestor commit,"
+                        + " separated by a comma or white space. For each query, a line of the form"
+                        + " `CHILD,ANCESTOR,DISTANCE' is written to stdout. The distance is empty if the commits are"
+                        + " unknown or unrelated. Use `" + STDIN_FILE_NAME + "' to read the queries from stdin.")
+                .hasArg()
+                .argName("FILE")
+                .type(PatternOptionBuilder.STRING_VALUE)
+                .build());
+        // --port= option
+        modeOptions.addOption(Option.builder(OPT_PORT)
+                .longOpt("port")
+                .desc("Build the database once and answer queries on the given TCP port of the loopback interface"
+                        + " until killed. Queries and answers have the same format as in batch mode. Each connection"
+                        + " may send any number of queries. At most " + SERVER_THREADS + " connections are answered"
+                        + " at the same time; further connections wait for one of them to close. Use port 0 to pick a"
+                        + " free port, which is then logged.")
+                .hasArg()
+                .argName("PORT")
+                .type(PatternOptionBuilder.STRING_VALUE)
+                .build());
+        options.addOptionGroup(modeOptions);
         //@formatter:on
         return options;
     }
@@ -2,6 +2,7 @@ package de.ovgu.ifdefrevolver.bugs.minecommits.main;
 
 import de.ovgu.ifdefrevolver.bugs.minecommits.BugfixCommitStudy;
 import de.ovgu.ifdefrevolver.bugs.minecommits.Config;
+import de.ovgu.ifdefrevolver.bugs.minecommits.KeywordMatcher;
 import org.apache.commons.cli.*;
 import org.repodriller.RepoDriller;
 
@@ -14,6 +15,9 @@ public class FindBugfixCommits {
     public static final String OPT_KEYWORDS = "k";
     public static final String OPT_REPO = "r";
     public static final String OPT_FORCE = "f";
+    public static final String OPT_THREADS = AbstractSkunkCommitLister.OPT_THREADS;
+    public static final String OPT_MATCH_MODE = "m";
+    public static final String OPT_KEYWORD_HITS_FILE = "s";
 
     public static void main(String[] args) {
 
@@ -64,10 +68,13 @@ public class FindBugfixCommits {
             keywords = Config.DEFAULT_BUGFIX_TERMS;
         }
         conf.bugfixTerms = keywords.split(",");
+        conf.bugfixTermMatchMode = parseMatchMode(line);
+        conf.bugfixKeywordHitsFileName = line.getOptionValue(OPT_KEYWORD_HITS_FILE);
         conf.outputFileName = line.getOptionValue(OPT_OUTPUT_FILE);
         if (line.hasOption(OPT_FORCE)) {
             conf.forceOverwriteOutput = true;
         }
+        conf.numThreads = AbstractSkunkCommitLister.parseNumThreads(line);
 
         return conf;
     }
@@ -99,6 +106,8 @@ public class FindBugfixCommits {
                 .argName("WORD[,WORD[,...]]")
                 //.required(required)
                 .build());
+        options.addOption(makeMatchModeOption());
+        options.addOption(makeKeywordHitsFileOption());
         // --output= option
         options.addOption(Option.builder(OPT_OUTPUT_FILE)
                 .longOpt("output")
@@ -114,10 +123,48 @@ public class FindBugfixCommits {
                 .longOpt("force")
                 .desc("force overwriting the output file if it already exists")
                 .build());
+        options.addOption(AbstractSkunkCommitLister.makeThreadsOption());
         //@formatter:on
         return options;
     }
 
+    static Option makeMatchModeOption() {
+        // --match= option
+        return Option.builder(OPT_MATCH_MODE)
+                .longOpt("match")
+                .desc("how keywords must occur in commit messages: `substring' (anywhere), `word' (as whole"
+                        + " words) or `stem' (at the beginning of a word, optionally followed by an inflectional"
+                        + " suffix, e.g., `fixes' for `fix') [default=substring]")
+                .hasArg()
+                .argName("MODE")
+                .build();
+    }
+
+    static KeywordMatcher.MatchMode parseMatchMode(CommandLine line) {
+        if (!line.hasOption(OPT_MATCH_MODE)) {
+            return KeywordMatcher.MatchMode.SUBSTRING;
+        }
+        String modeString = line.getOptionValue(OPT_MATCH_MODE);
+        try {
+            return KeywordMatcher.MatchMode.valueOf(modeString.toUpperCase());
+        } catch (IllegalArgumentException e) {
+            throw new RuntimeException("Invalid value for option `-" + OPT_MATCH_MODE
+                    + "': Not a valid match mode: " + modeString);
+        }
+    }
+
+    static Option makeKeywordHitsFileOption() {
+        // --keyword-stats= option
+        return Option.builder(OPT_KEYWORD_HITS_FILE)
+                .longOpt("keyword-stats")
+                .desc("optional CSV file to which the number of commits and occurrences of each keyword will be"
+                        + " written")
+                .hasArg()
+                .argName("FILE")
+                .type(PatternOptionBuilder.FILE_VALUE)
+                .build();
+    }
+
     private String progName() {
         return this.getClass().getSimpleName();
     }
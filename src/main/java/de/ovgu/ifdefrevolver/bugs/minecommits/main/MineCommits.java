@@ -0,0 +1,270 @@
+package de.ovgu.ifdefrevolver.bugs.minecommits.main;
+
+import de.ovgu.ifdefrevolver.bugs.minecommits.CombinedCommitStudy;
+import de.ovgu.ifdefrevolver.bugs.minecommits.Config;
+import de.ovgu.ifdefrevolver.bugs.minecommits.WordCountVisitor;
+import org.apache.commons.cli.*;
+import org.apache.log4j.Logger;
+import org.repodriller.RepoDriller;
+
+import java.io.File;
+import java.io.PrintWriter;
+import java.util.Optional;
+
+/**
+ * Does the work of {@link ListCommits}, {@link ListCommitParents} and {@link FindBugfixCommits} in a single pass over
+ * the repository.  Optionally, it also counts the words of all commit messages.
+ */
+public class MineCommits {
+    private static final Logger LOG = Logger.getLogger(MineCommits.class);
+
+    public static final String OPT_HELP = "h";
+    public static final String OPT_REPO = "r";
+    public static final String OPT_REVISIONS_FILE = "o";
+    public static final String OPT_PARENTS_FILE = "p";
+    public static final String OPT_BUGFIXES_FILE = "b";
+    public static final String OPT_KEYWORDS = "k";
+    public static final String OPT_FORCE = "f";
+    public static final String OPT_INCREMENTAL = "i";
+    public static final String OPT_WORDS_FILE = "w";
+    public static final String OPT_STEM_WORDS_L = "stem-words";
+    public static final String OPT_STOP_WORDS_L = "stop-words";
+    public static final String OPT_TOP_WORDS_L = "top-words";
+
+    public static void main(String[] args) {
+        MineCommits me = new MineCommits();
+        Config conf = me.parseCommandLine(args);
+
+        CombinedCommitStudy study = new CombinedCommitStudy(conf);
+        new RepoDriller().start(study);
+        if (!study.wasStudySuccessful() && study.wasIncremental()) {
+            // Only the revisions file is rewritten from scratch in incremental mode.  The others still hold the
+            // output of the previous runs.
+            LOG.error("Incremental study was unsuccessful. See previous log messages for details. The tips file "
+                    + conf.minedTipsFileName + " has not been updated. Appended output files may be incomplete.");
+            if (conf.revisionsOutputFileName != null) {
+                LOG.error("Output file " + conf.revisionsOutputFileName + " will be removed.");
+                deleteOutputFileIfExists(conf.revisionsOutputFileName);
+            }
+            System.err.flush();
+            System.out.flush();
+            System.exit(1);
+        } else if (!study.wasStudySuccessful()) {
+            LOG.error("Study was unsuccessful. See previous log messages for details. Output files "
+                    + CombinedCommitStudy.getOutputFileNames(conf) + " will be removed.");
+            deleteOutputFilesIfExist(conf);
+            System.err.flush();
+            System.out.flush();
+            System.exit(1);
+        }
+    }
+
+    private static void deleteOutputFilesIfExist(Config conf) {
+        for (String outputFileName : CombinedCommitStudy.getOutputFileNames(conf)) {
+            deleteOutputFileIfExists(outputFileName);
+        }
+    }
+
+    private static void deleteOutputFileIfExists(String outputFileName) {
+        File outFile = new File(outputFileName);
+        boolean deleted = outFile.delete();
+        if (!deleted && outFile.exists()) {
+            LOG.warn("Failed to delete output file " + outputFileName + ". Please delete it manually.");
+        }
+    }
+
+    private Config parseCommandLine(String[] args) {
+        CommandLineParser parser = new DefaultParser();
+        Options fakeOptionsForHelp = makeOptions(true);
+        Options actualOptions = makeOptions(false);
+
+        CommandLine line;
+        try {
+            CommandLine dummyLine = parser.parse(fakeOptionsForHelp, args);
+            if (dummyLine.hasOption('h')) {
+                HelpFormatter formatter = new HelpFormatter();
+                System.err.flush();
+                formatter.printHelp(progName() + " [OPTIONS]",
+                        "List commits, list commit parents, identify bug-fix commits and count the words of"
+                                + " commit messages in a GIT repository,"
+                                + " all in a single pass over the repository. Only the lists whose output files"
+                                + " are given are produced.\n\nOptions:\n",
+                        actualOptions, null, false);
+                System.out.flush();
+                System.exit(0);
+                // We will never get here.
+                return null;
+            }
+            line = parser.parse(actualOptions, args);
+        } catch (ParseException e) {
+            System.err.println("Error in command line: " + e.getMessage());
+            HelpFormatter formatter = new HelpFormatter();
+            formatter.printUsage(new PrintWriter(System.err, true), 80, progName(), actualOptions);
+            System.exit(1);
+            // We will never get here.
+            return null;
+        }
+
+        Config conf = new Config();
+
+        conf.repoPathName = line.getOptionValue(OPT_REPO);
+        conf.revisionsOutputFileName = line.getOptionValue(OPT_REVISIONS_FILE);
+        conf.commitParentsOutputFileName = line.getOptionValue(OPT_PARENTS_FILE);
+        conf.bugfixOutputFileName = line.getOptionValue(OPT_BUGFIXES_FILE);
+        conf.wordCountOutputFileName = line.getOptionValue(OPT_WORDS_FILE);
+        if (CombinedCommitStudy.getOutputFileNames(conf).isEmpty()) {
+            throw new RuntimeException("At least one of the options `-" + OPT_REVISIONS_FILE + "', `-"
+                    + OPT_PARENTS_FILE + "', `-" + OPT_BUGFIXES_FILE + "' or `-" + OPT_WORDS_FILE
+                    + "' is required.");
+        }
+        final String keywords;
+        if (line.hasOption(OPT_KEYWORDS)) {
+            keywords = line.getOptionValue(OPT_KEYWORDS);
+        } else {
+            keywords = Config.DEFAULT_BUGFIX_TERMS;
+        }
+        conf.bugfixTerms = keywords.split(",");
+        conf.bugfixTermMatchMode = FindBugfixCommits.parseMatchMode(line);
+        conf.bugfixKeywordHitsFileName = line.getOptionValue(FindBugfixCommits.OPT_KEYWORD_HITS_FILE);
+        conf.minedTipsFileName = line.getOptionValue(OPT_INCREMENTAL);
+        if ((conf.minedTipsFileName != null) && (conf.commitParentsOutputFileName == null)) {
+            throw new RuntimeException("Option `-" + OPT_INCREMENTAL + "' requires option `-" + OPT_PARENTS_FILE
+                    + "'.");
+        }
+        if ((conf.minedTipsFileName != null) && (conf.wordCountOutputFileName != null)) {
+            throw new RuntimeException("Option `-" + OPT_INCREMENTAL + "' cannot be combined with option `-"
+                    + OPT_WORDS_FILE + "'.");
+        }
+        parseWordCountOptions(line, conf);
+        if (line.hasOption(OPT_FORCE)) {
+            conf.forceOverwriteOutput = true;
+        }
+        conf.numThreads = AbstractSkunkCommitLister.parseNumThreads(line);
+
+        return conf;
+    }
+
+    private static void parseWordCountOptions(CommandLine line, Config conf) {
+        conf.wordCountStem = line.hasOption(OPT_STEM_WORDS_L);
+        if (line.hasOption(OPT_STOP_WORDS_L)) {
+            conf.wordCountStopWords = WordCountVisitor.readStopWords(new File(line.getOptionValue(OPT_STOP_WORDS_L)));
+        } else {
+            conf.wordCountStopWords = WordCountVisitor.DEFAULT_STOP_WORDS;
+        }
+        if (line.hasOption(OPT_TOP_WORDS_L)) {
+            final String topKString = line.getOptionValue(OPT_TOP_WORDS_L);
+            final int topK;
+            try {
+                topK = Integer.parseInt(topKString);
+            } catch (NumberFormatException e) {
+                throw new RuntimeException("Invalid value for option `--" + OPT_TOP_WORDS_L + "': " + topKString, e);
+            }
+            if (topK < 1) {
+                throw new RuntimeException("Value of option `--" + OPT_TOP_WORDS_L + "' must be positive, not "
+                        + topKString);
+            }
+            conf.wordCountTopK = Optional.of(topK);
+        }
+    }
+
+    private Options makeOptions(boolean forHelp) {
+        boolean required = !forHelp;
+        Options options = new Options();
+        //@formatter:off
+        // --help= option
+        options.addOption(Option.builder(OPT_HELP)
+                .longOpt("help")
+                .desc("print this help screen and exit")
+                .build());
+        // --repo= option
+        options.addOption(Option.builder(OPT_REPO)
+                .longOpt("repo")
+                .desc("path to GIT repository")
+                .hasArg()
+                .argName("DIR")
+                .type(PatternOptionBuilder.EXISTING_FILE_VALUE)
+                .required(required)
+                .build());
+        // --revisions= option
+        options.addOption(Option.builder(OPT_REVISIONS_FILE)
+                .longOpt("revisions")
+                .desc("output file for the ordered list of commits, should be named `revisionsFull.csv' and be"
+                        + " located in the project's results directory")
+                .hasArg()
+                .argName("FILE")
+                .type(PatternOptionBuilder.FILE_VALUE)
+                .build());
+        // --parents= option
+        options.addOption(Option.builder(OPT_PARENTS_FILE)
+                .longOpt("parents")
+                .desc("output file for the list of commit parents, should be named `commitParents.csv' and be"
+                        + " located in the project's results directory")
+                .hasArg()
+                .argName("FILE")
+                .type(PatternOptionBuilder.FILE_VALUE)
+                .build());
+        // --bugfixes= option
+        options.addOption(Option.builder(OPT_BUGFIXES_FILE)
+                .longOpt("bugfixes")
+                .desc("output file for the list of bug-fix commits")
+                .hasArg()
+                .argName("FILE")
+                .type(PatternOptionBuilder.FILE_VALUE)
+                .build());
+        // --keywords= option
+        options.addOption(Option.builder(OPT_KEYWORDS)
+                .longOpt("keywords")
+                .desc("comma-separated list of keywords to identify bug-fix commits [default="
+                        + Config.DEFAULT_BUGFIX_TERMS + "]")
+                .hasArg()
+                .argName("WORD[,WORD[,...]]")
+                .build());
+        // --words= option
+        options.addOption(Option.builder(OPT_WORDS_FILE)
+                .longOpt("words")
+                .desc("output file for the frequencies of the words in commit messages, most frequent first")
+                .hasArg()
+                .argName("FILE")
+                .type(PatternOptionBuilder.FILE_VALUE)
+                .build());
+        options.addOption(Option.builder().longOpt(OPT_STEM_WORDS_L)
+                .desc("reduce words to their base forms using WordNet before counting them")
+                .build());
+        options.addOption(Option.builder().longOpt(OPT_STOP_WORDS_L)
+                .desc("file with words that are not counted, one per line [default: a built-in list of common"
+                        + " English words]")
+                .hasArg()
+                .argName("FILE")
+                .build());
+        options.addOption(Option.builder().longOpt(OPT_TOP_WORDS_L)
+                .desc("only write the N most frequent words [default: write all words]")
+                .hasArg()
+                .argName("N")
+                .build());
+        options.addOption(FindBugfixCommits.makeMatchModeOption());
+        options.addOption(FindBugfixCommits.makeKeywordHitsFileOption());
+        // --force= option
+        options.addOption(Option.builder(OPT_FORCE)
+                .longOpt("force")
+                .desc("force overwriting the output files if they already exist")
+                .build());
+        // --incremental= option
+        options.addOption(Option.builder(OPT_INCREMENTAL)
+                .longOpt("incremental")
+                .desc("mine only commits that are not yet listed in the commit parents file and append them to the"
+                        + " existing output files. The revisions file is rewritten. FILE records the tips mined by"
+                        + " the last run. It is created if it does not exist. If the output files of a previous run"
+                        + " do not exist, the whole history is mined.")
+                .hasArg()
+                .argName("FILE")
+                .type(PatternOptionBuilder.FILE_VALUE)
+                .build());
+        options.addOption(AbstractSkunkCommitLister.makeThreadsOption());
+        //@formatter:on
+        return options;
+    }
+
+    private String progName() {
+        return this.getClass().getSimpleName();
+    }
+}
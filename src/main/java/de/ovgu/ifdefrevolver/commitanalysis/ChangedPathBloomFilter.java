@@ -0,0 +1,205 @@
+package de.ovgu.ifdefrevolver.commitanalysis;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Base64;
+import java.util.Collection;
+import java.util.LinkedHashSet;
+import java.util.Set;
+
+/**
+ * Bloom filter over the paths changed by a single commit, modeled after the changed-path filters of GIT's commit-graph
+ * file.  Besides each changed file, all of its leading directories are added to the filter, so that one can also ask
+ * whether a commit changed anything below a certain directory.
+ * <p>
+ * A filter may answer <code>true</code> for paths that were not actually changed (false positives), but never answers
+ * <code>false</code> for paths that were changed.  Commits that change very many paths are represented by a filter
+ * that always answers <code>true</code>.
+ * </p>
+ */
+public class ChangedPathBloomFilter {
+    /**
+     * Number of bits per filter entry (same as GIT)
+     */
+    private static final int BITS_PER_ENTRY = 10;
+    /**
+     * Number of hash functions (same as GIT)
+     */
+    private static final int NUM_HASHES = 7;
+    /**
+     * Commits changing more paths (including leading directories) than this are represented by a filter that always
+     * answers <code>true</code>.
+     */
+    public static final int MAX_CHANGED_PATHS = 512;
+
+    private static final int SEED0 = 0x293ae76f;
+    private static final int SEED1 = 0x7e646e2c;
+
+    private static final byte[] NO_BITS = new byte[0];
+
+    public final String commitHash;
+    private final int numChangedPaths;
+    private final byte[] bits;
+    private final boolean truncated;
+
+    private ChangedPathBloomFilter(String commitHash, int numChangedPaths, byte[] bits, boolean truncated) {
+        this.commitHash = commitHash;
+        this.numChangedPaths = numChangedPaths;
+        this.bits = bits;
+        this.truncated = truncated;
+    }
+
+    /**
+     * @param commitHash   Hash of the commit
+     * @param changedFiles Paths of the files changed by the commit, relative to the repository root
+     * @return A filter containing the given files and all of their leading directories
+     */
+    public static ChangedPathBloomFilter fromChangedFiles(String commitHash, Collection<String> changedFiles) {
+        Set<String> paths = new LinkedHashSet<>();
+        for (String file : changedFiles) {
+            String path = normalizePath(file);
+            while (!path.isEmpty() && paths.add(path)) {
+                int ixSlash = path.lastIndexOf('/');
+                path = (ixSlash < 0) ? "" : path.substring(0, ixSlash);
+            }
+        }
+
+        final int numPaths = paths.size();
+        if (numPaths > MAX_CHANGED_PATHS) {
+            return new ChangedPathBloomFilter(commitHash, numPaths, NO_BITS, true);
+        }
+
+        final int numBytes = Math.max(1, (numPaths * BITS_PER_ENTRY + 7) / 8);
+        byte[] bits = new byte[numBytes];
+        final int numBits = numBytes * 8;
+        for (String path : paths) {
+            byte[] pathBytes = path.getBytes(StandardCharsets.UTF_8);
+            final int h0 = murmur3(SEED0, pathBytes);
+            final int h1 = murmur3(SEED1, pathBytes);
+            for (int i = 0; i < NUM_HASHES; i++) {
+                int bit = Integer.remainderUnsigned(h0 + i * h1, numBits);
+                bits[bit >>> 3] |= (1 << (bit & 7));
+            }
+        }
+
+        return new ChangedPathBloomFilter(commitHash, numPaths, bits, false);
+    }
+
+    /**
+     * @param path A file or directory path, relative to the repository root
+     * @return <code>false</code> if the commit definitely did not change the given file or anything below the given
+     * directory, <code>true</code> if it might have
+     */
+    public boolean mightContain(String path) {
+        if (truncated) return true;
+        if (numChangedPaths == 0) return false;
+
+        byte[] pathBytes = normalizePath(path).getBytes(StandardCharsets.UTF_8);
+        final int numBits = bits.length * 8;
+        final int h0 = murmur3(SEED0, pathBytes);
+        final int h1 = murmur3(SEED1, pathBytes);
+        for (int i = 0; i < NUM_HASHES; i++) {
+            int bit = Integer.remainderUnsigned(h0 + i * h1, numBits);
+            if ((bits[bit >>> 3] & (1 << (bit & 7))) == 0) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    public int getNumChangedPaths() {
+        return numChangedPaths;
+    }
+
+    public boolean isTruncated() {
+        return truncated;
+    }
+
+    /**
+     * @return The filter bits in Base64 encoding, or the empty string if the filter is truncated
+     */
+    public String bitsAsString() {
+        return Base64.getEncoder().encodeToString(bits);
+    }
+
+    /**
+     * Inverse of {@link #bitsAsString()}
+     */
+    public static ChangedPathBloomFilter fromString(String commitHash, int numChangedPaths, String bitsAsString) {
+        final boolean truncated = numChangedPaths > MAX_CHANGED_PATHS;
+        final byte[] bits = truncated ? NO_BITS : Base64.getDecoder().decode(bitsAsString);
+        if (!truncated && bits.length == 0) {
+            throw new IllegalArgumentException("Missing filter bits for commit " + commitHash);
+        }
+        return new ChangedPathBloomFilter(commitHash, numChangedPaths, bits, truncated);
+    }
+
+    /**
+     * Strip leading and trailing slashes so that <code>/src/foo/</code> and <code>src/foo</code> are treated the
+     * same.
+     */
+    public static String normalizePath(String path) {
+        int start = 0;
+        int end = path.length();
+        while (start < end && path.charAt(start) == '/') start++;
+        while (end > start && path.charAt(end - 1) == '/') end--;
+        return path.substring(start, end);
+    }
+
+    /**
+     * @return <code>true</code> iff <code>path</code> is the same as <code>dirOrFile</code> or lies below it
+     */
+    public static boolean isSameOrBelow(String path, String dirOrFile) {
+        final String p = normalizePath(path);
+        final String d = normalizePath(dirOrFile);
+        if (d.isEmpty()) return true;
+        return p.equals(d) || (p.startsWith(d) && p.charAt(d.length()) == '/');
+    }
+
+    /**
+     * 32-bit MurmurHash3 (x86 variant)
+     */
+    private static int murmur3(int seed, byte[] data) {
+        final int c1 = 0xcc9e2d51;
+        final int c2 = 0x1b873593;
+        final int len = data.length;
+        final int numBlocks = len / 4;
+        int h = seed;
+
+        for (int i = 0; i < numBlocks; i++) {
+            final int ix = i * 4;
+            int k = (data[ix] & 0xff)
+                    | ((data[ix + 1] & 0xff) << 8)
+                    | ((data[ix + 2] & 0xff) << 16)
+                    | ((data[ix + 3] & 0xff) << 24);
+            k *= c1;
+            k = Integer.rotateLeft(k, 15);
+            k *= c2;
+            h ^= k;
+            h = Integer.rotateLeft(h, 13);
+            h = h * 5 + 0xe6546b64;
+        }
+
+        final int tail = numBlocks * 4;
+        int k = 0;
+        switch (len & 3) {
+            case 3:
+                k ^= (data[tail + 2] & 0xff) << 16;
+            case 2:
+                k ^= (data[tail + 1] & 0xff) << 8;
+            case 1:
+                k ^= (data[tail] & 0xff);
+                k *= c1;
+                k = Integer.rotateLeft(k, 15);
+                k *= c2;
+                h ^= k;
+        }
+
+        h ^= len;
+        h ^= h >>> 16;
+        h *= 0x85ebca6b;
+        h ^= h >>> 13;
+        h *= 0xc2b2ae35;
+        h ^= h >>> 16;
+        return h;
+    }
+}
@@ -0,0 +1,42 @@
+package de.ovgu.ifdefrevolver.commitanalysis;
+
+import de.ovgu.skunk.detection.output.CsvColumnValueProvider;
+
+/**
+ * Columns of the CSV file that persists the {@link ChangedPathIndex} of a project
+ */
+public enum ChangedPathFiltersColumns implements CsvColumnValueProvider<ChangedPathBloomFilter, Void> {
+    /**
+     * GIT hash of the commit
+     */
+    COMMIT {
+        @Override
+        public String csvColumnValue(ChangedPathBloomFilter f, Void ctx) {
+            return f.commitHash;
+        }
+    },
+    /**
+     * Number of changed paths (files plus their leading directories), compared to the first parent
+     */
+    NUM_CHANGED_PATHS {
+        @Override
+        public Integer csvColumnValue(ChangedPathBloomFilter f, Void ctx) {
+            return f.getNumChangedPaths();
+        }
+    },
+    /**
+     * Bloom filter bits, Base64-encoded; empty if the commit changed too many paths
+     */
+    FILTER {
+        @Override
+        public String csvColumnValue(ChangedPathBloomFilter f, Void ctx) {
+            return f.bitsAsString();
+        }
+    };
+
+    /**
+     * Basename of the CSV file that will hold this information.  It will be located within the results directory, in a
+     * project-specific directory, such as <code>results/busybox/</code>
+     */
+    public static final String FILE_BASENAME = "changed_path_filters.csv";
+}
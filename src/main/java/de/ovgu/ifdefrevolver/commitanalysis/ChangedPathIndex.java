@@ -0,0 +1,256 @@
+package de.ovgu.ifdefrevolver.commitanalysis;
+
+import de.ovgu.ifdefrevolver.bugs.correlate.main.IHasResultsDir;
+import de.ovgu.ifdefrevolver.util.SimpleCsvFileReader;
+import de.ovgu.skunk.detection.output.CsvEnumUtils;
+import de.ovgu.skunk.detection.output.CsvFileWriterHelper;
+import de.ovgu.skunk.detection.output.CsvRowProvider;
+import org.apache.commons.csv.CSVPrinter;
+import org.apache.log4j.Logger;
+import org.eclipse.jgit.errors.IncorrectObjectTypeException;
+import org.eclipse.jgit.errors.MissingObjectException;
+import org.eclipse.jgit.lib.ObjectId;
+import org.eclipse.jgit.lib.Ref;
+import org.eclipse.jgit.lib.Repository;
+import org.eclipse.jgit.revwalk.RevCommit;
+import org.eclipse.jgit.revwalk.RevWalk;
+import org.eclipse.jgit.treewalk.EmptyTreeIterator;
+import org.eclipse.jgit.treewalk.TreeWalk;
+import org.eclipse.jgit.treewalk.filter.TreeFilter;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.*;
+import java.util.stream.Collectors;
+
+/**
+ * Per-commit index of the paths changed by each commit in a repository, stored as one {@link ChangedPathBloomFilter}
+ * per commit.  The index is built in a single pass over the history, using plain tree comparisons (no content diffs),
+ * and persisted in the project's results directory (see {@link ChangedPathFiltersColumns#FILE_BASENAME}).  Afterwards,
+ * walks that are restricted to certain files or directories can skip most commits without looking at any trees.
+ * <p>
+ * Like GIT's changed-path filters, the filter of a merge commit only reflects the changes relative to its first parent.
+ * Commits that are not covered by the index are conservatively assumed to change every path.  Commits added to the
+ * repository after the index was saved are indexed and saved the next time the index is read with {@link
+ * #readOrBuild(IHasResultsDir, Repository)}.
+ * </p>
+ */
+public class ChangedPathIndex {
+    private static final Logger LOG = Logger.getLogger(ChangedPathIndex.class);
+
+    private final Map<String, ChangedPathBloomFilter> filtersByCommit;
+
+    private ChangedPathIndex(Map<String, ChangedPathBloomFilter> filtersByCommit) {
+        this.filtersByCommit = filtersByCommit;
+    }
+
+    public static File indexFile(IHasResultsDir config) {
+        return new File(config.projectResultsDir(), ChangedPathFiltersColumns.FILE_BASENAME);
+    }
+
+    /**
+     * Read the index of the project from its results directory.  If the index file does not exist yet, the index is
+     * built from the given repository and then saved.  If it exists, commits of the repository that it does not cover
+     * yet are added, and the index is saved again.
+     *
+     * @param config Configuration specifying the results directory
+     * @param repo   The repository of the project
+     * @return The index
+     */
+    public static ChangedPathIndex readOrBuild(IHasResultsDir config, Repository repo) {
+        File indexFile = indexFile(config);
+        if (!indexFile.exists()) {
+            ChangedPathIndex index = build(repo);
+            index.write(indexFile);
+            return index;
+        }
+        ChangedPathIndex index = read(indexFile);
+        int numAdded = index.addMissingCommits(repo);
+        if (numAdded > 0) {
+            LOG.info("Added " + numAdded + " commits to the changed-path index in " + indexFile);
+            index.write(indexFile);
+        }
+        return index;
+    }
+
+    /**
+     * @param commitHash Hash of a commit
+     * @param path       A file or directory path, relative to the repository root
+     * @return <code>false</code> if the commit definitely did not change the given file or anything below the given
+     * directory, <code>true</code> if it might have (or if the commit is not covered by this index)
+     */
+    public boolean mightHaveChanged(String commitHash, String path) {
+        ChangedPathBloomFilter filter = filtersByCommit.get(commitHash);
+        if (filter == null) return true;
+        return filter.mightContain(path);
+    }
+
+    /**
+     * @param commitHashes Hashes of some commits
+     * @param path         A file or directory path, relative to the repository root
+     * @return Those of the given commits that might have changed the given path, in their original order
+     */
+    public List<String> filterCommitsThatMightHaveChanged(Collection<String> commitHashes, String path) {
+        return commitHashes.stream()
+                .filter(c -> mightHaveChanged(c, path))
+                .collect(Collectors.toList());
+    }
+
+    public boolean contains(String commitHash) {
+        return filtersByCommit.containsKey(commitHash);
+    }
+
+    public int size() {
+        return filtersByCommit.size();
+    }
+
+    /**
+     * Build the index for all commits reachable from any ref of the given repository.
+     */
+    public static ChangedPathIndex build(Repository repo) {
+        LOG.info("Building changed-path index of repository " + repo.getDirectory());
+        ChangedPathIndex index = new ChangedPathIndex(new LinkedHashMap<>());
+        index.addMissingCommits(repo);
+        LOG.info("Done building changed-path index of " + index.size() + " commits");
+        return index;
+    }
+
+    /**
+     * Add filters for all commits reachable from any ref of the given repository that this index does not cover yet.
+     * Since the index is only ever built over whole histories, the parents of covered commits are covered, too.  The
+     * walk therefore does not descend below covered commits, and extending the index only needs to look at the new
+     * commits.
+     *
+     * @return Number of commits added
+     */
+    private int addMissingCommits(Repository repo) {
+        int numAdded = 0;
+        RevWalk rw = new RevWalk(repo);
+        try {
+            markAllRefsAsStart(repo, rw);
+            for (String commitHash : filtersByCommit.keySet()) {
+                markUninterestingIfPresent(rw, commitHash);
+            }
+            for (RevCommit commit : rw) {
+                List<String> changedFiles = listChangedFiles(repo, rw, commit);
+                final String commitHash = commit.getId().name();
+                filtersByCommit.put(commitHash, ChangedPathBloomFilter.fromChangedFiles(commitHash, changedFiles));
+                numAdded++;
+                if (numAdded % 1000 == 0) {
+                    LOG.debug("Indexed " + numAdded + " commits");
+                }
+            }
+        } catch (IOException ioe) {
+            throw new RuntimeException("I/O exception while building changed-path index of repository "
+                    + repo.getDirectory(), ioe);
+        } finally {
+            rw.release();
+        }
+        return numAdded;
+    }
+
+    private static void markUninterestingIfPresent(RevWalk rw, String commitHash) throws IOException {
+        final RevCommit commit;
+        try {
+            commit = rw.parseCommit(ObjectId.fromString(commitHash));
+        } catch (MissingObjectException e) {
+            // The commit is gone, e.g., because its branch was deleted.  Its filter is kept all the same.
+            return;
+        }
+        rw.markUninteresting(commit);
+    }
+
+    private static void markAllRefsAsStart(Repository repo, RevWalk rw) throws IOException {
+        for (Ref ref : repo.getAllRefs().values()) {
+            try {
+                rw.markStart(rw.parseCommit(ref.getObjectId()));
+            } catch (IncorrectObjectTypeException e) {
+                LOG.debug("Ignoring ref that does not point to a commit: " + ref.getName());
+            }
+        }
+    }
+
+    private static List<String> listChangedFiles(Repository repo, RevWalk rw, RevCommit commit) throws IOException {
+        List<String> result = new ArrayList<>();
+        TreeWalk tw = new TreeWalk(repo);
+        try {
+            tw.setRecursive(true);
+            tw.setFilter(TreeFilter.ANY_DIFF);
+            if (commit.getParentCount() == 0) {
+                tw.addTree(new EmptyTreeIterator());
+            } else {
+                RevCommit firstParent = commit.getParent(0);
+                rw.parseHeaders(firstParent);
+                tw.addTree(firstParent.getTree());
+            }
+            tw.addTree(commit.getTree());
+            while (tw.next()) {
+                result.add(tw.getPathString());
+            }
+        } finally {
+            tw.release();
+        }
+        return result;
+    }
+
+    public void write(File indexFile) {
+        LOG.info("Writing changed-path index of " + filtersByCommit.size() + " commits to " + indexFile);
+        final CsvRowProvider<ChangedPathBloomFilter, Void, ChangedPathFiltersColumns> rowProvider =
+                new CsvRowProvider<>(ChangedPathFiltersColumns.class, null);
+        CsvFileWriterHelper writer = new CsvFileWriterHelper() {
+            @Override
+            protected void actuallyDoStuff(CSVPrinter csv) throws IOException {
+                csv.printRecord(rowProvider.headerRow());
+                for (ChangedPathBloomFilter f : filtersByCommit.values()) {
+                    csv.printRecord(rowProvider.dataRow(f));
+                }
+            }
+        };
+        writer.write(indexFile);
+    }
+
+    public static ChangedPathIndex read(File indexFile) {
+        LOG.debug("Reading changed-path index from " + indexFile);
+        ChangedPathIndex result = new ChangedPathFiltersCsvReader().readFile(indexFile);
+        LOG.debug("Read changed-path filters of " + result.size() + " commits");
+        return result;
+    }
+
+    private static class ChangedPathFiltersCsvReader extends SimpleCsvFileReader<ChangedPathIndex> {
+        private Map<String, ChangedPathBloomFilter> filters;
+
+        @Override
+        protected boolean hasHeader() {
+            return true;
+        }
+
+        @Override
+        protected void processHeader(String[] headerLine) {
+            CsvEnumUtils.validateHeaderRow(ChangedPathFiltersColumns.class, headerLine);
+        }
+
+        @Override
+        protected void initializeResult() {
+            super.initializeResult();
+            filters = new HashMap<>();
+        }
+
+        @Override
+        protected void processContentLine(String[] line) {
+            final String commitHash = line[ChangedPathFiltersColumns.COMMIT.ordinal()];
+            final int numChangedPaths = Integer.parseInt(line[ChangedPathFiltersColumns.NUM_CHANGED_PATHS.ordinal()]);
+            final String bits = line[ChangedPathFiltersColumns.FILTER.ordinal()];
+            filters.put(commitHash, ChangedPathBloomFilter.fromString(commitHash, numChangedPaths, bits));
+        }
+
+        @Override
+        protected ChangedPathIndex finalizeResult() {
+            return new ChangedPathIndex(filters);
+        }
+
+        @Override
+        protected ChangedPathIndex readFile(File file) {
+            return super.readFile(file);
+        }
+    }
+}
@@ -10,6 +10,7 @@ import org.eclipse.jgit.lib.ObjectId;
 import org.eclipse.jgit.lib.Repository;
 import org.eclipse.jgit.revwalk.RevCommit;
 import org.eclipse.jgit.revwalk.RevWalk;
+import org.eclipse.jgit.treewalk.TreeWalk;
 import org.eclipse.jgit.util.io.DisabledOutputStream;
 
 import java.io.File;
@@ -29,6 +30,10 @@ public class CommitChangedFunctionLister {
     private final Repository repo;
     private final String commitId;
     private final AddDelMergingConsumer changedFunctionConsumer;
+    /**
+     * If present, only diffs of files at or below this path are analyzed.
+     */
+    private final Optional<String> pathRestriction;
     private DiffFormatter formatter = null;
     /**
      * All the functions defined in the A-side files of the files that the diffs within this commit modify
@@ -45,10 +50,18 @@ public class CommitChangedFunctionLister {
     public CommitChangedFunctionLister(Repository repo, String commitId,
                                        IFunctionLocationProvider functionLocationProvider,
                                        Consumer<FunctionChangeHunk> changedFunctionConsumer) {
+        this(repo, commitId, functionLocationProvider, changedFunctionConsumer, Optional.empty());
+    }
+
+    public CommitChangedFunctionLister(Repository repo, String commitId,
+                                       IFunctionLocationProvider functionLocationProvider,
+                                       Consumer<FunctionChangeHunk> changedFunctionConsumer,
+                                       Optional<String> pathRestriction) {
         this.repo = repo;
         this.commitId = commitId;
         this.changedFunctionConsumer = new AddDelMergingConsumer(changedFunctionConsumer);
         this.functionLocationProvider = functionLocationProvider;
+        this.pathRestriction = pathRestriction;
     }
 
     /**
@@ -117,13 +130,18 @@ public class CommitChangedFunctionLister {
         return formatter.scan(parent.getTree(), commit.getTree())
                 .stream()
                 .filter(e -> isCFileName(e.getOldPath()) || isCFileName(e.getNewPath()))
+                .filter(e -> isWithinPathRestriction(e.getOldPath()) || isWithinPathRestriction(e.getNewPath()))
                 .collect(Collectors.toList());
     }
 
+    private boolean isWithinPathRestriction(String path) {
+        return !pathRestriction.isPresent() || ChangedPathBloomFilter.isSameOrBelow(path, pathRestriction.get());
+    }
+
     private void addFunctionsOfParentLessCommit(RevCommit commit) throws IOException {
         final boolean logDebug = LOG.isDebugEnabled();
-        FunctionLocationProvider p = new FunctionLocationProvider(repo, commitId, functionLocationProvider.getXmlReaderInstance());
-        allBSideFunctions = p.listFunctionsInDotCFiles(commit);
+        Set<String> cFilePaths = listCFilesWithinPathRestriction(commit);
+        allBSideFunctions = listAllFunctionsInModifiedFiles(commit, cFilePaths);
 
         for (Map.Entry<String, List<Method>> e : allBSideFunctions.entrySet()) {
             String newPath = e.getKey();
@@ -141,6 +159,27 @@ public class CommitChangedFunctionLister {
         changedFunctionConsumer.mergeAndPublishRemainingHunks();
     }
 
+    /**
+     * @return Paths of all the .c files in the given commit's tree that lie within the path restriction (if any)
+     */
+    private Set<String> listCFilesWithinPathRestriction(RevCommit commit) throws IOException {
+        Set<String> result = new HashSet<>();
+        TreeWalk tw = new TreeWalk(repo);
+        try {
+            tw.addTree(commit.getTree());
+            tw.setRecursive(true);
+            while (tw.next()) {
+                String path = tw.getPathString();
+                if (isCFileName(path) && isWithinPathRestriction(path)) {
+                    result.add(path);
+                }
+            }
+        } finally {
+            tw.release();
+        }
+        return result;
+    }
+
     private void logFilesAndFunctions(String side, Set<String> cFiles, Map<String, List<Method>> functionsByFile) {
         if (!LOG.isTraceEnabled()) return;
 
@@ -4,6 +4,7 @@ import de.ovgu.ifdefrevolver.bugs.correlate.data.IHasSnapshotDate;
 import de.ovgu.ifdefrevolver.bugs.correlate.data.Snapshot;
 import de.ovgu.ifdefrevolver.bugs.correlate.input.ProjectInformationReader;
 import de.ovgu.ifdefrevolver.bugs.correlate.main.ProjectInformationConfig;
+import de.ovgu.ifdefrevolver.bugs.createsnapshots.input.VirtualFileSystem;
 import de.ovgu.ifdefrevolver.bugs.createsnapshots.main.CreateSnapshots;
 import de.ovgu.ifdefrevolver.bugs.minecommits.CommitsDistanceDb;
 import de.ovgu.ifdefrevolver.bugs.minecommits.CommitsDistanceDbCsvReader;
@@ -20,8 +21,10 @@ import org.apache.commons.csv.CSVPrinter;
 import org.apache.log4j.Logger;
 import org.w3c.dom.Document;
 
+import java.io.BufferedInputStream;
 import java.io.File;
 import java.io.IOException;
+import java.io.InputStream;
 import java.io.PrintWriter;
 import java.util.*;
 import java.util.function.Consumer;
@@ -277,7 +280,13 @@ public class ListAllFunctions {
         Context ctx = new Context(null);
         de.ovgu.skunk.detection.data.File file = ctx.files.InternFile(filename);
         SrcMlFolderReader folderReader = new SrcMlFolderReader(ctx, xmlReader, Method::new);
-        Document document = folderReader.readSrcmlFile(file.filePath);
+        // The snapshot may have been packed into an archive, so don't let Skunk open the file itself.
+        final Document document;
+        try (InputStream in = new BufferedInputStream(VirtualFileSystem.open(new File(filename)))) {
+            document = folderReader.readSrcmlFile(in, file.filePath);
+        } catch (IOException e) {
+            throw new RuntimeException("Error reading srcML file " + filename, e);
+        }
         folderReader.internAllFunctionsInFile(file, document);
         ctx.functions.PostAction();
         int numFunctions = 0;
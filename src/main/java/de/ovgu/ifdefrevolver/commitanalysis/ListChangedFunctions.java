@@ -9,8 +9,11 @@ import de.ovgu.ifdefrevolver.bugs.minecommits.CommitsDistanceDb.Commit;
 import de.ovgu.ifdefrevolver.bugs.minecommits.CommitsDistanceDbCsvReader;
 import org.apache.commons.cli.*;
 import org.apache.log4j.Logger;
+import org.eclipse.jgit.api.Git;
+import org.eclipse.jgit.lib.Repository;
 
 import java.io.File;
+import java.io.IOException;
 import java.io.PrintWriter;
 import java.nio.file.Paths;
 import java.util.*;
@@ -21,6 +24,7 @@ public class ListChangedFunctions {
     private int errors;
     private ProjectInformationReader<ListChangedFunctionsConfig> projectInfo;
     private CommitsDistanceDb commitsDb;
+    private Optional<ChangedPathIndex> changedPathIndex = Optional.empty();
 
     public static void main(String[] args) {
         ListChangedFunctions main = new ListChangedFunctions();
@@ -45,6 +49,9 @@ public class ListChangedFunctions {
         LOG.debug("Reading project information");
         projectInfo.readSnapshotsAndRevisionsFile();
         LOG.debug("Done reading project information");
+        if (config.getPathRestriction().isPresent()) {
+            this.changedPathIndex = Optional.of(readOrBuildChangedPathIndex());
+        }
         Collection<IMinimalSnapshot> snapshotsToProcess = new LinkedHashSet<>();
 
         if (config.getSnapshotFilter().isPresent()) {
@@ -68,6 +75,21 @@ public class ListChangedFunctions {
         listFunctionsInSnapshots(snapshotsToProcess);
     }
 
+    private ChangedPathIndex readOrBuildChangedPathIndex() {
+        Git git;
+        try {
+            git = Git.open(new File(config.getRepoDir(), ".git"));
+        } catch (IOException ioe) {
+            throw new RuntimeException("Error opening repository " + config.getRepoDir(), ioe);
+        }
+        Repository repo = git.getRepository();
+        try {
+            return ChangedPathIndex.readOrBuild(config, repo);
+        } finally {
+            GitUtil.silentlyCloseGitAndRepo(git, repo);
+        }
+    }
+
     private IMinimalSnapshot getLeftoverSnapshot() {
         LOG.debug("Creating dummy snapshot to cover the remaining commits.");
         IMinimalSnapshot dummySnapshotToCoverRemainingCommits = createDummySnapshotToCoverRemainingCommits();
@@ -148,7 +170,7 @@ public class ListChangedFunctions {
     private File listChangedFunctionsInSnapshot(IMinimalSnapshot snapshot) {
         LOG.debug("Listing functions changed in " + snapshot);
         final Set<Commit> commitsThatModifyCFiles = this.projectInfo.getCommitsThatModifyCFiles();
-        SnapshotChangedFunctionLister lister = new SnapshotChangedFunctionLister(config, snapshot, commitsThatModifyCFiles);
+        SnapshotChangedFunctionLister lister = new SnapshotChangedFunctionLister(config, snapshot, commitsThatModifyCFiles, changedPathIndex);
         File resultCsv = lister.listChangedFunctions();
         if (lister.errorsOccurred()) {
             errors++;
@@ -273,6 +295,13 @@ public class ListChangedFunctions {
             config.setListLeftOverChanges(true);
         }
 
+        if (line.hasOption(ListChangedFunctionsConfig.OPT_PATH)) {
+            String path = ChangedPathBloomFilter.normalizePath(line.getOptionValue(ListChangedFunctionsConfig.OPT_PATH));
+            if (!path.isEmpty()) {
+                config.setPathRestriction(Optional.of(path));
+            }
+        }
+
         List<String> snapshotDateNames = line.getArgList();
         if (!snapshotDateNames.isEmpty()) {
             ListChangedFunctionsConfig.parseSnapshotFilterDates(snapshotDateNames, config);
@@ -316,6 +345,17 @@ public class ListChangedFunctions {
                 .desc("Analyze only commits that are not covered by any snapshot. If no explicit snapshots are given (as positional arguments), then only those leftover commits are analyzed. Otherwise, they are analyzed in addition to the explicitly listed snapshots.")
                 .build());
 
+        // --path=src/foo option
+        options.addOption(Option.builder(String.valueOf(ListChangedFunctionsConfig.OPT_PATH))
+                .longOpt(ListChangedFunctionsConfig.OPT_PATH_L)
+                .desc("Restrict the analysis to changes of the given file or of files below the given directory."
+                        + " The path is relative to the repository root. Commits that do not touch the path are"
+                        + " skipped without diffing, using the changed-path index in "
+                        + "<results>/" + ChangedPathFiltersColumns.FILE_BASENAME + ", which is built if it does not"
+                        + " exist yet.")
+                .hasArg().argName("PATH")
+                .build());
+
         // @formatter:on
         return options;
     }
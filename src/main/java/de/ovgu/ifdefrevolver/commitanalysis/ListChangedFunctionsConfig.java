@@ -22,6 +22,9 @@ public class ListChangedFunctionsConfig extends ProjectInformationConfig impleme
     public static final char OPT_LIST_LEFTOVER_CHANGES = 'l';
     public static final String OPT_LIST_LEFTOVER_CHANGES_L = "list-leftover-changes";
 
+    public static final char OPT_PATH = 'P';
+    public static final String OPT_PATH_L = "path";
+
     /**
      * <p>
      * Maximum size of binary files, in KB, to consider when analyzing commits. Since we don't particularly care about
@@ -46,6 +49,7 @@ public class ListChangedFunctionsConfig extends ProjectInformationConfig impleme
     public int binaryFileSizeThresholdInKb = DEFAULT_BINARY_FILE_SIZE_THRESHOLD_IN_KB;
     private int numThreads = DEFAULT_NUM_THREADS;
     private boolean listLeftOverChanges = DEFAULT_LEFT_OVER_CHANGES;
+    private Optional<String> pathRestriction = Optional.empty();
 
     @Override
     public void validateRepoDir() {
@@ -90,4 +94,15 @@ public class ListChangedFunctionsConfig extends ProjectInformationConfig impleme
     public void setListLeftOverChanges(boolean listLeftOverChanges) {
         this.listLeftOverChanges = listLeftOverChanges;
     }
+
+    /**
+     * @return File or directory (relative to the repository root) to which the analysis is restricted, if any
+     */
+    public Optional<String> getPathRestriction() {
+        return pathRestriction;
+    }
+
+    public void setPathRestriction(Optional<String> pathRestriction) {
+        this.pathRestriction = pathRestriction;
+    }
 }
@@ -21,16 +21,18 @@ import java.util.stream.Collectors;
 public class SnapshotChangedFunctionLister {
     private static final Logger LOG = Logger.getLogger(SnapshotChangedFunctionLister.class);
     private final Set<Commit> commitsThatModifyCFiles;
+    private final Optional<ChangedPathIndex> changedPathIndex;
     private ListChangedFunctionsConfig config;
     private IMinimalSnapshot snapshot;
     private int errors = 0;
     private Git git = null;
     private Repository repo = null;
 
-    public SnapshotChangedFunctionLister(ListChangedFunctionsConfig config, IMinimalSnapshot snapshot, Set<Commit> commitsThatModifyCFiles) {
+    public SnapshotChangedFunctionLister(ListChangedFunctionsConfig config, IMinimalSnapshot snapshot, Set<Commit> commitsThatModifyCFiles, Optional<ChangedPathIndex> changedPathIndex) {
         this.config = config;
         this.snapshot = snapshot;
         this.commitsThatModifyCFiles = commitsThatModifyCFiles;
+        this.changedPathIndex = changedPathIndex;
     }
 
     /**
@@ -75,10 +77,10 @@ public class SnapshotChangedFunctionLister {
     private CsvFileWriterHelper newCsvFileWriterForSnapshot(final File outputFile) {
         final String uncaughtExceptionErrorMessage = "Uncaught exception while listing changing functions in snapshot " + snapshot + ". Deleting output file " + outputFile.getAbsolutePath();
         final String fileDeleteFailedErrorMessage = "Failed to delete output file " + outputFile.getAbsolutePath() + ". Must be deleted manually.";
-        final List<String> commitIds = snapshot.getCommits()
+        final List<String> commitIds = restrictToCommitsThatMightChangePath(snapshot.getCommits()
                 .stream()
                 .filter(c -> commitsThatModifyCFiles.contains(c) && !c.isMerge())
-                .map(c -> c.commitHash).collect(Collectors.toList());
+                .map(c -> c.commitHash).collect(Collectors.toList()));
 
         return new CsvFileWriterHelper() {
             CsvRowProvider<FunctionChangeHunk, IMinimalSnapshot, FunctionChangeHunksColumns> csvRowProvider = FunctionChangeHunksColumns.newCsvRowProviderForSnapshot(snapshot);
@@ -102,6 +104,17 @@ public class SnapshotChangedFunctionLister {
         };
     }
 
+    private List<String> restrictToCommitsThatMightChangePath(List<String> commitIds) {
+        final Optional<String> path = config.getPathRestriction();
+        if (!path.isPresent() || !changedPathIndex.isPresent()) {
+            return commitIds;
+        }
+        List<String> result = changedPathIndex.get().filterCommitsThatMightHaveChanged(commitIds, path.get());
+        LOG.debug("Changed-path index ruled out " + (commitIds.size() - result.size()) + " of " + commitIds.size()
+                + " commits in " + snapshot + " for path " + path.get());
+        return result;
+    }
+
     private Consumer<FunctionChangeHunk> newThreadSafeFunctionToCsvWriter(final CSVPrinter csv, final CsvRowProvider<FunctionChangeHunk, IMinimalSnapshot, FunctionChangeHunksColumns> csvRowProvider) {
         return functionChange -> {
 //            if (functionChange.deletesFunction()) {
@@ -167,7 +180,7 @@ public class SnapshotChangedFunctionLister {
                             }
                             try {
                                 CommitChangedFunctionLister lister = new CommitChangedFunctionLister(repo, nextCommitId,
-                                        functionLocationProvider, changedFunctionConsumer);
+                                        functionLocationProvider, changedFunctionConsumer, config.getPathRestriction());
                                 lister.listChangedFunctions();
                             } catch (RuntimeException t) {
                                 LOG.warn("Error processing commit ID " + nextCommitId + ". Processing will continue with the remaining IDs.", t);
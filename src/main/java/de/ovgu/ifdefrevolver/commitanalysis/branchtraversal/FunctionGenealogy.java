@@ -1,6 +1,7 @@
 package de.ovgu.ifdefrevolver.commitanalysis.branchtraversal;
 
 import de.ovgu.ifdefrevolver.bugs.correlate.data.Snapshot;
+import de.ovgu.ifdefrevolver.bugs.minecommits.CommitsDistanceDb;
 import de.ovgu.ifdefrevolver.bugs.minecommits.CommitsDistanceDb.Commit;
 import de.ovgu.ifdefrevolver.commitanalysis.AbResRow;
 import de.ovgu.ifdefrevolver.commitanalysis.FunctionChangeRow;
@@ -21,12 +22,14 @@ public class FunctionGenealogy {
     private final int uid;
     private final FunctionId firstId;
     private final Set<FunctionId> functionIds;
+    private final CommitsDistanceDb commitsDb;
     private final Map<Snapshot, AbResRow> jointFunctionAbSmellRowsBySnapshot;
     private final LinkedGroupingListMap<Snapshot, FunctionChangeRow> changesBySnapshot;
 
-    public FunctionGenealogy(int uid, Set<FunctionId> functionIds, Map<Snapshot, AbResRow> jointFunctionAbSmellRowsBySnapshot, LinkedGroupingListMap<Snapshot, FunctionChangeRow> changesBySnapshot) {
+    public FunctionGenealogy(int uid, Set<FunctionId> functionIds, CommitsDistanceDb commitsDb, Map<Snapshot, AbResRow> jointFunctionAbSmellRowsBySnapshot, LinkedGroupingListMap<Snapshot, FunctionChangeRow> changesBySnapshot) {
         this.uid = uid;
         this.functionIds = functionIds;
+        this.commitsDb = commitsDb;
         this.jointFunctionAbSmellRowsBySnapshot = jointFunctionAbSmellRowsBySnapshot;
         this.changesBySnapshot = changesBySnapshot;
         this.firstId = functionIds.iterator().next();
@@ -141,28 +144,12 @@ public class FunctionGenealogy {
 
     private Set<Commit> getNewestChangingCommitsBefore(final Commit point) {
         Set<Commit> allChangingCommitsBefore = getAllChangingCommitsBefore(point);
-
-        Set<Commit> result = new HashSet<>();
-        for (Commit c : allChangingCommitsBefore) {
-            if (allChangingCommitsBefore.stream().noneMatch(descendant -> (descendant != c) && descendant.isDescendantOf(c))) {
-                result.add(c);
-            }
-        }
-
-        return result;
+        return commitsDb.filterDescendantCommits(allChangingCommitsBefore);
     }
 
     private Set<Commit> getOldestChangingCommitsBefore(final Commit point) {
         Set<Commit> allChangingCommitsBefore = getAllChangingCommitsBefore(point);
-
-        Set<Commit> result = new HashSet<>();
-        for (Commit c : allChangingCommitsBefore) {
-            if (allChangingCommitsBefore.stream().noneMatch(ancestor -> (ancestor != c) && ancestor.isAncestorOf(c))) {
-                result.add(c);
-            }
-        }
-
-        return result;
+        return commitsDb.filterAncestorCommits(allChangingCommitsBefore);
     }
 
     private Set<Commit> getAllChangingCommitsBefore(Commit point) {
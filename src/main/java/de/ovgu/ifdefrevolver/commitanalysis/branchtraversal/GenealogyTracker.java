@@ -139,7 +139,7 @@ public class GenealogyTracker {
                     .map(r -> r.getFunctionId())
                     .collect(Collectors.toCollection(LinkedHashSet::new));
 
-            FunctionGenealogy genealogy = new FunctionGenealogy(functionUid, functionIds, jointFunctionAbSmellRowsBySnapshot, changesBySnapshot);
+            FunctionGenealogy genealogy = new FunctionGenealogy(functionUid, functionIds, projectInfo.commitsDb(), jointFunctionAbSmellRowsBySnapshot, changesBySnapshot);
             jointFunctionAbSmellRowsBySnapshot.keySet().forEach(s -> result.put(s, genealogy));
 
             functionUid++;
@@ -0,0 +1,131 @@
+package de.ovgu.ifdefrevolver.util;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * Counts lines the way <code>wc -l</code> does, except that a non-empty file without any newline counts as one line.
+ * <p>
+ * Newlines are counted eight bytes at a time: Each group of eight bytes is read as a <code>long</code>, and the
+ * newline bytes in it are counted with a few bitwise operations and a population count (&quot;SIMD within a
+ * register&quot;).  Large files are memory-mapped rather than copied into the Java heap.</p>
+ */
+public class LineCounter {
+    /**
+     * Files at least this large are memory-mapped.  Mapping a file is more expensive than reading a few kilobytes,
+     * and mappings are only released when the buffer is garbage-collected.
+     */
+    private static final long MIN_MAPPED_FILE_SIZE = 256 * 1024;
+
+    private static final int BUFFER_SIZE = 64 * 1024;
+
+    private static final long NEWLINES = 0x0A0A0A0A0A0A0A0AL;
+    private static final long LOW_SEVEN_BITS = 0x7F7F7F7F7F7F7F7FL;
+
+    /**
+     * Buffer for reading files that are too small to be mapped, one per thread
+     */
+    private static final ThreadLocal<byte[]> READ_BUFFER = ThreadLocal.withInitial(() -> new byte[BUFFER_SIZE]);
+
+    /**
+     * Prevent instantiation: This is supposed to be a collection of static helper functions
+     */
+    private LineCounter() {
+    }
+
+    /**
+     * @param file A regular file
+     * @return Number of lines in the file
+     * @throws IOException If something goes wrong while reading the file
+     */
+    public static int countLines(File file) throws IOException {
+        try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+            final long size = channel.size();
+            if (size < MIN_MAPPED_FILE_SIZE) {
+                return countLines(channel);
+            }
+            long count = 0;
+            for (long pos = 0; pos < size; pos += Integer.MAX_VALUE) {
+                final long len = Math.min(Integer.MAX_VALUE, size - pos);
+                MappedByteBuffer buf = channel.map(FileChannel.MapMode.READ_ONLY, pos, len);
+                count += countNewlines(buf);
+            }
+            return toLineCount(count, size > 0);
+        }
+    }
+
+    /**
+     * @param in A stream, which is read until the end, but not closed
+     * @return Number of lines in the stream
+     * @throws IOException If something goes wrong while reading the stream
+     */
+    public static int countLines(InputStream in) throws IOException {
+        final byte[] buffer = READ_BUFFER.get();
+        final ByteBuffer wrapped = ByteBuffer.wrap(buffer);
+        long count = 0;
+        boolean empty = true;
+        int readChars;
+        while ((readChars = in.read(buffer)) != -1) {
+            if (readChars == 0) continue;
+            empty = false;
+            wrapped.clear().limit(readChars);
+            count += countNewlines(wrapped);
+        }
+        return toLineCount(count, !empty);
+    }
+
+    private static int countLines(FileChannel channel) throws IOException {
+        final ByteBuffer wrapped = ByteBuffer.wrap(READ_BUFFER.get());
+        long count = 0;
+        boolean empty = true;
+        while (true) {
+            wrapped.clear();
+            final int readChars = channel.read(wrapped);
+            if (readChars == -1) break;
+            if (readChars == 0) continue;
+            empty = false;
+            wrapped.flip();
+            count += countNewlines(wrapped);
+        }
+        return toLineCount(count, !empty);
+    }
+
+    private static int toLineCount(long newlineCount, boolean nonEmpty) {
+        if (newlineCount > Integer.MAX_VALUE) {
+            throw new ArithmeticException("Too many lines: " + newlineCount);
+        }
+        return (newlineCount == 0 && nonEmpty) ? 1 : (int) newlineCount;
+    }
+
+    /**
+     * @param buf A buffer, whose remaining bytes are counted.  The position of the buffer is left unchanged.
+     * @return Number of <code>'\n'</code> bytes between the buffer's position and its limit
+     */
+    static long countNewlines(ByteBuffer buf) {
+        final int start = buf.position();
+        final int end = buf.limit();
+        final int endOfLongs = start + ((end - start) & ~7);
+        long count = 0;
+        int i = start;
+        for (; i < endOfLongs; i += 8) {
+            // Bytes that are newlines become zero.
+            final long v = buf.getLong(i) ^ NEWLINES;
+            // Adding 0x7F to the low seven bits of a byte sets its high bit unless these bits are all zero.  No
+            // carry crosses into the next byte.  Together with the byte's own high bit, this leaves the high bit
+            // clear exactly for the zero bytes.
+            final long nonZero = ((v & LOW_SEVEN_BITS) + LOW_SEVEN_BITS) | v;
+            count += Long.bitCount(~(nonZero | LOW_SEVEN_BITS));
+        }
+        for (; i < end; i++) {
+            if (buf.get(i) == '\n') {
+                count++;
+            }
+        }
+        return count;
+    }
+}
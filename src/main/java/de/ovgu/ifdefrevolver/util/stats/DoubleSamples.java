@@ -0,0 +1,70 @@
+package de.ovgu.ifdefrevolver.util.stats;
+
+import java.util.Arrays;
+
+/**
+ * A growable list of <code>double</code> values that keeps the values in a primitive array instead of boxing each
+ * one.  Order statistics are computed by {@link Quickselect} on a copy of the values, so the values keep the order in
+ * which they were added.
+ */
+public class DoubleSamples {
+    private static final int INITIAL_CAPACITY = 16;
+
+    private double[] values;
+    private int size = 0;
+
+    public DoubleSamples() {
+        this(INITIAL_CAPACITY);
+    }
+
+    public DoubleSamples(int initialCapacity) {
+        this.values = new double[Math.max(1, initialCapacity)];
+    }
+
+    public void add(double value) {
+        if (size == values.length) {
+            values = Arrays.copyOf(values, values.length * 2);
+        }
+        values[size++] = value;
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public boolean isEmpty() {
+        return size == 0;
+    }
+
+    /**
+     * @return The value at the given position, in the order the values were added
+     */
+    public double get(int index) {
+        if ((index < 0) || (index >= size)) {
+            throw new IndexOutOfBoundsException("Index " + index + " out of range for " + size + " value(s).");
+        }
+        return values[index];
+    }
+
+    /**
+     * @param p The requested percentile, between 0 (exclusive) and 100 (inclusive)
+     * @return The percentile, estimated as described in {@link Quickselect#percentile(double[], int, double)}, or
+     * {@link Double#NaN} if there are no values
+     */
+    public double percentile(double p) {
+        return Quickselect.percentile(Arrays.copyOf(values, size), size, p);
+    }
+
+    /**
+     * @param k Index of the requested value in ascending order, starting at <code>0</code>
+     * @return The value that would be at index <code>k</code> if the values were sorted
+     */
+    public double select(int k) {
+        return Quickselect.select(Arrays.copyOf(values, size), size, k);
+    }
+
+    @Override
+    public String toString() {
+        return Arrays.toString(Arrays.copyOf(values, size));
+    }
+}
@@ -0,0 +1,110 @@
+package de.ovgu.ifdefrevolver.util.stats;
+
+import java.util.Arrays;
+
+/**
+ * A growable list of <code>int</code> values that keeps the values in a primitive array instead of boxing each one.
+ * The sum of the values is maintained as values are added, so the mean is available at any time without another pass
+ * over the data.  Order statistics are computed by {@link Quickselect} on a copy of the values, so the values keep the
+ * order in which they were added.
+ */
+public class IntSamples {
+    private static final int INITIAL_CAPACITY = 16;
+
+    private int[] values;
+    private int size = 0;
+    private long sum = 0;
+
+    public IntSamples() {
+        this(INITIAL_CAPACITY);
+    }
+
+    public IntSamples(int initialCapacity) {
+        this.values = new int[Math.max(1, initialCapacity)];
+    }
+
+    public void add(int value) {
+        if (size == values.length) {
+            values = Arrays.copyOf(values, values.length * 2);
+        }
+        values[size++] = value;
+        sum += value;
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public boolean isEmpty() {
+        return size == 0;
+    }
+
+    /**
+     * @return The value at the given position, in the order the values were added
+     */
+    public int get(int index) {
+        if ((index < 0) || (index >= size)) {
+            throw new IndexOutOfBoundsException("Index " + index + " out of range for " + size + " value(s).");
+        }
+        return values[index];
+    }
+
+    /**
+     * @return The arithmetic mean of the values, or {@link Double#NaN} if there are none
+     */
+    public double mean() {
+        if (size == 0) return Double.NaN;
+        return ((double) sum) / size;
+    }
+
+    /**
+     * @param p The requested percentile, between 0 (exclusive) and 100 (inclusive)
+     * @return The percentile, estimated as described in {@link Quickselect#percentile(double[], int, double)}, or
+     * {@link Double#NaN} if there are no values
+     */
+    public double percentile(double p) {
+        double[] copy = new double[size];
+        for (int i = 0; i < size; i++) {
+            copy[i] = values[i];
+        }
+        return Quickselect.percentile(copy, size, p);
+    }
+
+    /**
+     * @param k Index of the requested value in ascending order, starting at <code>0</code>
+     * @return The value that would be at index <code>k</code> if the values were sorted
+     */
+    public int select(int k) {
+        return Quickselect.select(Arrays.copyOf(values, size), size, k);
+    }
+
+    @Override
+    public int hashCode() {
+        int result = 1;
+        for (int i = 0; i < size; i++) {
+            result = 31 * result + values[i];
+        }
+        return result;
+    }
+
+    @Override
+    public boolean equals(Object obj) {
+        if (this == obj)
+            return true;
+        if (!(obj instanceof IntSamples))
+            return false;
+        IntSamples other = (IntSamples) obj;
+        if (size != other.size)
+            return false;
+        for (int i = 0; i < size; i++) {
+            if (values[i] != other.values[i])
+                return false;
+        }
+        return true;
+    }
+
+    @Override
+    public String toString() {
+        return Arrays.toString(Arrays.copyOf(values, size));
+    }
+}
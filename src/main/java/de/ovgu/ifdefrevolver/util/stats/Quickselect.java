@@ -0,0 +1,120 @@
+package de.ovgu.ifdefrevolver.util.stats;
+
+/**
+ * Order statistics on primitive arrays in expected linear time, without sorting.  All methods reorder the elements of
+ * the array they are given.
+ */
+public class Quickselect {
+    /**
+     * Prevent instantiation: This is supposed to be a collection of static helper functions
+     */
+    private Quickselect() {
+    }
+
+    /**
+     * @param values Values, which will be reordered
+     * @param length Number of values to consider, starting at index <code>0</code>
+     * @param k      Index of the requested value in ascending order, starting at <code>0</code>
+     * @return The value that would be at index <code>k</code> if the first <code>length</code> values were sorted.
+     * Afterwards, the values before index <code>k</code> are less than or equal to it, those after it greater than or
+     * equal.
+     */
+    public static double select(double[] values, int length, int k) {
+        checkIndex(length, k);
+        int left = 0;
+        int right = length - 1;
+        while (left < right) {
+            final double pivot = values[left + (right - left) / 2];
+            // Three-way partition, so that many equal values do not make this quadratic:
+            // [left, lt) < pivot, [lt, i) == pivot, (gt, right] > pivot
+            int lt = left;
+            int gt = right;
+            int i = left;
+            while (i <= gt) {
+                if (values[i] < pivot) swap(values, lt++, i++);
+                else if (values[i] > pivot) swap(values, i, gt--);
+                else i++;
+            }
+            if (k < lt) right = lt - 1;
+            else if (k > gt) left = gt + 1;
+            else return pivot;
+        }
+        return values[k];
+    }
+
+    /**
+     * Like {@link #select(double[], int, int)}, but for <code>int</code> values
+     */
+    public static int select(int[] values, int length, int k) {
+        checkIndex(length, k);
+        int left = 0;
+        int right = length - 1;
+        while (left < right) {
+            final int pivot = values[left + (right - left) / 2];
+            // Three-way partition, so that many equal values do not make this quadratic:
+            // [left, lt) < pivot, [lt, i) == pivot, (gt, right] > pivot
+            int lt = left;
+            int gt = right;
+            int i = left;
+            while (i <= gt) {
+                if (values[i] < pivot) swap(values, lt++, i++);
+                else if (values[i] > pivot) swap(values, i, gt--);
+                else i++;
+            }
+            if (k < lt) right = lt - 1;
+            else if (k > gt) left = gt + 1;
+            else return pivot;
+        }
+        return values[k];
+    }
+
+    /**
+     * Computes a percentile the way Apache Commons Math's <code>StatUtils.percentile</code> does by default, so that
+     * results do not change when switching from one to the other.
+     *
+     * @param values Values, which will be reordered
+     * @param length Number of values to consider, starting at index <code>0</code>
+     * @param p      The requested percentile, between 0 (exclusive) and 100 (inclusive)
+     * @return The percentile, or {@link Double#NaN} if <code>length</code> is <code>0</code>
+     */
+    public static double percentile(double[] values, int length, double p) {
+        if ((p <= 0) || (p > 100)) {
+            throw new IllegalArgumentException("Percentile must be > 0 and <= 100. Got " + p);
+        }
+        if (length == 0) return Double.NaN;
+        if (length == 1) return values[0];
+
+        final double pos = p * (length + 1) / 100;
+        final double fpos = Math.floor(pos);
+        final int intPos = (int) fpos;
+        final double dif = pos - fpos;
+        if (pos < 1) return select(values, length, 0);
+        if (pos >= length) return select(values, length, length - 1);
+
+        final double lower = select(values, length, intPos - 1);
+        // After selecting, the next larger value is the smallest one to the right of the lower one.
+        double upper = values[intPos];
+        for (int i = intPos + 1; i < length; i++) {
+            if (values[i] < upper) upper = values[i];
+        }
+        return lower + dif * (upper - lower);
+    }
+
+    private static void checkIndex(int length, int k) {
+        if ((k < 0) || (k >= length)) {
+            throw new IndexOutOfBoundsException("Index " + k + " out of range for " + length + " value(s).");
+        }
+    }
+
+    private static void swap(double[] values, int i, int j) {
+        final double tmp = values[i];
+        values[i] = values[j];
+        values[j] = tmp;
+    }
+
+    private static void swap(int[] values, int i, int j) {
+        final int tmp = values[i];
+        values[i] = values[j];
+        values[j] = tmp;
+    }
+}
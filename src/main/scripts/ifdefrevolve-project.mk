@@ -26,6 +26,7 @@ LOGS_DIR            = $(PROJECT)/logs
 
 REVISIONS_FILE      = $(RESULTS_DIR)/revisionsFull.csv
 COMMIT_PARENTS_FILE = $(RESULTS_DIR)/commitParents.csv
+MINED_TIPS_FILE     = $(RESULTS_DIR)/minedTips.csv
 CHECKOUT_MARKER     = $(RESULTS_DIR)/.checkout_successful
 ANALYSIS_MARKER     = $(RESULTS_DIR)/.analysis_successful
 ANALYZE_MAKEFILE    = $(RESULTS_DIR)/analyze.mk
@@ -34,15 +35,30 @@ all: $(REVISIONS_FILE)  $(COMMIT_PARENTS_FILE) $(CHECKOUT_MARKER) $(ANALYSIS_MAR
 
 findrevisions: $(REVISIONS_FILE) $(COMMIT_PARENTS_FILE)
 
-$(REVISIONS_FILE):
+### Both files are produced by a single pass over the repository.  A
+### pattern rule with two targets makes sure that the miner runs only
+### once.  Files that already exist are not regenerated.
+%/revisionsFull.csv %/commitParents.csv:
 	@mkdir -p $(LOGS_DIR)
-	@mkdir -p $(RESULTS_DIR)
-	lscommits.sh -r repos/$(PROJECT) -o $(REVISIONS_FILE) >> $(LOGS_DIR)/lscommits.log 2>&1
+	@mkdir -p $*
+	minecommits.sh -r repos/$(PROJECT) \
+		$$(test -e $*/revisionsFull.csv || echo "-o $*/revisionsFull.csv") \
+		$$(test -e $*/commitParents.csv || echo "-p $*/commitParents.csv") \
+		>> $(LOGS_DIR)/minecommits.log 2>&1
 
-$(COMMIT_PARENTS_FILE):
+### Adds the commits that have been pulled into the repository since
+### the last run.  Only new commits are mined.  The commit parents are
+### appended to, the revisions are recomputed from the existing files.
+### Falls back to mining the whole history if the files do not exist.
+refresh:
 	@mkdir -p $(LOGS_DIR)
 	@mkdir -p $(RESULTS_DIR)
-	lsparentcommits.sh -r repos/$(PROJECT) -o $(COMMIT_PARENTS_FILE) >> $(LOGS_DIR)/lsparentcommits.log 2>&1
+	minecommits.sh -r repos/$(PROJECT) \
+		-o $(REVISIONS_FILE) -p $(COMMIT_PARENTS_FILE) \
+		-i $(MINED_TIPS_FILE) --force \
+		>> $(LOGS_DIR)/minecommits.log 2>&1
+
+.PHONY: refresh
 
 checkout: $(CHECKOUT_MARKER)
 
@@ -0,0 +1,70 @@
+package de.ovgu.ifdefrevolver.bugs.correlate.input;
+
+import junit.framework.TestCase;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+
+public class FileStatsCacheTest extends TestCase {
+    private File baseDir;
+    private File cacheFile;
+
+    @Override
+    protected void setUp() throws Exception {
+        baseDir = Files.createTempDirectory("FileStatsCacheTest").toFile();
+        cacheFile = new File(baseDir, "results/" + FileStatsCache.FILE_NAME);
+        write("a.c", "int a;\nint b;\n");
+        write("dir/b,with,commas.c", "x");
+    }
+
+    @Override
+    protected void tearDown() throws Exception {
+        org.apache.commons.io.FileUtils.deleteDirectory(baseDir);
+    }
+
+    public void testLineCountsSurviveSaveAndLoad() {
+        FileStatsCache cache = FileStatsCache.load(cacheFile);
+        Map<String, Integer> expected = new HashMap<>();
+        expected.put("a.c", 2);
+        expected.put("dir/b,with,commas.c", 1);
+        assertEquals(expected, cache.getLineCounts(baseDir, expected.keySet()));
+        cache.save();
+        assertTrue(cacheFile.isFile());
+
+        assertEquals(expected, FileStatsCache.load(cacheFile).getLineCounts(baseDir, expected.keySet()));
+    }
+
+    public void testCachedCountIsReusedWhileVersionIsUnchanged() throws IOException {
+        FileStatsCache cache = FileStatsCache.load(cacheFile);
+        cache.getLineCounts(baseDir, Arrays.asList("a.c"));
+        cache.save();
+
+        // Same size and modification time: the cached count must be used.
+        final File a = new File(baseDir, "a.c");
+        final long mtime = a.lastModified();
+        write("a.c", "int a;int b;\n\n");
+        a.setLastModified(mtime);
+        assertEquals(Integer.valueOf(2), FileStatsCache.load(cacheFile).getLineCounts(baseDir, Arrays.asList("a.c")).get("a.c"));
+
+        // Different size: the file must be counted again.
+        write("a.c", "1\n2\n3\n");
+        assertEquals(Integer.valueOf(3), FileStatsCache.load(cacheFile).getLineCounts(baseDir, Arrays.asList("a.c")).get("a.c"));
+    }
+
+    public void testUnreadableCacheFileIsIgnored() throws IOException {
+        cacheFile.getParentFile().mkdirs();
+        Files.write(cacheFile.toPath(), "garbage\n".getBytes(StandardCharsets.UTF_8));
+        assertEquals(Integer.valueOf(2), FileStatsCache.load(cacheFile).getLineCounts(baseDir, Arrays.asList("a.c")).get("a.c"));
+    }
+
+    private void write(String relPath, String contents) throws IOException {
+        File f = new File(baseDir, relPath);
+        f.getParentFile().mkdirs();
+        Files.write(f.toPath(), contents.getBytes(StandardCharsets.UTF_8));
+    }
+}
@@ -0,0 +1,81 @@
+package de.ovgu.ifdefrevolver.bugs.correlate.input;
+
+import de.ovgu.ifdefrevolver.bugs.correlate.main.Config;
+import de.ovgu.ifdefrevolver.bugs.correlate.main.Smell;
+import junit.framework.TestCase;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardOpenOption;
+import java.text.SimpleDateFormat;
+import java.util.*;
+
+public class SnapshotResultsIndexTest extends TestCase {
+    private File projectDir;
+    private Config conf;
+    private Date snapshot1;
+    private Date snapshot2;
+
+    @Override
+    protected void setUp() throws Exception {
+        projectDir = Files.createTempDirectory("SnapshotResultsIndexTest").toFile();
+        final File resultsDir = new File(projectDir, "results");
+        resultsDir.mkdirs();
+        // Required by Config, but not read
+        new File(resultsDir, Config.REVISIONS_FILE_BASENAME).createNewFile();
+        conf = new Config();
+        conf.setProject(projectDir.getAbsolutePath());
+        SimpleDateFormat formatter = new SimpleDateFormat("yyyy-MM-dd");
+        snapshot1 = formatter.parse("2010-01-01");
+        snapshot2 = formatter.parse("2010-02-01");
+    }
+
+    @Override
+    protected void tearDown() throws Exception {
+        org.apache.commons.io.FileUtils.deleteDirectory(projectDir);
+    }
+
+    public void testFilesInSnapshot() throws IOException {
+        append(conf.projectAnalysisFile(),
+                "a.c,2010-01-01",
+                "b.c,2010-01-01",
+                "b.c,2010-02-01");
+        SnapshotResultsIndex index = new SnapshotResultsIndex(conf);
+        assertEquals(new HashSet<>(Arrays.asList("a.c", "b.c")), index.getFilesInSnapshot(snapshot1));
+        assertEquals(Collections.singleton("b.c"), index.getFilesInSnapshot(snapshot2));
+        assertTrue(index.getFilesInSnapshot(new Date(0)).isEmpty());
+    }
+
+    public void testSmellScoresKeepTheirOrder() throws IOException {
+        append(conf.smellOverviewFile(Smell.AB),
+                "b.c," + snapshot1 + ",2.5",
+                "a.c," + snapshot1 + ",1.0",
+                "b.c," + snapshot1 + ",0.5",
+                "a.c," + snapshot2 + ",3.0");
+        SnapshotResultsIndex index = new SnapshotResultsIndex(conf);
+        Map<String, List<Double>> expected = new HashMap<>();
+        expected.put("a.c", Collections.singletonList(1.0));
+        expected.put("b.c", Arrays.asList(2.5, 0.5));
+        assertEquals(expected, index.getSmells(snapshot1, Smell.AB));
+        assertEquals(Collections.singletonMap("a.c", Collections.singletonList(3.0)),
+                index.getSmells(snapshot2, Smell.AB));
+    }
+
+    public void testIndexIsRebuiltWhenFileChanges() throws IOException {
+        final File csvFile = conf.projectAnalysisFile();
+        append(csvFile, "a.c,2010-01-01");
+        SnapshotResultsIndex index = new SnapshotResultsIndex(conf);
+        assertEquals(Collections.singleton("a.c"), index.getFilesInSnapshot(snapshot1));
+
+        Files.write(csvFile.toPath(), "x.c,2010-02-01\ny.c,2010-02-01\n".getBytes(StandardCharsets.UTF_8));
+        assertTrue(index.getFilesInSnapshot(snapshot1).isEmpty());
+        assertEquals(new HashSet<>(Arrays.asList("x.c", "y.c")), index.getFilesInSnapshot(snapshot2));
+    }
+
+    private static void append(File f, String... lines) throws IOException {
+        Files.write(f.toPath(), Arrays.asList(lines), StandardCharsets.UTF_8, StandardOpenOption.CREATE,
+                StandardOpenOption.APPEND);
+    }
+}
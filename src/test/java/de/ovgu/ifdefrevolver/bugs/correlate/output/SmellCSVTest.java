@@ -0,0 +1,77 @@
+package de.ovgu.ifdefrevolver.bugs.correlate.output;
+
+import de.ovgu.ifdefrevolver.bugs.correlate.input.FeatureLocationIndex;
+import junit.framework.TestCase;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.*;
+
+public class SmellCSVTest extends TestCase {
+    private static final String FEATURE = de.ovgu.skunk.detection.data.Feature.class.getCanonicalName();
+
+    private File xmlFile;
+
+    @Override
+    protected void setUp() throws Exception {
+        xmlFile = Files.createTempFile("SmellCSVTest", ".xml").toFile();
+    }
+
+    @Override
+    protected void tearDown() throws Exception {
+        xmlFile.delete();
+    }
+
+    public void testFeatureLocationIndexAgreesWithDom() throws IOException {
+        write("<?xml version=\"1.0\" encoding=\"UTF-8\"?>\n"
+                + "<features>\n"
+                + feature("<Name>A</Name>", "<compilationFiles><string>a.c</string><string>b.c</string></compilationFiles>")
+                // Repeated features are merged.
+                + feature("<Name>A</Name>", "<compilationFiles><string>c.c</string></compilationFiles>")
+                // Only the first Name and the first compilationFiles element count.
+                + feature("<Name>B</Name><other><Name>X</Name></other>",
+                "<compilationFiles><string>dir/d.c</string></compilationFiles>"
+                        + "<compilationFiles><string>ignored.c</string></compilationFiles>")
+                // Entities, CDATA and non-ASCII text
+                + feature("<Name>C&amp;D</Name>",
+                "<compilationFiles><string>x&lt;y&gt;.c</string><string><![CDATA[z&.c]]></string>"
+                        + "<string>m\u00f6p.c</string></compilationFiles>")
+                + feature("<Name>E</Name>", "<compilationFiles/>")
+                + feature("<Name>F</Name>", "<compilationFiles><string>f.c</string></compilationFiles>")
+                + "</features>\n");
+
+        final Set<String> kept = new HashSet<>(Arrays.asList("A", "B", "C&D", "E", "unknown"));
+        final FeatureLocationIndex index = FeatureLocationIndex.read(xmlFile, kept::contains);
+        SmellCSV.crossCheckFeatureLocations(xmlFile, index, kept);
+
+        assertEquals(new HashSet<>(Arrays.asList("a.c", "b.c", "c.c")), index.getFiles("A"));
+        assertEquals(Collections.singleton("dir/d.c"), index.getFiles("B"));
+        assertEquals(new HashSet<>(Arrays.asList("x<y>.c", "z&.c", "m\u00f6p.c")), index.getFiles("C&D"));
+        assertTrue(index.getFiles("E").isEmpty());
+        assertTrue("Features that are not asked for must not be kept", index.getFiles("F").isEmpty());
+        assertEquals(4, index.size());
+    }
+
+    public void testCrossCheckDetectsDifferences() throws IOException {
+        write("<features>" + feature("<Name>A</Name>", "<compilationFiles><string>a.c</string></compilationFiles>")
+                + "</features>");
+        // An index that does not hold feature A disagrees with the DOM.
+        final FeatureLocationIndex index = FeatureLocationIndex.read(xmlFile, name -> false);
+        try {
+            SmellCSV.crossCheckFeatureLocations(xmlFile, index, Collections.singleton("A"));
+            fail("Difference was not detected");
+        } catch (RuntimeException expected) {
+            assertTrue(expected.getMessage(), expected.getMessage().contains("a.c"));
+        }
+    }
+
+    private static String feature(String name, String files) {
+        return "<" + FEATURE + ">" + name + "<lines>3</lines>" + files + "</" + FEATURE + ">\n";
+    }
+
+    private void write(String xml) throws IOException {
+        Files.write(xmlFile.toPath(), xml.getBytes(StandardCharsets.UTF_8));
+    }
+}
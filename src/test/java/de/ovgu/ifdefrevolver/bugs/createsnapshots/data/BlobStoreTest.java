@@ -0,0 +1,86 @@
+package de.ovgu.ifdefrevolver.bugs.createsnapshots.data;
+
+import junit.framework.TestCase;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+
+public class BlobStoreTest extends TestCase {
+    private static final String BLOB_HASH = "0123456789abcdef0123456789abcdef01234567";
+    private static final String SUFFIX = "_cppstats.xml";
+
+    private File tmpDir;
+    private BlobStore store;
+
+    @Override
+    protected void setUp() throws Exception {
+        tmpDir = Files.createTempDirectory("BlobStoreTest").toFile();
+        store = new BlobStore(new File(tmpDir, BlobStore.DIR_NAME));
+    }
+
+    @Override
+    protected void tearDown() throws Exception {
+        org.apache.commons.io.FileUtils.deleteDirectory(tmpDir);
+    }
+
+    public void testBlobIsStoredOnceAndCheckedOutWithSameContents() throws IOException {
+        assertTrue(store.putBlobIfAbsent(BLOB_HASH, out -> out.write(bytes("int main() {}\n"))));
+        assertFalse(store.putBlobIfAbsent(BLOB_HASH, out -> fail("Blob must not be written twice")));
+
+        final File target = new File(tmpDir, "snapshot/source/a/main.c");
+        store.checkOut(store.blobFile(BLOB_HASH), target);
+        assertEquals("int main() {}\n", read(target));
+    }
+
+    public void testDerivedFilesAreKeyedByBlobAndPath() {
+        final File f1 = store.derivedFile(BLOB_HASH, "a/main.c", SUFFIX);
+        final File f2 = store.derivedFile(BLOB_HASH, "b/main.c", SUFFIX);
+        assertFalse(f1.equals(f2));
+        assertEquals(f1, store.derivedFile(BLOB_HASH, "a/main.c", SUFFIX));
+        assertFalse(f1.equals(store.derivedFile(BLOB_HASH, "a/main.c", "_cppstats_featurelocations.xml")));
+    }
+
+    public void testDerivedFileIsCheckedOutWithTargetDirectory() throws IOException {
+        final File producedIn = new File(tmpDir, "2010-01-01");
+        final File produced = new File(producedIn, "_cppstats/a/main.c.xml");
+        write(produced, "<unit filename=\"" + producedIn.getAbsolutePath() + "/source/a/main.c\"/>");
+        assertTrue(store.putDerivedIfAbsent(BLOB_HASH, "a/main.c", SUFFIX, produced, producedIn));
+        assertFalse(store.putDerivedIfAbsent(BLOB_HASH, "a/main.c", SUFFIX, produced, producedIn));
+
+        final File stored = store.derivedFile(BLOB_HASH, "a/main.c", SUFFIX);
+        assertFalse(read(stored).contains(producedIn.getAbsolutePath()));
+
+        final File checkedOutIn = new File(tmpDir, "2011-02-03");
+        final File target = new File(checkedOutIn, "_cppstats/a/main.c.xml");
+        store.checkOutDerived(stored, target, checkedOutIn);
+        assertEquals("<unit filename=\"" + checkedOutIn.getAbsolutePath() + "/source/a/main.c\"/>", read(target));
+
+        write(target, "modified");
+        assertFalse("Checked-out derived files must not share storage with the store", read(stored).equals("modified"));
+    }
+
+    public void testCopyReplacingPreservesOtherBytes() throws IOException {
+        final File from = new File(tmpDir, "from");
+        final File to = new File(tmpDir, "to");
+        final byte[] latin1 = {'<', (byte) 0xE4, '>', '/', 'd', 'i', 'r', '/', 'x', (byte) 0xFF};
+        Files.write(from.toPath(), latin1);
+        BlobStore.copyReplacing(from, to, "/dir", "/d\u00f6r");
+        final byte[] expected = {'<', (byte) 0xE4, '>', '/', 'd', (byte) 0xC3, (byte) 0xB6, 'r', '/', 'x', (byte) 0xFF};
+        assertTrue(java.util.Arrays.equals(expected, Files.readAllBytes(to.toPath())));
+    }
+
+    private static byte[] bytes(String s) {
+        return s.getBytes(StandardCharsets.UTF_8);
+    }
+
+    private static String read(File f) throws IOException {
+        return new String(Files.readAllBytes(f.toPath()), StandardCharsets.UTF_8);
+    }
+
+    private static void write(File f, String contents) throws IOException {
+        f.getParentFile().mkdirs();
+        Files.write(f.toPath(), bytes(contents));
+    }
+}
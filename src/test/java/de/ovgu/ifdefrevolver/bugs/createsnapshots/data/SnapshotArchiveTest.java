@@ -0,0 +1,108 @@
+package de.ovgu.ifdefrevolver.bugs.createsnapshots.data;
+
+import junit.framework.TestCase;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.Arrays;
+import java.util.List;
+
+public class SnapshotArchiveTest extends TestCase {
+    private static final List<String> DIRS = Arrays.asList("source", "_cppstats");
+
+    private File snapshotDir;
+
+    @Override
+    protected void setUp() throws Exception {
+        snapshotDir = Files.createTempDirectory("SnapshotArchiveTest").toFile();
+        write("source/main.c", "int main() { return 0; }\n");
+        write("source/lib/util.c", "void f() {}\n");
+        write("_cppstats/main.c.xml", "<unit/>\n");
+    }
+
+    @Override
+    protected void tearDown() throws Exception {
+        org.apache.commons.io.FileUtils.deleteDirectory(snapshotDir);
+    }
+
+    public void testPackedFilesCanBeReadBack() throws IOException {
+        assertEquals(3, SnapshotArchive.pack(snapshotDir, DIRS));
+        try (SnapshotArchive archive = SnapshotArchive.open(new File(snapshotDir, SnapshotArchive.FILE_NAME))) {
+            assertTrue(archive.containsDirectory("source"));
+            assertEquals(Arrays.asList("source/lib/util.c", "source/main.c"), archive.listFiles("source"));
+            try (InputStream in = archive.openFile("source/lib/util.c")) {
+                assertEquals("void f() {}\n", new String(org.apache.commons.io.IOUtils.toByteArray(in), StandardCharsets.UTF_8));
+            }
+            archive.verifyHoldsAllFiles(DIRS);
+        }
+    }
+
+    public void testVerifyDetectsChangedContentsOfSameSize() throws IOException {
+        SnapshotArchive.pack(snapshotDir, DIRS);
+        write("source/main.c", "int main() { return 1; }\n");
+        try (SnapshotArchive archive = SnapshotArchive.open(new File(snapshotDir, SnapshotArchive.FILE_NAME))) {
+            archive.verifyHoldsAllFiles(DIRS);
+            fail("Modified file was not detected");
+        } catch (RuntimeException expected) {
+            assertTrue(expected.getMessage(), expected.getMessage().contains("main.c"));
+        }
+    }
+
+    public void testVerifyDetectsFileMissingFromArchive() throws IOException {
+        SnapshotArchive.pack(snapshotDir, DIRS);
+        write("source/new.c", "\n");
+        try (SnapshotArchive archive = SnapshotArchive.open(new File(snapshotDir, SnapshotArchive.FILE_NAME))) {
+            archive.verifyHoldsAllFiles(DIRS);
+            fail("Missing file was not detected");
+        } catch (RuntimeException expected) {
+            // Expected
+        }
+    }
+
+    public void testPackDoesNotReplaceArchiveOfPartiallyDeletedDirectories() throws IOException {
+        SnapshotArchive.pack(snapshotDir, DIRS);
+        final File archiveFile = new File(snapshotDir, SnapshotArchive.FILE_NAME);
+        final long archiveSize = archiveFile.length();
+        // Deleting the packed directories was interrupted
+        org.apache.commons.io.FileUtils.deleteDirectory(new File(snapshotDir, "source/lib"));
+        try {
+            SnapshotArchive.pack(snapshotDir, DIRS);
+            fail("Existing archive was overwritten");
+        } catch (RuntimeException expected) {
+            // Expected
+        }
+        assertEquals(archiveSize, archiveFile.length());
+        try (SnapshotArchive archive = SnapshotArchive.open(archiveFile)) {
+            assertEquals(3, archive.size());
+            assertTrue(archive.containsFile("source/lib/util.c"));
+            assertEquals(2, archive.verifyHoldsFilesOnDisk(DIRS));
+            try {
+                archive.verifyHoldsAllFiles(DIRS);
+                fail("Missing file on disk was not detected");
+            } catch (RuntimeException expected) {
+                // Expected
+            }
+        }
+    }
+
+    public void testVerifyFilesOnDiskDetectsChangedLeftoverFile() throws IOException {
+        SnapshotArchive.pack(snapshotDir, DIRS);
+        org.apache.commons.io.FileUtils.deleteDirectory(new File(snapshotDir, "_cppstats"));
+        write("source/main.c", "int main() { return 1; }\n");
+        try (SnapshotArchive archive = SnapshotArchive.open(new File(snapshotDir, SnapshotArchive.FILE_NAME))) {
+            archive.verifyHoldsFilesOnDisk(DIRS);
+            fail("Modified file was not detected");
+        } catch (RuntimeException expected) {
+            assertTrue(expected.getMessage(), expected.getMessage().contains("main.c"));
+        }
+    }
+
+    private void write(String relPath, String contents) throws IOException {
+        File f = new File(snapshotDir, relPath);
+        f.getParentFile().mkdirs();
+        Files.write(f.toPath(), contents.getBytes(StandardCharsets.UTF_8));
+    }
+}
@@ -0,0 +1,50 @@
+package de.ovgu.ifdefrevolver.bugs.createsnapshots.data;
+
+import de.ovgu.ifdefrevolver.bugs.createsnapshots.data.SnapshotManifest.Entry;
+import de.ovgu.ifdefrevolver.bugs.createsnapshots.data.SnapshotManifest.FileStatus;
+import junit.framework.TestCase;
+
+import java.io.File;
+import java.nio.file.Files;
+import java.util.Arrays;
+import java.util.List;
+
+public class SnapshotManifestTest extends TestCase {
+    private File snapshotDir;
+
+    @Override
+    protected void setUp() throws Exception {
+        snapshotDir = Files.createTempDirectory("SnapshotManifestTest").toFile();
+    }
+
+    @Override
+    protected void tearDown() throws Exception {
+        org.apache.commons.io.FileUtils.deleteDirectory(snapshotDir);
+    }
+
+    public void testManifestSurvivesWriteAndRead() {
+        final List<Entry> entries = Arrays.asList(
+                new Entry("main.c", "1111111111111111111111111111111111111111", FileStatus.ADDED),
+                new Entry("lib/util.c", "2222222222222222222222222222222222222222", FileStatus.MODIFIED),
+                new Entry("lib/with, comma \"and quotes\".h", "3333333333333333333333333333333333333333",
+                        FileStatus.UNCHANGED),
+                new Entry("old.c", "4444444444444444444444444444444444444444", FileStatus.DELETED));
+        new SnapshotManifest(entries).write(SnapshotManifest.manifestFile(snapshotDir));
+
+        final SnapshotManifest read = SnapshotManifest.read(snapshotDir);
+        assertEquals(entries.size(), read.getEntries().size());
+        for (int i = 0; i < entries.size(); i++) {
+            final Entry expected = entries.get(i);
+            final Entry actual = read.getEntries().get(i);
+            assertEquals(expected.path, actual.path);
+            assertEquals(expected.blobHash, actual.blobHash);
+            assertEquals(expected.status, actual.status);
+        }
+        assertEquals(Arrays.asList("main.c", "lib/util.c"), read.getAddedOrModifiedPaths());
+    }
+
+    public void testManifestIsStoredNextToSourceDirectory() {
+        assertEquals(new File(snapshotDir, SnapshotManifestColumns.FILE_BASENAME),
+                SnapshotManifest.manifestFile(snapshotDir));
+    }
+}
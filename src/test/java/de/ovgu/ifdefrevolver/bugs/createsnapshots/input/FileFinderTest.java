@@ -0,0 +1,150 @@
+package de.ovgu.ifdefrevolver.bugs.createsnapshots.input;
+
+import junit.framework.TestCase;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.attribute.FileTime;
+import java.util.*;
+import java.util.regex.Pattern;
+
+public class FileFinderTest extends TestCase {
+    private File tmpDir;
+    private File rootDir;
+
+    @Override
+    protected void setUp() throws Exception {
+        tmpDir = Files.createTempDirectory("FileFinderTest").toFile();
+        rootDir = new File(tmpDir, "root");
+        final Random random = new Random(42);
+        final String[] names = {"a.c", "B.C", "c.h", "d.c.xml", "e.csv", "f.cc", "g.c~", ".c"};
+        for (int i = 0; i < 200; i++) {
+            StringBuilder path = new StringBuilder();
+            final int depth = random.nextInt(5);
+            for (int d = 0; d < depth; d++) {
+                path.append("dir").append(random.nextInt(3)).append('/');
+            }
+            path.append(i).append(names[random.nextInt(names.length)]);
+            touch(path.toString());
+        }
+        // A directory whose name matches, but which must not be reported
+        new File(rootDir, "dir.c").mkdirs();
+        touch("dir.c/x.c");
+    }
+
+    @Override
+    protected void tearDown() throws Exception {
+        org.apache.commons.io.FileUtils.deleteDirectory(tmpDir);
+    }
+
+    public void testRegexFindsSameFilesAsSequentialWalk() {
+        for (String regex : new String[]{".*\\.c", ".*\\.csv", ".*\\.c\\.xml", "[0-9]+a\\.c"}) {
+            final List<File> found = FileFinder.find(rootDir, regex);
+            assertEquals(regex, findSequentially(rootDir, regex), new HashSet<>(found));
+            assertEquals(regex, found.size(), new HashSet<>(found).size());
+            assertSorted(found);
+        }
+    }
+
+    public void testSuffixMatcherFindsSameFilesAsRegex() {
+        assertEquals(FileFinder.find(rootDir, ".*\\.c"), FileFinder.find(rootDir, FileNameMatcher.suffix(".c")));
+        assertEquals(FileFinder.find(rootDir, ".*\\.c\\.xml"),
+                FileFinder.find(rootDir, FileNameMatcher.suffix(".c.xml")));
+    }
+
+    public void testCachedResultIsReusedUntilADirectoryChanges() throws IOException {
+        final File cacheFile = new File(tmpDir, "cache/files.txt");
+        final FileNameMatcher matcher = FileNameMatcher.suffix(".c");
+        ageDirectories();
+        final List<File> expected = FileFinder.find(rootDir, matcher);
+        assertEquals(expected, FileFinder.find(rootDir, matcher, cacheFile));
+        assertTrue(cacheFile.isFile());
+
+        // Sneak in a file without changing the modification time of its directory: the cache must be used.
+        final FileTime mtime = Files.getLastModifiedTime(rootDir.toPath());
+        touch("sneaked.c");
+        Files.setLastModifiedTime(rootDir.toPath(), mtime);
+        assertEquals(expected, FileFinder.find(rootDir, matcher, cacheFile));
+
+        // Now the directory has changed, so the file must be found.
+        Files.setLastModifiedTime(rootDir.toPath(), FileTime.fromMillis(mtime.toMillis() + 2000));
+        final List<File> afterChange = FileFinder.find(rootDir, matcher, cacheFile);
+        assertEquals(FileFinder.find(rootDir, matcher), afterChange);
+        assertTrue(afterChange.contains(new File(rootDir, "sneaked.c")));
+    }
+
+    public void testRecentlyModifiedDirectoriesAreNotCached() throws IOException {
+        final File cacheFile = new File(tmpDir, "cache/files.txt");
+        final FileNameMatcher matcher = FileNameMatcher.suffix(".c");
+        // All directories were just created, so a file added within the same tick would go unnoticed.
+        assertEquals(FileFinder.find(rootDir, matcher), FileFinder.find(rootDir, matcher, cacheFile));
+        assertFalse(cacheFile.exists());
+
+        ageDirectories();
+        touch("dir0/new.c");
+        assertFalse(cacheFile.exists());
+        final List<File> found = FileFinder.find(rootDir, matcher, cacheFile);
+        assertTrue(found.contains(new File(rootDir, "dir0/new.c")));
+        // dir0 has just been modified
+        assertFalse(cacheFile.exists());
+
+        ageDirectories();
+        assertEquals(found, FileFinder.find(rootDir, matcher, cacheFile));
+        assertTrue(cacheFile.isFile());
+    }
+
+    public void testCacheFileMustNotBeBelowStartDir() {
+        try {
+            FileFinder.find(rootDir, FileNameMatcher.suffix(".c"), new File(rootDir, "cache.txt"));
+            fail("Cache file below the start directory was accepted");
+        } catch (IllegalArgumentException expected) {
+            // Expected
+        }
+    }
+
+    /**
+     * The original implementation of {@link FileFinder#find(File, String)}
+     */
+    private static Set<File> findSequentially(File startDir, String filenamePattern) {
+        Set<File> files = new HashSet<>();
+        Deque<File> dirs = new ArrayDeque<>();
+        Pattern p = Pattern.compile(filenamePattern, Pattern.CASE_INSENSITIVE);
+        dirs.push(startDir);
+        while (!dirs.isEmpty())
+            for (File file : dirs.pop().listFiles())
+                if (file.isDirectory())
+                    dirs.push(file);
+                else if (p.matcher(file.getName()).matches())
+                    files.add(file);
+        return files;
+    }
+
+    private static void assertSorted(List<File> files) {
+        List<File> sorted = new ArrayList<>(files);
+        Collections.sort(sorted);
+        assertEquals(sorted, files);
+    }
+
+    /**
+     * Sets the modification times of all directories to an hour ago, so that they are old enough to be cached.
+     */
+    private void ageDirectories() throws IOException {
+        final FileTime anHourAgo = FileTime.fromMillis(System.currentTimeMillis() - 3600 * 1000);
+        Deque<File> dirs = new ArrayDeque<>();
+        dirs.push(rootDir);
+        while (!dirs.isEmpty()) {
+            File dir = dirs.pop();
+            Files.setLastModifiedTime(dir.toPath(), anHourAgo);
+            for (File file : dir.listFiles())
+                if (file.isDirectory())
+                    dirs.push(file);
+        }
+    }
+
+    private void touch(String relPath) throws IOException {
+        File f = new File(rootDir, relPath);
+        f.getParentFile().mkdirs();
+        f.createNewFile();
+    }
+}
@@ -0,0 +1,34 @@
+package de.ovgu.ifdefrevolver.bugs.createsnapshots.process;
+
+import junit.framework.TestCase;
+
+public class OutputRingBufferTest extends TestCase {
+    public void testKeepsAllLinesUpToCapacity() {
+        OutputRingBuffer buffer = new OutputRingBuffer(3);
+        assertTrue(buffer.isEmpty());
+        buffer.add("a");
+        buffer.add("b");
+        buffer.add("c");
+        assertFalse(buffer.isEmpty());
+        assertEquals("a\nb\nc\n", buffer.toString());
+    }
+
+    public void testEvictsOldestLinesAndCountsThem() {
+        OutputRingBuffer buffer = new OutputRingBuffer(2);
+        buffer.add("a");
+        buffer.add("b");
+        buffer.add("c");
+        assertEquals("[1 earlier line(s) omitted]\nb\nc\n", buffer.toString());
+        buffer.add("d");
+        buffer.add("e");
+        assertEquals("[3 earlier line(s) omitted]\nd\ne\n", buffer.toString());
+    }
+
+    public void testZeroCapacityKeepsNothing() {
+        OutputRingBuffer buffer = new OutputRingBuffer(0);
+        buffer.add("a");
+        buffer.add("b");
+        assertTrue(buffer.isEmpty());
+        assertEquals("", buffer.toString());
+    }
+}
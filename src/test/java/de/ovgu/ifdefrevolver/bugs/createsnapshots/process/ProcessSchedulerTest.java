@@ -0,0 +1,81 @@
+package de.ovgu.ifdefrevolver.bugs.createsnapshots.process;
+
+import de.ovgu.ifdefrevolver.bugs.createsnapshots.process.ProcessStatistics.Outcome;
+import junit.framework.TestCase;
+
+import java.io.File;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+public class ProcessSchedulerTest extends TestCase {
+    private static final File WORKING_DIR = new File(System.getProperty("java.io.tmpdir"));
+
+    private ProcessScheduler scheduler;
+
+    @Override
+    protected void setUp() throws Exception {
+        scheduler = new ProcessScheduler(2, 0, 1, 10);
+    }
+
+    @Override
+    protected void tearDown() throws Exception {
+        scheduler.shutdown();
+    }
+
+    public void testSuccessfulCommandRunsOnce() {
+        scheduler.run(new ExternalCommand("true", WORKING_DIR));
+        List<ProcessStatistics> stats = scheduler.getStatistics();
+        assertEquals(1, stats.size());
+        assertEquals(Outcome.SUCCEEDED, stats.get(0).outcome);
+        assertEquals(0, stats.get(0).exitCode);
+    }
+
+    public void testFailingCommandIsRetriedUpToMaxAttempts() {
+        ExternalCommand command = new ExternalCommand("false", WORKING_DIR);
+        command.setMaxAttempts(3);
+        final AtomicInteger numRetries = new AtomicInteger();
+        command.setBeforeRetry(numRetries::incrementAndGet);
+        try {
+            scheduler.run(command);
+            fail("Failing command did not raise an exception");
+        } catch (RuntimeException expected) {
+            assertTrue(expected.getMessage(), expected.getMessage().contains("non-zero exit code"));
+        }
+        assertEquals(2, numRetries.get());
+        List<ProcessStatistics> stats = scheduler.getStatistics();
+        assertEquals(3, stats.size());
+        for (int i = 0; i < stats.size(); i++) {
+            assertEquals(i + 1, stats.get(i).attempt);
+            assertEquals(Outcome.FAILED, stats.get(i).outcome);
+        }
+    }
+
+    public void testCommandExceedingTimeoutIsKilled() {
+        ExternalCommand command = new ExternalCommand("sleep", WORKING_DIR, "30");
+        command.setTimeoutMillis(200);
+        command.setMaxAttempts(2);
+        final long start = System.currentTimeMillis();
+        try {
+            scheduler.run(command);
+            fail("Timed-out command did not raise an exception");
+        } catch (RuntimeException expected) {
+            assertTrue(expected.getMessage(), expected.getMessage().contains("timed out"));
+        }
+        assertTrue(System.currentTimeMillis() - start < 20000);
+        List<ProcessStatistics> stats = scheduler.getStatistics();
+        assertEquals(2, stats.size());
+        assertEquals(Outcome.TIMED_OUT, stats.get(0).outcome);
+        assertEquals(Outcome.TIMED_OUT, stats.get(1).outcome);
+    }
+
+    public void testLastOutputIsReportedOnFailure() {
+        try {
+            scheduler.run(new ExternalCommand("sh", WORKING_DIR, "-c", "echo first; echo second >&2; exit 3"));
+            fail("Failing command did not raise an exception");
+        } catch (RuntimeException expected) {
+            assertTrue(expected.getMessage(), expected.getMessage().contains("exit code 3"));
+            assertTrue(expected.getMessage(), expected.getMessage().contains("first"));
+            assertTrue(expected.getMessage(), expected.getMessage().contains("second"));
+        }
+    }
+}
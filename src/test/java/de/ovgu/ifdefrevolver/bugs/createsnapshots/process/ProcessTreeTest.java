@@ -0,0 +1,41 @@
+package de.ovgu.ifdefrevolver.bugs.createsnapshots.process;
+
+import junit.framework.TestCase;
+
+import java.util.Optional;
+
+public class ProcessTreeTest extends TestCase {
+    /**
+     * Contents of a <code>/proc/[pid]/stat</code> file following the command name
+     */
+    private static final String FIELDS_AFTER_COMMAND_NAME = "S 1 4242 4242 0 -1 4194560 1234 0 0 0 150 25 3 7 20 0 1"
+            + " 0 123456 10485760 2048 18446744073709551615 1 1 0 0 0 0 0 0 0 0 0 17 2 0 0 0 0 0 0 0 0 0 0 0 0 0";
+
+    public void testParsesFieldsAfterCommandName() {
+        Optional<String[]> fields = ProcessTree.parseStat("4242 (cppstats) " + FIELDS_AFTER_COMMAND_NAME + "\n");
+        assertTrue(fields.isPresent());
+        assertEquals("S", fields.get()[0]);
+        assertEquals("1", fields.get()[1]);
+        // utime and cstime
+        assertEquals("150", fields.get()[11]);
+        assertEquals("7", fields.get()[14]);
+        // rss
+        assertEquals("2048", fields.get()[21]);
+    }
+
+    public void testCommandNameWithSpacesAndParentheses() {
+        Optional<String[]> fields = ProcessTree.parseStat("4242 (my prog) (x) S 7) " + FIELDS_AFTER_COMMAND_NAME
+                + "\n");
+        assertTrue(fields.isPresent());
+        assertEquals(FIELDS_AFTER_COMMAND_NAME.split(" ").length, fields.get().length);
+        assertEquals("S", fields.get()[0]);
+        assertEquals("1", fields.get()[1]);
+        assertEquals("2048", fields.get()[21]);
+    }
+
+    public void testMalformedContentsAreRejected() {
+        assertFalse(ProcessTree.parseStat("").isPresent());
+        assertFalse(ProcessTree.parseStat("4242 cppstats S 1 4242").isPresent());
+        assertFalse(ProcessTree.parseStat("4242 (cppstats) S 1 4242 4242 0").isPresent());
+    }
+}
@@ -0,0 +1,147 @@
+package de.ovgu.ifdefrevolver.bugs.minecommits;
+
+import de.ovgu.ifdefrevolver.bugs.minecommits.CommitsDistanceDb.Commit;
+import junit.framework.TestCase;
+
+import java.util.*;
+
+public class CommitsDistanceDbTest extends TestCase {
+    private final Random random = new Random(42);
+
+    public void testPruningGivesSameResultsAsFullReachability() {
+        for (int round = 0; round < 50; round++) {
+            final int numCommits = 1 + random.nextInt(60);
+            final Map<String, List<String>> parentsByHash = randomHistory(numCommits);
+            final CommitsDistanceDb db = CommitsDistanceDb.fromProtoCommits(toProtoCommits(parentsByHash));
+            final Map<String, Set<String>> ancestorsByHash = ancestors(parentsByHash);
+
+            final List<Commit> commits = new ArrayList<>(db.getCommits());
+            assertEquals(numCommits, commits.size());
+            for (Commit descendant : commits) {
+                for (Commit ancestor : commits) {
+                    final boolean expected = ancestorsByHash.get(descendant.commitHash).contains(ancestor.commitHash);
+                    assertEquals(descendant + " -> " + ancestor, expected, db.isDescendant(descendant, ancestor));
+                    if (expected && (descendant != ancestor)) {
+                        assertTrue(ancestor.getGeneration() < descendant.getGeneration());
+                    }
+                }
+            }
+
+            for (int i = 0; i < 10; i++) {
+                final List<Commit> subset = randomSubset(commits);
+                assertEquals(filterAncestorsPairwise(subset, ancestorsByHash), db.filterAncestorCommits(subset));
+                assertEquals(filterDescendantsPairwise(subset, ancestorsByHash), db.filterDescendantCommits(subset));
+            }
+        }
+    }
+
+    public void testGenerationNumbers() {
+        Map<String, List<String>> parentsByHash = new LinkedHashMap<>();
+        parentsByHash.put("a", Collections.<String>emptyList());
+        parentsByHash.put("b", Collections.singletonList("a"));
+        parentsByHash.put("c", Collections.singletonList("b"));
+        parentsByHash.put("d", Collections.singletonList("a"));
+        parentsByHash.put("e", Arrays.asList("c", "d"));
+        final CommitsDistanceDb db = CommitsDistanceDb.fromProtoCommits(toProtoCommits(parentsByHash));
+        db.ensurePreprocessed();
+        assertEquals(1, db.findCommitOrDie("a").getGeneration());
+        assertEquals(3, db.findCommitOrDie("c").getGeneration());
+        assertEquals(2, db.findCommitOrDie("d").getGeneration());
+        assertEquals(4, db.findCommitOrDie("e").getGeneration());
+    }
+
+    /**
+     * @return A random history.  Each commit has up to two parents, all of which have lower indices.
+     */
+    private Map<String, List<String>> randomHistory(int numCommits) {
+        Map<String, List<String>> parentsByHash = new LinkedHashMap<>();
+        for (int i = 0; i < numCommits; i++) {
+            List<String> parents = new ArrayList<>();
+            if ((i > 0) && (random.nextInt(10) > 0)) {
+                parents.add(hash(random.nextInt(i)));
+                if (random.nextInt(4) == 0) {
+                    final String secondParent = hash(random.nextInt(i));
+                    if (!parents.contains(secondParent)) parents.add(secondParent);
+                }
+            }
+            parentsByHash.put(hash(i), parents);
+        }
+        return parentsByHash;
+    }
+
+    /**
+     * Timestamps are random, as with skewed clocks, so that the order in which commits are added to the DB does not
+     * follow the topology.
+     */
+    private List<ProtoCommit> toProtoCommits(Map<String, List<String>> parentsByHash) {
+        List<ProtoCommit> result = new ArrayList<>();
+        for (Map.Entry<String, List<String>> e : parentsByHash.entrySet()) {
+            final String timestamp = String.format("2010-01-01 00:%02d:%02d", random.nextInt(60), random.nextInt(60));
+            if (e.getValue().isEmpty()) {
+                result.add(new ProtoCommit(e.getKey(), timestamp, Optional.<String>empty()));
+            }
+            for (String parent : e.getValue()) {
+                result.add(new ProtoCommit(e.getKey(), timestamp, Optional.of(parent)));
+            }
+        }
+        return result;
+    }
+
+    /**
+     * @return The ancestors of each commit, including the commit itself
+     */
+    private static Map<String, Set<String>> ancestors(Map<String, List<String>> parentsByHash) {
+        Map<String, Set<String>> result = new HashMap<>();
+        for (String hash : parentsByHash.keySet()) {
+            Set<String> visited = new HashSet<>();
+            Deque<String> todo = new ArrayDeque<>();
+            todo.add(hash);
+            while (!todo.isEmpty()) {
+                final String current = todo.remove();
+                if (visited.add(current)) {
+                    todo.addAll(parentsByHash.get(current));
+                }
+            }
+            result.put(hash, visited);
+        }
+        return result;
+    }
+
+    private List<Commit> randomSubset(List<Commit> commits) {
+        List<Commit> result = new ArrayList<>();
+        for (Commit c : commits) {
+            if (random.nextInt(3) == 0) result.add(c);
+        }
+        return result;
+    }
+
+    private static Set<Commit> filterAncestorsPairwise(Collection<Commit> commits,
+                                                       Map<String, Set<String>> ancestorsByHash) {
+        Set<Commit> result = new HashSet<>();
+        for (Commit c : commits) {
+            boolean hasAncestor = false;
+            for (Commit other : commits) {
+                if ((other != c) && ancestorsByHash.get(c.commitHash).contains(other.commitHash)) hasAncestor = true;
+            }
+            if (!hasAncestor) result.add(c);
+        }
+        return result;
+    }
+
+    private static Set<Commit> filterDescendantsPairwise(Collection<Commit> commits,
+                                                         Map<String, Set<String>> ancestorsByHash) {
+        Set<Commit> result = new HashSet<>();
+        for (Commit c : commits) {
+            boolean hasDescendant = false;
+            for (Commit other : commits) {
+                if ((other != c) && ancestorsByHash.get(other.commitHash).contains(c.commitHash)) hasDescendant = true;
+            }
+            if (!hasDescendant) result.add(c);
+        }
+        return result;
+    }
+
+    private static String hash(int i) {
+        return String.format("%040x", i);
+    }
+}
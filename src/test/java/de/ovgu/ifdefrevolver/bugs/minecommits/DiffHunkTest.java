@@ -0,0 +1,84 @@
+package de.ovgu.ifdefrevolver.bugs.minecommits;
+
+import junit.framework.TestCase;
+import org.eclipse.jgit.diff.*;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+public class DiffHunkTest extends TestCase {
+    private static final Pattern HUNK_HEADER = Pattern.compile("^@@ -(\\d+)(?:,(\\d+))? \\+(\\d+)(?:,(\\d+))? @@",
+            Pattern.MULTILINE);
+
+    public void testHunksMatchDiffFormatterHeaders() throws IOException {
+        final Random random = new Random(42);
+        final DiffAlgorithm algorithm = MyersDiff.INSTANCE;
+        int numHunks = 0;
+        for (int round = 0; round < 300; round++) {
+            final RawText a = randomText(random, random.nextInt(40));
+            final RawText b = mutate(random, a);
+            final EditList edits = algorithm.diff(RawTextComparator.DEFAULT, a, b);
+            final List<DiffHunk> hunks = DiffHunk.fromEditList(edits, a.size(), b.size(), DiffHunk.DEFAULT_CONTEXT);
+            assertEquals(formatHeaders(edits, a, b), toStrings(hunks));
+            numHunks += hunks.size();
+        }
+        assertTrue(numHunks > 300);
+    }
+
+    public void testNoEditsNoHunks() {
+        assertTrue(DiffHunk.fromEditList(new EditList(), 3, 3, DiffHunk.DEFAULT_CONTEXT).isEmpty());
+    }
+
+    /**
+     * @return The hunk headers written by JGit, with lengths made explicit
+     */
+    private static List<String> formatHeaders(EditList edits, RawText a, RawText b) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        DiffFormatter formatter = new DiffFormatter(out);
+        formatter.setContext(DiffHunk.DEFAULT_CONTEXT);
+        formatter.format(edits, a, b);
+        formatter.flush();
+        List<String> result = new ArrayList<>();
+        Matcher m = HUNK_HEADER.matcher(new String(out.toByteArray(), StandardCharsets.UTF_8));
+        while (m.find()) {
+            result.add("@@ -" + m.group(1) + "," + (m.group(2) == null ? "1" : m.group(2)) + " +" + m.group(3) + ","
+                    + (m.group(4) == null ? "1" : m.group(4)) + " @@");
+        }
+        return result;
+    }
+
+    private static List<String> toStrings(List<DiffHunk> hunks) {
+        List<String> result = new ArrayList<>();
+        for (DiffHunk h : hunks) {
+            result.add(h.toString());
+        }
+        return result;
+    }
+
+    private static RawText randomText(Random random, int numLines) {
+        StringBuilder sb = new StringBuilder();
+        for (int i = 0; i < numLines; i++) {
+            sb.append("line").append(random.nextInt(numLines + 1)).append('\n');
+        }
+        return new RawText(sb.toString().getBytes(StandardCharsets.UTF_8));
+    }
+
+    private static RawText mutate(Random random, RawText a) {
+        StringBuilder sb = new StringBuilder();
+        for (int i = 0; i < a.size(); i++) {
+            final int r = random.nextInt(10);
+            if (r == 0) continue; // delete
+            if (r == 1) sb.append("new").append(random.nextInt(5)).append('\n'); // insert
+            if (r != 2) sb.append(a.getString(i)).append('\n'); // keep, unless replaced
+            else sb.append("changed\n");
+        }
+        if (random.nextBoolean()) sb.append("appended\n");
+        return new RawText(sb.toString().getBytes(StandardCharsets.UTF_8));
+    }
+}
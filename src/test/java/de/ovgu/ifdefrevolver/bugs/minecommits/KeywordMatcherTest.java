@@ -0,0 +1,73 @@
+package de.ovgu.ifdefrevolver.bugs.minecommits;
+
+import de.ovgu.ifdefrevolver.bugs.minecommits.KeywordMatcher.MatchMode;
+import junit.framework.TestCase;
+
+import java.util.Random;
+
+public class KeywordMatcherTest extends TestCase {
+    public void testSubstringCountsMatchNaiveSearch() {
+        // Keywords that are prefixes, suffixes and infixes of each other
+        final String[] keywords = {"a", "ab", "bab", "abab", "b", "ba", "aab"};
+        final KeywordMatcher matcher = new KeywordMatcher(keywords, MatchMode.SUBSTRING);
+        final Random random = new Random(42);
+        for (int round = 0; round < 1000; round++) {
+            final StringBuilder text = new StringBuilder();
+            final int len = random.nextInt(40);
+            for (int i = 0; i < len; i++) {
+                text.append("aAbBc ".charAt(random.nextInt(6)));
+            }
+            final int[] counts = matcher.countMatches(text.toString());
+            final String lowerText = text.toString().toLowerCase();
+            for (int ix = 0; ix < keywords.length; ix++) {
+                assertEquals("'" + keywords[ix] + "' in '" + text + "'", countOverlapping(lowerText, keywords[ix]),
+                        counts[ix]);
+                // The old implementation only asked String.contains.
+                assertEquals(lowerText.contains(keywords[ix]), counts[ix] > 0);
+            }
+        }
+    }
+
+    public void testKeywordsAreNormalized() {
+        final KeywordMatcher matcher = new KeywordMatcher(new String[]{" Fix ", "BUG"}, MatchMode.SUBSTRING);
+        assertEquals("fix", matcher.getKeywords().get(0));
+        assertEquals("bug", matcher.getKeywords().get(1));
+        assertCounts(matcher, "FIXED a Bug, fix", 2, 1);
+    }
+
+    public void testWordMode() {
+        final KeywordMatcher matcher = new KeywordMatcher(new String[]{"fix", "bug"}, MatchMode.WORD);
+        assertCounts(matcher, "fix", 1, 0);
+        assertCounts(matcher, "prefix fixes debug bugs", 0, 0);
+        assertCounts(matcher, "Fix: bug (fix-up)", 2, 1);
+    }
+
+    public void testStemMode() {
+        final KeywordMatcher matcher = new KeywordMatcher(new String[]{"fix", "bug"}, MatchMode.STEM);
+        assertCounts(matcher, "fixes fixed fixing", 3, 0);
+        assertCounts(matcher, "bugs bugged bugging", 0, 3);
+        assertCounts(matcher, "prefix debug bugzilla fixture", 0, 0);
+    }
+
+    public void testEmptyKeywordIsRejected() {
+        try {
+            new KeywordMatcher(new String[]{"fix", " "}, MatchMode.SUBSTRING);
+            fail("Empty keyword was accepted");
+        } catch (IllegalArgumentException expected) {
+            // Expected
+        }
+    }
+
+    private static void assertCounts(KeywordMatcher matcher, String text, int... expected) {
+        final int[] actual = matcher.countMatches(text);
+        assertEquals(text, java.util.Arrays.toString(expected), java.util.Arrays.toString(actual));
+    }
+
+    private static int countOverlapping(String text, String keyword) {
+        int count = 0;
+        for (int i = text.indexOf(keyword); i >= 0; i = text.indexOf(keyword, i + 1)) {
+            count++;
+        }
+        return count;
+    }
+}
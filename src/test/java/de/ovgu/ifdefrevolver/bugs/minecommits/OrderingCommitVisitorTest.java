@@ -0,0 +1,103 @@
+package de.ovgu.ifdefrevolver.bugs.minecommits;
+
+import junit.framework.TestCase;
+import org.repodriller.persistence.PersistenceMechanism;
+
+import java.util.*;
+
+public class OrderingCommitVisitorTest extends TestCase {
+    private static final int COMMIT_ID = OrderedRevisionsColumns.COMMIT_ID.ordinal();
+    private static final int BRANCH = OrderedRevisionsColumns.BRANCH.ordinal();
+    private static final int POSITION = OrderedRevisionsColumns.POSITION.ordinal();
+
+    private final Random random = new Random(42);
+
+    public void testEachCommitContinuesItsParentsBranchOnlyIfItHasTheLongestChain() {
+        for (int round = 0; round < 100; round++) {
+            final Map<String, String> parentByHash = randomFirstParentForest(1 + random.nextInt(80));
+            final List<Object[]> rows = order(parentByHash, new ArrayList<>(parentByHash.keySet()));
+            assertEquals(parentByHash.size(), rows.size());
+
+            Map<String, List<String>> branches = new LinkedHashMap<>();
+            for (Object[] row : rows) {
+                List<String> branch = branches.computeIfAbsent((String) row[BRANCH], b -> new ArrayList<>());
+                branch.add((String) row[COMMIT_ID]);
+                assertEquals(String.valueOf(branch.size()), row[POSITION]);
+            }
+
+            Map<String, Integer> chainLengthByHash = new HashMap<>();
+            Set<String> branchRoots = new HashSet<>();
+            for (List<String> branch : branches.values()) {
+                branchRoots.add(branch.get(0));
+                for (int i = 0; i < branch.size(); i++) {
+                    chainLengthByHash.put(branch.get(i), branch.size() - i);
+                    if (i > 0) assertEquals(branch.get(i - 1), parentByHash.get(branch.get(i)));
+                }
+            }
+            assertEquals(parentByHash.keySet(), chainLengthByHash.keySet());
+
+            // A commit that starts a branch although its parent is known must not have a longer chain than the
+            // child that continues its parent's branch.
+            for (String root : branchRoots) {
+                final String parent = parentByHash.get(root);
+                if (parent.isEmpty()) continue;
+                final int heirChainLength = chainLengthByHash.get(parent) - 1;
+                assertTrue(root + " should have continued the branch of " + parent,
+                        chainLengthByHash.get(root) <= heirChainLength);
+            }
+        }
+    }
+
+    public void testResultDoesNotDependOnTheOrderOfCommits() {
+        for (int round = 0; round < 50; round++) {
+            final Map<String, String> parentByHash = randomFirstParentForest(1 + random.nextInt(80));
+            final List<String> hashes = new ArrayList<>(parentByHash.keySet());
+            final List<Object[]> expected = order(parentByHash, hashes);
+            for (int i = 0; i < 3; i++) {
+                Collections.shuffle(hashes, random);
+                final List<Object[]> actual = order(parentByHash, hashes);
+                assertEquals(expected.size(), actual.size());
+                for (int row = 0; row < expected.size(); row++) {
+                    assertTrue(Arrays.equals(expected.get(row), actual.get(row)));
+                }
+            }
+        }
+    }
+
+    /**
+     * @return The first parent of each commit, or the empty string for root commits.  Commits have few distinct
+     * timestamps, so that ties must be broken consistently.
+     */
+    private Map<String, String> randomFirstParentForest(int numCommits) {
+        Map<String, String> result = new LinkedHashMap<>();
+        for (int i = 0; i < numCommits; i++) {
+            final String parent = ((i == 0) || (random.nextInt(8) == 0)) ? "" : hash(random.nextInt(i));
+            result.put(hash(i), parent);
+        }
+        return result;
+    }
+
+    private static List<Object[]> order(Map<String, String> parentByHash, List<String> hashes) {
+        OrderingCommitVisitor visitor = new OrderingCommitVisitor();
+        for (String hash : hashes) {
+            Calendar timestamp = new GregorianCalendar(2010, Calendar.JANUARY, 1 + (hash.hashCode() & 3));
+            visitor.addPreviouslyMinedCommit(hash, timestamp, parentByHash.get(hash), false, true);
+        }
+        final List<Object[]> rows = new ArrayList<>();
+        visitor.finalizeVisitor(new PersistenceMechanism() {
+            @Override
+            public void write(Object... line) {
+                rows.add(line);
+            }
+
+            @Override
+            public void close() {
+            }
+        });
+        return rows;
+    }
+
+    private static String hash(int i) {
+        return String.format("%040x", i);
+    }
+}
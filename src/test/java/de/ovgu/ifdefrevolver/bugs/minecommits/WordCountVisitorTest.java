@@ -0,0 +1,104 @@
+package de.ovgu.ifdefrevolver.bugs.minecommits;
+
+import junit.framework.TestCase;
+import org.eclipse.jgit.lib.PersonIdent;
+import org.repodriller.persistence.PersistenceMechanism;
+
+import java.util.*;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+public class WordCountVisitorTest extends TestCase {
+    private static final String[] VOCABULARY = {"fix", "bug", "Add", "the", "memory", "leak", "in", "parser", "x86",
+            "don't", "FIX"};
+    private static final PersonIdent AUTHOR = new PersonIdent("A", "a@example.org", new Date(0), TimeZone.getDefault());
+
+    private final Random random = new Random(42);
+
+    public void testParallelCountsEqualSequentialCounts() throws InterruptedException {
+        final List<String> messages = randomMessages(500);
+        final Map<String, Integer> expected = new HashMap<>();
+        for (String message : messages) {
+            for (String word : message.split("\\s+")) {
+                final String normalized = word.toLowerCase().replaceAll("[^a-z0-9]", "");
+                if (!normalized.isEmpty() && !normalized.equals("the")) expected.merge(normalized, 1, Integer::sum);
+            }
+        }
+
+        final WordCountVisitor visitor = new WordCountVisitor(false, Collections.singleton("the"),
+                Optional.<Integer>empty());
+        processInParallel(visitor, messages);
+        final List<Object[]> rows = finish(visitor);
+
+        Map<String, Integer> actual = new HashMap<>();
+        for (Object[] row : rows) {
+            actual.put((String) row[0], (Integer) row[1]);
+        }
+        assertEquals(expected, actual);
+        for (int i = 1; i < rows.size(); i++) {
+            assertTrue("Rows must be sorted by descending count",
+                    (Integer) rows.get(i - 1)[1] >= (Integer) rows.get(i)[1]);
+        }
+    }
+
+    public void testTopKIsPrefixOfFullResult() throws InterruptedException {
+        final List<String> messages = randomMessages(200);
+        final WordCountVisitor all = new WordCountVisitor();
+        processInParallel(all, messages);
+        final List<Object[]> allRows = finish(all);
+        for (int k = 1; k <= allRows.size() + 1; k++) {
+            final WordCountVisitor top = new WordCountVisitor(false, Collections.<String>emptySet(), Optional.of(k));
+            processInParallel(top, messages);
+            final List<Object[]> topRows = finish(top);
+            assertEquals(Math.min(k, allRows.size()), topRows.size());
+            for (int i = 0; i < topRows.size(); i++) {
+                assertTrue(Arrays.equals(allRows.get(i), topRows.get(i)));
+            }
+        }
+    }
+
+    private void processInParallel(final WordCountVisitor visitor, List<String> messages)
+            throws InterruptedException {
+        ExecutorService executor = Executors.newFixedThreadPool(4);
+        for (final String message : messages) {
+            executor.execute(() -> visitor.process(commit(message), null));
+        }
+        executor.shutdown();
+        assertTrue(executor.awaitTermination(1, TimeUnit.MINUTES));
+    }
+
+    private static List<Object[]> finish(WordCountVisitor visitor) {
+        final List<Object[]> rows = new ArrayList<>();
+        visitor.finalizeVisitor(new PersistenceMechanism() {
+            @Override
+            public void write(Object... line) {
+                rows.add(line);
+            }
+
+            @Override
+            public void close() {
+            }
+        });
+        return rows;
+    }
+
+    private List<String> randomMessages(int n) {
+        List<String> result = new ArrayList<>();
+        for (int i = 0; i < n; i++) {
+            StringBuilder sb = new StringBuilder();
+            final int numWords = random.nextInt(8);
+            for (int w = 0; w < numWords; w++) {
+                sb.append(VOCABULARY[random.nextInt(VOCABULARY.length)]);
+                sb.append(" \n\t".charAt(random.nextInt(3)));
+            }
+            result.add(sb.toString());
+        }
+        return result;
+    }
+
+    private static MinedCommit commit(String message) {
+        return new MinedCommit(null, "0000000000000000000000000000000000000000", Collections.<String>emptyList(),
+                AUTHOR, message, null, Optional.empty(), Optional.empty());
+    }
+}
@@ -0,0 +1,90 @@
+package de.ovgu.ifdefrevolver.commitanalysis;
+
+import junit.framework.TestCase;
+
+import java.util.*;
+
+public class ChangedPathBloomFilterTest extends TestCase {
+    private static final String HASH = "0123456789abcdef0123456789abcdef01234567";
+
+    private final Random random = new Random(42);
+
+    public void testNoFalseNegatives() {
+        for (int round = 0; round < 200; round++) {
+            final List<String> files = randomPaths(1 + random.nextInt(60));
+            final ChangedPathBloomFilter filter = ChangedPathBloomFilter.fromChangedFiles(HASH, files);
+            final ChangedPathBloomFilter reread = ChangedPathBloomFilter.fromString(HASH,
+                    filter.getNumChangedPaths(), filter.bitsAsString());
+            for (String file : files) {
+                String path = file;
+                while (!path.isEmpty()) {
+                    assertTrue(path, filter.mightContain(path));
+                    assertTrue(path, filter.mightContain("/" + path + "/"));
+                    assertTrue(path, reread.mightContain(path));
+                    final int ixSlash = path.lastIndexOf('/');
+                    path = (ixSlash < 0) ? "" : path.substring(0, ixSlash);
+                }
+            }
+        }
+    }
+
+    public void testFalsePositiveRateIsLow() {
+        final List<String> files = randomPaths(100);
+        final ChangedPathBloomFilter filter = ChangedPathBloomFilter.fromChangedFiles(HASH, files);
+        int falsePositives = 0;
+        final int numProbes = 10000;
+        for (int i = 0; i < numProbes; i++) {
+            if (filter.mightContain("other/dir" + i + "/file" + i + ".c")) falsePositives++;
+        }
+        // GIT's parameters give about 1% false positives.
+        assertTrue("False positives: " + falsePositives, falsePositives < numProbes / 20);
+    }
+
+    public void testLeadingDirectoriesAreCounted() {
+        final ChangedPathBloomFilter filter = ChangedPathBloomFilter.fromChangedFiles(HASH,
+                Arrays.asList("src/a/x.c", "src/a/y.c", "src/b/z.c"));
+        // src, src/a, src/b and the three files
+        assertEquals(6, filter.getNumChangedPaths());
+        assertFalse(filter.isTruncated());
+    }
+
+    public void testEmptyAndTruncatedFilters() {
+        final ChangedPathBloomFilter empty = ChangedPathBloomFilter.fromChangedFiles(HASH,
+                Collections.<String>emptyList());
+        assertFalse(empty.mightContain("src"));
+
+        final ChangedPathBloomFilter truncated = ChangedPathBloomFilter.fromChangedFiles(HASH,
+                randomPaths(ChangedPathBloomFilter.MAX_CHANGED_PATHS + 1));
+        assertTrue(truncated.isTruncated());
+        assertTrue(truncated.mightContain("anything/at/all"));
+        final ChangedPathBloomFilter reread = ChangedPathBloomFilter.fromString(HASH,
+                truncated.getNumChangedPaths(), truncated.bitsAsString());
+        assertTrue(reread.isTruncated());
+        assertTrue(reread.mightContain("anything/at/all"));
+    }
+
+    public void testIsSameOrBelow() {
+        assertTrue(ChangedPathBloomFilter.isSameOrBelow("src/a/x.c", "src"));
+        assertTrue(ChangedPathBloomFilter.isSameOrBelow("src/a/x.c", "/src/a/"));
+        assertTrue(ChangedPathBloomFilter.isSameOrBelow("src/a/x.c", "src/a/x.c"));
+        assertTrue(ChangedPathBloomFilter.isSameOrBelow("src/a/x.c", ""));
+        assertFalse(ChangedPathBloomFilter.isSameOrBelow("src/ab/x.c", "src/a"));
+        assertFalse(ChangedPathBloomFilter.isSameOrBelow("src", "src/a"));
+    }
+
+    /**
+     * @return Distinct file paths, each with a unique file name
+     */
+    private List<String> randomPaths(int n) {
+        List<String> result = new ArrayList<>();
+        for (int i = 0; i < n; i++) {
+            StringBuilder path = new StringBuilder();
+            final int depth = random.nextInt(4);
+            for (int d = 0; d < depth; d++) {
+                path.append("dir").append(random.nextInt(5)).append('/');
+            }
+            result.add(path.append("file").append(i).append(".c").toString());
+        }
+        return result;
+    }
+}
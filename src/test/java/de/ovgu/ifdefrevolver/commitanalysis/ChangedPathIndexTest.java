@@ -0,0 +1,97 @@
+package de.ovgu.ifdefrevolver.commitanalysis;
+
+import de.ovgu.ifdefrevolver.bugs.correlate.main.IHasResultsDir;
+import junit.framework.TestCase;
+import org.eclipse.jgit.api.Git;
+import org.eclipse.jgit.revwalk.RevCommit;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.Date;
+
+public class ChangedPathIndexTest extends TestCase {
+    private File tmpDir;
+    private File repoDir;
+    private Git git;
+    private IHasResultsDir config;
+
+    @Override
+    protected void setUp() throws Exception {
+        tmpDir = Files.createTempDirectory("ChangedPathIndexTest").toFile();
+        repoDir = new File(tmpDir, "repo");
+        final File resultsDir = new File(tmpDir, "results");
+        resultsDir.mkdirs();
+        git = Git.init().setDirectory(repoDir).call();
+        config = new IHasResultsDir() {
+            @Override
+            public File projectResultsDir() {
+                return resultsDir;
+            }
+
+            @Override
+            public File snapshotResultsDirForDate(Date date) {
+                throw new UnsupportedOperationException();
+            }
+
+            @Override
+            public File snapshotResultsDirForCommit(String commitHash) {
+                throw new UnsupportedOperationException();
+            }
+        };
+    }
+
+    @Override
+    protected void tearDown() throws Exception {
+        git.getRepository().close();
+        org.apache.commons.io.FileUtils.deleteDirectory(tmpDir);
+    }
+
+    public void testCommitsMinedAfterTheIndexWasSavedAreAdded() throws Exception {
+        write("src/a.c", "int a;\n");
+        final String first = commit("First").getId().name();
+        ChangedPathIndex index = ChangedPathIndex.readOrBuild(config, git.getRepository());
+        assertEquals(1, index.size());
+        assertTrue(index.mightHaveChanged(first, "src/a.c"));
+
+        write("lib/b.c", "int b;\n");
+        final String second = commit("Second").getId().name();
+        write("lib/b.c", "int b = 1;\n");
+        final String third = commit("Third").getId().name();
+
+        index = ChangedPathIndex.readOrBuild(config, git.getRepository());
+        assertEquals(3, index.size());
+        assertTrue(index.contains(second));
+        assertTrue(index.contains(third));
+        assertFalse(index.mightHaveChanged(third, "src"));
+        assertTrue(index.mightHaveChanged(third, "lib/b.c"));
+
+        ChangedPathIndex reread = ChangedPathIndex.read(ChangedPathIndex.indexFile(config));
+        assertEquals(3, reread.size());
+        assertTrue(reread.contains(first));
+        assertTrue(reread.contains(third));
+    }
+
+    public void testUnchangedHistoryDoesNotRewriteTheIndex() throws Exception {
+        write("src/a.c", "int a;\n");
+        commit("First");
+        ChangedPathIndex.readOrBuild(config, git.getRepository());
+        final File indexFile = ChangedPathIndex.indexFile(config);
+        assertTrue(indexFile.setLastModified(0));
+        assertEquals(1, ChangedPathIndex.readOrBuild(config, git.getRepository()).size());
+        assertEquals(0, indexFile.lastModified());
+    }
+
+    private RevCommit commit(String message) throws Exception {
+        git.add().addFilepattern(".").call();
+        return git.commit().setMessage(message).setAuthor("Test", "test@example.com")
+                .setCommitter("Test", "test@example.com").call();
+    }
+
+    private void write(String relPath, String contents) throws IOException {
+        File f = new File(repoDir, relPath);
+        f.getParentFile().mkdirs();
+        Files.write(f.toPath(), contents.getBytes(StandardCharsets.UTF_8));
+    }
+}
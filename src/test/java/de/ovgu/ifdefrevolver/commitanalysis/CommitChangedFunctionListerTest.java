@@ -0,0 +1,102 @@
+package de.ovgu.ifdefrevolver.commitanalysis;
+
+import de.ovgu.skunk.detection.data.Method;
+import de.ovgu.skunk.detection.input.PositionalXmlReader;
+import junit.framework.TestCase;
+import org.eclipse.jgit.api.Git;
+import org.eclipse.jgit.revwalk.RevCommit;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.*;
+
+public class CommitChangedFunctionListerTest extends TestCase {
+    private File repoDir;
+    private Git git;
+
+    @Override
+    protected void setUp() throws Exception {
+        repoDir = Files.createTempDirectory("CommitChangedFunctionListerTest").toFile();
+        git = Git.init().setDirectory(repoDir).call();
+    }
+
+    @Override
+    protected void tearDown() throws Exception {
+        git.getRepository().close();
+        org.apache.commons.io.FileUtils.deleteDirectory(repoDir);
+    }
+
+    public void testParentLessCommitOnlyListsFilesWithinPathRestriction() throws Exception {
+        RevCommit root = commitInitialFiles();
+        assertEquals(Collections.singleton("src/b.c"), listRequestedFiles(root, Optional.of("src")));
+        assertEquals(Collections.singleton("src/b.c"), listRequestedFiles(root, Optional.of("src/b.c")));
+        assertTrue(listRequestedFiles(root, Optional.of("doc")).isEmpty());
+    }
+
+    public void testParentLessCommitWithoutPathRestrictionListsAllCFiles() throws Exception {
+        RevCommit root = commitInitialFiles();
+        assertEquals(new HashSet<>(Arrays.asList("lib/a.c", "src/b.c", "src2/c.c")),
+                listRequestedFiles(root, Optional.empty()));
+    }
+
+    public void testCommitWithParentOnlyListsFilesWithinPathRestriction() throws Exception {
+        commitInitialFiles();
+        write("lib/a.c", "int a() { return 1; }\n");
+        write("src/b.c", "int b() { return 2; }\n");
+        write("src2/c.c", "int c() { return 3; }\n");
+        RevCommit child = commit("Change all files");
+        assertEquals(Collections.singleton("src/b.c"), listRequestedFiles(child, Optional.of("src")));
+        assertEquals(new HashSet<>(Arrays.asList("lib/a.c", "src/b.c", "src2/c.c")),
+                listRequestedFiles(child, Optional.empty()));
+    }
+
+    private RevCommit commitInitialFiles() throws Exception {
+        write("lib/a.c", "int a() { return 0; }\n");
+        write("src/b.c", "int b() { return 0; }\n");
+        write("src/b.h", "int b();\n");
+        write("src2/c.c", "int c() { return 0; }\n");
+        write("README", "Test\n");
+        return commit("Initial commit");
+    }
+
+    /**
+     * @return Paths of all the files whose functions the lister requested from its function location provider
+     */
+    private Set<String> listRequestedFiles(RevCommit commit, Optional<String> pathRestriction) {
+        RecordingFunctionLocationProvider provider = new RecordingFunctionLocationProvider();
+        List<FunctionChangeHunk> hunks = new ArrayList<>();
+        new CommitChangedFunctionLister(git.getRepository(), commit.getId().name(), provider, hunks::add,
+                pathRestriction).listChangedFunctions();
+        assertTrue(hunks.isEmpty());
+        return provider.requestedPaths;
+    }
+
+    private RevCommit commit(String message) throws Exception {
+        git.add().addFilepattern(".").call();
+        return git.commit().setMessage(message).setAuthor("Test", "test@example.com")
+                .setCommitter("Test", "test@example.com").call();
+    }
+
+    private void write(String relPath, String contents) throws IOException {
+        File f = new File(repoDir, relPath);
+        f.getParentFile().mkdirs();
+        Files.write(f.toPath(), contents.getBytes(StandardCharsets.UTF_8));
+    }
+
+    private static class RecordingFunctionLocationProvider implements IFunctionLocationProvider {
+        final Set<String> requestedPaths = new HashSet<>();
+
+        @Override
+        public Map<String, List<Method>> listFunctionsInFiles(String commitId, RevCommit state, Set<String> paths) {
+            requestedPaths.addAll(paths);
+            return Collections.emptyMap();
+        }
+
+        @Override
+        public PositionalXmlReader getXmlReaderInstance() {
+            return null;
+        }
+    }
+}
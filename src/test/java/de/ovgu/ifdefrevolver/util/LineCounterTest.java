@@ -0,0 +1,86 @@
+package de.ovgu.ifdefrevolver.util;
+
+import junit.framework.TestCase;
+
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.util.Random;
+
+public class LineCounterTest extends TestCase {
+    /**
+     * Bytes that differ from <code>'\n'</code> in a single bit, or only in the high bit, besides the newline itself
+     */
+    private static final byte[] TRICKY_BYTES = {'\n', 0x0B, 0x08, 0x0E, 0x1A, (byte) 0x8A, (byte) 0xFF, 0x00, 0x7F};
+
+    private File tmpDir;
+
+    @Override
+    protected void setUp() throws Exception {
+        tmpDir = Files.createTempDirectory("LineCounterTest").toFile();
+    }
+
+    @Override
+    protected void tearDown() throws Exception {
+        org.apache.commons.io.FileUtils.deleteDirectory(tmpDir);
+    }
+
+    public void testCountNewlinesMatchesByteWiseCount() {
+        final Random random = new Random(42);
+        for (int round = 0; round < 1000; round++) {
+            final byte[] data = new byte[random.nextInt(100)];
+            for (int i = 0; i < data.length; i++) {
+                data[i] = TRICKY_BYTES[random.nextInt(TRICKY_BYTES.length)];
+            }
+            final int start = data.length == 0 ? 0 : random.nextInt(data.length);
+            final int end = start + random.nextInt(data.length - start + 1);
+            final ByteBuffer buf = ByteBuffer.wrap(data);
+            buf.position(start).limit(end);
+            assertEquals(countNewlinesByteWise(data, start, end), LineCounter.countNewlines(buf));
+            assertEquals("Position must be left unchanged", start, buf.position());
+        }
+    }
+
+    public void testAllNewlines() {
+        final byte[] data = new byte[64];
+        java.util.Arrays.fill(data, (byte) '\n');
+        assertEquals(64, LineCounter.countNewlines(ByteBuffer.wrap(data)));
+    }
+
+    public void testLineCountSemantics() throws IOException {
+        assertEquals(0, countLines(""));
+        assertEquals(1, countLines("no newline"));
+        assertEquals(1, countLines("one line\n"));
+        assertEquals(1, countLines("two\nlines"));
+        assertEquals(3, countLines("\n\n\n"));
+    }
+
+    public void testMappedFileHasSameCountAsStream() throws IOException {
+        final byte[] data = new byte[1024 * 1024 + 3];
+        new Random(4711).nextBytes(data);
+        final File file = new File(tmpDir, "large");
+        Files.write(file.toPath(), data);
+        final int expected = (int) countNewlinesByteWise(data, 0, data.length);
+        assertEquals(expected, LineCounter.countLines(file));
+        assertEquals(expected, LineCounter.countLines(new ByteArrayInputStream(data)));
+    }
+
+    private int countLines(String contents) throws IOException {
+        final byte[] data = contents.getBytes("UTF-8");
+        final File file = new File(tmpDir, "small");
+        Files.write(file.toPath(), data);
+        final int fromFile = LineCounter.countLines(file);
+        assertEquals(fromFile, LineCounter.countLines(new ByteArrayInputStream(data)));
+        return fromFile;
+    }
+
+    private static long countNewlinesByteWise(byte[] data, int start, int end) {
+        long count = 0;
+        for (int i = start; i < end; i++) {
+            if (data[i] == '\n') count++;
+        }
+        return count;
+    }
+}
@@ -0,0 +1,76 @@
+package de.ovgu.ifdefrevolver.util.stats;
+
+import junit.framework.TestCase;
+import org.apache.commons.math3.stat.StatUtils;
+
+import java.util.Arrays;
+import java.util.Random;
+
+public class QuickselectTest extends TestCase {
+    private static final double[] PERCENTILES = {0.1, 1, 10, 25, 33.3, 50, 66.7, 75, 90, 99, 99.9, 100};
+
+    private final Random random = new Random(42);
+
+    public void testSelectMatchesSortedArray() {
+        for (int round = 0; round < 500; round++) {
+            final int[] values = randomInts(1 + random.nextInt(60), 1 + random.nextInt(20));
+            final int[] sorted = values.clone();
+            Arrays.sort(sorted);
+            final int k = random.nextInt(values.length);
+            final int[] work = values.clone();
+            assertEquals(sorted[k], Quickselect.select(work, work.length, k));
+            for (int i = 0; i < k; i++) assertTrue(work[i] <= sorted[k]);
+            for (int i = k + 1; i < work.length; i++) assertTrue(work[i] >= sorted[k]);
+
+            final double[] doubles = toDoubles(values);
+            assertEquals((double) sorted[k], Quickselect.select(doubles, doubles.length, k));
+        }
+    }
+
+    public void testSelectOnlyConsidersGivenLength() {
+        final int[] values = {5, 4, 3, 2, 1, 0, -1};
+        assertEquals(5, Quickselect.select(values, 3, 2));
+    }
+
+    public void testPercentileMatchesStatUtils() {
+        for (int round = 0; round < 500; round++) {
+            final int length = random.nextInt(40);
+            final double[] values = toDoubles(randomInts(length, 1 + random.nextInt(1000)));
+            for (double p : PERCENTILES) {
+                final double expected = StatUtils.percentile(values.clone(), p);
+                final double actual = Quickselect.percentile(values.clone(), length, p);
+                assertEquals("p=" + p + ", values=" + Arrays.toString(values), expected, actual, 0.0);
+            }
+        }
+    }
+
+    public void testIntSamplesMatchStatUtilsAndKeepOrder() {
+        final int[] values = randomInts(101, 50);
+        final IntSamples samples = new IntSamples(4);
+        for (int v : values) samples.add(v);
+
+        assertEquals(StatUtils.mean(toDoubles(values)), samples.mean(), 1e-9);
+        assertEquals(StatUtils.percentile(toDoubles(values), 50), samples.percentile(50), 0.0);
+        for (int i = 0; i < values.length; i++) {
+            assertEquals(values[i], samples.get(i));
+        }
+        assertTrue(Double.isNaN(new IntSamples().percentile(50)));
+        assertTrue(Double.isNaN(new IntSamples().mean()));
+    }
+
+    private int[] randomInts(int length, int bound) {
+        final int[] result = new int[length];
+        for (int i = 0; i < length; i++) {
+            result[i] = random.nextInt(bound);
+        }
+        return result;
+    }
+
+    private static double[] toDoubles(int[] values) {
+        final double[] result = new double[values.length];
+        for (int i = 0; i < values.length; i++) {
+            result[i] = values[i];
+        }
+        return result;
+    }
+}